@@ -0,0 +1,53 @@
+package dev.nabnub;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+//Plays Sound through the default audio device. Samples are rendered on the emulation thread after each frame, so
+//Sound needs no locking; the line is topped up to a few frames ahead and never blocks the frame loop.
+public class AudioOutput implements AutoCloseable {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME_SAMPLES = SAMPLE_RATE / 60;
+    private static final int QUEUED_FRAMES = 3;
+
+    private final SourceDataLine line;
+    private final byte[] buffer = new byte[FRAME_SAMPLES * QUEUED_FRAMES];
+
+    private AudioOutput(SourceDataLine line) {
+        this.line = line;
+    }
+
+    //Null when there is no usable audio device, so emulation carries on silently
+    public static AudioOutput open() {
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_UNSIGNED, SAMPLE_RATE, 8, 1, 1, SAMPLE_RATE,
+                false);
+        try {
+            SourceDataLine line = AudioSystem.getSourceDataLine(format);
+            line.open(format, 2 * FRAME_SAMPLES * QUEUED_FRAMES);
+            line.start();
+            return new AudioOutput(line);
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            System.err.println("No audio output: " + e.getMessage());
+            return null;
+        }
+    }
+
+    //Renders only what the line is short of, so its clock rather than the frame loop's sets the pace
+    public void play(Sound sound) {
+        int available = line.available();
+        int queued = line.getBufferSize() - available;
+        int wanted = Math.min(buffer.length - queued, available);
+        if (wanted > 0) {
+            sound.render(buffer, 0, wanted, SAMPLE_RATE);
+            line.write(buffer, 0, wanted);
+        }
+    }
+
+    @Override
+    public void close() {
+        line.close();
+    }
+}
@@ -1,50 +1,598 @@
 package dev.nabnub;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Random;
 
 public class CPU {
 
-    private int[] v;                              //V0-VF Registers
-    private int[] stack;
-    private final Random random;
+    //Why runCycles returned. The waits mean the rest of the frame would only repeat the same instruction.
+    public enum ExitReason { BUDGET, DRAW, VBLANK_WAIT, KEY_WAIT, HALTED }
+
+    private final int[] v = new int[16];          //V0-VF Registers
+    private final int[] stack = new int[16];
+    private long randomState;                     //xorshift64, a plain long so machine state can be copied
     private int index;                            //Index Register
     private int pc;                               //Program counter
     private int sp;                               //Stack pointer
     private int opcode;                           //Stores current instruction
     private int delay;
+    private boolean drawnThisFrame;
+
+    private final QuirkProfile profile;
+    private final byte[] decodeTable;
+
+    private final int[] flags = new int[16];      //SUPER-CHIP RPL user flags, kept across resets
+    private final Sound sound = new Sound();
 
     private final Memory memory;
-    private final Display display;
+    private final FrameBuffer frameBuffer;
     private final Keyboard keyboard;
 
+    private TranslatedProgram translation;
+    private Superinstructions superinstructions;
+    private int cyclesRun;
+    private volatile Hooks hooks;
+
+    private final FaultPolicy[] faultPolicies = new FaultPolicy[Fault.values().length];
+    private FaultHandler faultHandler;
+    private boolean halted;
+    private Fault fault = Fault.NONE;
+    private int faultAddress;
+    private int faultOpcode;
+
     public CPU(Memory memory, Keyboard keyboard, Display display) {
-        this.random = new Random();
+        this(memory, keyboard, display, QuirkProfile.CHIP8);
+    }
+
+    public CPU(Memory memory, Keyboard keyboard, Display display, QuirkProfile profile) {
+        this(memory, keyboard, display.getFrameBuffer(), profile);
+    }
+
+    public CPU(Memory memory, Keyboard keyboard, FrameBuffer frameBuffer, QuirkProfile profile) {
+        setRandomSeed(System.nanoTime());
+        this.profile = profile;
+        this.decodeTable = profile.getDecodeTable();
         this.memory = memory;
-        this.display = display;
+        this.frameBuffer = frameBuffer;
         this.keyboard = keyboard;
+        Arrays.fill(faultPolicies, FaultPolicy.HALT);
 
         reset();
     }
 
     public void reset() {
-        v = new int[16];
-        stack = new int[16];
+        Arrays.fill(v, 0);
+        Arrays.fill(stack, 0);
         index = 0;
         pc = 0x200;
         sp = 0;
         delay = 0;
+        drawnThisFrame = false;
+        sound.reset();
+        clearFault();
+    }
+
+    //Like reset, but also forgets the RPL flags, as if the machine had been switched off
+    public void powerCycle() {
+        Arrays.fill(flags, 0);
+        reset();
+    }
+
+    public void setRandomSeed(long seed) {
+        randomState = seed * 0x9E3779B97F4A7C15L | 1;
+    }
+
+    //Copies all machine state, leaving configuration such as the fault policy and translation alone
+    public void copyFrom(CPU other) {
+        System.arraycopy(other.v, 0, v, 0, v.length);
+        System.arraycopy(other.stack, 0, stack, 0, stack.length);
+        System.arraycopy(other.flags, 0, flags, 0, flags.length);
+        randomState = other.randomState;
+        index = other.index;
+        pc = other.pc;
+        sp = other.sp;
+        opcode = other.opcode;
+        delay = other.delay;
+        drawnThisFrame = other.drawnThisFrame;
+        halted = other.halted;
+        fault = other.fault;
+        faultAddress = other.faultAddress;
+        faultOpcode = other.faultOpcode;
+        sound.copyFrom(other.sound);
+    }
+
+    //The same state as copyFrom, for Machine.writeState
+    void writeState(DataOutput out) throws IOException {
+        for (int i = 0; i < 16; i++) {
+            out.writeByte(v[i]);
+            out.writeShort(stack[i]);
+            out.writeByte(flags[i]);
+        }
+        out.writeLong(randomState);
+        out.writeShort(index);
+        out.writeShort(pc);
+        out.writeByte(sp);
+        out.writeShort(opcode);
+        out.writeByte(delay);
+        out.writeBoolean(drawnThisFrame);
+        out.writeBoolean(halted);
+        out.writeByte(fault.ordinal());
+        out.writeShort(faultAddress);
+        out.writeShort(faultOpcode);
+        sound.writeState(out);
+    }
+
+    void readState(DataInput in) throws IOException {
+        for (int i = 0; i < 16; i++) {
+            v[i] = in.readUnsignedByte();
+            stack[i] = in.readUnsignedShort();
+            flags[i] = in.readUnsignedByte();
+        }
+        randomState = in.readLong();
+        index = in.readUnsignedShort();
+        pc = in.readUnsignedShort();
+        sp = in.readUnsignedByte();
+        opcode = in.readUnsignedShort();
+        delay = in.readUnsignedByte();
+        drawnThisFrame = in.readBoolean();
+        halted = in.readBoolean();
+        fault = Fault.values()[in.readUnsignedByte()];
+        faultAddress = in.readUnsignedShort();
+        faultOpcode = in.readUnsignedShort();
+        sound.readState(in);
+    }
+
+    //Everything that decides what the CPU does next; the RPL flags only matter once reloaded, so they count too
+    long hashState(long hash) {
+        for (int r : v) {
+            hash = StateHash.mix(hash, r);
+        }
+        for (int i = 1; i <= sp && i < stack.length; i++) {
+            hash = StateHash.mix(hash, stack[i]);
+        }
+        for (int f : flags) {
+            hash = StateHash.mix(hash, f);
+        }
+        hash = StateHash.mix(hash, (long) pc << 32 | index);
+        hash = StateHash.mix(hash, (long) sp << 32 | delay);
+        hash = StateHash.mix(hash, (long) sound.getTimer() << 32 | (drawnThisFrame ? 1 : 0) | (halted ? 2 : 0));
+        return StateHash.mix(hash, randomState);
+    }
+
+    //Registers in the StateExport layout: V0-VF, I, PC, SP, delay and sound timers, then the stack
+    void exportState(ByteBuffer buffer, int offset) {
+        for (int r = 0; r < v.length; r++) {
+            buffer.put(offset + r, (byte) v[r]);
+        }
+        buffer.putShort(offset + 16, (short) index);
+        buffer.putShort(offset + 18, (short) pc);
+        buffer.put(offset + 20, (byte) sp);
+        buffer.put(offset + 21, (byte) delay);
+        buffer.put(offset + 22, (byte) sound.getTimer());
+        for (int i = 0; i < stack.length; i++) {
+            buffer.putShort(offset + 24 + i * 2, (short) stack[i]);
+        }
     }
 
     public void cycle() {
+        if (halted) {
+            return;
+        }
+        if (pc < 0 || pc > memory.getMemory().length - 2) {
+            raiseFault(Fault.PC_OUT_OF_RANGE, pc, 0);
+            //There is no next instruction to carry on with, so ignoring it still halts
+            if (faultPolicies[Fault.PC_OUT_OF_RANGE.ordinal()] == FaultPolicy.IGNORE) {
+                halted = true;
+            }
+            return;
+        }
+        Hooks hooks = this.hooks;
+        if (hooks != null) {
+            hooks.executing(pc, memory.getMemory()[pc] << 8 | memory.getMemory()[pc + 1]);
+        }
         fetch();
         execute(opcode);
     }
 
+    //Runs budget instructions, entering translated blocks whenever one starts at pc and fits the budget
+    public int runTranslated(int budget) {
+        //Blocks would run past execute hooks
+        boolean stepping = executeHooked();
+        int executed = 0;
+        while (executed < budget && !halted) {
+            int length = stepping ? 0 : translation.blockLength(pc);
+            if (length > 0 && length <= budget - executed) {
+                translation.run(this, pc);
+                executed += length;
+            } else {
+                cycle();
+                executed++;
+            }
+        }
+        return executed;
+    }
+
+    public void setTranslation(TranslatedProgram translation) {
+        this.translation = translation;
+    }
+
+    public boolean hasTranslation() {
+        return translation != null;
+    }
+
+    //Null detaches. Hooks added to or removed from an attached Hooks take effect while the machine runs.
+    public void setHooks(Hooks hooks) {
+        this.hooks = hooks;
+    }
+
+    public Hooks getHooks() {
+        return hooks;
+    }
+
+    private boolean executeHooked() {
+        Hooks hooks = this.hooks;
+        return hooks != null && hooks.table().hasExecuteHooks();
+    }
+
+    //Runs budget instructions like cycle(), but each fused idiom that fits the budget takes a single dispatch.
+    //Without superinstructions every instruction is its own dispatch. Returns the number of dispatches.
+    public int runFused(int budget) {
+        Superinstructions fusion = executeHooked() ? null : superinstructions;
+        int executed = 0;
+        int dispatches = 0;
+        while (executed < budget && !halted) {
+            int length = fusion != null && fusion.kind(pc) != Superinstructions.NONE ? runSuperinstruction(budget - executed) : 0;
+            if (length > 0) {
+                executed += length;
+            } else {
+                cycle();
+                executed++;
+            }
+            dispatches++;
+        }
+        return dispatches;
+    }
+
+    //Runs up to budget instructions in one loop with pc, I and sp held in locals, leaving early after a draw,
+    //at a wait or on a halt. Common instructions run inline; the rest, and fused sequences, go through their
+    //usual handlers with the locals written back around them. getCyclesRun() says how many instructions ran.
+    public ExitReason runCycles(int budget) {
+        if (halted) {
+            cyclesRun = 0;
+            return ExitReason.HALTED;
+        }
+        final int[] mem = memory.getMemory();
+        final int[] v = this.v;
+        final int[] stack = this.stack;
+        final byte[] decode = decodeTable;
+        //Hooked instructions take the slow path through cycle(), and fused sequences would run past them
+        final Hooks attached = hooks;
+        final Hooks.Table watched = attached != null && attached.table().hasExecuteHooks() ? attached.table() : null;
+        final Superinstructions fusion = watched == null ? superinstructions : null;
+        final int last = mem.length - 2;
+        int pc = this.pc;
+        int index = this.index;
+        int sp = this.sp;
+        int executed = 0;
+        ExitReason reason = ExitReason.BUDGET;
+
+        while (executed < budget) {
+            int address = pc;
+            if (address >= 0 && address <= last && (fusion == null || fusion.kind(address) == Superinstructions.NONE)
+                    && (watched == null || !watched.executes(address, mem[address] >> 4))) {
+                int opcode = mem[address] << 8 | mem[address + 1];
+                int x = (opcode & 0x0F00) >> 8;
+                int y = (opcode & 0x00F0) >> 4;
+                int kk = opcode & 0x00FF;
+                pc = address + 2;
+                executed++;
+                switch (decode[opcode]) {
+                    case Decoder.NOP:
+                        continue;
+                    case Decoder.CLS:
+                        frameBuffer.clear();
+                        continue;
+                    case Decoder.RET:
+                        if (sp > 0) {
+                            pc = stack[sp--];
+                            continue;
+                        }
+                        break;
+                    case Decoder.JP:
+                        pc = opcode & 0x0FFF;
+                        continue;
+                    case Decoder.CALL:
+                        if (sp < stack.length - 1) {
+                            stack[++sp] = pc;
+                            pc = opcode & 0x0FFF;
+                            continue;
+                        }
+                        break;
+                    case Decoder.SE_VX_KK:
+                        if (v[x] == kk) {
+                            pc += 2;
+                        }
+                        continue;
+                    case Decoder.SNE_VX_KK:
+                        if (v[x] != kk) {
+                            pc += 2;
+                        }
+                        continue;
+                    case Decoder.SE_VX_VY:
+                        if (v[x] == v[y]) {
+                            pc += 2;
+                        }
+                        continue;
+                    case Decoder.SNE_VX_VY:
+                        if (v[x] != v[y]) {
+                            pc += 2;
+                        }
+                        continue;
+                    case Decoder.LD_VX_KK:
+                        setVxKK(x, kk);
+                        continue;
+                    case Decoder.ADD_VX_KK:
+                        setVxPlusKK(x, kk);
+                        continue;
+                    case Decoder.LD_VX_VY:
+                        setVxVy(x, y);
+                        continue;
+                    case Decoder.OR:
+                        setVxOrVy(x, y);
+                        continue;
+                    case Decoder.OR_RESET_VF:
+                        setVxOrVy(x, y);
+                        resetVF();
+                        continue;
+                    case Decoder.AND:
+                        setVxAndVy(x, y);
+                        continue;
+                    case Decoder.AND_RESET_VF:
+                        setVxAndVy(x, y);
+                        resetVF();
+                        continue;
+                    case Decoder.XOR:
+                        setVxXorVy(x, y);
+                        continue;
+                    case Decoder.XOR_RESET_VF:
+                        setVxXorVy(x, y);
+                        resetVF();
+                        continue;
+                    case Decoder.ADD_VX_VY:
+                        addVxVy(x, y);
+                        continue;
+                    case Decoder.SUB:
+                        subVxVy(x, y);
+                        continue;
+                    case Decoder.SHR_VY:
+                        setVxVySHR(x, y);
+                        continue;
+                    case Decoder.SHR_VX:
+                        setVxSHR(x);
+                        continue;
+                    case Decoder.SUBN:
+                        subVyVx(x, y);
+                        continue;
+                    case Decoder.SHL_VY:
+                        setVxVySHL(x, y);
+                        continue;
+                    case Decoder.SHL_VX:
+                        setVxSHL(x);
+                        continue;
+                    case Decoder.LD_I:
+                        index = opcode & 0x0FFF;
+                        continue;
+                    case Decoder.JP_V0:
+                        pc = v[0] + (opcode & 0x0FFF);
+                        continue;
+                    case Decoder.JP_VX:
+                        pc = v[x] + (opcode & 0x0FFF);
+                        continue;
+                    case Decoder.RND:
+                        setVxRandomAndKK(x, kk);
+                        continue;
+                    case Decoder.SKP:
+                        if (keyboard.isKeyPressed(v[x])) {
+                            pc += 2;
+                        }
+                        continue;
+                    case Decoder.SKNP:
+                        if (!keyboard.isKeyPressed(v[x])) {
+                            pc += 2;
+                        }
+                        continue;
+                    case Decoder.LD_VX_DT:
+                        setVxDt(x);
+                        continue;
+                    case Decoder.LD_DT_VX:
+                        setDtVx(x);
+                        continue;
+                    case Decoder.LD_ST_VX:
+                        sound.setTimer(v[x]);
+                        continue;
+                    case Decoder.ADD_I_VX:
+                        index = (index + v[x]) & 0xFFFF;
+                        continue;
+                    case Decoder.LD_F:
+                        index = memory.getFONT_START() + (v[x] * 5);
+                        continue;
+                    default:
+                        break;
+                }
+                //Not handled inline: undo the fetch and take the slow path
+                pc = address;
+                executed--;
+            }
+
+            //Faults, draws, waits, memory access and fused sequences all run on the fields
+            this.pc = pc;
+            this.index = index;
+            this.sp = sp;
+            int length = 0;
+            int decided = -1;
+            int handler = Decoder.NOP;
+            if (fusion != null && fusion.kind(address) != Superinstructions.NONE) {
+                //Only a blit can end the call, through its draw
+                if (fusion.kind(address) == Superinstructions.BLIT) {
+                    decided = address + 6;
+                    handler = handlerAt(decided);
+                }
+                length = runSuperinstruction(budget - executed);
+            }
+            if (length == 0) {
+                decided = address;
+                handler = handlerAt(address);
+                cycle();
+                length = 1;
+            }
+            executed += length;
+            pc = this.pc;
+            index = this.index;
+            sp = this.sp;
+
+            ExitReason exit = exitAfter(handler, decided);
+            if (exit != null) {
+                reason = exit;
+                break;
+            }
+        }
+
+        this.pc = pc;
+        this.index = index;
+        this.sp = sp;
+        cyclesRun = executed;
+        return reason;
+    }
+
+    //runCycles for cores that hook every instruction through cycle()
+    protected ExitReason stepCycles(int budget) {
+        int executed = 0;
+        ExitReason reason = halted ? ExitReason.HALTED : ExitReason.BUDGET;
+        while (executed < budget && !halted) {
+            int address = pc;
+            int handler = handlerAt(address);
+            cycle();
+            executed++;
+            ExitReason exit = exitAfter(handler, address);
+            if (exit != null) {
+                reason = exit;
+                break;
+            }
+        }
+        cyclesRun = executed;
+        return reason;
+    }
+
+    //Decoded handler of the instruction at address, read before it runs in case it rewrites itself
+    private int handlerAt(int address) {
+        int[] mem = memory.getMemory();
+        return address >= 0 && address <= mem.length - 2 ? decodeTable[mem[address] << 8 | mem[address + 1]] : Decoder.NOP;
+    }
+
+    //Whether the instruction at address, with the given handler, ends a runCycles call
+    private ExitReason exitAfter(int handler, int address) {
+        if (halted) {
+            return ExitReason.HALTED;
+        }
+        switch (handler) {
+            case Decoder.DRW_WRAP:
+            case Decoder.DRW_WRAP_WAIT:
+            case Decoder.DRW_CLIP:
+            case Decoder.DRW_CLIP_WAIT:
+            case Decoder.DRW16_WRAP:
+            case Decoder.DRW16_WRAP_WAIT:
+            case Decoder.DRW16_CLIP:
+            case Decoder.DRW16_CLIP_WAIT:
+                return pc == address ? ExitReason.VBLANK_WAIT : ExitReason.DRAW;
+            case Decoder.LD_VX_K:
+                return pc == address ? ExitReason.KEY_WAIT : null;
+            default:
+                return null;
+        }
+    }
+
+    //Instructions run by the last runCycles call
+    public int getCyclesRun() {
+        return cyclesRun;
+    }
+
+    public void setSuperinstructions(Superinstructions superinstructions) {
+        this.superinstructions = superinstructions;
+    }
+
+    //Runs the sequence at pc and returns how many instructions that was, or 0 if it does not fit the budget.
+    //Each case leaves exactly the state its instructions would have, one at a time.
+    private int runSuperinstruction(int budget) {
+        int[] mem = memory.getMemory();
+        int start = pc;
+        int a = mem[start] << 8 | mem[start + 1];
+        int b = mem[start + 2] << 8 | mem[start + 3];
+        switch (superinstructions.kind(start)) {
+            case Superinstructions.BLIT:
+                if (budget < 4) {
+                    return 0;
+                }
+                setVxKK((a & 0x0F00) >> 8, a & 0x00FF);
+                setVxKK((b & 0x0F00) >> 8, b & 0x00FF);
+                setINNN((mem[start + 4] << 8 | mem[start + 5]) & 0x0FFF);
+                pc = start + 8;
+                execute(mem[start + 6] << 8 | mem[start + 7]);
+                return 4;
+            case Superinstructions.TIMER_POLL: {
+                if (budget < 3) {
+                    return 0;
+                }
+                setVxDt((a & 0x0F00) >> 8);
+                if (delay == 0) {
+                    pc = start + 6;
+                    return 2;
+                }
+                int target = (mem[start + 4] << 8 | mem[start + 5]) & 0x0FFF;
+                if (target != start) {
+                    pc = target;
+                    return 3;
+                }
+                //The delay timer only changes between frames, so the loop spins for the rest of the budget
+                return budget / 3 * 3;
+            }
+            case Superinstructions.TABLE_LOAD:
+                if (budget < 2) {
+                    return 0;
+                }
+                setINNN(a & 0x0FFF);
+                pc = start + 4;
+                execute(b);
+                return 2;
+            case Superinstructions.COUNTED_LOOP:
+                if (budget < 3) {
+                    return 0;
+                }
+                setVxPlusKK((a & 0x0F00) >> 8, a & 0x00FF);
+                if (v[(b & 0x0F00) >> 8] == (b & 0x00FF)) {
+                    pc = start + 6;
+                    return 2;
+                }
+                pc = (mem[start + 4] << 8 | mem[start + 5]) & 0x0FFF;
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    //Called once per 60Hz frame, which is also the vblank the display wait quirk synchronizes to
     public void updateTimers() {
         if (delay > 0) {
             delay--;
         }
+        sound.tick();
+        drawnThisFrame = false;
+        Hooks hooks = this.hooks;
+        if (hooks != null) {
+            hooks.frameFinished();
+        }
     }
 
     private void fetch() {
@@ -52,82 +600,346 @@ public class CPU {
         incrementPC();
     }
 
-    private void execute(int opcode) {
+    //Public so that translated ROM classes, loaded from their own jar, can delegate to the handlers
+    public void execute(int opcode) {
         int x = (opcode & 0x0F00) >> 8;
         int y = (opcode & 0x00F0) >> 4;
         int n = opcode & 0x000F;
         int kk = opcode & 0x00FF;
         int nnn = opcode & 0x00FFF;
 
-        switch (opcode & 0xF000) {
-            case 0x0000:
-                decode0000(opcode);
+        //Quirk variants are separate handlers picked by the profile's decode table
+        switch (decodeTable[opcode]) {
+            case Decoder.NOP:
+                break;
+            case Decoder.CLS:
+                frameBuffer.clear();
                 break;
-            case 0x1000:
+            case Decoder.RET:
+                if (sp > 0) {
+                    returnFromSubroutine();
+                } else {
+                    raiseFault(Fault.STACK_UNDERFLOW, pc - 2, opcode);
+                }
+                break;
+            case Decoder.JP:
                 jumpToNNN(nnn);
                 break;
-            case 0x2000:
-                callSubroutine(nnn);
+            case Decoder.CALL:
+                if (sp < stack.length - 1) {
+                    callSubroutine(nnn);
+                } else {
+                    raiseFault(Fault.STACK_OVERFLOW, pc - 2, opcode);
+                }
                 break;
-            case 0x3000:
+            case Decoder.SE_VX_KK:
                 skipIfVxKK(x, kk);
                 break;
-            case 0x4000:
+            case Decoder.SNE_VX_KK:
                 skipIfVxNotKK(x, kk);
                 break;
-            case 0x5000:
+            case Decoder.SE_VX_VY:
                 skipIfVxVy(x, y);
                 break;
-            case 0x6000:
+            case Decoder.LD_VX_KK:
                 setVxKK(x, kk);
                 break;
-            case 0x7000:
+            case Decoder.ADD_VX_KK:
                 setVxPlusKK(x, kk);
                 break;
-            case 0x8000:
-                decode8000(opcode, x, y);
+            case Decoder.LD_VX_VY:
+                setVxVy(x, y);
+                break;
+            case Decoder.OR:
+                setVxOrVy(x, y);
+                break;
+            case Decoder.OR_RESET_VF:
+                setVxOrVy(x, y);
+                resetVF();
+                break;
+            case Decoder.AND:
+                setVxAndVy(x, y);
+                break;
+            case Decoder.AND_RESET_VF:
+                setVxAndVy(x, y);
+                resetVF();
+                break;
+            case Decoder.XOR:
+                setVxXorVy(x, y);
+                break;
+            case Decoder.XOR_RESET_VF:
+                setVxXorVy(x, y);
+                resetVF();
+                break;
+            case Decoder.ADD_VX_VY:
+                addVxVy(x, y);
+                break;
+            case Decoder.SUB:
+                subVxVy(x, y);
+                break;
+            case Decoder.SHR_VY:
+                setVxVySHR(x, y);
+                break;
+            case Decoder.SHR_VX:
+                setVxSHR(x);
+                break;
+            case Decoder.SUBN:
+                subVyVx(x, y);
                 break;
-            case 0x9000:
+            case Decoder.SHL_VY:
+                setVxVySHL(x, y);
+                break;
+            case Decoder.SHL_VX:
+                setVxSHL(x);
+                break;
+            case Decoder.SNE_VX_VY:
                 skipIfVxNotVy(x, y);
                 break;
-            case 0xA000:
+            case Decoder.LD_I:
                 setINNN(nnn);
                 break;
-            case 0xB000:
+            case Decoder.JP_V0:
                 skipToNNNPlusV0(nnn);
                 break;
-            case 0xC000:
+            case Decoder.JP_VX:
+                skipToXNNPlusVx(x, nnn);
+                break;
+            case Decoder.RND:
                 setVxRandomAndKK(x, kk);
                 break;
-            case 0xD000:
-                draw(x, y, n);
+            case Decoder.DRW_WRAP:
+                if (checkMemory(index, spriteBytes(n, false), opcode)) {
+                    draw(x, y, n, false, false);
+                }
+                break;
+            case Decoder.DRW_WRAP_WAIT:
+                if (!waitForVblank() && checkMemory(index, spriteBytes(n, false), opcode)) {
+                    draw(x, y, n, false, false);
+                }
+                break;
+            case Decoder.DRW_CLIP:
+                if (checkMemory(index, spriteBytes(n, false), opcode)) {
+                    draw(x, y, n, false, true);
+                }
+                break;
+            case Decoder.DRW_CLIP_WAIT:
+                if (!waitForVblank() && checkMemory(index, spriteBytes(n, false), opcode)) {
+                    draw(x, y, n, false, true);
+                }
+                break;
+            case Decoder.DRW16_WRAP:
+                if (checkMemory(index, spriteBytes(16, true), opcode)) {
+                    draw(x, y, 16, true, false);
+                }
+                break;
+            case Decoder.DRW16_WRAP_WAIT:
+                if (!waitForVblank() && checkMemory(index, spriteBytes(16, true), opcode)) {
+                    draw(x, y, 16, true, false);
+                }
+                break;
+            case Decoder.DRW16_CLIP:
+                if (checkMemory(index, spriteBytes(16, true), opcode)) {
+                    draw(x, y, 16, true, true);
+                }
+                break;
+            case Decoder.DRW16_CLIP_WAIT:
+                if (!waitForVblank() && checkMemory(index, spriteBytes(16, true), opcode)) {
+                    draw(x, y, 16, true, true);
+                }
+                break;
+            case Decoder.SKP:
+                skipIfKeyPressed(x);
+                break;
+            case Decoder.SKNP:
+                skipIfKeyNotPressed(x);
+                break;
+            case Decoder.LD_VX_DT:
+                setVxDt(x);
+                break;
+            case Decoder.LD_VX_K:
+                waitForKeyPressAndRelease(x);
+                break;
+            case Decoder.LD_DT_VX:
+                setDtVx(x);
+                break;
+            case Decoder.ADD_I_VX:
+                setIPlusVx(x);
+                break;
+            case Decoder.LD_F:
+                setISprite(x);
+                break;
+            case Decoder.BCD:
+                if (checkMemory(index, 3, opcode)) {
+                    setIVxBCD(x);
+                }
                 break;
-            case 0xE000:
-                decodeE000(opcode, x);
+            case Decoder.STORE_INC:
+                if (checkMemory(index, x + 1, opcode)) {
+                    setIV0Vx(x);
+                    index = (index + x + 1) & 0xFFFF;
+                }
                 break;
-            case 0xF000:
-                decodeF000(opcode, x);
+            case Decoder.STORE_INC_X:
+                if (checkMemory(index, x + 1, opcode)) {
+                    setIV0Vx(x);
+                    index = (index + x) & 0xFFFF;
+                }
+                break;
+            case Decoder.STORE:
+                if (checkMemory(index, x + 1, opcode)) {
+                    setIV0Vx(x);
+                }
+                break;
+            case Decoder.LOAD_INC:
+                if (checkMemory(index, x + 1, opcode)) {
+                    readV0VxI(x);
+                    index = (index + x + 1) & 0xFFFF;
+                }
+                break;
+            case Decoder.LOAD_INC_X:
+                if (checkMemory(index, x + 1, opcode)) {
+                    readV0VxI(x);
+                    index = (index + x) & 0xFFFF;
+                }
+                break;
+            case Decoder.LOAD:
+                if (checkMemory(index, x + 1, opcode)) {
+                    readV0VxI(x);
+                }
+                break;
+            case Decoder.LD_ST_VX:
+                sound.setTimer(v[x]);
+                break;
+            case Decoder.SCD:
+                frameBuffer.scrollDown(n);
+                break;
+            case Decoder.SCU:
+                frameBuffer.scrollUp(n);
+                break;
+            case Decoder.SCR:
+                frameBuffer.scrollRight(4);
+                break;
+            case Decoder.SCL:
+                frameBuffer.scrollLeft(4);
+                break;
+            case Decoder.EXIT:
+                //A clean stop, not a fault
+                halted = true;
+                break;
+            case Decoder.LORES:
+                frameBuffer.setHires(false);
+                break;
+            case Decoder.HIRES:
+                frameBuffer.setHires(true);
+                break;
+            case Decoder.LD_HF:
+                setIBigSprite(x);
+                break;
+            case Decoder.SAVE_FLAGS:
+                System.arraycopy(v, 0, flags, 0, x + 1);
+                break;
+            case Decoder.LOAD_FLAGS:
+                System.arraycopy(flags, 0, v, 0, x + 1);
+                break;
+            case Decoder.SAVE_RANGE:
+                if (checkMemory(index, Math.abs(y - x) + 1, opcode)) {
+                    saveVxVy(x, y);
+                }
+                break;
+            case Decoder.LOAD_RANGE:
+                if (checkMemory(index, Math.abs(y - x) + 1, opcode)) {
+                    loadVxVy(x, y);
+                }
+                break;
+            case Decoder.LD_I_LONG:
+                if (checkMemory(pc, 2, opcode)) {
+                    setILong();
+                }
+                break;
+            case Decoder.PLANE:
+                frameBuffer.setPlaneMask(x);
+                break;
+            case Decoder.AUDIO:
+                if (checkMemory(index, Sound.PATTERN_BYTES, opcode)) {
+                    sound.loadPattern(memory.getMemory(), index);
+                }
+                break;
+            case Decoder.PITCH:
+                sound.setPitch(v[x]);
+                break;
+            case Decoder.SE_VX_KK_XO:
+                if (v[x] == kk) {
+                    skipInstruction();
+                }
+                break;
+            case Decoder.SNE_VX_KK_XO:
+                if (v[x] != kk) {
+                    skipInstruction();
+                }
+                break;
+            case Decoder.SE_VX_VY_XO:
+                if (v[x] == v[y]) {
+                    skipInstruction();
+                }
+                break;
+            case Decoder.SNE_VX_VY_XO:
+                if (v[x] != v[y]) {
+                    skipInstruction();
+                }
+                break;
+            case Decoder.SKP_XO:
+                if (keyboard.isKeyPressed(v[x])) {
+                    skipInstruction();
+                }
+                break;
+            case Decoder.SKNP_XO:
+                if (!keyboard.isKeyPressed(v[x])) {
+                    skipInstruction();
+                }
                 break;
             default:
-                System.out.println("Unknown opcode: " + opcode);
+                raiseFault(Fault.UNKNOWN_OPCODE, pc - 2, opcode);
         }
     }
 
-    private void decode0000(int opcode) {
-        switch (opcode) {
-            //No op
-            case 0x0000:
-                break;
-            case 0x00E0:
-                display.clear();
+    //Records the fault and applies the policy; nothing is thrown or printed
+    private void raiseFault(Fault fault, int address, int opcode) {
+        this.fault = fault;
+        this.faultAddress = address;
+        this.faultOpcode = opcode;
+        faultRaised(fault, address, opcode);
+
+        switch (faultPolicies[fault.ordinal()]) {
+            case IGNORE:
                 break;
-            case 0x00EE:
-                returnFromSubroutine();
+            case TRAP:
+                halted = true;
+                if (faultHandler != null) {
+                    faultHandler.onFault(this, fault, address, opcode);
+                }
                 break;
             default:
+                halted = true;
         }
     }
 
+    //Called for every fault before the policy is applied, for core variants that want to report it
+    protected void faultRaised(Fault fault, int address, int opcode) {
+    }
+
+    private boolean checkMemory(int address, int length, int opcode) {
+        if (address >= 0 && address + length <= memory.getMemory().length) {
+            return true;
+        }
+        raiseFault(Fault.MEMORY_OUT_OF_RANGE, pc - 2, opcode);
+        return false;
+    }
+
+    //Each selected XO-CHIP plane reads its own copy of the sprite data
+    int spriteBytes(int rows, boolean wide) {
+        return (wide ? rows * 2 : rows) * Integer.bitCount(frameBuffer.getPlaneMask());
+    }
+
     private void jumpToNNN(int nnn) {
         this.pc = nnn;
     }
@@ -168,39 +980,6 @@ public class CPU {
         }
     }
 
-    private void decode8000(int opcode, int x, int y) {
-        switch (opcode & 0xF00F) {
-            case 0x8000:
-                setVxVy(x, y);
-                break;
-            case 0x8001:
-                setVxOrVy(x, y);
-                break;
-            case 0x8002:
-                setVxAndVy(x, y);
-                break;
-            case 0x8003:
-                setVxXorVy(x, y);
-                break;
-            case 0x8004:
-                addVxVy(x, y);
-                break;
-            case 0x8005:
-                subVxVy(x, y);
-                break;
-            case 0x8006:
-                setVxVySHR(x, y);
-                break;
-            case 0x8007:
-                subVyVx(x, y);
-                break;
-            case 0x800E:
-                setVxVySHL(x, y);
-                break;
-            default:
-        }
-    }
-
     private void skipIfVxNotVy(int x, int y) {
         if (v[x] != v[y]) {
             incrementPC();
@@ -215,91 +994,53 @@ public class CPU {
         this.pc = v[0] + nnn;
     }
 
-    private void setVxRandomAndKK(int x, int kk) {
-        v[x] = (random.nextInt(256) & kk);
+    private void skipToXNNPlusVx(int x, int nnn) {
+        this.pc = v[x] + nnn;
     }
 
-    private void draw(int x, int y, int n) {
-        v[0xF] = 0;
-
-        for(int yline = 0; yline < n; yline++) {
-            int spriteByte = memory.getMemory()[index + yline];
-            for(int xline = 0; xline < 8; xline++) {
-                if((spriteByte & (0x80 >> xline)) != 0) {
-                    int pixelX = ((v[x] + xline) % 64);
-                    int pixelY = ((v[y] + yline) % 32);
-                    boolean wasPixelOn = display.togglePixel(pixelX, pixelY);
-                    if(!wasPixelOn) {
-                        v[0xF] = 1;
-                    }
-                }
-            }
-        }
+    private void setVxRandomAndKK(int x, int kk) {
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 7;
+        randomState ^= randomState << 17;
+        v[x] = (int) (randomState >>> 56) & kk;
     }
 
-    private void decodeE000(int opcode, int x) {
-        switch (opcode & 0xF0FF) {
-            case 0xE09E:
-                skipIfKeyPressed(x);
-                break;
-            case 0xE0A1:
-                skipIfKeyNotPressed(x);
-                break;
-            default:
-        }
+    private void draw(int x, int y, int rows, boolean wide, boolean clip) {
+        boolean collision = frameBuffer.drawSprite(memory.getMemory(), index, v[x], v[y], rows, wide, clip);
+        v[0xF] = collision ? 1 : 0;
     }
 
-    private void decodeF000(int opcode, int x) {
-        switch (opcode & 0xF0FF) {
-            case 0xF007:
-                setVxDt(x);
-                break;
-            case 0xF015:
-                setDtVx(x);
-                break;
-            case 0xF00A:
-                waitForKeyPressAndRelease(x);
-                break;
-            case 0xF01E:
-                setIPlusVx(x);
-                break;
-            case 0xF029:
-                setISprite(x);
-                break;
-            case 0xF033:
-                setIVxBCD(x);
-                break;
-            case 0xF055:
-                setIV0Vx(x);
-                break;
-            case 0xF065:
-                readV0VxI(x);
-                break;
-            default:
+    //Only one sprite is drawn per frame; later draws are retried until the next vblank
+    private boolean waitForVblank() {
+        if (drawnThisFrame) {
+            this.pc -= 2;
+            return true;
         }
+        drawnThisFrame = true;
+        return false;
     }
-
     private void returnFromSubroutine() {
         this.pc = stack[sp--];
     }
 
+    private void resetVF() {
+        v[0xF] = 0x0;
+    }
+
     private void setVxVy(int x, int y) {
         v[x] = v[y];
     }
 
     private void setVxOrVy(int x, int y) {
         v[x] |= v[y];
-        v[0xF] = 0x0;
     }
 
     private void setVxAndVy(int x, int y) {
         v[x] &= v[y];
-        v[0xF] = 0x0;
     }
 
     private void setVxXorVy(int x, int y) {
         v[x] ^= v[y];
-        v[0xF] = 0x0;
     }
 
     private void addVxVy(int x, int y) {
@@ -320,6 +1061,12 @@ public class CPU {
         v[0xF] = carry;
     }
 
+    private void setVxSHR(int x) {
+        int carry = v[x] & 0x1;
+        v[x] = v[x] >>> 1;
+        v[0xF] = carry;
+    }
+
     private void subVyVx(int x, int y) {
         int carry = (v[x] > v[y]) ? 0 : 1;
         v[x] = (v[y] - v[x]) & 0xFF;
@@ -332,6 +1079,12 @@ public class CPU {
         v[0xF] = carry;
     }
 
+    private void setVxSHL(int x) {
+        int carry = (v[x] >>> 7) & 0x1;
+        v[x] = (v[x] << 1) & 0xFF;
+        v[0xF] = carry;
+    }
+
     private void skipIfKeyPressed(int x) {
         if (keyboard.isKeyPressed(v[x])) {
             incrementPC();
@@ -362,31 +1115,78 @@ public class CPU {
     }
 
     private void setIPlusVx(int x) {
-        index += v[x];
+        index = (index + v[x]) & 0xFFFF;
     }
 
     private void setISprite(int x) {
         index = memory.getFONT_START() + (v[x] * 5);
     }
 
+    private void setIBigSprite(int x) {
+        index = memory.getBIG_FONT_START() + ((v[x] & 0xF) * 10);
+    }
+
     private void setIVxBCD(int x) {
         memory.getMemory()[index] = v[x] / 100;
         memory.getMemory()[index + 1] = (v[x] / 10) % 10;
         memory.getMemory()[index + 2] = (v[x] % 10);
+        codeWritten(index, 3);
     }
 
     private void setIV0Vx(int x) {
         for (int i = 0; i <= x; i++) {
             memory.getMemory()[index + i] = (v[i] & 0xFF);
         }
-        index += x + 1;
+        codeWritten(index, x + 1);
+    }
+
+    //5xy2 stores Vx..Vy in either direction without moving I
+    private void saveVxVy(int x, int y) {
+        int step = x <= y ? 1 : -1;
+        int count = Math.abs(y - x) + 1;
+        for (int i = 0; i < count; i++) {
+            memory.getMemory()[index + i] = v[x + i * step];
+        }
+        codeWritten(index, count);
+    }
+
+    private void loadVxVy(int x, int y) {
+        int step = x <= y ? 1 : -1;
+        int count = Math.abs(y - x) + 1;
+        for (int i = 0; i < count; i++) {
+            v[x + i * step] = memory.getMemory()[index + i] & 0xFF;
+        }
+    }
+
+    //F000 NNNN loads a 16-bit address from the following word
+    private void setILong() {
+        index = memory.getMemory()[pc] << 8 | memory.getMemory()[pc + 1];
+        incrementPC();
+    }
+
+    private void skipInstruction() {
+        int[] mem = memory.getMemory();
+        boolean longInstruction = pc + 1 < mem.length && mem[pc] == 0xF0 && mem[pc + 1] == 0x00;
+        this.pc += longInstruction ? 4 : 2;
+    }
+
+    private void codeWritten(int address, int length) {
+        if (translation != null) {
+            translation.invalidate(address, length);
+        }
+        if (superinstructions != null) {
+            superinstructions.invalidate(address, length);
+        }
+        Hooks hooks = this.hooks;
+        if (hooks != null) {
+            hooks.written(memory.getMemory(), address, length);
+        }
     }
 
     private void readV0VxI(int x) {
         for(int i = 0; i <= x; i++) {
             v[i] = (memory.getMemory()[index + i] & 0xFF);
         }
-        index += x + 1;
     }
 
     private void incrementPC() {
@@ -397,6 +1197,83 @@ public class CPU {
         return pc;
     }
 
+    //The opcode cycle() would run next, or -1 if the program counter is outside memory
+    int peekOpcode() {
+        int[] mem = memory.getMemory();
+        return pc >= 0 && pc <= mem.length - 2 ? mem[pc] << 8 | mem[pc + 1] : -1;
+    }
+
+    public void setPC(int pc) {
+        this.pc = pc;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
+    //Stopped at Fx0A with no key held, so it will do nothing but wait until one is
+    public boolean isWaitingForKey() {
+        int[] mem = memory.getMemory();
+        return pc + 1 < mem.length && (mem[pc] & 0xF0) == 0xF0 && mem[pc + 1] == 0x0A
+                && keyboard.getAnyPressedKey() == -1;
+    }
+
+    public Fault getFault() {
+        return fault;
+    }
+
+    public int getFaultAddress() {
+        return faultAddress;
+    }
+
+    public int getFaultOpcode() {
+        return faultOpcode;
+    }
+
+    //Lets a halted CPU run again, e.g. from a FaultHandler that repaired the state
+    public void clearFault() {
+        halted = false;
+        fault = Fault.NONE;
+        faultAddress = 0;
+        faultOpcode = 0;
+    }
+
+    public void setFaultPolicy(FaultPolicy policy) {
+        Arrays.fill(faultPolicies, policy);
+    }
+
+    public void setFaultPolicy(Fault fault, FaultPolicy policy) {
+        faultPolicies[fault.ordinal()] = policy;
+    }
+
+    public FaultPolicy getFaultPolicy(Fault fault) {
+        return faultPolicies[fault.ordinal()];
+    }
+
+    public void setFaultHandler(FaultHandler faultHandler) {
+        this.faultHandler = faultHandler;
+    }
+
+    public int[] getRegisters() {
+        return v;
+    }
+
+    public Sound getSound() {
+        return sound;
+    }
+
+    public int getDelayTimer() {
+        return delay;
+    }
+
+    public QuirkProfile getProfile() {
+        return profile;
+    }
+
     protected int getSp() {
         return sp;
     }
@@ -1,89 +1,233 @@
 package dev.nabnub;
 
 import javax.swing.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Chip8 {
 
-    private int instructionsPerFrame;
+    //Which CPU implementation runs the program; the variants add per-instruction work the plain one avoids
+    public enum Core { INTERPRETER, DEBUG, TRACE }
 
-    private boolean running = true;
+    private static final int TRACE_CAPACITY = 1 << 16;
+
+    private Timing timing;
+
+    //Swing is built on the event dispatch thread while the ROM loads, and is null until then
+    private volatile JFrame frame;
+    private volatile Display display;
+    private boolean haltReported;
 
     private Memory memory;
-    private Display display;
+    private FrameBuffer frameBuffer;
     private Keyboard keyboard;
     private CPU cpu;
-
+    private StateExport stateExport;
+    private final FrameStats frameStats = new FrameStats();
+    private PerformanceOverlay overlay;           //Made on first use, on the event dispatch thread
+    private boolean overlayVisible;
+    private volatile Runnable firstFrameListener;
+    private volatile AudioOutput audio;           //Opened off the emulation thread, null until then or without a device
+
+    private File romFile;
+    private byte[] romBytes;
+    private RomWatcher romWatcher;
+    private boolean keepStateOnReload;
+    private final AtomicReference<byte[]> pendingReload = new AtomicReference<>();
 
     public Chip8(int ipf) {
-        initialize(ipf);
+        this(ipf, QuirkProfile.CHIP8);
     }
 
-    private void initialize(int ipf) {
-        this.instructionsPerFrame = ipf;
+    public Chip8(int ipf, QuirkProfile profile) {
+        this(ipf, profile, Core.INTERPRETER);
+    }
 
-        loadGUI();
+    public Chip8(int ipf, QuirkProfile profile, Core core) {
+        initialize(ipf, profile, core);
+    }
+
+    private void initialize(int ipf, QuirkProfile profile, Core core) {
+        this.timing = new Timing(ipf);
+
+        memory = new Memory(profile.memorySize());
+        frameBuffer = new FrameBuffer();
+        keyboard = new Keyboard();
+        switch (core) {
+            case DEBUG:
+                cpu = new DebugCPU(memory, keyboard, frameBuffer, profile);
+                break;
+            case TRACE:
+                cpu = new TracingCPU(memory, keyboard, frameBuffer, profile, TRACE_CAPACITY);
+                break;
+            default:
+                cpu = new CPU(memory, keyboard, frameBuffer, profile);
+        }
+
+        //Starting Swing takes longer than loading a ROM, so the two overlap
+        SwingUtilities.invokeLater(this::loadGUI);
     }
 
     private void loadGUI() {
         JFrame frame = new JFrame("Chip8 Emulator");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-
-        memory = new Memory();
-        display = new Display();
-        keyboard = new Keyboard();
-        cpu = new CPU(memory, keyboard, display);
+        Display display = new Display(frameBuffer);
 
         frame.addKeyListener(keyboard);
+        //F3 shows and hides the performance overlay
+        frame.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    toggleOverlay();
+                }
+            }
+        });
         frame.add(display);
 
         frame.pack();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+        this.display = display;
+        this.frame = frame;
     }
 
     public void loadProgram(String programName) throws IOException {
-        File file = new File("roms", programName + ".ch8");
-        byte[] romBytes = Files.readAllBytes(file.toPath());
+        romFile = new File("roms", programName + ".ch8");
+        romBytes = Files.readAllBytes(romFile.toPath());
         memory.loadProgram(romBytes);
+
+        //Use the ahead-of-time translation built by RomTranslator when one matches this ROM.
+        //Translated skips assume two byte instructions, which XO-CHIP's F000 NNNN breaks.
+        File jar = new File("roms", programName + ".jar");
+        boolean translatable = !cpu.getProfile().hasXoChipInstructions();
+        TranslatedProgram translation = translatable && jar.isFile() ? TranslatedProgram.load(jar, romBytes) : null;
+        cpu.setTranslation(translation);
+        cpu.setSuperinstructions(translation == null ? new Superinstructions(memory.getMemory()) : null);
     }
 
     public void startEmulation() {
-        long lastFrameTime = System.nanoTime();
-
-        while (running) {
-            long currentTime = System.nanoTime();
-            long elapsedTime = currentTime - lastFrameTime;
+        if (overlayVisible) {
+            SwingUtilities.invokeLater(this::toggleOverlay);
+        }
+        //Opening the audio device can take a while, so the first frames run silent rather than late
+        Thread opener = new Thread(() -> audio = AudioOutput.open(), "chip8-audio");
+        opener.setDaemon(true);
+        opener.start();
+        FrameLoop loop = new FrameLoop(cpu, timing, frame -> frameFinished());
+        loop.setStats(frameStats);
+        loop.run();
+    }
 
-            //60Hz refresh rate
-            long frameDuration = 16_666_667;
-            if(elapsedTime >= frameDuration) {
-                cpu.updateTimers();
+    //Whether the performance overlay starts out visible; F3 toggles it while running
+    public void setOverlayVisible(boolean visible) {
+        overlayVisible = visible;
+    }
 
-                for (int i = 0; i < instructionsPerFrame; i++) {
-                    cpu.cycle();
-                }
+    //Called once the first emulated frame is on screen, from the event dispatch thread
+    public void setFirstFrameListener(Runnable listener) {
+        firstFrameListener = listener;
+    }
 
-                display.repaint();
+    //Fonts and the rest of Java2D text only load once the overlay is first shown
+    private void toggleOverlay() {
+        if (overlay == null) {
+            overlay = new PerformanceOverlay(frameStats, timing);
+            display.setOverlay(overlay);
+        }
+        overlay.toggle();
+        display.repaint();
+    }
 
-                long remainingTime = frameDuration - (System.nanoTime() - currentTime);
+    //Reloads the ROM between frames whenever its file changes, keeping registers, screen and the RAM outside
+    //the changed bytes when keepState is set. The translation no longer matches, so reloaded ROMs interpret.
+    public void watchProgram(boolean keepState) throws IOException {
+        keepStateOnReload = keepState;
+        romWatcher = new RomWatcher(romFile.toPath(), pendingReload::set);
+    }
 
-                if(remainingTime > 0){
-                    try {
-                        Thread.sleep(remainingTime / 1_000_000, (int) (remainingTime % 1_000_000));
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        running = false;
-                    }
-                }
-                lastFrameTime = currentTime;
+    private void frameFinished() {
+        byte[] reload = pendingReload.getAndSet(null);
+        if (reload != null) {
+            reloadProgram(reload);
+        }
+        Display display = this.display;
+        if (display != null) {
+            display.repaint();
+            Runnable listener = firstFrameListener;
+            if (listener != null) {
+                firstFrameListener = null;
+                SwingUtilities.invokeLater(() -> {
+                    display.paintImmediately(0, 0, display.getWidth(), display.getHeight());
+                    listener.run();
+                });
             }
         }
+        AudioOutput audio = this.audio;
+        if (audio != null) {
+            audio.play(cpu.getSound());
+        }
+        if (stateExport != null) {
+            stateExport.publish(cpu, memory, frameBuffer);
+        }
+        if (cpu.isHalted() && !haltReported) {
+            reportHalt();
+        }
+    }
+
+    private void reloadProgram(byte[] updated) {
+        try {
+            RomWatcher.reload(cpu, memory, frameBuffer, romBytes, updated, keepStateOnReload);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Could not reload " + romFile + ": " + e.getMessage());
+            return;
+        }
+        romBytes = updated;
+        cpu.setTranslation(null);
+        cpu.setSuperinstructions(new Superinstructions(memory.getMemory()));
+        haltReported = false;
+        String title = "Chip8 Emulator - reloaded " + romFile.getName();
+        SwingUtilities.invokeLater(() -> setTitle(title));
+    }
+
+    //How much runs per frame; replaces the fixed instructions per frame given to the constructor
+    public void setTiming(Timing timing) {
+        this.timing = timing;
+    }
+
+    //Mirrors the machine into stateExport after every frame
+    public void setStateExport(StateExport stateExport) {
+        this.stateExport = stateExport;
     }
 
+    private void reportHalt() {
+        haltReported = true;
+        String title = cpu.getFault() == Fault.NONE
+                ? "Chip8 Emulator - program exited"
+                : String.format("Chip8 Emulator - %s at %04X (opcode %04X)",
+                        cpu.getFault(), cpu.getFaultAddress(), cpu.getFaultOpcode());
+        SwingUtilities.invokeLater(() -> setTitle(title));
+    }
+
+    //Runs after loadGUI, which was queued first
+    private void setTitle(String title) {
+        frame.setTitle(title);
+    }
+
+    //Null until the window is up
     public Display getDisplay() {
         return display;
     }
+
+    public CPU getCPU() {
+        return cpu;
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
 }
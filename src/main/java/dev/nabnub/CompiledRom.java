@@ -0,0 +1,14 @@
+package dev.nabnub;
+
+//Implemented by the classes RomTranslator generates ahead of time for a single ROM
+public interface CompiledRom {
+
+    //SHA-256 of the ROM bytes the class was translated from
+    String romHash();
+
+    //Translated blocks as {start, end} address pairs, end exclusive
+    int[] blocks();
+
+    //Executes the block starting at pc and leaves the CPU at the block's exit address
+    void run(CPU cpu, int pc);
+}
@@ -0,0 +1,65 @@
+package dev.nabnub;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+//Compares instruction throughput of one cycle() call per instruction against CPU.runCycles, with and without
+//superinstructions, on ROMs from roms/ under the same random keys
+public class CycleBenchmark {
+
+    private static final int FRAMES = 20_000;
+    private static final int INSTRUCTIONS_PER_FRAME = 500;
+
+    private enum Mode { CYCLE, RUN_CYCLES, RUN_CYCLES_FUSED }
+
+    public static void main(String[] args) throws IOException {
+        String[] names = args.length > 0 ? args : new String[]{"pong", "tetris", "brix", "tank"};
+
+        for (String name : names) {
+            byte[] rom = Files.readAllBytes(new File("roms", name + ".ch8").toPath());
+            long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+            long[] hashes = new long[3];
+
+            //Best of a few rounds, so the JIT has settled
+            for (int round = 0; round < 5; round++) {
+                for (Mode mode : Mode.values()) {
+                    Machine machine = new Machine(QuirkProfile.CHIP48);
+                    machine.load(rom);
+                    machine.getCPU().setRandomSeed(1);
+                    if (mode == Mode.RUN_CYCLES_FUSED) {
+                        machine.getCPU().setSuperinstructions(new Superinstructions(machine.getMemory().getMemory()));
+                    }
+                    long start = System.nanoTime();
+                    run(machine, mode);
+                    best[mode.ordinal()] = Math.min(best[mode.ordinal()], System.nanoTime() - start);
+                    hashes[mode.ordinal()] = machine.stateHash();
+                }
+            }
+
+            //Times rather than instruction rates, since runCycles ends a frame early on waits that cycle() spins on
+            System.out.printf("%-8s %7.1f ms cycle(), %7.1f ms runCycles, %7.1f ms runCycles fused%s%n", name,
+                    best[0] / 1e6, best[1] / 1e6, best[2] / 1e6,
+                    hashes[0] == hashes[1] && hashes[1] == hashes[2] ? "" : "  STATES DIFFER");
+        }
+    }
+
+    private static void run(Machine machine, Mode mode) {
+        CPU cpu = machine.getCPU();
+        Random keys = new Random(42);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            if (frame % 20 == 0) {
+                machine.getKeyboard().setKeyMask(keys.nextInt(1 << 16) & keys.nextInt(1 << 16));
+            }
+            if (mode == Mode.CYCLE) {
+                cpu.updateTimers();
+                for (int i = 0; i < INSTRUCTIONS_PER_FRAME; i++) {
+                    cpu.cycle();
+                }
+            } else {
+                machine.runFrame(INSTRUCTIONS_PER_FRAME);
+            }
+        }
+    }
+}
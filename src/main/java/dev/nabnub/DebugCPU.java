@@ -0,0 +1,349 @@
+package dev.nabnub;
+
+import java.util.Arrays;
+
+//CPU variant for debugging sessions. Breakpoints, watchpoints and register conditions are checked before
+//every instruction here, so machines created with the plain CPU never pay for them.
+public class DebugCPU extends CPU {
+
+    public enum StopReason { NONE, PAUSE, BREAKPOINT, READ_WATCHPOINT, WRITE_WATCHPOINT, CONDITION, STEP, FAULT }
+
+    public static final int REGISTER_I = 16;
+
+    private final Memory memory;
+    private final long[] breakpoints;             //One bit per address
+    private final long[] readWatchpoints;
+    private final long[] writeWatchpoints;
+    private volatile Condition[] conditions = new Condition[0];
+
+    private volatile boolean paused;
+    private volatile StopReason stopReason = StopReason.NONE;
+    private int stopAddress;
+    private boolean resuming;                     //Lets the instruction we stopped on run once
+    private int stepOverPc = -1;
+    private int stepOverSp;
+    private int stepOutSp = -1;
+
+    public DebugCPU(Memory memory, Keyboard keyboard, FrameBuffer frameBuffer, QuirkProfile profile) {
+        super(memory, keyboard, frameBuffer, profile);
+        this.memory = memory;
+        int words = (memory.getMemory().length + 63) / 64;
+        this.breakpoints = new long[words];
+        this.readWatchpoints = new long[words];
+        this.writeWatchpoints = new long[words];
+    }
+
+    public DebugCPU(Memory memory, Keyboard keyboard, Display display, QuirkProfile profile) {
+        this(memory, keyboard, display.getFrameBuffer(), profile);
+    }
+
+    @Override
+    public synchronized void cycle() {
+        if (paused) {
+            return;
+        }
+        if (!resuming && shouldStop()) {
+            paused = true;
+            return;
+        }
+        resuming = false;
+
+        super.cycle();
+
+        if (stepOverPc >= 0 && getPC() == stepOverPc && getSp() == stepOverSp) {
+            stop(StopReason.STEP);
+        } else if (stepOutSp >= 0 && getSp() < stepOutSp) {
+            stop(StopReason.STEP);
+        }
+    }
+
+    //Timers are frozen while the program is stopped
+    @Override
+    public synchronized void updateTimers() {
+        if (!paused) {
+            super.updateTimers();
+        }
+    }
+
+    //Whatever the fault policy does, the debugger stops on the faulting instruction
+    @Override
+    protected void faultRaised(Fault fault, int address, int opcode) {
+        stop(StopReason.FAULT);
+        stopAddress = address;
+    }
+
+    //Translated blocks would run past breakpoints
+    @Override
+    public void setTranslation(TranslatedProgram translation) {
+    }
+
+    //Nor would fused sequences
+    @Override
+    public void setSuperinstructions(Superinstructions superinstructions) {
+    }
+
+    //Stepping one instruction at a time keeps breakpoints and watchpoints exact
+    @Override
+    public ExitReason runCycles(int budget) {
+        return stepCycles(budget);
+    }
+
+    private boolean shouldStop() {
+        int pc = getPC();
+        if (isSet(breakpoints, pc)) {
+            stopReason = StopReason.BREAKPOINT;
+            stopAddress = pc;
+            return true;
+        }
+        if (checkWatchpoints(pc)) {
+            return true;
+        }
+        for (Condition condition : conditions) {
+            if (condition.matches(this)) {
+                stopReason = StopReason.CONDITION;
+                stopAddress = pc;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Memory accesses are predicted from the instruction about to run, before it touches memory
+    private boolean checkWatchpoints(int pc) {
+        int[] mem = memory.getMemory();
+        if (pc < 0 || pc + 1 >= mem.length) {
+            return false;
+        }
+        int opcode = mem[pc] << 8 | mem[pc + 1];
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        int n = opcode & 0x000F;
+        int i = getIndex();
+        boolean xo = getProfile().hasXoChipInstructions();
+
+        switch (opcode & 0xF000) {
+            case 0x5000:
+                if (xo && n == 0x2) {
+                    return watch(writeWatchpoints, i, Math.abs(x - y) + 1, StopReason.WRITE_WATCHPOINT);
+                }
+                if (xo && n == 0x3) {
+                    return watch(readWatchpoints, i, Math.abs(x - y) + 1, StopReason.READ_WATCHPOINT);
+                }
+                return false;
+            case 0xD000:
+                int length = n == 0 && getProfile().hasSuperChipInstructions()
+                        ? spriteBytes(16, true) : spriteBytes(n, false);
+                return watch(readWatchpoints, i, length, StopReason.READ_WATCHPOINT);
+            case 0xF000:
+                if (xo && opcode == 0xF002) {
+                    return watch(readWatchpoints, i, Sound.PATTERN_BYTES, StopReason.READ_WATCHPOINT);
+                }
+                switch (opcode & 0xF0FF) {
+                    case 0xF033:
+                        return watch(writeWatchpoints, i, 3, StopReason.WRITE_WATCHPOINT);
+                    case 0xF055:
+                        return watch(writeWatchpoints, i, x + 1, StopReason.WRITE_WATCHPOINT);
+                    case 0xF065:
+                        return watch(readWatchpoints, i, x + 1, StopReason.READ_WATCHPOINT);
+                    default:
+                        return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    private boolean watch(long[] bitmap, int start, int length, StopReason reason) {
+        for (int address = start; address < start + length; address++) {
+            if (isSet(bitmap, address)) {
+                stopReason = reason;
+                stopAddress = address;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSet(long[] bitmap, int address) {
+        int word = address >>> 6;
+        return word < bitmap.length && (bitmap[word] & (1L << address)) != 0;
+    }
+
+    private static void set(long[] bitmap, int start, int end, boolean value) {
+        for (int address = start; address <= end && (address >>> 6) < bitmap.length; address++) {
+            if (value) {
+                bitmap[address >>> 6] |= 1L << address;
+            } else {
+                bitmap[address >>> 6] &= ~(1L << address);
+            }
+        }
+    }
+
+    private void stop(StopReason reason) {
+        paused = true;
+        stopReason = reason;
+        stopAddress = getPC();
+        stepOverPc = -1;
+        stepOutSp = -1;
+    }
+
+    public synchronized void addBreakpoint(int address) {
+        set(breakpoints, address, address, true);
+    }
+
+    public synchronized void removeBreakpoint(int address) {
+        set(breakpoints, address, address, false);
+    }
+
+    public synchronized void addWatchpoint(int start, int end, boolean read, boolean write) {
+        if (read) {
+            set(readWatchpoints, start, end, true);
+        }
+        if (write) {
+            set(writeWatchpoints, start, end, true);
+        }
+    }
+
+    public synchronized void removeWatchpoint(int start, int end) {
+        set(readWatchpoints, start, end, false);
+        set(writeWatchpoints, start, end, false);
+    }
+
+    public synchronized void addCondition(Condition condition) {
+        Condition[] updated = Arrays.copyOf(conditions, conditions.length + 1);
+        updated[conditions.length] = condition;
+        conditions = updated;
+    }
+
+    public synchronized void clearConditions() {
+        conditions = new Condition[0];
+    }
+
+    public synchronized void pause() {
+        stop(StopReason.PAUSE);
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        resuming = true;
+    }
+
+    //Executes exactly one instruction, ignoring breakpoints
+    public synchronized void step() {
+        paused = false;
+        resuming = true;
+        cycle();
+        if (!paused) {
+            stop(StopReason.STEP);
+        }
+    }
+
+    //Runs a whole subroutine when stopped on a call, otherwise behaves like step
+    public synchronized void stepOver() {
+        int[] mem = memory.getMemory();
+        int pc = getPC();
+        int opcode = pc >= 0 && pc + 1 < mem.length ? mem[pc] << 8 | mem[pc + 1] : 0;
+        if ((opcode & 0xF000) != 0x2000) {
+            step();
+            return;
+        }
+        stepOverPc = getPC() + 2;
+        stepOverSp = getSp();
+        resume();
+    }
+
+    //Runs until the current subroutine returns
+    public synchronized void stepOut() {
+        if (getSp() == 0) {
+            step();
+            return;
+        }
+        stepOutSp = getSp();
+        resume();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    public int getStopAddress() {
+        return stopAddress;
+    }
+
+    public synchronized String disassemble(int address, int count) {
+        return Disassembler.disassemble(memory.getMemory(), address, count);
+    }
+
+    public synchronized String describeRegisters() {
+        int[] v = getRegistersCopy();
+        StringBuilder sb = new StringBuilder();
+        for (int r = 0; r < v.length; r++) {
+            sb.append(String.format("V%X=%02X ", r, v[r]));
+        }
+        sb.append(String.format("I=%03X PC=%03X SP=%X", getIndex(), getPC(), getSp()));
+        return sb.toString();
+    }
+
+    //Breaks when a register compares true against a value; register 16 is I
+    public static class Condition {
+        private final int register;
+        private final Operator operator;
+        private final int value;
+
+        public Condition(int register, String operator, int value) {
+            if (register < 0 || register > REGISTER_I) {
+                throw new IllegalArgumentException("Unknown register: " + register);
+            }
+            this.register = register;
+            this.operator = Operator.parse(operator);
+            this.value = value;
+        }
+
+        boolean matches(CPU cpu) {
+            int actual = register == REGISTER_I ? cpu.getIndex() : cpu.getRegisters()[register];
+            switch (operator) {
+                case EQ:
+                    return actual == value;
+                case NE:
+                    return actual != value;
+                case LT:
+                    return actual < value;
+                case GT:
+                    return actual > value;
+                case LE:
+                    return actual <= value;
+                default:
+                    return actual >= value;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return (register == REGISTER_I ? "I" : String.format("V%X", register)) + " " + operator.symbol + " "
+                    + value;
+        }
+
+        private enum Operator {
+            EQ("=="), NE("!="), LT("<"), GT(">"), LE("<="), GE(">=");
+
+            final String symbol;
+
+            Operator(String symbol) {
+                this.symbol = symbol;
+            }
+
+            static Operator parse(String symbol) {
+                for (Operator operator : values()) {
+                    if (operator.symbol.equals(symbol)) {
+                        return operator;
+                    }
+                }
+                throw new IllegalArgumentException("Unknown operator: " + symbol);
+            }
+        }
+    }
+}
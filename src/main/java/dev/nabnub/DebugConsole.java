@@ -0,0 +1,147 @@
+package dev.nabnub;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+//Line based front end for DebugCPU. Reads commands until "quit" or end of input, so it can sit on stdin,
+//a socket or a test's StringReader.
+public class DebugConsole implements Runnable {
+
+    private static final String HELP =
+            "break <addr> | delete <addr> | watch <start> [end] [r|w|rw] | unwatch <start> [end]\n"
+            + "cond <V0-VF|I> <==|!=|<|>|<=|>=> <value> | clearcond\n"
+            + "step | over | out | continue | pause | status | regs | dis [addr] [count] | mem <addr> [len] | quit";
+
+    private final DebugCPU cpu;
+    private final Memory memory;
+    private final BufferedReader in;
+    private final PrintWriter out;
+
+    public DebugConsole(DebugCPU cpu, Memory memory, Reader in, Writer out) {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.in = new BufferedReader(in);
+        this.out = new PrintWriter(out, true);
+    }
+
+    @Override
+    public void run() {
+        try {
+            out.println("chip8 debugger, type help for commands");
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equals("quit")) {
+                    break;
+                }
+                out.println(execute(line));
+            }
+        } catch (IOException e) {
+            //Connection closed
+        }
+    }
+
+    public String execute(String line) {
+        String[] args = line.split("\\s+");
+        try {
+            switch (args[0]) {
+                case "help":
+                    return HELP;
+                case "break":
+                    cpu.addBreakpoint(parse(args[1]));
+                    return "breakpoint at " + hex(parse(args[1]));
+                case "delete":
+                    cpu.removeBreakpoint(parse(args[1]));
+                    return "deleted " + hex(parse(args[1]));
+                case "watch": {
+                    int start = parse(args[1]);
+                    int end = args.length > 2 && !args[2].matches("r|w|rw") ? parse(args[2]) : start;
+                    String mode = args[args.length - 1].matches("r|w|rw") ? args[args.length - 1] : "rw";
+                    cpu.addWatchpoint(start, end, mode.contains("r"), mode.contains("w"));
+                    return "watching " + hex(start) + "-" + hex(end) + " " + mode;
+                }
+                case "unwatch": {
+                    int start = parse(args[1]);
+                    int end = args.length > 2 ? parse(args[2]) : start;
+                    cpu.removeWatchpoint(start, end);
+                    return "unwatched " + hex(start) + "-" + hex(end);
+                }
+                case "cond": {
+                    String register = args[1].toUpperCase();
+                    int index = register.equals("I") ? DebugCPU.REGISTER_I : Integer.parseInt(register.substring(1), 16);
+                    DebugCPU.Condition condition = new DebugCPU.Condition(index, args[2], parse(args[3]));
+                    cpu.addCondition(condition);
+                    return "break when " + condition;
+                }
+                case "clearcond":
+                    cpu.clearConditions();
+                    return "conditions cleared";
+                case "step":
+                    cpu.step();
+                    return status();
+                case "over":
+                    cpu.stepOver();
+                    return cpu.isPaused() ? status() : "running";
+                case "out":
+                    cpu.stepOut();
+                    return cpu.isPaused() ? status() : "running";
+                case "continue":
+                    cpu.resume();
+                    return "running";
+                case "pause":
+                    cpu.pause();
+                    return status();
+                case "status":
+                    return status();
+                case "regs":
+                    return cpu.describeRegisters();
+                case "dis": {
+                    int address = args.length > 1 ? parse(args[1]) : cpu.getPC();
+                    int count = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+                    return cpu.disassemble(address, count).trim();
+                }
+                case "mem":
+                    return dump(parse(args[1]), args.length > 2 ? parse(args[2]) : 16);
+                default:
+                    return "unknown command: " + args[0];
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            return "bad arguments, type help for usage";
+        }
+    }
+
+    private String status() {
+        if (!cpu.isPaused()) {
+            return "running";
+        }
+        return "stopped (" + cpu.getStopReason().name().toLowerCase() + " " + hex(cpu.getStopAddress()) + ")\n"
+                + cpu.disassemble(cpu.getPC(), 1).trim();
+    }
+
+    private String dump(int address, int length) {
+        int[] mem = memory.getMemory();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length && address + i < mem.length; i++) {
+            if (i % 16 == 0) {
+                sb.append(i == 0 ? "" : "\n").append(String.format("%04X ", address + i));
+            }
+            sb.append(String.format(" %02X", mem[address + i]));
+        }
+        return sb.toString();
+    }
+
+    //Numbers are hex, with or without a 0x prefix
+    private static int parse(String value) {
+        return Integer.parseInt(value.toLowerCase().replaceFirst("^0x", ""), 16);
+    }
+
+    private static String hex(int value) {
+        return String.format("%03X", value);
+    }
+}
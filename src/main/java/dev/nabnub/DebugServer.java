@@ -0,0 +1,63 @@
+package dev.nabnub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+//Serves DebugConsole sessions over TCP on the loopback interface, one thread per connection
+public class DebugServer implements Closeable {
+
+    private final DebugCPU cpu;
+    private final Memory memory;
+    private final ServerSocket serverSocket;
+
+    public DebugServer(DebugCPU cpu, Memory memory, int port) throws IOException {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::acceptConnections, "chip8-debug-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread session = new Thread(() -> serve(socket), "chip8-debug-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (SocketException e) {
+                //Server closed
+            } catch (IOException e) {
+                System.err.println("Debug server: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            new DebugConsole(cpu, memory,
+                    new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8),
+                    new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)).run();
+        } catch (IOException e) {
+            //Client went away
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
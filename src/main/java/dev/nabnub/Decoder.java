@@ -0,0 +1,278 @@
+package dev.nabnub;
+
+//Maps every 16-bit opcode to the handler that executes it under a given quirk profile
+final class Decoder {
+
+    static final int UNKNOWN = 0;
+    static final int NOP = 1;
+    static final int CLS = 2;
+    static final int RET = 3;
+    static final int JP = 4;
+    static final int CALL = 5;
+    static final int SE_VX_KK = 6;
+    static final int SNE_VX_KK = 7;
+    static final int SE_VX_VY = 8;
+    static final int LD_VX_KK = 9;
+    static final int ADD_VX_KK = 10;
+    static final int LD_VX_VY = 11;
+    static final int OR = 12;
+    static final int OR_RESET_VF = 13;
+    static final int AND = 14;
+    static final int AND_RESET_VF = 15;
+    static final int XOR = 16;
+    static final int XOR_RESET_VF = 17;
+    static final int ADD_VX_VY = 18;
+    static final int SUB = 19;
+    static final int SHR_VY = 20;
+    static final int SHR_VX = 21;
+    static final int SUBN = 22;
+    static final int SHL_VY = 23;
+    static final int SHL_VX = 24;
+    static final int SNE_VX_VY = 25;
+    static final int LD_I = 26;
+    static final int JP_V0 = 27;
+    static final int JP_VX = 28;
+    static final int RND = 29;
+    static final int DRW_WRAP = 30;
+    static final int DRW_WRAP_WAIT = 31;
+    static final int DRW_CLIP = 32;
+    static final int DRW_CLIP_WAIT = 33;
+    static final int SKP = 34;
+    static final int SKNP = 35;
+    static final int LD_VX_DT = 36;
+    static final int LD_VX_K = 37;
+    static final int LD_DT_VX = 38;
+    static final int ADD_I_VX = 39;
+    static final int LD_F = 40;
+    static final int BCD = 41;
+    static final int STORE_INC = 42;
+    static final int STORE_INC_X = 43;
+    static final int STORE = 44;
+    static final int LOAD_INC = 45;
+    static final int LOAD_INC_X = 46;
+    static final int LOAD = 47;
+    static final int LD_ST_VX = 48;
+    //SUPER-CHIP
+    static final int SCD = 49;
+    static final int SCR = 50;
+    static final int SCL = 51;
+    static final int EXIT = 52;
+    static final int LORES = 53;
+    static final int HIRES = 54;
+    static final int DRW16_WRAP = 55;
+    static final int DRW16_WRAP_WAIT = 56;
+    static final int DRW16_CLIP = 57;
+    static final int DRW16_CLIP_WAIT = 58;
+    static final int LD_HF = 59;
+    static final int SAVE_FLAGS = 60;
+    static final int LOAD_FLAGS = 61;
+    //XO-CHIP
+    static final int SCU = 62;
+    static final int SAVE_RANGE = 63;
+    static final int LOAD_RANGE = 64;
+    static final int LD_I_LONG = 65;
+    static final int PLANE = 66;
+    static final int AUDIO = 67;
+    static final int PITCH = 68;
+    //XO-CHIP skips step over the four byte F000 NNNN as a single instruction
+    static final int SE_VX_KK_XO = 69;
+    static final int SNE_VX_KK_XO = 70;
+    static final int SE_VX_VY_XO = 71;
+    static final int SNE_VX_VY_XO = 72;
+    static final int SKP_XO = 73;
+    static final int SKNP_XO = 74;
+
+    private Decoder() {
+    }
+
+    static byte[] buildTable(QuirkProfile profile) {
+        byte[] table = new byte[0x10000];
+        for (int opcode = 0; opcode < table.length; opcode++) {
+            table[opcode] = (byte) decode(opcode, profile);
+        }
+        return table;
+    }
+
+    static int decode(int opcode, QuirkProfile profile) {
+        boolean xo = profile.hasXoChipInstructions();
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                return decode0000(opcode, profile);
+            case 0x1000:
+                return JP;
+            case 0x2000:
+                return CALL;
+            case 0x3000:
+                return xo ? SE_VX_KK_XO : SE_VX_KK;
+            case 0x4000:
+                return xo ? SNE_VX_KK_XO : SNE_VX_KK;
+            case 0x5000:
+                if (xo && (opcode & 0x000F) == 0x2) {
+                    return SAVE_RANGE;
+                }
+                if (xo && (opcode & 0x000F) == 0x3) {
+                    return LOAD_RANGE;
+                }
+                return xo ? SE_VX_VY_XO : SE_VX_VY;
+            case 0x6000:
+                return LD_VX_KK;
+            case 0x7000:
+                return ADD_VX_KK;
+            case 0x8000:
+                return decode8000(opcode, profile);
+            case 0x9000:
+                return xo ? SNE_VX_VY_XO : SNE_VX_VY;
+            case 0xA000:
+                return LD_I;
+            case 0xB000:
+                return profile.jumpUsesVx() ? JP_VX : JP_V0;
+            case 0xC000:
+                return RND;
+            case 0xD000:
+                if ((opcode & 0x000F) == 0 && profile.hasSuperChipInstructions()) {
+                    if (profile.clipSprites()) {
+                        return profile.displayWait() ? DRW16_CLIP_WAIT : DRW16_CLIP;
+                    }
+                    return profile.displayWait() ? DRW16_WRAP_WAIT : DRW16_WRAP;
+                }
+                if (profile.clipSprites()) {
+                    return profile.displayWait() ? DRW_CLIP_WAIT : DRW_CLIP;
+                }
+                return profile.displayWait() ? DRW_WRAP_WAIT : DRW_WRAP;
+            case 0xE000:
+                switch (opcode & 0xF0FF) {
+                    case 0xE09E:
+                        return xo ? SKP_XO : SKP;
+                    case 0xE0A1:
+                        return xo ? SKNP_XO : SKNP;
+                    default:
+                        return UNKNOWN;
+                }
+            default:
+                return decodeF000(opcode, profile);
+        }
+    }
+
+    private static int decode0000(int opcode, QuirkProfile profile) {
+        switch (opcode) {
+            case 0x0000:
+                return NOP;
+            case 0x00E0:
+                return CLS;
+            case 0x00EE:
+                return RET;
+            default:
+        }
+        if (!profile.hasSuperChipInstructions()) {
+            return UNKNOWN;
+        }
+        switch (opcode) {
+            case 0x00FB:
+                return SCR;
+            case 0x00FC:
+                return SCL;
+            case 0x00FD:
+                return EXIT;
+            case 0x00FE:
+                return LORES;
+            case 0x00FF:
+                return HIRES;
+            default:
+        }
+        if ((opcode & 0xFFF0) == 0x00C0 && (opcode & 0x000F) != 0) {
+            return SCD;
+        }
+        if ((opcode & 0xFFF0) == 0x00D0 && (opcode & 0x000F) != 0 && profile.hasXoChipInstructions()) {
+            return SCU;
+        }
+        return UNKNOWN;
+    }
+
+    private static int decode8000(int opcode, QuirkProfile profile) {
+        switch (opcode & 0xF00F) {
+            case 0x8000:
+                return LD_VX_VY;
+            case 0x8001:
+                return profile.logicResetsVF() ? OR_RESET_VF : OR;
+            case 0x8002:
+                return profile.logicResetsVF() ? AND_RESET_VF : AND;
+            case 0x8003:
+                return profile.logicResetsVF() ? XOR_RESET_VF : XOR;
+            case 0x8004:
+                return ADD_VX_VY;
+            case 0x8005:
+                return SUB;
+            case 0x8006:
+                return profile.shiftUsesVy() ? SHR_VY : SHR_VX;
+            case 0x8007:
+                return SUBN;
+            case 0x800E:
+                return profile.shiftUsesVy() ? SHL_VY : SHL_VX;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private static int decodeF000(int opcode, QuirkProfile profile) {
+        if (profile.hasXoChipInstructions()) {
+            switch (opcode) {
+                case 0xF000:
+                    return LD_I_LONG;
+                case 0xF002:
+                    return AUDIO;
+                default:
+            }
+            switch (opcode & 0xF0FF) {
+                case 0xF001:
+                    return PLANE;
+                case 0xF03A:
+                    return PITCH;
+                default:
+            }
+        }
+        if (profile.hasSuperChipInstructions()) {
+            switch (opcode & 0xF0FF) {
+                case 0xF030:
+                    return LD_HF;
+                case 0xF075:
+                    return SAVE_FLAGS;
+                case 0xF085:
+                    return LOAD_FLAGS;
+                default:
+            }
+        }
+        switch (opcode & 0xF0FF) {
+            case 0xF007:
+                return LD_VX_DT;
+            case 0xF00A:
+                return LD_VX_K;
+            case 0xF015:
+                return LD_DT_VX;
+            case 0xF018:
+                return LD_ST_VX;
+            case 0xF01E:
+                return ADD_I_VX;
+            case 0xF029:
+                return LD_F;
+            case 0xF033:
+                return BCD;
+            case 0xF055:
+                return memoryOp(profile, STORE_INC, STORE_INC_X, STORE);
+            case 0xF065:
+                return memoryOp(profile, LOAD_INC, LOAD_INC_X, LOAD);
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private static int memoryOp(QuirkProfile profile, int incrementXPlusOne, int incrementX, int noIncrement) {
+        switch (profile.memoryIncrement()) {
+            case X_PLUS_ONE:
+                return incrementXPlusOne;
+            case X:
+                return incrementX;
+            default:
+                return noIncrement;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package dev.nabnub;
+
+//Renders opcodes in the usual Cowgod-style mnemonics
+public final class Disassembler {
+
+    private Disassembler() {
+    }
+
+    //One line per instruction: address, raw opcode and mnemonic
+    public static String disassemble(int[] memory, int address, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count && address + 1 < memory.length; i++) {
+            int opcode = memory[address] << 8 | memory[address + 1];
+            if (opcode == 0xF000 && address + 3 < memory.length) {
+                int target = memory[address + 2] << 8 | memory[address + 3];
+                sb.append(String.format("%04X  F000  LD I, %04X%n", address, target));
+                address += 4;
+                continue;
+            }
+            sb.append(String.format("%04X  %04X  %s%n", address, opcode, mnemonic(opcode)));
+            address += 2;
+        }
+        return sb.toString();
+    }
+
+    public static String mnemonic(int opcode) {
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        int n = opcode & 0x000F;
+        int kk = opcode & 0x00FF;
+        int nnn = opcode & 0x0FFF;
+
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                switch (opcode) {
+                    case 0x00E0: return "CLS";
+                    case 0x00EE: return "RET";
+                    case 0x00FB: return "SCR";
+                    case 0x00FC: return "SCL";
+                    case 0x00FD: return "EXIT";
+                    case 0x00FE: return "LOW";
+                    case 0x00FF: return "HIGH";
+                    default:
+                }
+                if ((opcode & 0xFFF0) == 0x00C0) {
+                    return String.format("SCD %d", n);
+                }
+                if ((opcode & 0xFFF0) == 0x00D0) {
+                    return String.format("SCU %d", n);
+                }
+                return String.format("SYS %03X", nnn);
+            case 0x1000: return String.format("JP %03X", nnn);
+            case 0x2000: return String.format("CALL %03X", nnn);
+            case 0x3000: return String.format("SE V%X, %02X", x, kk);
+            case 0x4000: return String.format("SNE V%X, %02X", x, kk);
+            case 0x5000:
+                switch (n) {
+                    case 0x2: return String.format("SAVE V%X-V%X", x, y);
+                    case 0x3: return String.format("LOAD V%X-V%X", x, y);
+                    default: return String.format("SE V%X, V%X", x, y);
+                }
+            case 0x6000: return String.format("LD V%X, %02X", x, kk);
+            case 0x7000: return String.format("ADD V%X, %02X", x, kk);
+            case 0x8000:
+                switch (n) {
+                    case 0x0: return String.format("LD V%X, V%X", x, y);
+                    case 0x1: return String.format("OR V%X, V%X", x, y);
+                    case 0x2: return String.format("AND V%X, V%X", x, y);
+                    case 0x3: return String.format("XOR V%X, V%X", x, y);
+                    case 0x4: return String.format("ADD V%X, V%X", x, y);
+                    case 0x5: return String.format("SUB V%X, V%X", x, y);
+                    case 0x6: return String.format("SHR V%X, V%X", x, y);
+                    case 0x7: return String.format("SUBN V%X, V%X", x, y);
+                    case 0xE: return String.format("SHL V%X, V%X", x, y);
+                    default: return unknown(opcode);
+                }
+            case 0x9000: return String.format("SNE V%X, V%X", x, y);
+            case 0xA000: return String.format("LD I, %03X", nnn);
+            case 0xB000: return String.format("JP V0, %03X", nnn);
+            case 0xC000: return String.format("RND V%X, %02X", x, kk);
+            case 0xD000: return String.format("DRW V%X, V%X, %X", x, y, n);
+            case 0xE000:
+                switch (kk) {
+                    case 0x9E: return String.format("SKP V%X", x);
+                    case 0xA1: return String.format("SKNP V%X", x);
+                    default: return unknown(opcode);
+                }
+            default:
+                if (opcode == 0xF000) {
+                    return "LD I, long";
+                }
+                switch (kk) {
+                    case 0x01: return String.format("PLANE %X", x);
+                    case 0x02: return "AUDIO";
+                    case 0x07: return String.format("LD V%X, DT", x);
+                    case 0x0A: return String.format("LD V%X, K", x);
+                    case 0x15: return String.format("LD DT, V%X", x);
+                    case 0x18: return String.format("LD ST, V%X", x);
+                    case 0x1E: return String.format("ADD I, V%X", x);
+                    case 0x29: return String.format("LD F, V%X", x);
+                    case 0x30: return String.format("LD HF, V%X", x);
+                    case 0x33: return String.format("LD B, V%X", x);
+                    case 0x3A: return String.format("PITCH V%X", x);
+                    case 0x55: return String.format("LD [I], V%X", x);
+                    case 0x65: return String.format("LD V%X, [I]", x);
+                    case 0x75: return String.format("LD R, V%X", x);
+                    case 0x85: return String.format("LD V%X, R", x);
+                    default: return unknown(opcode);
+                }
+        }
+    }
+
+    private static String unknown(int opcode) {
+        return String.format("DW %04X", opcode);
+    }
+}
@@ -2,49 +2,84 @@ package dev.nabnub;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 public class Display extends JPanel {
 
-    private final boolean[][] pixels;
+    //Indexed by the plane bits of a pixel
+    static final int[] PALETTE = {
+            0x000000, 0xFFFFFF, 0xAAAAAA, 0x555555,
+            0xFF5555, 0x55FF55, 0x5555FF, 0xFFFF55,
+            0x55FFFF, 0xFF55FF, 0xAA0000, 0x00AA00,
+            0x0000AA, 0xAA5500, 0x00AAAA, 0xAA00AA
+    };
+
+    private final FrameBuffer frameBuffer;
     private final int scale = 10;
     private final int width = 64;
     private final int height = 32;
 
+    //Pixels are written straight into the image's raster and scaled up in one drawImage, so a repaint
+    //allocates nothing of its own, unlike a setColor and fillRect per lit pixel
+    private final BufferedImage image =
+            new BufferedImage(FrameBuffer.MAX_WIDTH, FrameBuffer.MAX_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private final int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    private volatile PerformanceOverlay overlay;
+
     public Display() {
-        pixels = new boolean[width][height];
+        this(new FrameBuffer());
+    }
+
+    public Display(FrameBuffer frameBuffer) {
+        this.frameBuffer = frameBuffer;
         setPreferredSize(new Dimension(width * scale, height * scale));
         setBackground(Color.BLACK);
     }
 
+    //Drawn over the screen whenever it is visible
+    public void setOverlay(PerformanceOverlay overlay) {
+        this.overlay = overlay;
+    }
+
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
     public boolean togglePixel(int x, int y) {
-        pixels[x][y] ^= true;
-        return pixels[x][y];
+        return frameBuffer.togglePixel(x, y);
     }
 
     public void clear() {
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                pixels[x][y] = false;
-            }
-        }
+        frameBuffer.clear();
         repaint();
     }
 
     public boolean[][] getPixels() {
-        return pixels;
+        return frameBuffer.toPixels();
     }
 
     @Override
     public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-         g.setColor(Color.WHITE);
-
-        for(int x = 0; x < width; x++) {
-            for(int y = 0; y < height; y++) {
-                if(pixels[x][y]) {
-                    g.fillRect(x * scale, y * scale, scale, scale);
-                }
+        //The image covers the whole panel unless it was resized; filling the background costs an allocation
+        if (getWidth() > width * scale || getHeight() > height * scale) {
+            super.paintComponent(g);
+        }
+
+        //Hires frames cover the same window area, at half the pixel size
+        int frameWidth = frameBuffer.getWidth();
+        int frameHeight = frameBuffer.getHeight();
+        for (int y = 0; y < frameHeight; y++) {
+            int row = y * FrameBuffer.MAX_WIDTH;
+            for (int x = 0; x < frameWidth; x++) {
+                raster[row + x] = PALETTE[frameBuffer.pixelColor(x, y)];
             }
         }
+        g.drawImage(image, 0, 0, width * scale, height * scale, 0, 0, frameWidth, frameHeight, null);
+
+        PerformanceOverlay overlay = this.overlay;
+        if (overlay != null && overlay.isVisible()) {
+            overlay.paint((Graphics2D) g);
+        }
     }
 }
@@ -0,0 +1,79 @@
+package dev.nabnub;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//Fixed size ring of the last executed instructions. Each entry is three ints, so recording is a handful of
+//array stores; nothing is formatted until the trace is dumped and run through TraceDecoder.
+public class ExecutionTrace {
+
+    static final int MAGIC = 0x43385452;          //"C8TR"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 32;
+    static final int ENTRY_BYTES = 12;
+
+    private final int[] entries;                  //pc << 16 | opcode, I, x << 16 | Vx << 8 | VF
+    private final int mask;
+    private long total;
+
+    public ExecutionTrace(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Trace capacity must be a power of two: " + capacity);
+        }
+        this.entries = new int[capacity * 3];
+        this.mask = capacity - 1;
+    }
+
+    public void record(int pc, int opcode, int index, int register) {
+        int slot = (int) (total & mask) * 3;
+        entries[slot] = pc << 16 | opcode;
+        entries[slot + 1] = index;
+        entries[slot + 2] = register;
+        total++;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public int size() {
+        return (int) Math.min(total, mask + 1);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void clear() {
+        total = 0;
+    }
+
+    //Writes the entries oldest first, after the fault that caused the dump, or Fault.NONE when asked for one
+    public void dump(Path file, Fault fault, int faultAddress, int faultOpcode) throws IOException {
+        int count = size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) count * ENTRY_BYTES);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(count);
+            buffer.putInt(fault.ordinal());
+            buffer.putInt(faultAddress);
+            buffer.putInt(faultOpcode);
+            buffer.putLong(total);
+
+            long first = total - count;
+            for (long i = first; i < total; i++) {
+                int slot = (int) (i & mask) * 3;
+                buffer.putInt(entries[slot]);
+                buffer.putInt(entries[slot + 1]);
+                buffer.putInt(entries[slot + 2]);
+            }
+            buffer.force();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package dev.nabnub;
+
+//Why a CPU stopped. Faults are recorded on the CPU instead of thrown, see FaultPolicy.
+public enum Fault {
+    NONE,
+    UNKNOWN_OPCODE,
+    STACK_OVERFLOW,
+    STACK_UNDERFLOW,
+    MEMORY_OUT_OF_RANGE,
+    PC_OUT_OF_RANGE
+}
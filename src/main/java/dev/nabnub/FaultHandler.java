@@ -0,0 +1,6 @@
+package dev.nabnub;
+
+//Called on the emulation thread when a fault with the TRAP policy halts the CPU
+public interface FaultHandler {
+    void onFault(CPU cpu, Fault fault, int address, int opcode);
+}
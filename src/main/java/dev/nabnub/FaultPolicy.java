@@ -0,0 +1,8 @@
+package dev.nabnub;
+
+//What a CPU does when an instruction faults
+public enum FaultPolicy {
+    HALT,       //Stop executing until reset or clearFault
+    IGNORE,     //Record the fault and carry on as if the instruction were a no-op
+    TRAP        //Halt and call the CPU's FaultHandler, which may clear the fault to continue
+}
@@ -0,0 +1,81 @@
+package dev.nabnub;
+
+//Snapshot of one 60Hz frame: the framebuffer planes plus a little machine state. Frames come from a
+//FramePool and should be released once consumed so the next frame can reuse them.
+public final class Frame {
+
+    private final FramePool pool;
+    private final long[][] planes = new long[FrameBuffer.PLANES][FrameBuffer.MAX_HEIGHT * FrameBuffer.WORDS_PER_ROW];
+    private long sequence;
+    private int width;
+    private int height;
+    private int inputMask;
+    private boolean soundPlaying;
+    private boolean halted;
+
+    Frame(FramePool pool) {
+        this.pool = pool;
+    }
+
+    void capture(Machine machine, long sequence, int inputMask) {
+        FrameBuffer frameBuffer = machine.getFrameBuffer();
+        for (int p = 0; p < FrameBuffer.PLANES; p++) {
+            System.arraycopy(frameBuffer.getPlane(p), 0, planes[p], 0, planes[p].length);
+        }
+        this.sequence = sequence;
+        this.width = frameBuffer.getWidth();
+        this.height = frameBuffer.getHeight();
+        this.inputMask = inputMask;
+        this.soundPlaying = machine.getCPU().getSound().isPlaying();
+        this.halted = machine.getCPU().isHalted();
+    }
+
+    public void release() {
+        pool.release(this);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getInputMask() {
+        return inputMask;
+    }
+
+    public boolean isSoundPlaying() {
+        return soundPlaying;
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
+    //Raw plane words in the FrameBuffer layout: two longs per row, leftmost pixel in the top bit
+    public long[] getPlane(int plane) {
+        return planes[plane];
+    }
+
+    public boolean isPixelOn(int x, int y) {
+        return pixelColor(x, y) != 0;
+    }
+
+    public int pixelColor(int x, int y) {
+        int word = y * FrameBuffer.WORDS_PER_ROW + (x >> 6);
+        long bit = 1L << (63 - (x & 63));
+        int color = 0;
+        for (int p = 0; p < FrameBuffer.PLANES; p++) {
+            if ((planes[p][word] & bit) != 0) {
+                color |= 1 << p;
+            }
+        }
+        return color;
+    }
+}
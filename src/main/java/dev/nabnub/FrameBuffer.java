@@ -0,0 +1,250 @@
+package dev.nabnub;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+//Bit-packed display memory: up to four planes, each row stored as two longs with x = 0 in the top bit
+public class FrameBuffer {
+
+    public static final int PLANES = 4;
+    public static final int MAX_WIDTH = 128;
+    public static final int MAX_HEIGHT = 64;
+    static final int WORDS_PER_ROW = 2;
+
+    private final long[][] planes;
+    private int width = 64;
+    private int height = 32;
+    private int planeMask = 0x1;                  //Planes affected by draw, clear and scroll
+
+    public FrameBuffer() {
+        planes = new long[PLANES][MAX_HEIGHT * WORDS_PER_ROW];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isHires() {
+        return width == MAX_WIDTH;
+    }
+
+    //Switching resolution clears the screen, as on SUPER-CHIP 1.1 modern and XO-CHIP
+    public void setHires(boolean hires) {
+        width = hires ? MAX_WIDTH : 64;
+        height = hires ? MAX_HEIGHT : 32;
+        for (long[] plane : planes) {
+            Arrays.fill(plane, 0L);
+        }
+    }
+
+    public int getPlaneMask() {
+        return planeMask;
+    }
+
+    public void setPlaneMask(int planeMask) {
+        this.planeMask = planeMask & 0xF;
+    }
+
+    public long[] getPlane(int plane) {
+        return planes[plane];
+    }
+
+    public void clear() {
+        for (int p = 0; p < PLANES; p++) {
+            if ((planeMask & (1 << p)) != 0) {
+                Arrays.fill(planes[p], 0L);
+            }
+        }
+    }
+
+    public void reset() {
+        width = 64;
+        height = 32;
+        planeMask = 0x1;
+        for (long[] plane : planes) {
+            Arrays.fill(plane, 0L);
+        }
+    }
+
+    public void copyFrom(FrameBuffer other) {
+        width = other.width;
+        height = other.height;
+        planeMask = other.planeMask;
+        for (int p = 0; p < PLANES; p++) {
+            System.arraycopy(other.planes[p], 0, planes[p], 0, planes[p].length);
+        }
+    }
+
+    void writeState(DataOutput out) throws IOException {
+        out.writeByte(isHires() ? 1 : 0);
+        out.writeByte(planeMask);
+        for (long[] plane : planes) {
+            for (long word : plane) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    void readState(DataInput in) throws IOException {
+        boolean hires = in.readUnsignedByte() != 0;
+        width = hires ? MAX_WIDTH : 64;
+        height = hires ? MAX_HEIGHT : 32;
+        planeMask = in.readUnsignedByte() & 0xF;
+        for (long[] plane : planes) {
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = in.readLong();
+            }
+        }
+    }
+
+    long hashState(long hash) {
+        hash = StateHash.mix(hash, (long) width << 32 | planeMask);
+        for (long[] plane : planes) {
+            for (long word : plane) {
+                hash = StateHash.mix(hash, word);
+            }
+        }
+        return hash;
+    }
+
+    public boolean isPixelOn(int x, int y) {
+        return pixelColor(x, y) != 0;
+    }
+
+    //Plane bits of a pixel, plane 0 in bit 0
+    public int pixelColor(int x, int y) {
+        int word = y * WORDS_PER_ROW + (x >> 6);
+        long bit = 1L << (63 - (x & 63));
+        int color = 0;
+        for (int p = 0; p < PLANES; p++) {
+            if ((planes[p][word] & bit) != 0) {
+                color |= 1 << p;
+            }
+        }
+        return color;
+    }
+
+    //Flips one pixel on the first plane and returns its new state
+    public boolean togglePixel(int x, int y) {
+        int word = y * WORDS_PER_ROW + (x >> 6);
+        long bit = 1L << (63 - (x & 63));
+        planes[0][word] ^= bit;
+        return (planes[0][word] & bit) != 0;
+    }
+
+    //XORs a sprite into every selected plane, plane data following each other in memory.
+    //Rows are 8 pixels wide, or 16 when wide. Returns true if any lit pixel was turned off.
+    public boolean drawSprite(int[] memory, int address, int x, int y, int rows, boolean wide, boolean clip) {
+        int startX = x & (width - 1);
+        int startY = y & (height - 1);
+        int bytesPerRow = wide ? 2 : 1;
+        boolean collision = false;
+
+        for (int p = 0; p < PLANES; p++) {
+            if ((planeMask & (1 << p)) == 0) {
+                continue;
+            }
+            long[] plane = planes[p];
+            for (int row = 0; row < rows; row++) {
+                int py = startY + row;
+                if (py >= height) {
+                    if (clip) {
+                        break;
+                    }
+                    py -= height;
+                }
+                int a = address + row * bytesPerRow;
+                long bits = wide
+                        ? (long) ((memory[a] << 8) | memory[a + 1]) << 48
+                        : (long) memory[a] << 56;
+                collision |= xorRow(plane, py * WORDS_PER_ROW, bits, startX, clip);
+            }
+            address += rows * bytesPerRow;
+        }
+        return collision;
+    }
+
+    //bits holds the sprite row left-aligned; it is rotated into place across the row's words
+    private boolean xorRow(long[] plane, int word, long bits, int x, boolean clip) {
+        long left;
+        long right;
+        if (width == 64) {
+            left = clip ? bits >>> x : Long.rotateRight(bits, x);
+            right = 0L;
+        } else if (x < 64) {
+            left = bits >>> x;
+            right = x == 0 ? 0L : bits << (64 - x);
+        } else {
+            right = bits >>> (x - 64);
+            left = clip || x == 64 ? 0L : bits << (128 - x);
+        }
+        boolean collision = (plane[word] & left) != 0 || (plane[word + 1] & right) != 0;
+        plane[word] ^= left;
+        plane[word + 1] ^= right;
+        return collision;
+    }
+
+    public void scrollDown(int n) {
+        n = Math.min(n, height);
+        for (int p = 0; p < PLANES; p++) {
+            if ((planeMask & (1 << p)) != 0) {
+                long[] plane = planes[p];
+                System.arraycopy(plane, 0, plane, n * WORDS_PER_ROW, (height - n) * WORDS_PER_ROW);
+                Arrays.fill(plane, 0, n * WORDS_PER_ROW, 0L);
+            }
+        }
+    }
+
+    public void scrollUp(int n) {
+        n = Math.min(n, height);
+        for (int p = 0; p < PLANES; p++) {
+            if ((planeMask & (1 << p)) != 0) {
+                long[] plane = planes[p];
+                System.arraycopy(plane, n * WORDS_PER_ROW, plane, 0, (height - n) * WORDS_PER_ROW);
+                Arrays.fill(plane, (height - n) * WORDS_PER_ROW, height * WORDS_PER_ROW, 0L);
+            }
+        }
+    }
+
+    public void scrollRight(int n) {
+        for (int p = 0; p < PLANES; p++) {
+            if ((planeMask & (1 << p)) != 0) {
+                long[] plane = planes[p];
+                for (int word = 0; word < height * WORDS_PER_ROW; word += WORDS_PER_ROW) {
+                    //In lores the right word is always empty and whatever leaves x = 63 is dropped
+                    plane[word + 1] = width == 64 ? 0L : (plane[word + 1] >>> n) | (plane[word] << (64 - n));
+                    plane[word] >>>= n;
+                }
+            }
+        }
+    }
+
+    public void scrollLeft(int n) {
+        for (int p = 0; p < PLANES; p++) {
+            if ((planeMask & (1 << p)) != 0) {
+                long[] plane = planes[p];
+                for (int word = 0; word < height * WORDS_PER_ROW; word += WORDS_PER_ROW) {
+                    plane[word] = (plane[word] << n) | (plane[word + 1] >>> (64 - n));
+                    plane[word + 1] <<= n;
+                }
+            }
+        }
+    }
+
+    //Expands the packed planes into one flag per pixel, indexed [x][y]
+    public boolean[][] toPixels() {
+        boolean[][] pixels = new boolean[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                pixels[x][y] = isPixelOn(x, y);
+            }
+        }
+        return pixels;
+    }
+}
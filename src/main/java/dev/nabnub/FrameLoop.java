@@ -0,0 +1,70 @@
+package dev.nabnub;
+
+//Runs 60Hz frames on the calling thread until stopped or interrupted. Frames are due at fixed deadlines rather
+//than a frame after the last one started, so oversleeping does not add up and the timers tick at exactly 60Hz
+//over time. The listener runs on the same thread after every frame; that is where the screen gets repainted.
+public class FrameLoop {
+
+    public interface Listener {
+        void frameFinished(long frame);
+    }
+
+    private final CPU cpu;
+    private final Timing timing;
+    private final Listener listener;
+    private volatile boolean running = true;
+    private volatile long frame;
+    private FrameStats stats;
+
+    public FrameLoop(CPU cpu, Timing timing, Listener listener) {
+        this.cpu = cpu;
+        this.timing = timing;
+        this.listener = listener;
+    }
+
+    //Records every frame into stats from now on; set before run()
+    public void setStats(FrameStats stats) {
+        this.stats = stats;
+    }
+
+    public void run() {
+        long nextFrame = System.nanoTime();
+
+        while (running) {
+            long start = System.nanoTime();
+            int executed = timing.runFrame(cpu);
+            frame++;
+            listener.frameFinished(frame);
+            if (stats != null) {
+                long end = System.nanoTime();
+                stats.record(end, end - start, Math.max(0, start - nextFrame), executed);
+            }
+
+            nextFrame += Timing.FRAME_NANOS;
+            long remainingTime = nextFrame - System.nanoTime();
+            if (remainingTime > 0) {
+                try {
+                    Thread.sleep(remainingTime / 1_000_000, (int) (remainingTime % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            } else if (remainingTime < -Timing.FRAME_NANOS) {
+                //Too far behind to catch up without running frames back to back, so drop the backlog
+                if (stats != null) {
+                    stats.drop(-remainingTime / Timing.FRAME_NANOS);
+                }
+                nextFrame = System.nanoTime();
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    //Frames finished so far
+    public long getFrame() {
+        return frame;
+    }
+}
@@ -0,0 +1,31 @@
+package dev.nabnub;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+//Frames are released on whichever thread consumed them. An array backed queue keeps that hand-off free of
+//per-frame allocation, unlike a linked concurrent queue.
+public class FramePool {
+
+    private final ArrayBlockingQueue<Frame> free;
+
+    public FramePool(int capacity) {
+        free = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            free.offer(new Frame(this));
+        }
+    }
+
+    //Falls back to a new frame when every pooled one is still held by a consumer
+    Frame acquire() {
+        Frame frame = free.poll();
+        return frame != null ? frame : new Frame(this);
+    }
+
+    void release(Frame frame) {
+        free.offer(frame);
+    }
+
+    public int available() {
+        return free.size();
+    }
+}
@@ -0,0 +1,143 @@
+package dev.nabnub;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Reactive Streams view of a FrameSource. Frames are produced only against outstanding demand, either paced
+//to 60Hz or as fast as the subscriber requests them, and signalled serially from the given executor.
+//Subscribers release each frame back to its pool when done with it. The machine runs for one subscriber.
+public class FramePublisher implements Flow.Publisher<Frame> {
+
+    private final FrameSource source;
+    private final Executor executor;
+    private final boolean paced;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private volatile int inputMask;
+
+    public FramePublisher(FrameSource source, Executor executor, boolean paced) {
+        this.source = source;
+        this.executor = executor;
+        this.paced = paced;
+    }
+
+    //Keys held for every frame produced from now on
+    public void setInputMask(int inputMask) {
+        this.inputMask = inputMask;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Frame> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("FramePublisher already has a subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new FrameSubscription(subscriber));
+    }
+
+    private final class FrameSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super Frame> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        private long deadline;
+
+        FrameSubscription(Flow.Subscriber<? super Frame> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                //Demand saturates at Long.MAX_VALUE, which means unbounded. A plain CAS loop, since a
+                //capturing lambda would allocate on every request.
+                long current;
+                long updated;
+                do {
+                    current = demand.get();
+                    updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, updated));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        //Requests made from inside onNext only bump the counter; the running drain loop picks them up
+        private void drain() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                while (!cancelled) {
+                    if (error != null) {
+                        cancelled = true;
+                        subscriber.onError(error);
+                        return;
+                    }
+                    if (demand.get() == 0) {
+                        break;
+                    }
+                    if (paced) {
+                        waitForNextFrame();
+                    }
+                    Frame frame = source.nextFrame(inputMask);
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    try {
+                        subscriber.onNext(frame);
+                    } catch (RuntimeException e) {
+                        cancelled = true;
+                        return;
+                    }
+                    //A halted machine would only repeat this frame forever
+                    if (frame.isHalted()) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                }
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        //Keeps a steady 60Hz without bursting to catch up after the subscriber stopped requesting
+        private void waitForNextFrame() {
+            long now = System.nanoTime();
+            if (deadline - now < 0) {
+                deadline = now;
+            }
+            while (deadline - System.nanoTime() > 0) {
+                LockSupport.parkNanos(deadline - System.nanoTime());
+            }
+            deadline += Timing.FRAME_NANOS;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dev.nabnub;
+
+//Pull API over a headless Machine: each call runs exactly one 60Hz frame with the given keys held and
+//returns it, so callers decide the pace instead of Chip8.startEmulation's wall clock loop.
+public class FrameSource {
+
+    private final Machine machine;
+    private final int instructionsPerFrame;
+    private final FramePool pool;
+    private long sequence;
+
+    public FrameSource(Machine machine, int instructionsPerFrame) {
+        this(machine, instructionsPerFrame, new FramePool(4));
+    }
+
+    public FrameSource(Machine machine, int instructionsPerFrame, FramePool pool) {
+        this.machine = machine;
+        this.instructionsPerFrame = instructionsPerFrame;
+        this.pool = pool;
+    }
+
+    //Bit n of inputMask holds key n for the whole frame. Release the returned frame when done with it.
+    public Frame nextFrame(int inputMask) {
+        machine.getKeyboard().setKeyMask(inputMask);
+        machine.runFrame(instructionsPerFrame);
+
+        Frame frame = pool.acquire();
+        frame.capture(machine, sequence++, inputMask);
+        return frame;
+    }
+
+    public Machine getMachine() {
+        return machine;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+}
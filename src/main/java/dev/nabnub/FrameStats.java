@@ -0,0 +1,85 @@
+package dev.nabnub;
+
+//Per-frame measurements from FrameLoop, kept in ring buffers for PerformanceOverlay. The frame loop is the only
+//writer and publishes each frame by bumping a volatile count after filling its slots, so recording takes no lock
+//and a reader never holds the loop up. A reader looking at the last HISTORY frames sees consistent values unless
+//it stalls for longer than the rest of the ring takes to fill, about two seconds.
+public class FrameStats {
+
+    //Frames a reader may look back over
+    public static final int HISTORY = 120;
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+
+    private final long[] endNanos = new long[CAPACITY];         //When the frame's work finished
+    private final long[] workNanos = new long[CAPACITY];        //Emulation and the frame listener
+    private final long[] overshootNanos = new long[CAPACITY];   //How late the frame started after its deadline
+    private final int[] instructions = new int[CAPACITY];
+
+    private volatile long frames;
+    private volatile long dropped;
+
+    //Emulation thread only
+    void record(long end, long work, long overshoot, int executed) {
+        int slot = (int) frames & MASK;
+        endNanos[slot] = end;
+        workNanos[slot] = work;
+        overshootNanos[slot] = overshoot;
+        instructions[slot] = executed;
+        frames = frames + 1;
+    }
+
+    void drop(long count) {
+        dropped = dropped + count;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    //Frames the loop gave up on after falling too far behind its deadlines
+    public long getDropped() {
+        return dropped;
+    }
+
+    //Frame numbers count from 0; valid for the last HISTORY frames
+    public long endNanos(long frame) {
+        return endNanos[(int) frame & MASK];
+    }
+
+    public long workNanos(long frame) {
+        return workNanos[(int) frame & MASK];
+    }
+
+    public long overshootNanos(long frame) {
+        return overshootNanos[(int) frame & MASK];
+    }
+
+    public int instructions(long frame) {
+        return instructions[(int) frame & MASK];
+    }
+
+    //Frames per second over the last count frames, 0 until there are two
+    public double framesPerSecond(int count) {
+        long last = frames - 1;
+        long first = Math.max(0, last - Math.min(count, HISTORY));
+        if (last <= first) {
+            return 0;
+        }
+        return (last - first) * 1e9 / (endNanos(last) - endNanos(first));
+    }
+
+    //Instructions per second over the same span
+    public double instructionsPerSecond(int count) {
+        long last = frames - 1;
+        long first = Math.max(0, last - Math.min(count, HISTORY));
+        if (last <= first) {
+            return 0;
+        }
+        long executed = 0;
+        for (long frame = first + 1; frame <= last; frame++) {
+            executed += instructions(frame);
+        }
+        return executed * 1e9 / (endNanos(last) - endNanos(first));
+    }
+}
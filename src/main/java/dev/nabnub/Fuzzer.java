@@ -0,0 +1,446 @@
+package dev.nabnub;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.LongStream;
+
+//Headless fuzzer for the CPU core. Inputs are generated or mutated from a seed corpus, run for a short
+//instruction budget on every quirk profile, and any crash, hang or broken pc/sp/I invariant is kept once
+//per signature and then minimized. Faults are the core's defined answer to bad input, so they only count
+//as findings when reportFaults is set. With differential set, every input that runs clean through cycle() is
+//also run frame by frame through runCycles with superinstructions, the way the emulator runs it, and any frame
+//after which the two machines differ is a finding.
+public class Fuzzer {
+
+    public enum Kind { CRASH, HANG, INVARIANT, FAULT, DIVERGENCE }
+
+    private static final int MAX_ROM = Memory.MEMORY_SIZE - Memory.MEMORY_START;
+    private static final int HANG_CHECK_INTERVAL = 256;
+    //Frames a differential run splits the instruction budget into, each with its own keys
+    private static final int DIFFERENTIAL_FRAMES = 10;
+
+    //Opcodes near the edges the core has to handle: deep calls, returns, I at the top of memory
+    private static final int[] INTERESTING = {
+            0x00EE, 0x00E0, 0x00FD, 0x00FF, 0x2200, 0xAFFF, 0xAFFE, 0xAE00, 0xF055, 0xFF55, 0xF065, 0xFF65,
+            0xF033, 0xFF1E, 0xF01E, 0xBFFF, 0xD00F, 0xD000, 0xF075, 0xF085, 0xF000, 0x50F2, 0x5F03, 0xF002
+    };
+
+    private final List<byte[]> corpus;
+    private final int instructionsPerRun;
+    private final long timeLimitNanos;
+    private final boolean reportFaults;
+    private final boolean differential;
+
+    private final ThreadLocal<Machine[]> machines = ThreadLocal.withInitial(Fuzzer::createMachines);
+    private final ThreadLocal<Machine[]> fastMachines = ThreadLocal.withInitial(Fuzzer::createMachines);
+    private final LongAdder executions = new LongAdder();
+    private final Map<String, Finding> findings = new ConcurrentHashMap<>();
+
+    public Fuzzer(List<byte[]> corpus, int instructionsPerRun, long timeLimitMillis, boolean reportFaults) {
+        this(corpus, instructionsPerRun, timeLimitMillis, reportFaults, false);
+    }
+
+    public Fuzzer(List<byte[]> corpus, int instructionsPerRun, long timeLimitMillis, boolean reportFaults,
+                  boolean differential) {
+        this.corpus = new ArrayList<>(corpus);
+        this.instructionsPerRun = instructionsPerRun;
+        this.timeLimitNanos = timeLimitMillis * 1_000_000L;
+        this.reportFaults = reportFaults;
+        this.differential = differential;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        long inputs = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000L;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        List<String> flags = Arrays.asList(args).subList(Math.min(args.length, 2), args.length);
+        boolean reportFaults = flags.contains("--faults");
+        boolean differential = flags.contains("--differential");
+
+        List<byte[]> corpus = new ArrayList<>();
+        File[] roms = new File("roms").listFiles((dir, name) -> name.endsWith(".ch8"));
+        if (roms != null) {
+            for (File rom : roms) {
+                corpus.add(Files.readAllBytes(rom.toPath()));
+            }
+        }
+
+        Fuzzer fuzzer = new Fuzzer(corpus, 500, 100, reportFaults, differential);
+        long start = System.nanoTime();
+        List<Finding> results = fuzzer.run(inputs, seed, ForkJoinPool.commonPool());
+        double minutes = (System.nanoTime() - start) / 60e9;
+
+        System.out.printf("%d executions in %.2f s (%.0f per minute), seed %d%n",
+                fuzzer.getExecutions(), minutes * 60, fuzzer.getExecutions() / minutes, seed);
+        for (Finding finding : results) {
+            System.out.println();
+            System.out.println(finding);
+            System.out.print(Disassembler.disassemble(toMemory(finding.getRom()), Memory.MEMORY_START,
+                    finding.getRom().length / 2));
+        }
+    }
+
+    private static Machine[] createMachines() {
+        QuirkProfile[] profiles = QuirkProfile.values();
+        Machine[] result = new Machine[profiles.length];
+        for (int i = 0; i < profiles.length; i++) {
+            result[i] = new Machine(profiles[i]);
+        }
+        return result;
+    }
+
+    //Runs the given number of inputs, each derived from seed and its index so any one can be replayed
+    public List<Finding> run(long inputs, long seed, ForkJoinPool pool) throws InterruptedException, ExecutionException {
+        pool.submit(() -> LongStream.range(0, inputs).parallel().forEach(i -> fuzzOne(seed, i))).get();
+
+        List<Finding> minimized = new ArrayList<>();
+        for (Finding finding : findings.values()) {
+            Finding smaller = minimize(finding);
+            if (smaller != null) {
+                minimized.add(smaller);
+            }
+        }
+        minimized.sort(Comparator.comparing(Finding::getSignature));
+        return Collections.unmodifiableList(minimized);
+    }
+
+    private void fuzzOne(long seed, long i) {
+        SplittableRandom random = new SplittableRandom(seed ^ (i * 0x9E3779B97F4A7C15L));
+        byte[] rom = corpus.isEmpty() || random.nextInt(4) == 0
+                ? generate(random)
+                : mutate(corpus.get(random.nextInt(corpus.size())), random);
+
+        Machine[] reference = machines.get();
+        Machine[] fast = differential ? fastMachines.get() : null;
+        for (int p = 0; p < reference.length; p++) {
+            Finding finding = check(reference[p], fast == null ? null : fast[p], rom);
+            if (finding != null) {
+                findings.putIfAbsent(finding.getSignature(), finding);
+            }
+        }
+    }
+
+    //The plain run, then the differential one if that was clean and fast is given
+    private Finding check(Machine machine, Machine fast, byte[] rom) {
+        Finding finding = execute(machine, rom);
+        return finding == null && fast != null ? compare(machine, fast, rom) : finding;
+    }
+
+    public Finding execute(Machine machine, byte[] rom) {
+        executions.increment();
+        CPU cpu = machine.getCPU();
+        int[] memory = machine.getMemory().getMemory();
+        long deadline = System.nanoTime() + timeLimitNanos;
+        int pc = Memory.MEMORY_START;
+
+        try {
+            try {
+                machine.load(rom);
+            } catch (IllegalArgumentException e) {
+                //Rejected by the loader, which is the expected outcome for oversized ROMs
+                return null;
+            }
+            cpu.setRandomSeed(rom.length);
+            for (int executed = 0; executed < instructionsPerRun && !cpu.isHalted(); executed++) {
+                pc = cpu.getPC();
+                if (executed % 60 == 0) {
+                    cpu.updateTimers();
+                }
+                cpu.cycle();
+
+                String violation = checkInvariants(cpu);
+                if (violation != null) {
+                    return new Finding(Kind.INVARIANT, machine.getProfile(), violation, rom, pc, opcodeAt(memory, pc));
+                }
+                if (executed % HANG_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                    return new Finding(Kind.HANG, machine.getProfile(), "time limit exceeded", rom, pc, opcodeAt(memory, pc));
+                }
+            }
+        } catch (RuntimeException e) {
+            //Keyed on the instruction rather than the stack trace, which the JIT drops for hot implicit exceptions
+            int opcode = opcodeAt(memory, pc);
+            return new Finding(Kind.CRASH, machine.getProfile(),
+                    e.getClass().getSimpleName() + " on " + opcodePattern(opcode), rom, pc, opcode);
+        }
+        if (reportFaults && cpu.getFault() != Fault.NONE) {
+            return new Finding(Kind.FAULT, machine.getProfile(),
+                    cpu.getFault() + " on " + opcodePattern(cpu.getFaultOpcode()), rom, cpu.getFaultAddress(),
+                    cpu.getFaultOpcode());
+        }
+        return null;
+    }
+
+    //Runs rom through cycle() on reference and through runCycles on fast, frame by frame with the same keys, and
+    //reports the first frame after which their states or faults differ. Frames run as the emulator runs them, with
+    //superinstructions, so both the inline fast path and the fused sequences are checked against the plain core.
+    public Finding compare(Machine reference, Machine fast, byte[] rom) {
+        executions.increment();
+        try {
+            reference.load(rom);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        fast.load(rom);
+        reference.getCPU().setRandomSeed(rom.length);
+        fast.getCPU().setRandomSeed(rom.length);
+        fast.getCPU().setSuperinstructions(new Superinstructions(fast.getMemory().getMemory()));
+        int[] memory = reference.getMemory().getMemory();
+        SplittableRandom keys = new SplittableRandom(rom.length);
+        int instructionsPerFrame = Math.max(1, instructionsPerRun / DIFFERENTIAL_FRAMES);
+        int pc = Memory.MEMORY_START;
+
+        try {
+            for (int frame = 0; frame < DIFFERENTIAL_FRAMES; frame++) {
+                int mask = keys.nextInt(1 << 16) & keys.nextInt(1 << 16);
+                reference.getKeyboard().setKeyMask(mask);
+                fast.getKeyboard().setKeyMask(mask);
+                pc = reference.getCPU().getPC();
+                reference.getCPU().updateTimers();
+                for (int i = 0; i < instructionsPerFrame; i++) {
+                    reference.getCPU().cycle();
+                }
+                fast.runFrame(instructionsPerFrame);
+                if (reference.stateHash() != fast.stateHash()
+                        || reference.getCPU().getFault() != fast.getCPU().getFault()) {
+                    return new Finding(Kind.DIVERGENCE, reference.getProfile(), "runCycles differs from cycle()",
+                            rom, pc, opcodeAt(memory, pc));
+                }
+            }
+        } catch (RuntimeException e) {
+            int opcode = opcodeAt(memory, pc);
+            return new Finding(Kind.CRASH, reference.getProfile(),
+                    e.getClass().getSimpleName() + " in a frame from " + opcodePattern(opcode), rom, pc, opcode);
+        }
+        return null;
+    }
+
+    //Bnnn and skips can leave pc past the end of memory, which the next fetch reports as PC_OUT_OF_RANGE;
+    //anything beyond their reach means the core lost track of it
+    private static String checkInvariants(CPU cpu) {
+        int pc = cpu.getPC();
+        if (pc < 0 || pc > 0xFFFF + 0xFFF) {
+            return "pc out of range";
+        }
+        int sp = cpu.getSp();
+        if (sp < 0 || sp > 15) {
+            return "sp out of range";
+        }
+        //I is a 16-bit register; accesses through it are bounds checked by the core
+        int index = cpu.getIndex();
+        if (index < 0 || index > 0xFFFF) {
+            return "I out of range";
+        }
+        return null;
+    }
+
+    //Drops halves, quarters, ... of the ROM while the same signature still reproduces, then zeroes what is left
+    public Finding minimize(Finding finding) {
+        Machine machine = new Machine(finding.getProfile());
+        Machine fast = differential ? new Machine(finding.getProfile()) : null;
+        if (!reproduces(machine, fast, finding.getRom(), finding)) {
+            return null;
+        }
+
+        byte[] best = finding.getRom();
+        int chunk = Math.max(2, best.length / 2 & ~1);
+        while (true) {
+            int start = 0;
+            while (start < best.length) {
+                byte[] candidate = remove(best, start, chunk);
+                if (candidate.length > 0 && reproduces(machine, fast, candidate, finding)) {
+                    best = candidate;
+                } else {
+                    start += chunk;
+                }
+            }
+            if (chunk == 2) {
+                break;
+            }
+            chunk = Math.max(2, chunk / 2 & ~1);
+        }
+        for (int i = 0; i < best.length; i++) {
+            if (best[i] != 0) {
+                byte[] candidate = best.clone();
+                candidate[i] = 0;
+                if (reproduces(machine, fast, candidate, finding)) {
+                    best = candidate;
+                }
+            }
+        }
+
+        Finding result = check(machine, fast, best);
+        return result != null ? result : finding;
+    }
+
+    private boolean reproduces(Machine machine, Machine fast, byte[] rom, Finding finding) {
+        Finding result = check(machine, fast, rom);
+        return result != null && result.getSignature().equals(finding.getSignature());
+    }
+
+    private static byte[] remove(byte[] rom, int start, int length) {
+        int end = Math.min(rom.length, start + length);
+        byte[] result = new byte[rom.length - (end - start)];
+        System.arraycopy(rom, 0, result, 0, start);
+        System.arraycopy(rom, end, result, start, rom.length - end);
+        return result;
+    }
+
+    static byte[] generate(SplittableRandom random) {
+        int words = 1 + random.nextInt(64);
+        byte[] rom = new byte[words * 2];
+        for (int i = 0; i < words; i++) {
+            putWord(rom, i * 2, randomOpcode(random, i));
+        }
+        return rom;
+    }
+
+    static byte[] mutate(byte[] seed, SplittableRandom random) {
+        byte[] rom = seed.length > 0 ? seed.clone() : new byte[2];
+        int mutations = 1 + random.nextInt(4);
+        for (int m = 0; m < mutations; m++) {
+            int word = random.nextInt(Math.max(1, rom.length / 2)) * 2;
+            switch (random.nextInt(5)) {
+                case 0:
+                    rom[random.nextInt(rom.length)] ^= 1 << random.nextInt(8);
+                    break;
+                case 1:
+                    if (word + 1 < rom.length) {
+                        putWord(rom, word, randomOpcode(random, word / 2));
+                    }
+                    break;
+                case 2:
+                    byte[] inserted = new byte[rom.length + 2];
+                    System.arraycopy(rom, 0, inserted, 0, word);
+                    putWord(inserted, word, randomOpcode(random, word / 2));
+                    System.arraycopy(rom, word, inserted, word + 2, rom.length - word);
+                    rom = inserted;
+                    break;
+                case 3:
+                    if (rom.length > 2) {
+                        rom = remove(rom, word, 2);
+                    }
+                    break;
+                default:
+                    //Occasionally run past the end of program memory, the loader has to cope with that too
+                    int length = random.nextInt(64) == 0 ? MAX_ROM + 2 : rom.length + 2 * random.nextInt(8);
+                    rom = Arrays.copyOf(rom, Math.min(length, MAX_ROM + 2));
+            }
+        }
+        return rom;
+    }
+
+    private static int randomOpcode(SplittableRandom random, int wordIndex) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return INTERESTING[random.nextInt(INTERESTING.length)];
+            case 1:
+                //Calls and jumps back into the program itself
+                return (random.nextBoolean() ? 0x1000 : 0x2000) | (Memory.MEMORY_START + 2 * random.nextInt(wordIndex + 1));
+            default:
+                return random.nextInt(0x10000);
+        }
+    }
+
+    private static void putWord(byte[] rom, int offset, int opcode) {
+        rom[offset] = (byte) (opcode >> 8);
+        rom[offset + 1] = (byte) opcode;
+    }
+
+    private static int opcodeAt(int[] memory, int pc) {
+        return pc >= 0 && pc + 1 < memory.length ? memory[pc] << 8 | memory[pc + 1] : 0;
+    }
+
+    private static int[] toMemory(byte[] rom) {
+        int[] memory = new int[Math.max(Memory.MEMORY_SIZE, Memory.MEMORY_START + rom.length)];
+        for (int i = 0; i < rom.length; i++) {
+            memory[Memory.MEMORY_START + i] = rom[i] & 0xFF;
+        }
+        return memory;
+    }
+
+    private static String opcodePattern(int opcode) {
+        int group = opcode >> 12;
+        switch (group) {
+            case 0x0:
+                return String.format("%04X", opcode);
+            case 0x1:
+            case 0x2:
+            case 0xA:
+            case 0xB:
+                return String.format("%Xnnn", group);
+            case 0x5:
+            case 0x8:
+            case 0x9:
+                return String.format("%Xxy%X", group, opcode & 0xF);
+            case 0xD:
+                return "Dxyn";
+            case 0xE:
+            case 0xF:
+                return String.format("%Xx%02X", group, opcode & 0xFF);
+            default:
+                return String.format("%Xxkk", group);
+        }
+    }
+
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    public static final class Finding {
+        private final Kind kind;
+        private final QuirkProfile profile;
+        private final String signature;
+        private final byte[] rom;
+        private final int pc;
+        private final int opcode;
+
+        Finding(Kind kind, QuirkProfile profile, String detail, byte[] rom, int pc, int opcode) {
+            this.kind = kind;
+            this.profile = profile;
+            this.signature = kind + ": " + detail;
+            this.rom = rom;
+            this.pc = pc;
+            this.opcode = opcode;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public QuirkProfile getProfile() {
+            return profile;
+        }
+
+        public String getSignature() {
+            return signature;
+        }
+
+        public byte[] getRom() {
+            return rom.clone();
+        }
+
+        public int getPc() {
+            return pc;
+        }
+
+        public int getOpcode() {
+            return opcode;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s) at %04X, opcode %04X, %d byte ROM", signature, profile, pc, opcode, rom.length);
+        }
+    }
+}
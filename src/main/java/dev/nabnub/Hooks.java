@@ -0,0 +1,247 @@
+package dev.nabnub;
+
+import java.util.Arrays;
+
+//Callbacks on memory writes, on instructions about to execute and on frame boundaries, for tools such as
+//cheat finders, profilers and achievement trackers. Registrations compile into address bitmaps and an opcode
+//group mask, so instructions and writes nobody asked about only cost a bit test. Hooks take primitives and
+//are called on the emulation thread; they can be added and removed from any thread while the machine runs.
+public class Hooks {
+
+    public interface WriteHook {
+        void written(int address, int value);
+    }
+
+    public interface ExecuteHook {
+        void executing(int address, int opcode);
+    }
+
+    public interface FrameHook {
+        void frameFinished(long frame);
+    }
+
+    //I is 16 bits, so no write or jump can land beyond this
+    private static final int ADDRESSES = 0x10000;
+
+    private volatile Table table = compile(new WriteHook[0], new long[0], new ExecuteHook[0], new long[0],
+            new FrameHook[0]);
+    private long frame;                           //Only touched by the emulation thread
+
+    //Registrations, guarded by this, compiled into a new table on every change
+    private WriteHook[] writeHooks = new WriteHook[0];
+    private long[] writeRanges = new long[0];     //start << 32 | end
+    private ExecuteHook[] executeHooks = new ExecuteHook[0];
+    private long[] executeTargets = new long[0];  //address << 32 | group, with -1 for the one not used
+    private FrameHook[] frameHooks = new FrameHook[0];
+
+    //Calls hook with each value written to start..end, inclusive
+    public synchronized void addWriteHook(int start, int end, WriteHook hook) {
+        checkRange(start, end);
+        writeHooks = append(writeHooks, hook);
+        writeRanges = append(writeRanges, (long) start << 32 | end);
+        recompile();
+    }
+
+    //Calls hook before the instruction at address executes
+    public synchronized void addExecuteHook(int address, ExecuteHook hook) {
+        checkRange(address, address);
+        addExecuteTarget((long) address << 32 | 0xFFFFFFFFL, hook);
+    }
+
+    //Calls hook before every instruction whose opcode starts with group, such as 0xD for every draw
+    public synchronized void addOpcodeHook(int group, ExecuteHook hook) {
+        if (group < 0 || group > 0xF) {
+            throw new IllegalArgumentException("Opcode group must be 0x0-0xF: " + group);
+        }
+        addExecuteTarget(-1L << 32 | group, hook);
+    }
+
+    private void addExecuteTarget(long target, ExecuteHook hook) {
+        executeHooks = append(executeHooks, hook);
+        executeTargets = append(executeTargets, target);
+        recompile();
+    }
+
+    //Calls hook once the timers have ticked for a new frame, with the number of frames since the hooks were made
+    public synchronized void addFrameHook(FrameHook hook) {
+        frameHooks = append(frameHooks, hook);
+        recompile();
+    }
+
+    //Each remove drops every registration of that hook. False if it had none.
+    public synchronized boolean removeWriteHook(WriteHook hook) {
+        int kept = 0;
+        for (int i = 0; i < writeHooks.length; i++) {
+            if (writeHooks[i] != hook) {
+                writeHooks[kept] = writeHooks[i];
+                writeRanges[kept++] = writeRanges[i];
+            }
+        }
+        if (kept == writeHooks.length) {
+            return false;
+        }
+        writeHooks = Arrays.copyOf(writeHooks, kept);
+        writeRanges = Arrays.copyOf(writeRanges, kept);
+        recompile();
+        return true;
+    }
+
+    public synchronized boolean removeExecuteHook(ExecuteHook hook) {
+        int kept = 0;
+        for (int i = 0; i < executeHooks.length; i++) {
+            if (executeHooks[i] != hook) {
+                executeHooks[kept] = executeHooks[i];
+                executeTargets[kept++] = executeTargets[i];
+            }
+        }
+        if (kept == executeHooks.length) {
+            return false;
+        }
+        executeHooks = Arrays.copyOf(executeHooks, kept);
+        executeTargets = Arrays.copyOf(executeTargets, kept);
+        recompile();
+        return true;
+    }
+
+    public synchronized boolean removeFrameHook(FrameHook hook) {
+        FrameHook[] kept = Arrays.stream(frameHooks).filter(h -> h != hook).toArray(FrameHook[]::new);
+        if (kept.length == frameHooks.length) {
+            return false;
+        }
+        frameHooks = kept;
+        recompile();
+        return true;
+    }
+
+    //Removing compacts the arrays in place, so the published table gets copies of its own
+    private void recompile() {
+        table = compile(writeHooks.clone(), writeRanges.clone(), executeHooks.clone(), executeTargets.clone(),
+                frameHooks);
+    }
+
+    private static Table compile(WriteHook[] writeHooks, long[] writeRanges, ExecuteHook[] executeHooks,
+                                 long[] executeTargets, FrameHook[] frameHooks) {
+        Table table = new Table(writeHooks, writeRanges, executeHooks, executeTargets, frameHooks);
+        for (long range : writeRanges) {
+            set(table.writes, (int) (range >>> 32), (int) range);
+        }
+        for (long target : executeTargets) {
+            int address = (int) (target >> 32);
+            if (address >= 0) {
+                set(table.executes, address, address);
+            } else {
+                table.groups |= 1 << (int) target;
+            }
+        }
+        return table;
+    }
+
+    Table table() {
+        return table;
+    }
+
+    //Called by the CPU after an instruction stored length bytes at address
+    void written(int[] mem, int address, int length) {
+        Table current = table;
+        for (int a = address; a < address + length; a++) {
+            if (current.writes(a)) {
+                current.fireWrite(a, mem[a]);
+            }
+        }
+    }
+
+    void executing(int address, int opcode) {
+        Table current = table;
+        if (current.executes(address, opcode >> 12)) {
+            current.fireExecute(address, opcode);
+        }
+    }
+
+    void frameFinished() {
+        frame++;
+        for (FrameHook hook : table.frameHooks) {
+            hook.frameFinished(frame);
+        }
+    }
+
+    private static void checkRange(int start, int end) {
+        if (start < 0 || end >= ADDRESSES || start > end) {
+            throw new IllegalArgumentException(String.format("Bad address range: %X-%X", start, end));
+        }
+    }
+
+    private static void set(long[] bitmap, int start, int end) {
+        for (int address = start; address <= end; address++) {
+            bitmap[address >>> 6] |= 1L << address;
+        }
+    }
+
+    private static <T> T[] append(T[] array, T value) {
+        T[] longer = Arrays.copyOf(array, array.length + 1);
+        longer[array.length] = value;
+        return longer;
+    }
+
+    private static long[] append(long[] array, long value) {
+        long[] longer = Arrays.copyOf(array, array.length + 1);
+        longer[array.length] = value;
+        return longer;
+    }
+
+    //One immutable set of registrations. Changes build a new table and publish it whole, so the emulation
+    //thread never sees a half-made one and never takes a lock.
+    static final class Table {
+
+        private final long[] writes = new long[ADDRESSES / 64];
+        private final long[] executes = new long[ADDRESSES / 64];
+        private int groups;                       //One bit per opcode high nibble
+        private final WriteHook[] writeHooks;
+        private final long[] writeRanges;
+        private final ExecuteHook[] executeHooks;
+        private final long[] executeTargets;
+        private final FrameHook[] frameHooks;
+
+        private Table(WriteHook[] writeHooks, long[] writeRanges, ExecuteHook[] executeHooks, long[] executeTargets,
+                      FrameHook[] frameHooks) {
+            this.writeHooks = writeHooks;
+            this.writeRanges = writeRanges;
+            this.executeHooks = executeHooks;
+            this.executeTargets = executeTargets;
+            this.frameHooks = frameHooks;
+        }
+
+        boolean hasExecuteHooks() {
+            return executeHooks.length > 0;
+        }
+
+        boolean writes(int address) {
+            int word = address >>> 6;
+            return word < writes.length && (writes[word] & (1L << address)) != 0;
+        }
+
+        //group is the opcode's high nibble
+        boolean executes(int address, int group) {
+            int word = address >>> 6;
+            return (groups & (1 << group)) != 0 || word < executes.length && (executes[word] & (1L << address)) != 0;
+        }
+
+        private void fireWrite(int address, int value) {
+            for (int i = 0; i < writeHooks.length; i++) {
+                long range = writeRanges[i];
+                if (address >= (int) (range >>> 32) && address <= (int) range) {
+                    writeHooks[i].written(address, value);
+                }
+            }
+        }
+
+        private void fireExecute(int address, int opcode) {
+            int group = opcode >> 12;
+            for (int i = 0; i < executeHooks.length; i++) {
+                long target = executeTargets[i];
+                if ((int) (target >> 32) == address || (int) target == group) {
+                    executeHooks[i].executing(address, opcode);
+                }
+            }
+        }
+    }
+}
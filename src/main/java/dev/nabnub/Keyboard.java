@@ -2,12 +2,14 @@ package dev.nabnub;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Keyboard implements KeyListener {
+    //Covers every key code we map; a table rather than a map so key events never box their codes
+    private static final int KEY_CODES = 256;
+
     private boolean[] keys;
-    private final Map<Integer, Integer> keyMap = new HashMap<>();
+    private final int[] keyMap = new int[KEY_CODES];
 
     public Keyboard() {
         initialize();
@@ -15,32 +17,32 @@ public class Keyboard implements KeyListener {
 
     private void initialize() {
         keys = new boolean[16];
-        keyMap.clear();
+        Arrays.fill(keyMap, -1);
 
-        keyMap.put(KeyEvent.VK_1, 0x1);
-        keyMap.put(KeyEvent.VK_2, 0x2);
-        keyMap.put(KeyEvent.VK_3, 0x3);
-        keyMap.put(KeyEvent.VK_4, 0xC);
+        keyMap[KeyEvent.VK_1] = 0x1;
+        keyMap[KeyEvent.VK_2] = 0x2;
+        keyMap[KeyEvent.VK_3] = 0x3;
+        keyMap[KeyEvent.VK_4] = 0xC;
 
 
-        keyMap.put(KeyEvent.VK_Q, 0x4);
-        keyMap.put(KeyEvent.VK_W, 0x5);
-        keyMap.put(KeyEvent.VK_E, 0x6);
-        keyMap.put(KeyEvent.VK_R, 0xD);
+        keyMap[KeyEvent.VK_Q] = 0x4;
+        keyMap[KeyEvent.VK_W] = 0x5;
+        keyMap[KeyEvent.VK_E] = 0x6;
+        keyMap[KeyEvent.VK_R] = 0xD;
 
-        keyMap.put(KeyEvent.VK_A, 0x7);
-        keyMap.put(KeyEvent.VK_S, 0x8);
-        keyMap.put(KeyEvent.VK_D, 0x9);
-        keyMap.put(KeyEvent.VK_F, 0xE);
+        keyMap[KeyEvent.VK_A] = 0x7;
+        keyMap[KeyEvent.VK_S] = 0x8;
+        keyMap[KeyEvent.VK_D] = 0x9;
+        keyMap[KeyEvent.VK_F] = 0xE;
 
-        keyMap.put(KeyEvent.VK_Z, 0xA);
-        keyMap.put(KeyEvent.VK_X, 0x0);
-        keyMap.put(KeyEvent.VK_C, 0xB);
-        keyMap.put(KeyEvent.VK_V, 0xF);
+        keyMap[KeyEvent.VK_Z] = 0xA;
+        keyMap[KeyEvent.VK_X] = 0x0;
+        keyMap[KeyEvent.VK_C] = 0xB;
+        keyMap[KeyEvent.VK_V] = 0xF;
     }
 
     public boolean isKeyPressed(int keyCode) {
-        if (keyCode < 0 || keyCode > 16) return false;
+        if (keyCode < 0 || keyCode > 15) return false;
         return keys[keyCode];
     }
 
@@ -48,6 +50,23 @@ public class Keyboard implements KeyListener {
         return keys;
      }
 
+    //Bit n set means key n is held, for headless callers that drive input without key events
+    public void setKeyMask(int mask) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (mask & (1 << i)) != 0;
+        }
+    }
+
+    public int getKeyMask() {
+        int mask = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i]) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
     public int getAnyPressedKey() {
         for (int i = 0; i < keys.length; i++) {
             if (keys[i]) {
@@ -57,17 +76,33 @@ public class Keyboard implements KeyListener {
         return -1;
     }
 
+    //The key code mapped to CHIP-8 key, for callers that synthesize key events
+    int keyCodeFor(int key) {
+        for (int keyCode = 0; keyCode < KEY_CODES; keyCode++) {
+            if (keyMap[keyCode] == key) {
+                return keyCode;
+            }
+        }
+        throw new IllegalArgumentException("No key code for key " + key);
+    }
+
+    private int mappedKey(int keyCode) {
+        return keyCode >= 0 && keyCode < KEY_CODES ? keyMap[keyCode] : -1;
+    }
+
     @Override
     public void keyPressed(KeyEvent e) {
-        if (keyMap.containsKey(e.getKeyCode())) {
-            keys[keyMap.get(e.getKeyCode())] = true;
+        int key = mappedKey(e.getKeyCode());
+        if (key >= 0) {
+            keys[key] = true;
         }
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
-        if (keyMap.containsKey(e.getKeyCode())) {
-            keys[keyMap.get(e.getKeyCode())] = false;
+        int key = mappedKey(e.getKeyCode());
+        if (key >= 0) {
+            keys[key] = false;
         }
     }
 
@@ -0,0 +1,256 @@
+package dev.nabnub;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+//Measures input latency end to end on a headless machine driven by the real FrameLoop. Synthetic key events go
+//through Keyboard as they would from the EDT, and each one is timed to the first frame whose framebuffer changed
+//after it and to the first completed paint of that frame, on a painter thread that coalesces repaints the way
+//Swing's RepaintManager does. Once its setup script has run, the ROM should only change the screen in response
+//to input, as the Ex9E test of 6-keypad does.
+public class LatencyHarness {
+
+    //Frames without a screen change before the next event is injected
+    private static final int QUIET_FRAMES = 6;
+    //Events that have not reached the screen by then are counted as missed
+    private static final int TIMEOUT_FRAMES = 120;
+
+    private static final int IDLE = 0;
+    private static final int WAITING_FOR_CHANGE = 1;
+    private static final int WAITING_FOR_PAINT = 2;
+    private static final int DONE = 3;
+
+    private final Machine machine;
+    private final Timing timing;
+    private final Display display;
+    private final Graphics2D graphics;
+    private final AtomicBoolean repaintPending = new AtomicBoolean();
+    private final Runnable paint = this::paint;
+    private ExecutorService painter;
+
+    //Screen state, written by the frame loop
+    private long screenHash;
+    private volatile long lastFrame;
+    private volatile long lastChangeFrame;
+
+    //The event being measured: set up by the injecting thread, completed by the frame loop and then the painter
+    private volatile int phase = IDLE;
+    private volatile long injectedFrame;
+    private volatile long injectedNanos;
+    private volatile long changedFrame;
+    private volatile long changedNanos;
+    private volatile long paintedNanos;
+
+    //setup holds a key mask per frame, run at full speed before measuring starts
+    public LatencyHarness(QuirkProfile profile, byte[] rom, int[] setup, Timing timing) {
+        this.machine = new Machine(profile);
+        this.timing = timing;
+        machine.load(rom);
+        for (int mask : setup) {
+            machine.getKeyboard().setKeyMask(mask);
+            machine.runFrame(timing);
+        }
+        machine.getKeyboard().setKeyMask(0);
+        this.display = new Display(machine.getFrameBuffer());
+        BufferedImage screen = new BufferedImage(640, 320, BufferedImage.TYPE_INT_RGB);
+        this.graphics = screen.createGraphics();
+    }
+
+    //Alternately presses and releases the given keys, each event timed on its own
+    public Result run(int samples, int[] keys, long seed) throws InterruptedException {
+        painter = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chip8-latency-paint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        screenHash = machine.getFrameBuffer().hashState(StateHash.SEED);
+        FrameLoop loop = new FrameLoop(machine.getCPU(), timing, this::frameFinished);
+        Thread frames = new Thread(loop::run, "chip8-latency-frames");
+        frames.setDaemon(true);
+        frames.start();
+
+        Result result = new Result(samples);
+        SplittableRandom random = new SplittableRandom(seed);
+        Keyboard keyboard = machine.getKeyboard();
+        try {
+            for (int i = 0; i < samples; i++) {
+                int keyCode = keyboard.keyCodeFor(keys[(i / 2) % keys.length]);
+                boolean press = i % 2 == 0;
+                awaitQuiet();
+
+                //Lands anywhere in the frame, as a real key press would
+                LockSupport.parkNanos(random.nextLong(Timing.FRAME_NANOS));
+                KeyEvent event = new KeyEvent(display, press ? KeyEvent.KEY_PRESSED : KeyEvent.KEY_RELEASED,
+                        System.currentTimeMillis(), 0, keyCode, KeyEvent.CHAR_UNDEFINED);
+                injectedFrame = lastFrame;
+                injectedNanos = System.nanoTime();
+                phase = WAITING_FOR_CHANGE;
+                if (press) {
+                    keyboard.keyPressed(event);
+                } else {
+                    keyboard.keyReleased(event);
+                }
+
+                while (phase != DONE && lastFrame - injectedFrame < TIMEOUT_FRAMES) {
+                    LockSupport.parkNanos(100_000);
+                }
+                if (phase == DONE) {
+                    result.add(changedFrame - injectedFrame, changedNanos - injectedNanos, paintedNanos - injectedNanos);
+                } else {
+                    result.missed++;
+                }
+                phase = IDLE;
+            }
+        } finally {
+            loop.stop();
+            frames.join();
+            painter.shutdown();
+            painter.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        return result;
+    }
+
+    private void awaitQuiet() {
+        while (lastFrame - lastChangeFrame < QUIET_FRAMES) {
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    private void frameFinished(long frame) {
+        long hash = machine.getFrameBuffer().hashState(StateHash.SEED);
+        if (hash != screenHash) {
+            screenHash = hash;
+            lastChangeFrame = frame;
+            if (phase == WAITING_FOR_CHANGE) {
+                changedFrame = frame;
+                changedNanos = System.nanoTime();
+                phase = WAITING_FOR_PAINT;
+            }
+        }
+        lastFrame = frame;
+        if (repaintPending.compareAndSet(false, true)) {
+            painter.execute(paint);
+        }
+    }
+
+    //Paints whatever the framebuffer holds by now, which may be frames later than the one that asked for it
+    private void paint() {
+        repaintPending.set(false);
+        long frame = lastFrame;
+        display.paintComponent(graphics);
+        if (phase == WAITING_FOR_PAINT && frame >= changedFrame) {
+            paintedNanos = System.nanoTime();
+            phase = DONE;
+        }
+    }
+
+    public static class Result {
+
+        private final long[] frames;
+        private final double[] changeMillis;
+        private final double[] paintMillis;
+        private int count;
+        private int missed;
+
+        Result(int samples) {
+            frames = new long[samples];
+            changeMillis = new double[samples];
+            paintMillis = new double[samples];
+        }
+
+        void add(long frameLatency, long changeNanos, long paintNanos) {
+            frames[count] = frameLatency;
+            changeMillis[count] = changeNanos / 1e6;
+            paintMillis[count] = paintNanos / 1e6;
+            count++;
+        }
+
+        //Events that reached the screen
+        public int getCount() {
+            return count;
+        }
+
+        public int getMissed() {
+            return missed;
+        }
+
+        //Frames from the one running when the event came in to the one that changed the screen
+        public long frames(double percentile) {
+            long[] sorted = Arrays.copyOf(frames, count);
+            Arrays.sort(sorted);
+            return sorted[index(percentile)];
+        }
+
+        public double changeMillis(double percentile) {
+            return percentile(changeMillis, percentile);
+        }
+
+        public double paintMillis(double percentile) {
+            return percentile(paintMillis, percentile);
+        }
+
+        private double percentile(double[] values, double percentile) {
+            double[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return sorted[index(percentile)];
+        }
+
+        //Nearest rank
+        private int index(double percentile) {
+            if (count == 0) {
+                throw new IllegalStateException("No events reached the screen");
+            }
+            return Math.min(count - 1, Math.max(0, (int) Math.ceil(percentile * count) - 1));
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%d events, %d missed%n", count, missed);
+            if (count == 0) {
+                return;
+            }
+            out.printf("%-16s %8s %8s %8s %8s %8s%n", "", "min", "p50", "p90", "p99", "max");
+            out.printf("%-16s %8d %8d %8d %8d %8d%n", "frames", frames(0), frames(0.5), frames(0.9),
+                    frames(0.99), frames(1));
+            out.printf("%-16s %8.2f %8.2f %8.2f %8.2f %8.2f%n", "to change (ms)", changeMillis(0), changeMillis(0.5),
+                    changeMillis(0.9), changeMillis(0.99), changeMillis(1));
+            out.printf("%-16s %8.2f %8.2f %8.2f %8.2f %8.2f%n", "to paint (ms)", paintMillis(0), paintMillis(0.5),
+                    paintMillis(0.9), paintMillis(0.99), paintMillis(1));
+        }
+    }
+
+    //Setup for 6-keypad: let the menu draw, then pick the Ex9E test, which lights up keys while they are held
+    static int[] keypadSetup() {
+        int[] setup = new int[170];
+        setup[100] = setup[101] = setup[102] = 1 << 1;
+        return setup;
+    }
+
+    //Runs 6-keypad and exits with status 1 when the 99th percentile paint latency is over budgetMillis
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        double budgetMillis = args.length > 1 ? Double.parseDouble(args[1]) : Double.POSITIVE_INFINITY;
+        int instructionsPerFrame = args.length > 2 ? Integer.parseInt(args[2]) : 11;
+
+        byte[] rom = Files.readAllBytes(new File("roms", "6-keypad.ch8").toPath());
+        LatencyHarness harness = new LatencyHarness(QuirkProfile.CHIP8, rom, keypadSetup(),
+                new Timing(instructionsPerFrame));
+        Result result = harness.run(samples, new int[]{0x5, 0x8, 0x1, 0xC, 0xA, 0xF}, 1);
+        result.print(System.out);
+        if (result.getMissed() > 0 || result.getCount() == 0 || result.paintMillis(0.99) > budgetMillis) {
+            System.out.println("Over budget");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package dev.nabnub;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Lists the ROMs in roms/ with their previews and runs the one clicked in its own JVM. Startup reads only the
+//preview cache; previews of new or changed ROMs are generated in the background and show up once they are ready.
+//The cache is only read and written on its own thread, never on the Swing thread.
+public class Launcher {
+
+    private static final int CACHE_CAPACITY = 256;
+    private static final int PREVIEW_FRAMES = 300;
+    private static final long REFRESH_MILLIS = 5_000;
+
+    private final PreviewCache cache;
+    private final JPanel grid = new JPanel(new GridLayout(0, 4, 8, 8));
+    private final ExecutorService io = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "chip8-launcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public Launcher(PreviewCache cache) {
+        this.cache = cache;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path roms = Paths.get("roms");
+        PreviewCache cache = new PreviewCache(roms.resolve(".previews"), CACHE_CAPACITY);
+        Launcher launcher = new Launcher(cache);
+        SwingUtilities.invokeLater(launcher::show);
+
+        RomPreviews previews = new RomPreviews(roms, cache, QuirkProfile.CHIP8, PREVIEW_FRAMES, 11, new int[0]);
+        previews.startBackgroundRefresh(REFRESH_MILLIS, launcher::populate);
+    }
+
+    private void show() {
+        JFrame frame = new JFrame("Chip8 Launcher");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        populate();
+        frame.add(new JScrollPane(grid));
+        frame.setSize(640, 480);
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+    }
+
+    //Reads every preview off the Swing thread, then rebuilds the grid on it. Safe to call from any thread.
+    private void populate() {
+        io.execute(() -> {
+            List<Preview> previews = new ArrayList<>();
+            for (Map.Entry<String, String> entry : cache.entries().entrySet()) {
+                try {
+                    BufferedImage thumbnail = cache.readThumbnail(entry.getValue());
+                    byte[] animation = cache.readAnimation(entry.getValue());
+                    if (thumbnail != null && animation != null) {
+                        previews.add(new Preview(entry.getKey(), entry.getValue(), cache.profile(entry.getValue()),
+                                thumbnail, animation));
+                    }
+                } catch (IOException e) {
+                    System.err.println("Could not read preview of " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+            SwingUtilities.invokeLater(() -> fill(previews));
+        });
+    }
+
+    //The thumbnail shows until the pointer is over a ROM, which then plays its animation. Only that, or
+    //launching the ROM, counts as using its preview; being listed does not.
+    private void fill(List<Preview> previews) {
+        grid.removeAll();
+        for (Preview preview : previews) {
+            JButton button = new JButton(preview.rom, new ImageIcon(preview.thumbnail));
+            button.setRolloverIcon(new ImageIcon(preview.animation));
+            button.setVerticalTextPosition(SwingConstants.BOTTOM);
+            button.setHorizontalTextPosition(SwingConstants.CENTER);
+            button.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseEntered(MouseEvent e) {
+                    touch(preview.key);
+                }
+            });
+            button.addActionListener(e -> {
+                touch(preview.key);
+                launch(preview.rom, preview.profile);
+            });
+            grid.add(button);
+        }
+        grid.revalidate();
+        grid.repaint();
+    }
+
+    private void touch(String key) {
+        io.execute(() -> {
+            try {
+                cache.touch(key);
+            } catch (IOException e) {
+                System.err.println("Could not mark preview " + key + " as used: " + e.getMessage());
+            }
+        });
+    }
+
+    //Under the profile the ROM's preview ran with, so a ROM that needed XO-CHIP to preview gets it to play too
+    private static void launch(String rom, QuirkProfile profile) {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), "--rom=" + rom));
+        if (profile != null) {
+            command.add("--profile=" + profile);
+        }
+        try {
+            new ProcessBuilder(command)
+                    .directory(new File(".").getAbsoluteFile()).inheritIO().start();
+        } catch (IOException e) {
+            System.err.println("Could not start " + rom + ": " + e.getMessage());
+        }
+    }
+
+    private static final class Preview {
+        final String rom;
+        final String key;
+        final QuirkProfile profile;         //Null for entries evicted since they were listed
+        final BufferedImage thumbnail;
+        final byte[] animation;
+
+        Preview(String rom, String key, QuirkProfile profile, BufferedImage thumbnail, byte[] animation) {
+            this.rom = rom;
+            this.key = key;
+            this.profile = profile;
+            this.thumbnail = thumbnail;
+            this.animation = animation;
+        }
+    }
+}
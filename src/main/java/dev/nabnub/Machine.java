@@ -0,0 +1,125 @@
+package dev.nabnub;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//Headless CHIP-8: memory, CPU, keypad and framebuffer without a window. Reloading a ROM reuses every
+//array, so one instance can run many short programs back to back.
+public class Machine {
+
+    private final QuirkProfile profile;
+    private final Memory memory;
+    private final Keyboard keyboard;
+    private final FrameBuffer frameBuffer;
+    private final CPU cpu;
+
+    public Machine(QuirkProfile profile) {
+        this.profile = profile;
+        this.memory = new Memory(profile.memorySize());
+        this.keyboard = new Keyboard();
+        this.frameBuffer = new FrameBuffer();
+        this.cpu = new CPU(memory, keyboard, frameBuffer, profile);
+    }
+
+    public void load(byte[] rom) {
+        reset();
+        memory.loadProgram(rom);
+    }
+
+    //Loads the buffer's remaining bytes, as from a RomCorpus
+    public void load(ByteBuffer rom) {
+        reset();
+        memory.loadProgram(rom);
+    }
+
+    //A translation or superinstruction table describes the previous ROM's code, so neither survives a load
+    private void reset() {
+        memory.reset();
+        frameBuffer.reset();
+        cpu.powerCycle();
+        cpu.setTranslation(null);
+        cpu.setSuperinstructions(null);
+    }
+
+    //One 60Hz frame: timers tick first, as in Chip8.startEmulation
+    public void runFrame(int instructionsPerFrame) {
+        cpu.updateTimers();
+        Timing.run(cpu, instructionsPerFrame);
+    }
+
+    public void runFrame(Timing timing) {
+        timing.runFrame(cpu);
+    }
+
+    //Makes this machine an exact copy of other, which must use the same profile
+    public void copyFrom(Machine other) {
+        if (other.profile != profile) {
+            throw new IllegalArgumentException("Cannot copy a " + other.profile + " machine into a " + profile + " one");
+        }
+        memory.copyFrom(other.memory);
+        frameBuffer.copyFrom(other.frameBuffer);
+        keyboard.setKeyMask(other.keyboard.getKeyMask());
+        cpu.copyFrom(other.cpu);
+    }
+
+    //Back to how a new machine is set up: no hooks, translation or superinstructions, and faults halt
+    public void resetConfiguration() {
+        cpu.setHooks(null);
+        cpu.setTranslation(null);
+        cpu.setSuperinstructions(null);
+        cpu.setFaultPolicy(FaultPolicy.HALT);
+        cpu.setFaultHandler(null);
+    }
+
+    //Everything copyFrom copies, as a stream, for storing a machine somewhere other than the heap
+    public void writeState(DataOutput out) throws IOException {
+        out.writeByte(profile.ordinal());
+        cpu.writeState(out);
+        memory.writeState(out);
+        frameBuffer.writeState(out);
+        out.writeShort(keyboard.getKeyMask());
+    }
+
+    //Reads what writeState wrote from a machine of the same profile
+    public void readState(DataInput in) throws IOException {
+        int written = in.readUnsignedByte();
+        if (written != profile.ordinal()) {
+            throw new IllegalArgumentException("Cannot read a " + QuirkProfile.values()[written] + " machine into a "
+                    + profile + " one");
+        }
+        cpu.readState(in);
+        memory.readState(in);
+        frameBuffer.readState(in);
+        keyboard.setKeyMask(in.readUnsignedShort());
+    }
+
+    //Hash of registers, stack, timers, memory and screen; equal states always hash the same
+    public long stateHash() {
+        long hash = cpu.hashState(StateHash.SEED);
+        hash = StateHash.mix(hash, memory.getMemory());
+        hash = frameBuffer.hashState(hash);
+        return StateHash.finish(hash);
+    }
+
+    public QuirkProfile getProfile() {
+        return profile;
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    public Keyboard getKeyboard() {
+        return keyboard;
+    }
+
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    public CPU getCPU() {
+        return cpu;
+    }
+}
@@ -0,0 +1,49 @@
+package dev.nabnub;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//Recycles machines of one profile. Free lists are per thread, so workers on a large pool never contend; each
+//holds at most LOCAL_CAPACITY machines and the rest go to a shared list that every thread takes from once its own
+//runs dry. A machine released on a thread that never acquires, such as a search's calling thread, is therefore
+//still reused by the workers.
+public class MachinePool {
+
+    static final int LOCAL_CAPACITY = 64;
+
+    private final QuirkProfile profile;
+    private final ThreadLocal<ArrayDeque<Machine>> free = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ConcurrentLinkedQueue<Machine> shared = new ConcurrentLinkedQueue<>();
+
+    public MachinePool(QuirkProfile profile) {
+        this.profile = profile;
+    }
+
+    //Returns a machine in an unspecified state; callers load a ROM or copy another machine into it
+    public Machine acquire() {
+        Machine machine = free.get().pollLast();
+        if (machine == null) {
+            machine = shared.poll();
+        }
+        return machine != null ? machine : new Machine(profile);
+    }
+
+    public Machine copyOf(Machine source) {
+        Machine machine = acquire();
+        machine.copyFrom(source);
+        return machine;
+    }
+
+    public void release(Machine machine) {
+        ArrayDeque<Machine> local = free.get();
+        if (local.size() < LOCAL_CAPACITY) {
+            local.addLast(machine);
+        } else {
+            shared.add(machine);
+        }
+    }
+
+    public QuirkProfile getProfile() {
+        return profile;
+    }
+}
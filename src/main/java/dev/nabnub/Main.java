@@ -1,12 +1,176 @@
 package dev.nabnub;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
 
 public class Main {
     public static void main(String[] args) throws IOException {
+        //--debug attaches the debugger console to stdin, --debug=PORT serves it over TCP instead.
+        //--trace=FILE records recent instructions and writes them to FILE on a fault or on exit.
+        //--export=FILE mirrors registers, screen and memory into FILE for other processes to read.
+        //--timing=vip runs at the COSMAC VIP's speed, --timing=adaptive=IPS at up to IPS instructions per second.
+        //--rom=NAME runs roms/NAME.ch8; --profile=NAME picks the QuirkProfile, e.g. SUPERCHIP or XOCHIP.
+        //--overlay starts with the performance overlay showing; F3 toggles it.
+        //--headless runs without a window or AWT, for kiosks driven over --export; --frames=N stops after N frames.
+        //--startup-probe prints a line once the first frame is on screen and exits, for StartupBenchmark.
+        //--netplay=PORT:HOST:PEERPORT plays two players across two machines, listening on PORT for the other side.
+        //--watch reloads the ROM whenever its file changes, --watch=keep keeps registers and RAM across reloads.
+        String rom = "5-quirks";
+        String debug = null;
+        String trace = null;
+        String export = null;
+        String timing = null;
+        String watch = null;
+        String netplay = null;
+        QuirkProfile profile = QuirkProfile.CHIP8;
+        boolean overlay = false;
+        boolean headless = false;
+        boolean probe = false;
+        long frames = Long.MAX_VALUE;
+        for (String arg : args) {
+            if (arg.startsWith("--debug")) {
+                debug = arg;
+            } else if (arg.startsWith("--trace=")) {
+                trace = arg.substring(8);
+            } else if (arg.startsWith("--export=")) {
+                export = arg.substring(9);
+            } else if (arg.startsWith("--timing=")) {
+                timing = arg.substring(9);
+            } else if (arg.equals("--headless")) {
+                headless = true;
+            } else if (arg.startsWith("--frames=")) {
+                frames = Long.parseLong(arg.substring(9));
+            } else if (arg.equals("--startup-probe")) {
+                probe = true;
+            } else if (arg.equals("--overlay")) {
+                overlay = true;
+            } else if (arg.startsWith("--netplay=")) {
+                netplay = arg.substring(10);
+            } else if (arg.startsWith("--watch")) {
+                watch = arg;
+            } else if (arg.startsWith("--profile=")) {
+                try {
+                    profile = QuirkProfile.valueOf(arg.substring(10).toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    StringBuilder names = new StringBuilder();
+                    for (QuirkProfile known : QuirkProfile.values()) {
+                        names.append(names.length() == 0 ? "" : ", ").append(known);
+                    }
+                    System.err.println("Unknown profile: " + arg.substring(10));
+                    System.err.println("Usage: --profile=NAME, where NAME is one of " + names);
+                    System.exit(1);
+                }
+            } else if (arg.startsWith("--rom=")) {
+                rom = arg.substring(6);
+            }
+        }
+
+        Timing frameTiming = new Timing(11);
+        if ("vip".equals(timing)) {
+            frameTiming = new Timing(Timing.Mode.VIP, 11);
+        } else if (timing != null && timing.startsWith("adaptive=")) {
+            long instructionsPerSecond = Long.parseLong(timing.substring(9));
+            frameTiming = new Timing(Timing.Mode.ADAPTIVE, (int) Math.max(1, instructionsPerSecond / 60));
+        }
+        if (headless) {
+            runHeadless(rom, profile, frameTiming, export, frames, probe);
+            return;
+        }
+        if (netplay != null) {
+            runNetplay(rom, profile, netplay);
+            return;
+        }
+
+        Chip8.Core core = debug != null ? Chip8.Core.DEBUG : trace != null ? Chip8.Core.TRACE : Chip8.Core.INTERPRETER;
+        Chip8 chip8 = new Chip8(11, profile, core);
+        chip8.loadProgram(rom);
+        chip8.setTiming(frameTiming);
+        chip8.setOverlayVisible(overlay);
+        if (probe) {
+            chip8.setFirstFrameListener(Main::firstFrame);
+        }
+        if (watch != null) {
+            chip8.watchProgram(watch.equals("--watch=keep"));
+        }
+        if (export != null) {
+            chip8.setStateExport(new StateExport(Paths.get(export), chip8.getCPU().getProfile()));
+        }
+
+        if (debug != null) {
+            DebugCPU cpu = (DebugCPU) chip8.getCPU();
+            if (debug.startsWith("--debug=")) {
+                DebugServer server = new DebugServer(cpu, chip8.getMemory(), Integer.parseInt(debug.substring(8)));
+                System.out.println("Debugger listening on port " + server.getPort());
+            } else {
+                Thread console = new Thread(new DebugConsole(cpu, chip8.getMemory(),
+                        new InputStreamReader(System.in), new OutputStreamWriter(System.out)), "chip8-debug-console");
+                console.setDaemon(true);
+                console.start();
+            }
+        } else if (trace != null) {
+            TracingCPU cpu = (TracingCPU) chip8.getCPU();
+            Path file = Paths.get(trace);
+            cpu.setFaultFile(file);
+            //Keep the fault dump if there was one, it shows what led up to the fault
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (cpu.isFaultDumped()) {
+                    return;
+                }
+                try {
+                    cpu.dumpTrace(file);
+                } catch (IOException e) {
+                    System.err.println("Could not write trace to " + file + ": " + e.getMessage());
+                }
+            }));
+        }
 
-        Chip8 chip8 = new Chip8(11);
-        chip8.loadProgram("5-quirks");
         chip8.startEmulation();
     }
-}
\ No newline at end of file
+
+    //Emulation only: no Swing, no AWT toolkit and no display, just the machine, the frame loop and the export
+    private static void runHeadless(String rom, QuirkProfile profile, Timing timing, String export, long frames,
+                                    boolean probe) throws IOException {
+        Machine machine = new Machine(profile);
+        machine.load(Files.readAllBytes(Paths.get("roms", rom + ".ch8")));
+        machine.getCPU().setSuperinstructions(new Superinstructions(machine.getMemory().getMemory()));
+        StateExport stateExport = export == null ? null : new StateExport(Paths.get(export), machine.getProfile());
+
+        FrameLoop[] loop = new FrameLoop[1];
+        loop[0] = new FrameLoop(machine.getCPU(), timing, frame -> {
+            if (stateExport != null) {
+                stateExport.publish(machine);
+            }
+            if (probe && frame == 1) {
+                firstFrame();
+            }
+            if (frame >= frames) {
+                loop[0].stop();
+            }
+        });
+        loop[0].run();
+        if (stateExport != null) {
+            stateExport.close();
+        }
+    }
+
+    private static void runNetplay(String rom, QuirkProfile profile, String spec) throws IOException {
+        String[] parts = spec.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected --netplay=PORT:HOST:PEERPORT, got " + spec);
+        }
+        Netplay.play(profile, Files.readAllBytes(Paths.get("roms", rom + ".ch8")), Integer.parseInt(parts[0]),
+                new InetSocketAddress(parts[1], Integer.parseInt(parts[2])));
+    }
+
+    private static void firstFrame() {
+        System.out.println(StartupBenchmark.FIRST_FRAME);
+        System.out.flush();
+        System.exit(0);
+    }
+}
@@ -1,9 +1,19 @@
 package dev.nabnub;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class Memory {
     public static final int MEMORY_START = 0x200;
+    public static final int MEMORY_SIZE = 4096;
+    public static final int XO_MEMORY_SIZE = 0x10000;
     private final int[] memory;                 //Chip 8 memory
+    private byte[] staging;                     //ROM bytes on their way in from a buffer
     private final int FONT_START = 0x050;
+    private final int BIG_FONT_START = 0x0A0;
 
     private final int[] FONT = {
              0xF0, 0x90, 0x90, 0x90, 0xF0, // 0
@@ -24,11 +34,58 @@ public class Memory {
              0xF0, 0x80, 0xF0, 0x80, 0x80  // F
     };
 
+    //SUPER-CHIP 8x10 digits, extended with A-F as on XO-CHIP
+    private final int[] BIG_FONT = {
+             0xFF, 0xFF, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, // 0
+             0x18, 0x78, 0x78, 0x18, 0x18, 0x18, 0x18, 0x18, 0xFF, 0xFF, // 1
+             0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, // 2
+             0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 3
+             0xC3, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, 0x03, 0x03, 0x03, 0x03, // 4
+             0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 5
+             0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, // 6
+             0xFF, 0xFF, 0x03, 0x03, 0x06, 0x0C, 0x18, 0x18, 0x18, 0x18, // 7
+             0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, // 8
+             0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 9
+             0x7E, 0xFF, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, 0xC3, 0xC3, 0xC3, // A
+             0xFC, 0xFC, 0xC3, 0xC3, 0xFC, 0xFC, 0xC3, 0xC3, 0xFC, 0xFC, // B
+             0x3C, 0xFF, 0xC3, 0xC0, 0xC0, 0xC0, 0xC0, 0xC3, 0xFF, 0x3C, // C
+             0xFC, 0xFE, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xFE, 0xFC, // D
+             0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, // E
+             0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC0, 0xC0, 0xC0, 0xC0  // F
+    };
+
     public Memory() {
-        memory = new int[4096];
+        this(MEMORY_SIZE);
+    }
+
+    public Memory(int size) {
+        memory = new int[size];
         loadFonts();
     }
 
+    //Clears everything and puts the fonts back, without reallocating
+    public void reset() {
+        Arrays.fill(memory, 0);
+        loadFonts();
+    }
+
+    public void copyFrom(Memory other) {
+        System.arraycopy(other.memory, 0, memory, 0, memory.length);
+    }
+
+    //Every byte, memory being an int per byte
+    void writeState(DataOutput out) throws IOException {
+        for (int b : memory) {
+            out.writeByte(b);
+        }
+    }
+
+    void readState(DataInput in) throws IOException {
+        for (int i = 0; i < memory.length; i++) {
+            memory[i] = in.readUnsignedByte();
+        }
+    }
+
     public int[] getMemory() {
         return memory;
     }
@@ -37,14 +94,39 @@ public class Memory {
         return FONT_START;
     }
 
+    public int getBIG_FONT_START() {
+        return BIG_FONT_START;
+    }
+
     public void loadProgram(byte[] b) {
-        for(int i = 0; i < b.length; i++) {
-            memory[MEMORY_START + i] = (b[i] & 0xFF);
+        loadProgram(b, b.length);
+    }
+
+    //Loads the source's remaining bytes: one bulk copy out of the buffer, which may be memory-mapped, then a
+    //widening loop the JIT can vectorize
+    public void loadProgram(ByteBuffer source) {
+        int length = source.remaining();
+        if (staging == null) {
+            staging = new byte[memory.length - MEMORY_START];
+        }
+        if (length <= staging.length) {
+            source.get(staging, 0, length);
+        }
+        loadProgram(staging, length);
+    }
+
+    private void loadProgram(byte[] b, int length) {
+        if (length > memory.length - MEMORY_START) {
+            throw new IllegalArgumentException("ROM too large: " + length + " bytes");
+        }
+        for (int i = 0; i < length; i++) {
+            memory[MEMORY_START + i] = b[i] & 0xFF;
         }
     }
 
     private void loadFonts() {
         System.arraycopy(FONT, 0, memory, FONT_START, FONT.length);
+        System.arraycopy(BIG_FONT, 0, memory, BIG_FONT_START, BIG_FONT.length);
     }
 
 }
@@ -0,0 +1,312 @@
+package dev.nabnub;
+
+import javax.swing.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+//Two players on one keypad across two machines, with rollback. Each side runs the whole game, sends its own keypad
+//every frame over UDP and, when the other side's keypad for a frame has not arrived yet, predicts it as the last one
+//that did. When an input arrives that differs from its prediction, the machine goes back to its snapshot from
+//before that frame and runs the frames since again with the real input, all before the next frame is due, so both
+//sides end up in the same state without either one waiting on the network.
+//
+//Snapshots are whole Machines copied into a preallocated ring, and a side that gets more than MAX_ROLLBACK frames
+//ahead of what it has heard from the other stalls rather than predicting further. Both sides start from the same
+//ROM and random seed; each player should press only their own side's keys, as the two keypads are ORed together.
+//
+//A packet is little-endian: u32 first frame, u32 ack (the first frame of the receiver's input the sender still
+//lacks), u8 count, then count u16 keypad masks for the frames from first on. Every packet carries all the input
+//the other side has not acknowledged, so a lost packet costs nothing once a later one gets through.
+public class Netplay implements Closeable {
+
+    //Frames of prediction before a side stalls; rolling back that far has to fit in a frame
+    public static final int MAX_ROLLBACK = 8;
+    //Both sides seed their random number generator with this, so CXNN agrees
+    public static final long SEED = 0x6E6574706C6179L;
+
+    private static final int SNAPSHOTS = 16;            //Power of two above MAX_ROLLBACK
+    private static final int HISTORY = 64;              //Power of two above the widest unacknowledged span
+    private static final int HEADER = 9;
+
+    private final Machine machine;
+    private final int instructionsPerFrame;
+    private final Machine[] snapshots = new Machine[SNAPSHOTS];   //Snapshot n is the state before frame n
+    private final int[] localInputs = new int[HISTORY];
+    private final int[] remoteInputs = new int[HISTORY];           //Confirmed below remoteFrames, predicted above
+    private final DatagramChannel channel;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(HEADER + 2 * 255).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(HEADER + 2 * 255).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long frame;                 //Next frame to run
+    private long remoteFrames;          //Frames of remote input received, all contiguous from 0
+    private long peerAck;               //Frames of local input the other side has
+    private long rollbackFrom = -1;     //Earliest frame run with a wrong prediction
+
+    private long rollbacks;
+    private long rolledBackFrames;
+    private long maxRollbackNanos;
+    private long stalls;
+
+    //Simulated network conditions for testing, applied to outgoing packets
+    private double lossRate;
+    private int latencyFrames;
+    private Random lossRandom;
+    private final ArrayDeque<Delayed> delayed = new ArrayDeque<>();
+    private long ticks;
+
+    public Netplay(QuirkProfile profile, byte[] rom, int instructionsPerFrame, InetSocketAddress local)
+            throws IOException {
+        this.machine = new Machine(profile);
+        machine.load(rom);
+        machine.getCPU().setRandomSeed(SEED);
+        this.instructionsPerFrame = instructionsPerFrame;
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            snapshots[i] = new Machine(profile);
+        }
+        this.channel = DatagramChannel.open();
+        channel.bind(local);
+        channel.configureBlocking(false);
+    }
+
+    //Only packets from peer are accepted from now on
+    public void connect(SocketAddress peer) throws IOException {
+        channel.connect(peer);
+    }
+
+    public int getLocalPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    //Drops lossRate of the packets sent and delays the rest by latencyFrames calls to advance or poll
+    public void setSimulatedNetwork(double lossRate, int latencyFrames, long seed) {
+        this.lossRate = lossRate;
+        this.latencyFrames = latencyFrames;
+        this.lossRandom = new Random(seed);
+    }
+
+    //Takes in what has arrived, rolls back if a prediction was wrong, then runs the next frame with localMask
+    //as this side's keypad. Returns false without running a frame when too far ahead of the other side.
+    public boolean advance(int localMask) throws IOException {
+        receive();
+        rollback();
+        if (frame - remoteFrames >= MAX_ROLLBACK) {
+            stalls++;
+            send();
+            return false;
+        }
+        localInputs[(int) frame & (HISTORY - 1)] = localMask;
+        runFrame(frame);
+        frame++;
+        send();
+        return true;
+    }
+
+    //Takes in what has arrived and resends what the other side lacks, without running a new frame
+    public void poll() throws IOException {
+        receive();
+        rollback();
+        send();
+    }
+
+    //Runs a frame every 60th of a second until interrupted, with the keypad from localInput and frameListener
+    //called after each one
+    public void run(IntSupplier localInput, Runnable frameListener) throws IOException {
+        long nextFrame = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            if (advance(localInput.getAsInt())) {
+                frameListener.run();
+            }
+            nextFrame += Timing.FRAME_NANOS;
+            long remainingTime = nextFrame - System.nanoTime();
+            if (remainingTime > 0) {
+                try {
+                    Thread.sleep(remainingTime / 1_000_000, (int) (remainingTime % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if (remainingTime < -Timing.FRAME_NANOS) {
+                nextFrame = System.nanoTime();
+            }
+        }
+    }
+
+    //A window on a session with the other side at peer; the keys typed into it are this side's keypad
+    public static void play(QuirkProfile profile, byte[] rom, int port, InetSocketAddress peer) throws IOException {
+        Netplay session = new Netplay(profile, rom, 11, new InetSocketAddress(port));
+        session.connect(peer);
+        Keyboard local = new Keyboard();
+        Display display = new Display(session.getMachine().getFrameBuffer());
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Chip8 Emulator - netplay on port " + port);
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.addKeyListener(local);
+            frame.add(display);
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+        });
+        session.run(local::getKeyMask, display::repaint);
+    }
+
+    private void runFrame(long n) {
+        int slot = (int) n & (HISTORY - 1);
+        if (n >= remoteFrames) {
+            remoteInputs[slot] = remoteFrames == 0 ? 0 : remoteInputs[(int) (remoteFrames - 1) & (HISTORY - 1)];
+        }
+        snapshots[(int) n & (SNAPSHOTS - 1)].copyFrom(machine);
+        machine.getKeyboard().setKeyMask(localInputs[slot] | remoteInputs[slot]);
+        machine.runFrame(instructionsPerFrame);
+    }
+
+    private void rollback() {
+        if (rollbackFrom < 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        machine.copyFrom(snapshots[(int) rollbackFrom & (SNAPSHOTS - 1)]);
+        for (long n = rollbackFrom; n < frame; n++) {
+            runFrame(n);
+        }
+        rollbacks++;
+        rolledBackFrames += frame - rollbackFrom;
+        maxRollbackNanos = Math.max(maxRollbackNanos, System.nanoTime() - start);
+        rollbackFrom = -1;
+    }
+
+    private void receive() throws IOException {
+        if (!channel.isConnected()) {
+            return;
+        }
+        while (true) {
+            receiveBuffer.clear();
+            try {
+                if (channel.receive(receiveBuffer) == null) {
+                    return;
+                }
+            } catch (PortUnreachableException e) {
+                //The other side is not up yet, or restarting; it catches up from the next packet it gets
+                return;
+            }
+            receiveBuffer.flip();
+            if (receiveBuffer.remaining() < HEADER) {
+                continue;
+            }
+            long first = receiveBuffer.getInt() & 0xFFFFFFFFL;
+            long ack = receiveBuffer.getInt() & 0xFFFFFFFFL;
+            int count = receiveBuffer.get() & 0xFF;
+            if (receiveBuffer.remaining() < 2 * count || ack > frame) {
+                continue;
+            }
+            peerAck = Math.max(peerAck, ack);
+            //Packets can arrive out of order; only the input that extends what is already here is taken
+            for (long n = first; n < first + count; n++) {
+                int mask = receiveBuffer.getShort() & 0xFFFF;
+                if (n < remoteFrames) {
+                    continue;
+                }
+                if (n > remoteFrames || n >= frame + MAX_ROLLBACK + 1) {
+                    break;
+                }
+                int slot = (int) n & (HISTORY - 1);
+                if (n < frame && remoteInputs[slot] != mask && (rollbackFrom < 0 || n < rollbackFrom)) {
+                    rollbackFrom = n;
+                }
+                remoteInputs[slot] = mask;
+                remoteFrames++;
+            }
+        }
+    }
+
+    private void send() throws IOException {
+        ticks++;
+        if (!channel.isConnected()) {
+            return;
+        }
+        int count = (int) Math.min(frame - peerAck, 255);
+        sendBuffer.clear();
+        sendBuffer.putInt((int) peerAck);
+        sendBuffer.putInt((int) remoteFrames);
+        sendBuffer.put((byte) count);
+        for (long n = peerAck; n < peerAck + count; n++) {
+            sendBuffer.putShort((short) localInputs[(int) n & (HISTORY - 1)]);
+        }
+        sendBuffer.flip();
+
+        if (lossRandom == null) {
+            write(sendBuffer);
+            return;
+        }
+        if (lossRandom.nextDouble() >= lossRate) {
+            byte[] packet = new byte[sendBuffer.remaining()];
+            sendBuffer.get(packet);
+            delayed.add(new Delayed(ticks + latencyFrames, packet));
+        }
+        while (!delayed.isEmpty() && delayed.peek().due <= ticks) {
+            write(ByteBuffer.wrap(delayed.poll().packet));
+        }
+    }
+
+    private void write(ByteBuffer packet) throws IOException {
+        try {
+            channel.write(packet);
+        } catch (PortUnreachableException e) {
+            //As in receive
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public Machine getMachine() {
+        return machine;
+    }
+
+    //Frames run so far
+    public long getFrame() {
+        return frame;
+    }
+
+    //Frames up to which both keypads are known, so the state before this frame is final on both sides
+    public long getConfirmedFrame() {
+        return Math.min(frame, remoteFrames);
+    }
+
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    public long getRolledBackFrames() {
+        return rolledBackFrames;
+    }
+
+    //Longest time spent restoring a snapshot and running frames again
+    public long getMaxRollbackNanos() {
+        return maxRollbackNanos;
+    }
+
+    //Calls to advance that waited for the other side instead of running a frame
+    public long getStalls() {
+        return stalls;
+    }
+
+    private static final class Delayed {
+        final long due;
+        final byte[] packet;
+
+        Delayed(long due, byte[] packet) {
+            this.due = due;
+            this.packet = packet;
+        }
+    }
+}
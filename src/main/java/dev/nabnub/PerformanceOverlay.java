@@ -0,0 +1,95 @@
+package dev.nabnub;
+
+import java.awt.*;
+
+//Frame rate, instruction rate, a frame-time graph against the 60Hz budget, sleep overshoot, dropped frames and
+//speed, drawn over the Display by the renderer. Everything comes from a FrameStats the frame loop fills, so the
+//overlay reads the loop's numbers without adding anything to emulation.
+public class PerformanceOverlay {
+
+    private static final int GRAPH_FRAMES = FrameStats.HISTORY;
+    private static final int GRAPH_HEIGHT = 60;
+    //The graph tops out at two frame budgets
+    private static final double GRAPH_NANOS = 2.0 * Timing.FRAME_NANOS;
+    private static final Color BACKGROUND = new Color(0, 0, 0, 170);
+    private static final Color WORK = new Color(0x55FF55);
+    private static final Color INTERVAL = new Color(0x5555FF);
+    private static final Color LATE = new Color(0xFF5555);
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    private final FrameStats stats;
+    private final Timing timing;
+    private volatile boolean visible;
+
+    public PerformanceOverlay(FrameStats stats, Timing timing) {
+        this.stats = stats;
+        this.timing = timing;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    public void toggle() {
+        visible = !visible;
+    }
+
+    public void paint(Graphics2D g) {
+        long frames = stats.getFrames();
+        long last = frames - 1;
+        int width = GRAPH_FRAMES * 2 + 8;
+        g.setColor(BACKGROUND);
+        g.fillRect(4, 4, width, 84 + GRAPH_HEIGHT);
+
+        g.setFont(FONT);
+        g.setColor(Color.WHITE);
+        g.drawString(String.format("%5.1f fps  %,.0f ips", stats.framesPerSecond(60), stats.instructionsPerSecond(60)),
+                8, 18);
+        double overshoot = frames > 0 ? stats.overshootNanos(last) / 1e6 : 0;
+        double worst = 0;
+        for (long frame = Math.max(0, frames - GRAPH_FRAMES); frame < frames; frame++) {
+            worst = Math.max(worst, stats.overshootNanos(frame) / 1e6);
+        }
+        g.drawString(String.format("overshoot %.2f ms (max %.2f)", overshoot, worst), 8, 32);
+        g.drawString(String.format("dropped %d of %d frames", stats.getDropped(), frames), 8, 46);
+        g.drawString(speed(), 8, 60);
+
+        //Bars show the time between frames, with the loop's own work inside them; the line is the 60Hz budget
+        int bottom = 76 + GRAPH_HEIGHT;
+        for (long frame = Math.max(1, frames - GRAPH_FRAMES); frame < frames; frame++) {
+            int x = 8 + (int) (GRAPH_FRAMES - (frames - frame)) * 2;
+            long interval = stats.endNanos(frame) - stats.endNanos(frame - 1);
+            g.setColor(interval > Timing.FRAME_NANOS * 3 / 2 ? LATE : INTERVAL);
+            int height = barHeight(interval);
+            g.fillRect(x, bottom - height, 2, height);
+            g.setColor(WORK);
+            height = barHeight(stats.workNanos(frame));
+            g.fillRect(x, bottom - height, 2, height);
+        }
+        g.setColor(LATE);
+        int budget = bottom - barHeight(Timing.FRAME_NANOS);
+        g.drawLine(8, budget, 8 + GRAPH_FRAMES * 2, budget);
+        g.drawString("16.67 ms", 8 + GRAPH_FRAMES * 2 - 52, budget - 2);
+    }
+
+    private String speed() {
+        switch (timing.getMode()) {
+            case VIP:
+                return "VIP timing";
+            case ADAPTIVE:
+                return String.format("%d ipf (%.0f%% of %d)", timing.getInstructionsPerFrame(),
+                        100.0 * timing.getInstructionsPerFrame() / timing.getTargetInstructionsPerFrame(),
+                        timing.getTargetInstructionsPerFrame());
+            default:
+                return timing.getInstructionsPerFrame() + " ipf";
+        }
+    }
+
+    private static int barHeight(long nanos) {
+        return (int) Math.min(GRAPH_HEIGHT, nanos * GRAPH_HEIGHT / GRAPH_NANOS);
+    }
+}
@@ -0,0 +1,241 @@
+package dev.nabnub;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+//On-disk store of ROM previews: a PNG thumbnail and an animated GIF per entry, keyed by the ROM's SHA-256 and
+//the preview version. An index maps ROM file names to their current key, so a launcher can start from the cache
+//alone, and each entry records the quirk profile its preview ran under, so the launcher runs it the same way. Entries
+//are marked used with touch, when a preview is actually shown rather than merely read, and the least recently used
+//entries go once the cache is full.
+public class PreviewCache {
+
+    //Bump whenever emulation or rendering changes what a preview looks like, so old entries are regenerated
+    public static final int VERSION = 2;
+
+    private static final String INDEX = "index.properties";
+    private static final String PROFILES = "profiles.properties";
+    private static final String THUMBNAIL = ".png";
+    private static final String ANIMATION = ".gif";
+
+    private final Path directory;
+    private final int capacity;
+    private final Properties index = new Properties();
+    private final Properties profiles = new Properties();      //Key to QuirkProfile name
+
+    public PreviewCache(Path directory, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.directory = directory;
+        this.capacity = capacity;
+        Files.createDirectories(directory);
+        load(INDEX, index);
+        load(PROFILES, profiles);
+    }
+
+    private void load(String file, Properties properties) throws IOException {
+        Path path = directory.resolve(file);
+        if (Files.isRegularFile(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                properties.load(in);
+            }
+        }
+    }
+
+    public static String key(String romHash) {
+        return romHash + "-v" + VERSION;
+    }
+
+    //ROM name to key, for every ROM with a cached preview
+    public synchronized Map<String, String> entries() {
+        Map<String, String> entries = new TreeMap<>();
+        for (String name : index.stringPropertyNames()) {
+            String key = index.getProperty(name);
+            if (contains(key)) {
+                entries.put(name, key);
+            }
+        }
+        return entries;
+    }
+
+    public synchronized boolean contains(String key) {
+        return Files.isRegularFile(directory.resolve(key + THUMBNAIL))
+                && Files.isRegularFile(directory.resolve(key + ANIMATION));
+    }
+
+    //The profile the entry's preview ran under, or null once the entry has been evicted
+    public synchronized QuirkProfile profile(String key) {
+        String profile = profiles.getProperty(key);
+        return profile == null ? null : QuirkProfile.valueOf(profile);
+    }
+
+    //Null once the entry has been evicted
+    public BufferedImage readThumbnail(String key) throws IOException {
+        byte[] bytes = read(key + THUMBNAIL);
+        return bytes == null ? null : ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    //The animated GIF's bytes, or null once the entry has been evicted
+    public byte[] readAnimation(String key) throws IOException {
+        return read(key + ANIMATION);
+    }
+
+    private synchronized byte[] read(String file) throws IOException {
+        Path path = directory.resolve(file);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        return Files.readAllBytes(path);
+    }
+
+    //Makes the entry the most recently used; does nothing once it has been evicted. Recency is kept in the
+    //thumbnail's modification time, which survives restarts without an index of its own.
+    public synchronized void touch(String key) throws IOException {
+        Path thumbnail = directory.resolve(key + THUMBNAIL);
+        if (Files.isRegularFile(thumbnail)) {
+            Files.setLastModifiedTime(thumbnail, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    //Stores a preview and points romName at it, evicting the least recently used entries beyond capacity
+    public void put(String romName, String key, QuirkProfile profile, BufferedImage thumbnail,
+                    List<BufferedImage> animation, int frameMillis) throws IOException {
+        //Encoded outside the lock, since previews for several ROMs are generated at once
+        Path thumbnailTemp = Files.createTempFile(directory, key, THUMBNAIL + ".tmp");
+        Path animationTemp = Files.createTempFile(directory, key, ANIMATION + ".tmp");
+        try {
+            ImageIO.write(thumbnail, "png", thumbnailTemp.toFile());
+            writeAnimation(animation, frameMillis, animationTemp);
+            synchronized (this) {
+                Files.move(animationTemp, directory.resolve(key + ANIMATION), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(thumbnailTemp, directory.resolve(key + THUMBNAIL), StandardCopyOption.REPLACE_EXISTING);
+                index.setProperty(romName, key);
+                profiles.setProperty(key, profile.name());
+                evict();
+                saveIndex();
+            }
+        } finally {
+            Files.deleteIfExists(thumbnailTemp);
+            Files.deleteIfExists(animationTemp);
+        }
+    }
+
+    //Points romName at an entry that is already cached, as when the same ROM turns up under another name
+    public synchronized void link(String romName, String key) throws IOException {
+        if (!key.equals(index.getProperty(romName))) {
+            index.setProperty(romName, key);
+            saveIndex();
+        }
+    }
+
+    //Forgets ROM names that are no longer present; their previews stay until they are evicted
+    public synchronized void retain(Set<String> romNames) throws IOException {
+        if (index.keySet().retainAll(romNames)) {
+            saveIndex();
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> thumbnails;
+        try (Stream<Path> files = Files.list(directory)) {
+            thumbnails = files.filter(file -> file.getFileName().toString().endsWith(THUMBNAIL))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+        if (thumbnails.size() <= capacity) {
+            return;
+        }
+        thumbnails.sort(Comparator.comparing(PreviewCache::lastModified));
+        for (Path thumbnail : thumbnails.subList(0, thumbnails.size() - capacity)) {
+            String name = thumbnail.getFileName().toString();
+            String key = name.substring(0, name.length() - THUMBNAIL.length());
+            Files.deleteIfExists(thumbnail);
+            Files.deleteIfExists(directory.resolve(key + ANIMATION));
+            index.values().removeIf(key::equals);
+            profiles.remove(key);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        save(PROFILES, profiles);
+        save(INDEX, index);
+    }
+
+    private void save(String file, Properties properties) throws IOException {
+        Path temp = directory.resolve(file + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "ROM previews, version " + VERSION);
+        }
+        Files.move(temp, directory.resolve(file), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //Looping GIF, frameMillis per frame, rounded to the format's hundredths of a second
+    private static void writeAnimation(List<BufferedImage> frames, int frameMillis, Path file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+                ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB), param);
+        String format = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(Math.max(1, frameMillis / 10)));
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+        IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+        loop.setAttribute("applicationID", "NETSCAPE");
+        loop.setAttribute("authenticationCode", "2.0");
+        loop.setUserObject(new byte[]{1, 0, 0});
+        extensions.appendChild(loop);
+        root.appendChild(extensions);
+        metadata.setFromTree(format, root);
+
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+            writer.setOutput(out);
+            writer.prepareWriteSequence(null);
+            for (BufferedImage frame : frames) {
+                writer.writeToSequence(new IIOImage(frame, null, metadata), param);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dev.nabnub;
+
+//Platform behaviours that differ between interpreters. Each profile is baked into its own decode table,
+//so the CPU selects the variant when an opcode is decoded instead of testing flags while executing it.
+public enum QuirkProfile {
+    //             shiftVy, memoryI,                    logicVF, clip,  wait,  jumpVx, instruction set
+    CHIP8(          true,   MemoryIncrement.X_PLUS_ONE, true,    true,  true,  false,  InstructionSet.CHIP8),
+    CHIP48(         false,  MemoryIncrement.X,          false,   true,  false, true,   InstructionSet.CHIP8),
+    SUPERCHIP(      false,  MemoryIncrement.NONE,       false,   true,  false, true,   InstructionSet.SUPERCHIP),
+    SUPERCHIP_LEGACY(false, MemoryIncrement.NONE,       false,   true,  true,  true,   InstructionSet.SUPERCHIP),
+    XOCHIP(         true,   MemoryIncrement.X_PLUS_ONE, false,   false, false, false,  InstructionSet.XOCHIP);
+
+    public enum MemoryIncrement { X_PLUS_ONE, X, NONE }
+
+    public enum InstructionSet { CHIP8, SUPERCHIP, XOCHIP }
+
+    private final boolean shiftUsesVy;            //8xy6/8xyE shift Vy into Vx instead of shifting Vx
+    private final MemoryIncrement memoryIncrement;//How far Fx55/Fx65 move I
+    private final boolean logicResetsVF;          //8xy1/8xy2/8xy3 clear VF
+    private final boolean clipSprites;            //Dxyn clips at the screen edge instead of wrapping
+    private final boolean displayWait;            //Dxyn waits for vblank
+    private final boolean jumpUsesVx;             //Bnnn jumps to xnn + Vx instead of nnn + V0
+    private final InstructionSet instructionSet;
+
+    private byte[] decodeTable;
+
+    QuirkProfile(boolean shiftUsesVy, MemoryIncrement memoryIncrement, boolean logicResetsVF,
+                 boolean clipSprites, boolean displayWait, boolean jumpUsesVx, InstructionSet instructionSet) {
+        this.shiftUsesVy = shiftUsesVy;
+        this.memoryIncrement = memoryIncrement;
+        this.logicResetsVF = logicResetsVF;
+        this.clipSprites = clipSprites;
+        this.displayWait = displayWait;
+        this.jumpUsesVx = jumpUsesVx;
+        this.instructionSet = instructionSet;
+    }
+
+    public boolean shiftUsesVy() {
+        return shiftUsesVy;
+    }
+
+    public MemoryIncrement memoryIncrement() {
+        return memoryIncrement;
+    }
+
+    public boolean logicResetsVF() {
+        return logicResetsVF;
+    }
+
+    public boolean clipSprites() {
+        return clipSprites;
+    }
+
+    public boolean displayWait() {
+        return displayWait;
+    }
+
+    public boolean jumpUsesVx() {
+        return jumpUsesVx;
+    }
+
+    public InstructionSet instructionSet() {
+        return instructionSet;
+    }
+
+    public boolean hasSuperChipInstructions() {
+        return instructionSet != InstructionSet.CHIP8;
+    }
+
+    public boolean hasXoChipInstructions() {
+        return instructionSet == InstructionSet.XOCHIP;
+    }
+
+    public int memorySize() {
+        return hasXoChipInstructions() ? Memory.XO_MEMORY_SIZE : Memory.MEMORY_SIZE;
+    }
+
+    //Shared by every CPU running this profile
+    synchronized byte[] getDecodeTable() {
+        if (decodeTable == null) {
+            decodeTable = Decoder.buildTable(this);
+        }
+        return decodeTable;
+    }
+}
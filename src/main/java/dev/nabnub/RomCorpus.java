@@ -0,0 +1,203 @@
+package dev.nabnub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+//Many ROMs packed into one file for fuzzing and bulk conformance runs, read through a single memory mapping so
+//that going through a corpus costs no file opens. All values are little-endian:
+//     0  u32 magic "C8RC", u32 version, u32 ROM count, u32 reserved
+//    16  count x (u64 offset, u32 ROM length, u16 name length, u16 reserved)
+//  then  each ROM's UTF-8 name followed by its bytes, at its offset
+//The mapping is a single buffer, so a corpus is limited to 2GB.
+public class RomCorpus implements Closeable {
+
+    static final int MAGIC = 0x43523843;
+    static final int VERSION = 1;
+    static final int HEADER = 16;
+    static final int ENTRY = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    //Positions and limits are per view, so each thread loads through its own
+    private final ThreadLocal<ByteBuffer> views;
+
+    public RomCorpus(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a ROM corpus: " + file);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a version " + VERSION + " ROM corpus: " + file);
+            }
+            this.count = buffer.getInt(8);
+            if (count < 0 || HEADER + (long) count * ENTRY > size) {
+                throw new IOException("Corrupt ROM corpus index: " + file);
+            }
+            for (int i = 0; i < count; i++) {
+                //Lengths are unsigned and offsets in range before they are added, so no sum can wrap past a check
+                long offset = offset(i);
+                long length = Integer.toUnsignedLong(buffer.getInt(entry(i) + 8));
+                if (offset < HEADER + (long) count * ENTRY || offset > size
+                        || length > Memory.XO_MEMORY_SIZE - Memory.MEMORY_START
+                        || offset + nameLength(i) + length > size) {
+                    throw new IOException("Corrupt ROM corpus entry " + i + ": " + file);
+                }
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.views = ThreadLocal.withInitial(buffer::duplicate);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String name(int rom) {
+        byte[] name = new byte[nameLength(rom)];
+        ByteBuffer view = view((int) offset(rom), name.length);
+        view.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    //Never negative: the constructor rejects lengths beyond what the largest memory holds
+    public int length(int rom) {
+        return buffer.getInt(entry(rom) + 8);
+    }
+
+    //Loads a ROM into machine straight from the mapping, without allocating
+    public void load(int rom, Machine machine) {
+        machine.load(view((int) offset(rom) + nameLength(rom), length(rom)));
+    }
+
+    //The ROM's bytes, for callers that need their own copy
+    public byte[] read(int rom) {
+        byte[] bytes = new byte[length(rom)];
+        view((int) offset(rom) + nameLength(rom), bytes.length).get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer view(int start, int length) {
+        ByteBuffer view = views.get();
+        view.clear();
+        view.position(start);
+        view.limit(start + length);
+        return view;
+    }
+
+    private int entry(int rom) {
+        if (rom < 0 || rom >= count) {
+            throw new IndexOutOfBoundsException("ROM " + rom + " of " + count);
+        }
+        return HEADER + rom * ENTRY;
+    }
+
+    private long offset(int rom) {
+        return buffer.getLong(entry(rom));
+    }
+
+    private int nameLength(int rom) {
+        return Short.toUnsignedInt(buffer.getShort(entry(rom) + 12));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //Packs the given ROMs, in order, named after their files without the .ch8
+    public static void write(Path file, List<Path> roms) throws IOException {
+        long offset = HEADER + (long) roms.size() * ENTRY;
+        ByteBuffer index = ByteBuffer.allocate((int) offset).order(ByteOrder.LITTLE_ENDIAN);
+        index.putInt(MAGIC).putInt(VERSION).putInt(roms.size()).putInt(0);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.position(offset);
+            for (Path rom : roms) {
+                byte[] name = RomPreviews.romName(rom).getBytes(StandardCharsets.UTF_8);
+                byte[] bytes = Files.readAllBytes(rom);
+                if (name.length > 0xFFFF || bytes.length > Memory.XO_MEMORY_SIZE - Memory.MEMORY_START) {
+                    throw new IllegalArgumentException("Cannot pack " + rom);
+                }
+                index.putLong(offset).putInt(bytes.length).putShort((short) name.length).putShort((short) 0);
+                writeFully(out, ByteBuffer.wrap(name));
+                writeFully(out, ByteBuffer.wrap(bytes));
+                offset += name.length + bytes.length;
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Corpus over 2GB: " + offset + " bytes");
+            }
+            index.flip();
+            out.position(0);
+            writeFully(out, index);
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+
+    //Every .ch8 file under directory, in a stable order
+    static List<Path> findRoms(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> Files.isRegularFile(file) && file.getFileName().toString().endsWith(".ch8"))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    //RomCorpus pack <corpus> <directory>... packs every .ch8 under the directories
+    //RomCorpus scan <corpus> loads every ROM in parallel and reports the rate
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("pack")) {
+            List<Path> roms = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                roms.addAll(findRoms(Paths.get(args[i])));
+            }
+            write(Paths.get(args[1]), roms);
+            System.out.println("Packed " + roms.size() + " ROMs into " + args[1]);
+        } else if (args.length == 2 && args[0].equals("scan")) {
+            try (RomCorpus corpus = new RomCorpus(Paths.get(args[1]))) {
+                //Loading clears the whole of memory, so only ROMs that need it go into 64K machines
+                ThreadLocal<Machine> small = ThreadLocal.withInitial(() -> new Machine(QuirkProfile.CHIP8));
+                ThreadLocal<Machine> large = ThreadLocal.withInitial(() -> new Machine(QuirkProfile.XOCHIP));
+                int fits = Memory.MEMORY_SIZE - Memory.MEMORY_START;
+                AtomicLong bytes = new AtomicLong();
+                long start = System.nanoTime();
+                ForkJoinPool.commonPool().submit(() -> IntStream.range(0, corpus.size()).parallel().forEach(rom -> {
+                    corpus.load(rom, (corpus.length(rom) <= fits ? small : large).get());
+                    bytes.addAndGet(corpus.length(rom));
+                })).get();
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("Loaded %d ROMs (%.1f MB) in %.3f s: %.0f ROMs/s, %.1f MB/s%n", corpus.size(),
+                        bytes.get() / 1e6, seconds, corpus.size() / seconds, bytes.get() / 1e6 / seconds);
+            }
+        } else {
+            System.err.println("Usage: RomCorpus pack <corpus> <directory>... | RomCorpus scan <corpus>");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package dev.nabnub;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+//Fills a PreviewCache by running ROMs headless, each for a fixed number of frames with scripted or no input. The
+//last frame becomes the thumbnail and every few frames go into a short animation. ROMs run in parallel, and a
+//refresh only runs ROMs whose contents have no preview yet.
+public class RomPreviews implements Closeable {
+
+    //Frames between animation frames, so the animation plays at 10 frames per second
+    private static final int ANIMATION_INTERVAL = 6;
+    private static final int FRAME_MILLIS = 100;
+
+    private final Path romDirectory;
+    private final PreviewCache cache;
+    private final QuirkProfile profile;
+    private final int frames;
+    private final int instructionsPerFrame;
+    private final int[] input;
+    //Hashes of ROM files by size and modification time, so unchanged ROMs are not read again on every refresh
+    private final Map<Path, String> hashes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService background;
+
+    //input holds a key mask per frame and repeats; an empty script runs without input. ROMs that stop on an
+    //unknown opcode under profile are run again as XO-CHIP, which every other instruction set is a subset of.
+    public RomPreviews(Path romDirectory, PreviewCache cache, QuirkProfile profile, int frames,
+                       int instructionsPerFrame, int[] input) {
+        this.romDirectory = romDirectory;
+        this.cache = cache;
+        this.profile = profile;
+        this.frames = frames;
+        this.instructionsPerFrame = instructionsPerFrame;
+        this.input = input.clone();
+    }
+
+    //Generates previews for new and changed ROMs and forgets removed ones. Returns how many were generated.
+    public int refresh(ForkJoinPool pool) throws IOException, InterruptedException, ExecutionException {
+        List<Path> roms;
+        try (Stream<Path> files = Files.list(romDirectory)) {
+            roms = files.filter(file -> file.getFileName().toString().endsWith(".ch8")).sorted()
+                    .collect(Collectors.toList());
+        }
+
+        Set<String> names = new HashSet<>();
+        List<Path> stale = new ArrayList<>();
+        for (Path rom : roms) {
+            String name = romName(rom);
+            names.add(name);
+            String key = PreviewCache.key(hash(rom));
+            if (cache.contains(key)) {
+                cache.link(name, key);
+            } else {
+                stale.add(rom);
+            }
+        }
+        cache.retain(names);
+
+        AtomicInteger generated = new AtomicInteger();
+        pool.submit(() -> stale.parallelStream().forEach(rom -> {
+            try {
+                if (generate(rom)) {
+                    generated.incrementAndGet();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })).get();
+        return generated.get();
+    }
+
+    //Refreshes every periodMillis on a daemon thread, calling onChange after each refresh that generated previews
+    public synchronized void startBackgroundRefresh(long periodMillis, Runnable onChange) {
+        if (background != null) {
+            return;
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "chip8-previews");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                if (refresh(ForkJoinPool.commonPool()) > 0) {
+                    onChange.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | ExecutionException e) {
+                System.err.println("Could not refresh ROM previews: " + e.getMessage());
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+        background = executor;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (background != null) {
+            background.shutdownNow();
+            background = null;
+        }
+    }
+
+    private String hash(Path rom) throws IOException {
+        String stamp = Files.size(rom) + ":" + Files.getLastModifiedTime(rom).toMillis();
+        String cached = hashes.get(rom);
+        if (cached != null && cached.startsWith(stamp + "/")) {
+            return cached.substring(stamp.length() + 1);
+        }
+        String hash = RomTranslator.hash(Files.readAllBytes(rom));
+        hashes.put(rom, stamp + "/" + hash);
+        return hash;
+    }
+
+    //False for ROMs no machine can load. ROMs that only fit in XO-CHIP's 64K, or that use its instructions, are
+    //run again under it.
+    private boolean generate(Path rom) throws IOException {
+        byte[] bytes = Files.readAllBytes(rom);
+        String key = PreviewCache.key(RomTranslator.hash(bytes));
+        List<BufferedImage> animation = new ArrayList<>();
+        QuirkProfile runProfile = profile;
+        Machine machine = run(runProfile, bytes, animation);
+        if (profile != QuirkProfile.XOCHIP
+                && (machine == null || machine.getCPU().getFault() == Fault.UNKNOWN_OPCODE)) {
+            animation.clear();
+            runProfile = QuirkProfile.XOCHIP;
+            machine = run(runProfile, bytes, animation);
+        }
+        if (machine == null) {
+            return false;
+        }
+        cache.put(romName(rom), key, runProfile, render(machine.getFrameBuffer()), animation, FRAME_MILLIS);
+        return true;
+    }
+
+    private Machine run(QuirkProfile runProfile, byte[] rom, List<BufferedImage> animation) {
+        Machine machine = new Machine(runProfile);
+        try {
+            machine.load(rom);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        machine.getCPU().setRandomSeed(0);
+        for (int frame = 0; frame < frames; frame++) {
+            machine.getKeyboard().setKeyMask(input.length == 0 ? 0 : input[frame % input.length]);
+            machine.runFrame(instructionsPerFrame);
+            if (frame % ANIMATION_INTERVAL == ANIMATION_INTERVAL - 1) {
+                animation.add(render(machine.getFrameBuffer()));
+            }
+        }
+        return machine;
+    }
+
+    //Always 128x64, so lores screens come out at twice the scale of hires ones
+    static BufferedImage render(FrameBuffer frameBuffer) {
+        BufferedImage image = new BufferedImage(FrameBuffer.MAX_WIDTH, FrameBuffer.MAX_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int shift = frameBuffer.isHires() ? 0 : 1;
+        for (int y = 0; y < FrameBuffer.MAX_HEIGHT; y++) {
+            for (int x = 0; x < FrameBuffer.MAX_WIDTH; x++) {
+                raster[y * FrameBuffer.MAX_WIDTH + x] = Display.PALETTE[frameBuffer.pixelColor(x >> shift, y >> shift)];
+            }
+        }
+        return image;
+    }
+
+    static String romName(Path rom) {
+        String file = rom.getFileName().toString();
+        return file.substring(0, file.length() - ".ch8".length());
+    }
+}
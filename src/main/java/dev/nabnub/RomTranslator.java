@@ -0,0 +1,363 @@
+package dev.nabnub;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+//Build-time tool: translates the statically reachable code of a ROM into a Java class packaged in a jar
+public class RomTranslator {
+
+    public static final String PACKAGE = "dev.nabnub.translated";
+
+    private final byte[] rom;
+    private final boolean[] reachable = new boolean[Memory.MEMORY_SIZE];
+    private final boolean[] leader = new boolean[Memory.MEMORY_SIZE];
+    private final List<int[]> blocks = new ArrayList<>();
+
+    public RomTranslator(byte[] rom) {
+        if (rom.length > Memory.MEMORY_SIZE - Memory.MEMORY_START) {
+            throw new IllegalArgumentException("ROM too large: " + rom.length + " bytes");
+        }
+        this.rom = rom;
+        discover();
+        formBlocks();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: RomTranslator <rom.ch8> [output.jar]");
+            System.exit(1);
+        }
+        File romFile = new File(args[0]);
+        File jarFile = args.length > 1
+                ? new File(args[1])
+                : new File(romFile.getParentFile(), romFile.getName().replaceFirst("\\.ch8$", "") + ".jar");
+
+        RomTranslator translator = new RomTranslator(Files.readAllBytes(romFile.toPath()));
+        translator.writeJar(jarFile);
+        System.out.println("Translated " + translator.blocks.size() + " blocks into " + jarFile);
+    }
+
+    public static String hash(byte[] romBytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(romBytes);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String className(String hash) {
+        return PACKAGE + ".Rom" + hash.substring(0, 16);
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    private int opcodeAt(int address) {
+        return (rom[address - Memory.MEMORY_START] & 0xFF) << 8 | (rom[address - Memory.MEMORY_START + 1] & 0xFF);
+    }
+
+    private boolean inRom(int address) {
+        return address >= Memory.MEMORY_START && address + 1 < Memory.MEMORY_START + rom.length;
+    }
+
+    //Follows every statically known edge from the entry point; Bnnn targets are left to the interpreter
+    private void discover() {
+        Deque<Integer> work = new ArrayDeque<>();
+        work.push(Memory.MEMORY_START);
+        leader[Memory.MEMORY_START] = true;
+
+        while (!work.isEmpty()) {
+            int address = work.pop();
+            if (!inRom(address) || reachable[address]) {
+                continue;
+            }
+            reachable[address] = true;
+
+            int opcode = opcodeAt(address);
+            int nnn = opcode & 0x0FFF;
+
+            switch (opcode & 0xF000) {
+                case 0x1000:
+                    addLeader(work, nnn);
+                    break;
+                case 0x2000:
+                    addLeader(work, nnn);
+                    addLeader(work, address + 2);
+                    break;
+                case 0xB000:
+                    break;
+                default:
+                    if (opcode == 0x00EE) {
+                        break;
+                    }
+                    if (isSkip(opcode)) {
+                        addLeader(work, address + 2);
+                        addLeader(work, address + 4);
+                    } else if (endsBlock(opcode)) {
+                        addLeader(work, address + 2);
+                    } else {
+                        work.push(address + 2);
+                    }
+            }
+        }
+    }
+
+    private void addLeader(Deque<Integer> work, int address) {
+        if (address < leader.length) {
+            leader[address] = true;
+            work.push(address);
+        }
+    }
+
+    private void formBlocks() {
+        for (int start = Memory.MEMORY_START; start < leader.length; start++) {
+            if (!leader[start] || !reachable[start]) {
+                continue;
+            }
+            int address = start;
+            while (true) {
+                int opcode = opcodeAt(address);
+                address += 2;
+                if (endsBlock(opcode) || address >= leader.length || leader[address] || !reachable[address]) {
+                    break;
+                }
+            }
+            blocks.add(new int[]{start, address});
+        }
+    }
+
+    private static boolean isSkip(int opcode) {
+        switch (opcode & 0xF000) {
+            case 0x3000:
+            case 0x4000:
+            case 0x5000:
+            case 0x9000:
+                return true;
+            case 0xE000:
+                return (opcode & 0xF0FF) == 0xE09E || (opcode & 0xF0FF) == 0xE0A1;
+            default:
+                return false;
+        }
+    }
+
+    //Everything that may change pc, wait, write memory or draw ends a block
+    private static boolean endsBlock(int opcode) {
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                return opcode != 0x00E0;
+            case 0x6000:
+            case 0x7000:
+            case 0x8000:
+            case 0xA000:
+            case 0xC000:
+                return false;
+            case 0xF000:
+                switch (opcode & 0xF0FF) {
+                    case 0xF007:
+                    case 0xF015:
+                    case 0xF018:
+                    case 0xF01E:
+                    case 0xF029:
+                    case 0xF065:
+                        return false;
+                    default:
+                        return true;
+                }
+            default:
+                return true;
+        }
+    }
+
+    public String generateSource() {
+        String hash = hash(rom);
+        String name = className(hash);
+        String simpleName = name.substring(PACKAGE.length() + 1);
+
+        StringBuilder src = new StringBuilder();
+        src.append("package ").append(PACKAGE).append(";\n\n");
+        src.append("import dev.nabnub.CPU;\n");
+        src.append("import dev.nabnub.CompiledRom;\n\n");
+        src.append("public final class ").append(simpleName).append(" implements CompiledRom {\n\n");
+
+        src.append("    private static final int[] BLOCKS = {");
+        for (int i = 0; i < blocks.size(); i++) {
+            src.append(i % 8 == 0 ? "\n            " : " ");
+            src.append(hex(blocks.get(i)[0])).append(", ").append(hex(blocks.get(i)[1])).append(',');
+        }
+        src.append("\n    };\n\n");
+
+        src.append("    public String romHash() {\n        return \"").append(hash).append("\";\n    }\n\n");
+        src.append("    public int[] blocks() {\n        return BLOCKS.clone();\n    }\n\n");
+
+        src.append("    public void run(CPU cpu, int pc) {\n");
+        src.append("        int[] v = cpu.getRegisters();\n");
+        src.append("        switch (pc) {\n");
+        for (int[] block : blocks) {
+            src.append("            case ").append(hex(block[0])).append(": b").append(Integer.toHexString(block[0]))
+                    .append("(cpu, v); break;\n");
+        }
+        src.append("            default:\n");
+        src.append("        }\n");
+        src.append("    }\n");
+
+        for (int[] block : blocks) {
+            src.append("\n    private static void b").append(Integer.toHexString(block[0])).append("(CPU cpu, int[] v) {\n");
+            int address = block[0];
+            while (address < block[1]) {
+                appendInstruction(src, address, opcodeAt(address), address + 2 == block[1]);
+                address += 2;
+            }
+            src.append("    }\n");
+        }
+        src.append("}\n");
+        return src.toString();
+    }
+
+    private void appendInstruction(StringBuilder src, int address, int opcode, boolean last) {
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        int kk = opcode & 0x00FF;
+        int nnn = opcode & 0x0FFF;
+        String vx = "v[" + x + "]";
+        String vy = "v[" + y + "]";
+        String next = hex(address + 2);
+        String skip = hex(address + 4);
+
+        switch (opcode & 0xF00F) {
+            case 0x8000:
+                src.append("        ").append(vx).append(" = ").append(vy).append(";\n");
+                break;
+            case 0x8004:
+                src.append("        { int r = ").append(vx).append(" + ").append(vy).append("; ")
+                        .append(vx).append(" = r & 0xFF; v[15] = r >> 8; }\n");
+                break;
+            case 0x8005:
+                src.append("        { int c = ").append(vy).append(" > ").append(vx).append(" ? 0 : 1; ")
+                        .append(vx).append(" = (").append(vx).append(" - ").append(vy).append(") & 0xFF; v[15] = c; }\n");
+                break;
+            case 0x8007:
+                src.append("        { int c = ").append(vx).append(" > ").append(vy).append(" ? 0 : 1; ")
+                        .append(vx).append(" = (").append(vy).append(" - ").append(vx).append(") & 0xFF; v[15] = c; }\n");
+                break;
+            case 0x5000:
+                src.append("        cpu.setPC(").append(vx).append(" == ").append(vy).append(" ? ")
+                        .append(skip).append(" : ").append(next).append(");\n");
+                return;
+            case 0x9000:
+                src.append("        cpu.setPC(").append(vx).append(" != ").append(vy).append(" ? ")
+                        .append(skip).append(" : ").append(next).append(");\n");
+                return;
+            default:
+                switch (opcode & 0xF000) {
+                    case 0x1000:
+                        src.append("        cpu.setPC(").append(hex(nnn)).append(");\n");
+                        return;
+                    case 0x3000:
+                        src.append("        cpu.setPC(").append(vx).append(" == ").append(hex(kk)).append(" ? ")
+                                .append(skip).append(" : ").append(next).append(");\n");
+                        return;
+                    case 0x4000:
+                        src.append("        cpu.setPC(").append(vx).append(" != ").append(hex(kk)).append(" ? ")
+                                .append(skip).append(" : ").append(next).append(");\n");
+                        return;
+                    case 0x6000:
+                        src.append("        ").append(vx).append(" = ").append(hex(kk)).append(";\n");
+                        break;
+                    case 0x7000:
+                        src.append("        ").append(vx).append(" = (").append(vx).append(" + ").append(hex(kk))
+                                .append(") & 0xFF;\n");
+                        break;
+                    case 0xA000:
+                        src.append("        cpu.setIndex(").append(hex(nnn)).append(");\n");
+                        break;
+                    default:
+                        //Quirk-dependent and I/O instructions go through the interpreter's handlers
+                        src.append("        cpu.setPC(").append(next).append(");\n");
+                        src.append("        cpu.execute(").append(hex(opcode)).append(");\n");
+                        if (!last) {
+                            src.append("        if (cpu.isHalted()) return;\n");
+                        }
+                        return;
+                }
+        }
+        if (last) {
+            src.append("        cpu.setPC(").append(next).append(");\n");
+        }
+    }
+
+    private static String hex(int value) {
+        return "0x" + Integer.toHexString(value).toUpperCase();
+    }
+
+    public void writeJar(File jarFile) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("RomTranslator needs a JDK with javax.tools available");
+        }
+
+        String name = className(hash(rom));
+        String relative = name.replace('.', '/');
+        Path work = Files.createTempDirectory("chip8-translate");
+        try {
+            Path source = work.resolve(relative + ".java");
+            Files.createDirectories(source.getParent());
+            Files.write(source, generateSource().getBytes(StandardCharsets.UTF_8));
+
+            String classpath = classpathOf(CPU.class);
+            int result = compiler.run(null, null, null,
+                    "-nowarn", "-Xlint:-options", "--release", "11",
+                    "-cp", classpath, "-d", work.toString(), source.toString());
+            if (result != 0) {
+                throw new IOException("Compiling translated ROM failed");
+            }
+
+            try (OutputStream out = Files.newOutputStream(jarFile.toPath());
+                 JarOutputStream jar = new JarOutputStream(out)) {
+                jar.putNextEntry(new JarEntry(relative + ".class"));
+                jar.write(Files.readAllBytes(work.resolve(relative + ".class")));
+                jar.closeEntry();
+            }
+        } finally {
+            deleteRecursively(work.toFile());
+        }
+    }
+
+    private static String classpathOf(Class<?> type) throws IOException {
+        try {
+            return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
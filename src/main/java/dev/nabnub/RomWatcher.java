@@ -0,0 +1,118 @@
+package dev.nabnub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+//Development aid: watches a ROM file and hands its new contents to a callback whenever they change, so the
+//running emulator can reload it without a restart. Editors that save through a temporary file and a rename show
+//up as a create, so the whole directory is watched and filtered by name.
+public class RomWatcher implements Closeable {
+
+    private final Path rom;
+    private final Consumer<byte[]> onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+    private byte[] current;
+
+    public RomWatcher(Path rom, Consumer<byte[]> onChange) throws IOException {
+        this.rom = rom.toAbsolutePath();
+        this.onChange = onChange;
+        this.current = Files.readAllBytes(this.rom);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.rom.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "chip8-rom-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean touched = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    touched |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || rom.getFileName().equals(event.context());
+                }
+                key.reset();
+                if (touched) {
+                    check();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //Closed
+        }
+    }
+
+    //A save can show up as several events, and a truncate before the write as an empty file; only complete,
+    //different contents are passed on
+    private void check() {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(rom);
+        } catch (IOException e) {
+            //Mid-rename; the create that follows brings it back
+            return;
+        }
+        if (bytes.length == 0 || Arrays.equals(bytes, current)) {
+            return;
+        }
+        current = bytes;
+        onChange.accept(bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    //Loads updated into a running machine that was started from previous. Without keepState the machine starts
+    //the new ROM from a reset. With keepState only the bytes of the ROM image that changed are written, and
+    //registers, screen and the rest of RAM stay as they were, so the program carries on from where it was with
+    //its data intact. A fault is cleared either way, so a fixed ROM runs again.
+    static void reload(CPU cpu, Memory memory, FrameBuffer frameBuffer, byte[] previous, byte[] updated,
+                       boolean keepState) {
+        //Checked before anything is touched, so a ROM that does not fit leaves the machine running the old one
+        if (updated.length > memory.getMemory().length - Memory.MEMORY_START) {
+            throw new IllegalArgumentException("ROM too large: " + updated.length + " bytes");
+        }
+        if (!keepState) {
+            memory.reset();
+            frameBuffer.reset();
+            cpu.reset();
+            memory.loadProgram(updated);
+            return;
+        }
+        int length = Math.max(previous.length, updated.length);
+        int first = 0;
+        while (first < length && byteAt(previous, first) == byteAt(updated, first)) {
+            first++;
+        }
+        int last = length - 1;
+        while (last > first && byteAt(previous, last) == byteAt(updated, last)) {
+            last--;
+        }
+        int[] mem = memory.getMemory();
+        for (int i = first; i <= last; i++) {
+            mem[Memory.MEMORY_START + i] = byteAt(updated, i);
+        }
+        cpu.clearFault();
+    }
+
+    //Past the end of a ROM is what loading it leaves there: zero
+    private static int byteAt(byte[] rom, int i) {
+        return i < rom.length ? rom[i] & 0xFF : 0;
+    }
+}
@@ -0,0 +1,272 @@
+package dev.nabnub;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+//Many sessions, few of them in memory. A session that has sat idle for idleFrames frames (paused, halted, or
+//waiting at Fx0A with both timers run down) is written to a deflated state file in the store's directory and its
+//machine goes back to the store's free list; the next input, or anything else that needs the machine, reads it
+//back in. Beyond maxResident sessions in memory the least recently used one is hibernated whether idle or not, so
+//the heap holds at most maxResident machines in use, plus free lists capped at maxResident, whichever threads run
+//frames and deliver input.
+//
+//Hibernated sessions do not run, so the only state a session can lose track of is wall-clock time, which idle
+//sessions do not use: the timers have to reach zero before one counts as idle.
+public class SessionStore {
+
+    private static final int MAGIC = 0x53533843;        //"C8SS" little-endian, as in RomCorpus
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".c8s";
+
+    private final Path directory;
+    private final int maxResident;
+    private final int idleFrames;
+    private final Map<QuirkProfile, ArrayDeque<Machine>> free = new EnumMap<>(QuirkProfile.class);
+    //Resident sessions, least recently used first
+    private final LinkedHashMap<Long, Session> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Session> sessions = new LinkedHashMap<>();
+    private long nextId;
+
+    private long hibernations;
+    private long rehydrations;
+
+    public SessionStore(Path directory, int maxResident, int idleFrames) throws IOException {
+        if (maxResident < 1) {
+            throw new IllegalArgumentException("At least one session must fit in memory: " + maxResident);
+        }
+        this.directory = directory;
+        this.maxResident = maxResident;
+        this.idleFrames = idleFrames;
+        Files.createDirectories(directory);
+    }
+
+    //A new session running rom; it starts resident and may push the least recently used one out
+    public synchronized Session open(QuirkProfile profile, byte[] rom, int instructionsPerFrame) {
+        Session session = new Session(nextId++, profile, instructionsPerFrame);
+        session.machine = acquire(profile);
+        session.machine.load(rom);
+        sessions.put(session.id, session);
+        admit(session);
+        return session;
+    }
+
+    public synchronized Session get(long id) {
+        return sessions.get(id);
+    }
+
+    //Runs a frame of every resident session that is not paused, then hibernates those that have been idle long
+    //enough. Hibernated sessions are skipped; they are idle by definition.
+    public synchronized void runFrame() {
+        List<Session> idle = null;
+        for (Session session : resident.values()) {
+            Machine machine = session.machine;
+            if (!session.paused && !machine.getCPU().isHalted()) {
+                machine.runFrame(session.instructionsPerFrame);
+            }
+            CPU cpu = machine.getCPU();
+            boolean waiting = session.paused || cpu.isHalted()
+                    || cpu.isWaitingForKey() && cpu.getDelayTimer() == 0 && cpu.getSound().getTimer() == 0;
+            session.idleFrames = waiting ? session.idleFrames + 1 : 0;
+            if (session.idleFrames >= idleFrames) {
+                if (idle == null) {
+                    idle = new ArrayList<>();
+                }
+                idle.add(session);
+            }
+        }
+        if (idle != null) {
+            for (Session session : idle) {
+                hibernate(session);
+            }
+        }
+    }
+
+    public synchronized void close(Session session) throws IOException {
+        if (session.machine != null) {
+            resident.remove(session.id);
+            release(session.profile, session.machine);
+            session.machine = null;
+        }
+        sessions.remove(session.id);
+        Files.deleteIfExists(file(session));
+    }
+
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
+
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    public synchronized long getHibernations() {
+        return hibernations;
+    }
+
+    public synchronized long getRehydrations() {
+        return rehydrations;
+    }
+
+    //Pooled machines may have been set up by another session's owner, so their configuration is cleared
+    private Machine acquire(QuirkProfile profile) {
+        Machine machine = free.computeIfAbsent(profile, p -> new ArrayDeque<>()).pollLast();
+        if (machine == null) {
+            return new Machine(profile);
+        }
+        machine.resetConfiguration();
+        return machine;
+    }
+
+    private void release(QuirkProfile profile, Machine machine) {
+        ArrayDeque<Machine> machines = free.computeIfAbsent(profile, p -> new ArrayDeque<>());
+        if (machines.size() < maxResident) {
+            machines.addLast(machine);
+        }
+    }
+
+    private Path file(Session session) {
+        return directory.resolve(session.id + SUFFIX);
+    }
+
+    //Makes session the most recently used, then evicts down to the cap
+    private void admit(Session session) {
+        resident.put(session.id, session);
+        Iterator<Session> eldest = resident.values().iterator();
+        while (resident.size() > maxResident) {
+            Session evicted = eldest.next();
+            eldest.remove();
+            write(evicted);
+        }
+    }
+
+    private void hibernate(Session session) {
+        resident.remove(session.id);
+        write(session);
+    }
+
+    //Written to a temporary file and moved into place, so a crash never leaves a half-written state behind
+    private void write(Session session) {
+        Path file = file(session);
+        try {
+            Path temp = directory.resolve(session.id + SUFFIX + ".tmp");
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(Files.newOutputStream(temp), deflater)))) {
+                out.writeInt(Integer.reverseBytes(MAGIC));
+                out.writeByte(VERSION);
+                session.machine.writeState(out);
+            } finally {
+                deflater.end();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            //Stays resident rather than losing its state, over the cap until the disk recovers
+            resident.put(session.id, session);
+            throw new UncheckedIOException("Could not hibernate session " + session.id + " to " + file, e);
+        }
+        release(session.profile, session.machine);
+        session.machine = null;
+        session.idleFrames = 0;
+        hibernations++;
+    }
+
+    private synchronized Machine machine(Session session) {
+        if (session.machine != null) {
+            resident.get(session.id);
+            return session.machine;
+        }
+        if (!sessions.containsKey(session.id)) {
+            throw new IllegalStateException("Session " + session.id + " is closed");
+        }
+        Path file = file(session);
+        Machine machine = acquire(session.profile);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(Files.newInputStream(file))))) {
+            if (Integer.reverseBytes(in.readInt()) != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw new IOException("Not a session state file");
+            }
+            machine.readState(in);
+        } catch (IOException e) {
+            release(session.profile, machine);
+            throw new UncheckedIOException("Could not rehydrate session " + session.id + " from " + file, e);
+        }
+        session.machine = machine;
+        rehydrations++;
+        admit(session);
+        return machine;
+    }
+
+    //A handle that stays valid while its session moves between memory and disk
+    public final class Session {
+
+        private final long id;
+        private final QuirkProfile profile;
+        private final int instructionsPerFrame;
+        private Machine machine;                  //Null while hibernated
+        private boolean paused;
+        private int idleFrames;
+
+        private Session(long id, QuirkProfile profile, int instructionsPerFrame) {
+            this.id = id;
+            this.profile = profile;
+            this.instructionsPerFrame = instructionsPerFrame;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        //The keypad from now on; wakes the session if it was hibernated
+        public void setKeys(int mask) {
+            synchronized (SessionStore.this) {
+                machine(this).getKeyboard().setKeyMask(mask);
+                idleFrames = 0;
+            }
+        }
+
+        //Paused sessions do not run, and hibernate once idle; resuming wakes them
+        public void setPaused(boolean paused) {
+            synchronized (SessionStore.this) {
+                if (!paused) {
+                    machine(this);
+                }
+                this.paused = paused;
+                idleFrames = 0;
+            }
+        }
+
+        public boolean isPaused() {
+            synchronized (SessionStore.this) {
+                return paused;
+            }
+        }
+
+        public boolean isResident() {
+            synchronized (SessionStore.this) {
+                return machine != null;
+            }
+        }
+
+        //The machine, read back in first if hibernated. Only valid until the store next hibernates this session.
+        public Machine getMachine() {
+            return machine(this);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package dev.nabnub;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+//Sound timer plus the XO-CHIP audio pattern buffer: 128 one-bit samples played back at a pitch-dependent rate
+public class Sound {
+
+    public static final int PATTERN_BYTES = 16;
+
+    //Square wave used until a ROM loads its own pattern with F002
+    private static final int[] DEFAULT_PATTERN = {
+            0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF,
+            0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+
+    private final int[] pattern = new int[PATTERN_BYTES];
+    private int pitch;
+    private int timer;
+    private double phase;                         //Position in the pattern, in samples
+
+    public Sound() {
+        reset();
+    }
+
+    public void reset() {
+        System.arraycopy(DEFAULT_PATTERN, 0, pattern, 0, PATTERN_BYTES);
+        pitch = 64;
+        timer = 0;
+        phase = 0;
+    }
+
+    public void copyFrom(Sound other) {
+        System.arraycopy(other.pattern, 0, pattern, 0, PATTERN_BYTES);
+        pitch = other.pitch;
+        timer = other.timer;
+        phase = other.phase;
+    }
+
+    void writeState(DataOutput out) throws IOException {
+        for (int b : pattern) {
+            out.writeByte(b);
+        }
+        out.writeByte(pitch);
+        out.writeByte(timer);
+        out.writeDouble(phase);
+    }
+
+    void readState(DataInput in) throws IOException {
+        for (int i = 0; i < PATTERN_BYTES; i++) {
+            pattern[i] = in.readUnsignedByte();
+        }
+        pitch = in.readUnsignedByte();
+        timer = in.readUnsignedByte();
+        phase = in.readDouble();
+    }
+
+    public void tick() {
+        if (timer > 0) {
+            timer--;
+        }
+    }
+
+    public boolean isPlaying() {
+        return timer > 0;
+    }
+
+    public int getTimer() {
+        return timer;
+    }
+
+    public void setTimer(int timer) {
+        this.timer = timer;
+    }
+
+    public int getPitch() {
+        return pitch;
+    }
+
+    public void setPitch(int pitch) {
+        this.pitch = pitch;
+    }
+
+    public int[] getPattern() {
+        return pattern;
+    }
+
+    public void loadPattern(int[] memory, int address) {
+        for (int i = 0; i < PATTERN_BYTES; i++) {
+            pattern[i] = memory[address + i] & 0xFF;
+        }
+    }
+
+    //Pattern bits played per second: 4000 * 2^((pitch - 64) / 48)
+    public double getPlaybackRate() {
+        return 4000 * Math.pow(2, (pitch - 64) / 48.0);
+    }
+
+    //Renders unsigned 8-bit PCM at sampleRate into buffer; silence while the timer is zero
+    public void render(byte[] buffer, int offset, int length, int sampleRate) {
+        if (!isPlaying()) {
+            for (int i = 0; i < length; i++) {
+                buffer[offset + i] = (byte) 0x80;
+            }
+            return;
+        }
+        double step = getPlaybackRate() / sampleRate;
+        for (int i = 0; i < length; i++) {
+            int bit = (int) phase;
+            boolean on = (pattern[bit >> 3] & (0x80 >> (bit & 7))) != 0;
+            buffer[offset + i] = (byte) (on ? 0xC0 : 0x40);
+            phase += step;
+            if (phase >= PATTERN_BYTES * 8) {
+                phase -= PATTERN_BYTES * 8;
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package dev.nabnub;
+
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.spi.ToolProvider;
+import java.util.stream.Stream;
+
+//Builds a startup image for the emulator and measures time to first frame. The image is the emulator's jar, a
+//runtime trimmed by jlink to the modules the jar uses, and an AppCDS archive trained by running the emulator, so
+//a launch maps its classes in ready-parsed instead of loading them from the jar one by one.
+//
+//    StartupBenchmark [--classes=DIR] [--output=DIR] [--runs=N] [--target-headless=MS] [--target-gui=MS]
+//
+//Launching target/startup/runtime/bin/java -XX:SharedArchiveFile=target/startup/chip8.jsa -jar
+//target/startup/chip8.jar runs the emulator from the image. mvn test -Pstartup builds it and runs the check.
+public class StartupBenchmark {
+
+    //Main prints this once the first frame is out when run with --startup-probe
+    public static final String FIRST_FRAME = "chip8: first frame";
+
+    static final Path DEFAULT_CLASSES = Paths.get("target", "classes");
+    static final Path DEFAULT_OUTPUT = Paths.get("target", "startup");
+    static final int DEFAULT_RUNS = 5;
+
+    //Frames each training run emulates, long enough to reach every class a session loads
+    private static final int TRAINING_FRAMES = 120;
+
+    private final Path output;
+
+    public StartupBenchmark(Path output) {
+        this.output = output;
+    }
+
+    public Path getJar() {
+        return output.resolve("chip8.jar");
+    }
+
+    public Path getRuntime() {
+        return output.resolve("runtime");
+    }
+
+    public Path getArchive() {
+        return output.resolve("chip8.jsa");
+    }
+
+    //Jar, runtime image and archive from scratch; the archive is trained headless, and in a window too when
+    //there is a display to open one on
+    public void build(Path classes) throws IOException, InterruptedException {
+        deleteRecursively(output);
+        Files.createDirectories(output);
+        tool("jar", "--create", "--file", getJar().toString(), "--main-class", Main.class.getName(),
+                "-C", classes.toString(), ".");
+        String modules = tool("jdeps", "--print-module-deps", "--ignore-missing-deps", getJar().toString()).trim();
+        tool("jlink", "--add-modules", modules, "--strip-debug", "--no-header-files", "--no-man-pages",
+                "--output", getRuntime().toString());
+
+        //A trimmed runtime comes without the JDK's own class archive; dump one for the dynamic archive to build on
+        Path java = getRuntime().resolve("bin").resolve("java");
+        run(command(java, "-Xshare:dump"));
+        run(command(java, "-XX:ArchiveClassesAtExit=" + getArchive(), "-jar", getJar().toString(),
+                "--headless", "--frames=" + TRAINING_FRAMES));
+        if (!GraphicsEnvironment.isHeadless()) {
+            //The window's classes go in a second layer over the first, so the archive covers both paths
+            Path headless = output.resolve("chip8-headless.jsa");
+            Files.move(getArchive(), headless);
+            run(command(java, "-XX:SharedArchiveFile=" + headless, "-XX:ArchiveClassesAtExit=" + getArchive(),
+                    "-jar", getJar().toString(), "--startup-probe"));
+            Files.delete(headless);
+        }
+    }
+
+    //Launches from the image
+    public List<String> imageCommand(String... args) {
+        List<String> command = command(getRuntime().resolve("bin").resolve("java"),
+                "-XX:SharedArchiveFile=" + getArchive(), "-jar", getJar().toString());
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    //Launches the way a plain build does, on the running JDK straight from the class directory
+    public static List<String> plainCommand(Path classes, String... args) {
+        List<String> command = command(Paths.get(System.getProperty("java.home"), "bin", "java"),
+                "-cp", classes.toString(), Main.class.getName());
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    //Milliseconds from launching command to it printing FIRST_FRAME; --startup-probe is added to the command
+    public static double timeToFirstFrame(List<String> command) throws IOException, InterruptedException {
+        List<String> probe = new ArrayList<>(command);
+        probe.add("--startup-probe");
+        ProcessBuilder builder = new ProcessBuilder(probe).redirectErrorStream(true);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        StringBuilder log = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals(FIRST_FRAME)) {
+                    double millis = (System.nanoTime() - start) / 1e6;
+                    process.waitFor();
+                    return millis;
+                }
+                log.append(line).append('\n');
+            }
+        }
+        throw new IOException("No first frame from " + String.join(" ", probe) + " (exit " + process.waitFor()
+                + ")\n" + log);
+    }
+
+    //Median of runs launches
+    public static double medianTimeToFirstFrame(List<String> command, int runs)
+            throws IOException, InterruptedException {
+        double[] times = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            times[i] = timeToFirstFrame(command);
+        }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+
+    private static List<String> command(Path java, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(java.toString());
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    private static void run(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        int exit = process.waitFor();
+        if (exit != 0) {
+            throw new IOException("Failed (exit " + exit + "): " + String.join(" ", command));
+        }
+    }
+
+    //Runs a JDK tool in this JVM and returns what it printed
+    private static String tool(String name, String... args) throws IOException {
+        ToolProvider tool = ToolProvider.findFirst(name)
+                .orElseThrow(() -> new IOException(name + " is not available in this JDK"));
+        StringWriter out = new StringWriter();
+        StringWriter err = new StringWriter();
+        int exit = tool.run(new PrintWriter(out), new PrintWriter(err), args);
+        if (exit != 0) {
+            throw new IOException(name + " failed (exit " + exit + "): " + out + err);
+        }
+        return out.toString();
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    //One line per mode slower than its target; a target of 0 or less is not checked
+    static List<String> missed(String mode, double millis, double target) {
+        List<String> missed = new ArrayList<>();
+        if (target > 0 && millis > target) {
+            missed.add(String.format("%s: first frame after %.0f ms, target %.0f ms", mode, millis, target));
+        }
+        return missed;
+    }
+
+    //Builds the image, then measures plain launches against image launches in each mode it can run; returns the
+    //modes that missed their targets
+    static List<String> check(Path classes, Path output, int runs, double targetHeadless, double targetGui)
+            throws IOException, InterruptedException {
+        StartupBenchmark benchmark = new StartupBenchmark(output);
+        benchmark.build(classes);
+
+        List<String> missed = new ArrayList<>();
+        double plain = medianTimeToFirstFrame(plainCommand(classes, "--headless"), runs);
+        double image = medianTimeToFirstFrame(benchmark.imageCommand("--headless"), runs);
+        System.out.printf("%-10s %8.0f ms plain %8.0f ms image%n", "headless", plain, image);
+        missed.addAll(missed("headless", image, targetHeadless));
+        if (GraphicsEnvironment.isHeadless()) {
+            System.out.println("No display, GUI startup not measured");
+            return missed;
+        }
+        plain = medianTimeToFirstFrame(plainCommand(classes), runs);
+        image = medianTimeToFirstFrame(benchmark.imageCommand(), runs);
+        System.out.printf("%-10s %8.0f ms plain %8.0f ms image%n", "gui", plain, image);
+        missed.addAll(missed("gui", image, targetGui));
+        return missed;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path classes = DEFAULT_CLASSES;
+        Path output = DEFAULT_OUTPUT;
+        int runs = DEFAULT_RUNS;
+        double targetHeadless = 0;
+        double targetGui = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--classes=")) {
+                classes = Paths.get(arg.substring(10));
+            } else if (arg.startsWith("--output=")) {
+                output = Paths.get(arg.substring(9));
+            } else if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("--target-headless=")) {
+                targetHeadless = Double.parseDouble(arg.substring(18));
+            } else if (arg.startsWith("--target-gui=")) {
+                targetGui = Double.parseDouble(arg.substring(13));
+            }
+        }
+
+        List<String> missed = check(classes, output, runs, targetHeadless, targetGui);
+        if (!missed.isEmpty()) {
+            missed.forEach(System.out::println);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package dev.nabnub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//Mirrors the machine into a memory-mapped file once per frame, so other processes can watch it without a
+//socket in between. All values are little-endian:
+//     0  u32 magic "C8SX", u32 version
+//     8  u64 sequence, odd while a frame is being written
+//    16  u64 frame number
+//    24  u32 memory size, u8 flags (halted, fault, sound, hires), u8 fault, u8 plane mask
+//    32  V0-VF, u16 I, u16 PC, u8 SP, u8 delay timer, u8 sound timer, 16 x u16 stack
+//   128  4 planes of 64 rows x 2 u64, leftmost pixel in the top bit
+//  4224  memory
+//The sequence makes it a seqlock: the writer never waits, and a reader copies everything between two reads
+//of an equal, even sequence, retrying when they differ. StateExportReader is an example reader.
+public class StateExport implements Closeable {
+
+    static final int MAGIC = 0x58533843;
+    static final int VERSION = 1;
+
+    static final int SEQUENCE = 8;
+    static final int FRAME = 16;
+    static final int MEMORY_SIZE = 24;
+    static final int FLAGS = 28;
+    static final int FAULT = 29;
+    static final int PLANE_MASK = 30;
+    static final int REGISTERS = 32;
+    static final int PLANES = 128;
+    static final int PLANE_BYTES = FrameBuffer.MAX_HEIGHT * FrameBuffer.WORDS_PER_ROW * 8;
+    static final int MEMORY = PLANES + FrameBuffer.PLANES * PLANE_BYTES;
+
+    public static final int FLAG_HALTED = 1;
+    public static final int FLAG_FAULT = 2;
+    public static final int FLAG_SOUND = 4;
+    public static final int FLAG_HIRES = 8;
+
+    //Ordered access to the sequence word; plain puts are enough for everything it guards
+    static final VarHandle SEQUENCE_WORD = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final LongBuffer planes;
+    private final int memorySize;
+    private long sequence;
+    private long frame;
+
+    public StateExport(Path file, QuirkProfile profile) throws IOException {
+        this.memorySize = profile.memorySize();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, MEMORY + memorySize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.planes = buffer.duplicate().position(PLANES).slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(MEMORY_SIZE, memorySize);
+    }
+
+    //Call between frames on the emulation thread
+    public void publish(CPU cpu, Memory memory, FrameBuffer frameBuffer) {
+        long next = sequence + 1;
+        SEQUENCE_WORD.setOpaque(buffer, SEQUENCE, next);
+        VarHandle.storeStoreFence();
+
+        buffer.putLong(FRAME, ++frame);
+        int flags = (cpu.isHalted() ? FLAG_HALTED : 0)
+                | (cpu.getFault() != Fault.NONE ? FLAG_FAULT : 0)
+                | (cpu.getSound().isPlaying() ? FLAG_SOUND : 0)
+                | (frameBuffer.isHires() ? FLAG_HIRES : 0);
+        buffer.put(FLAGS, (byte) flags);
+        buffer.put(FAULT, (byte) cpu.getFault().ordinal());
+        buffer.put(PLANE_MASK, (byte) frameBuffer.getPlaneMask());
+        cpu.exportState(buffer, REGISTERS);
+
+        planes.clear();
+        for (int p = 0; p < FrameBuffer.PLANES; p++) {
+            planes.put(frameBuffer.getPlane(p));
+        }
+        int[] ram = memory.getMemory();
+        for (int i = 0; i < memorySize; i++) {
+            buffer.put(MEMORY + i, (byte) ram[i]);
+        }
+
+        sequence = next + 1;
+        SEQUENCE_WORD.setRelease(buffer, SEQUENCE, sequence);
+    }
+
+    public void publish(Machine machine) {
+        publish(machine.getCPU(), machine.getMemory(), machine.getFrameBuffer());
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    //The mapping itself stays valid until it is garbage collected
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
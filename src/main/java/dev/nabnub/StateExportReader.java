@@ -0,0 +1,178 @@
+package dev.nabnub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+//Example reader for a StateExport file, usable from another process. snapshot() copies one consistent frame
+//into this reader's own arrays, which the getters then read.
+public class StateExportReader implements Closeable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer headerView;
+    private final ByteBuffer memoryView;
+    private final LongBuffer planesView;
+
+    private final ByteBuffer header = ByteBuffer.allocate(StateExport.PLANES).order(ByteOrder.LITTLE_ENDIAN);
+    private final long[][] planes = new long[FrameBuffer.PLANES][FrameBuffer.MAX_HEIGHT * FrameBuffer.WORDS_PER_ROW];
+    private final byte[] memory;
+    private long retries;
+
+    public StateExportReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < StateExport.MEMORY || buffer.getInt(0) != StateExport.MAGIC) {
+            throw new IOException(file + " is not a state export");
+        }
+        if (buffer.getInt(4) != StateExport.VERSION) {
+            throw new IOException("Unsupported state export version " + buffer.getInt(4));
+        }
+        this.memory = new byte[buffer.getInt(StateExport.MEMORY_SIZE)];
+        this.headerView = buffer.duplicate().limit(StateExport.PLANES).slice();
+        this.memoryView = buffer.duplicate().position(StateExport.MEMORY).slice();
+        this.planesView = buffer.duplicate().position(StateExport.PLANES).slice()
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+
+    //Copies the latest frame, retrying while the writer is in the middle of one. False if none was published yet.
+    public boolean snapshot() {
+        while (true) {
+            long before = (long) StateExport.SEQUENCE_WORD.getAcquire(buffer, StateExport.SEQUENCE);
+            if (before == 0) {
+                return false;
+            }
+            if ((before & 1) == 0) {
+                header.clear();
+                headerView.clear();
+                header.put(headerView);
+                planesView.clear();
+                for (long[] plane : planes) {
+                    planesView.get(plane);
+                }
+                memoryView.clear();
+                memoryView.get(memory);
+
+                VarHandle.loadLoadFence();
+                long after = (long) StateExport.SEQUENCE_WORD.getOpaque(buffer, StateExport.SEQUENCE);
+                if (after == before) {
+                    return true;
+                }
+            }
+            retries++;
+            Thread.onSpinWait();
+        }
+    }
+
+    public long getFrame() {
+        return header.getLong(StateExport.FRAME);
+    }
+
+    public int getFlags() {
+        return header.get(StateExport.FLAGS) & 0xFF;
+    }
+
+    public Fault getFault() {
+        return Fault.values()[header.get(StateExport.FAULT)];
+    }
+
+    public int getRegister(int x) {
+        return header.get(StateExport.REGISTERS + x) & 0xFF;
+    }
+
+    public int getIndex() {
+        return header.getShort(StateExport.REGISTERS + 16) & 0xFFFF;
+    }
+
+    public int getPC() {
+        return header.getShort(StateExport.REGISTERS + 18) & 0xFFFF;
+    }
+
+    public int getSp() {
+        return header.get(StateExport.REGISTERS + 20) & 0xFF;
+    }
+
+    public int getDelayTimer() {
+        return header.get(StateExport.REGISTERS + 21) & 0xFF;
+    }
+
+    public int getSoundTimer() {
+        return header.get(StateExport.REGISTERS + 22) & 0xFF;
+    }
+
+    public int getStack(int i) {
+        return header.getShort(StateExport.REGISTERS + 24 + i * 2) & 0xFFFF;
+    }
+
+    public int getMemory(int address) {
+        return memory[address] & 0xFF;
+    }
+
+    public boolean isPixelOn(int x, int y) {
+        int word = y * FrameBuffer.WORDS_PER_ROW + (x >> 6);
+        long bit = 1L << (63 - (x & 63));
+        for (long[] plane : planes) {
+            if ((plane[word] & bit) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Snapshots that had to be retried because the writer was busy
+    public long getRetries() {
+        return retries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //Prints registers and the given memory bytes for each new frame, count frames in all (0 runs forever)
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: StateExportReader <file> [count] [address...]");
+            System.exit(1);
+        }
+        long count = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int[] addresses = new int[Math.max(0, args.length - 2)];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = Integer.parseInt(args[i + 2], 16);
+        }
+
+        try (StateExportReader reader = new StateExportReader(Paths.get(args[0]))) {
+            long printed = 0;
+            long lastFrame = -1;
+            while (count == 0 || printed < count) {
+                if (!reader.snapshot() || reader.getFrame() == lastFrame) {
+                    LockSupport.parkNanos(100_000);
+                    continue;
+                }
+                lastFrame = reader.getFrame();
+                StringBuilder sb = new StringBuilder();
+                sb.append(String.format("frame %d  PC=%04X I=%04X SP=%X ", lastFrame, reader.getPC(),
+                        reader.getIndex(), reader.getSp()));
+                for (int r = 0; r < 16; r++) {
+                    sb.append(String.format(" V%X=%02X", r, reader.getRegister(r)));
+                }
+                for (int address : addresses) {
+                    sb.append(String.format("  %04X=%02X", address, reader.getMemory(address)));
+                }
+                System.out.println(sb);
+                printed++;
+            }
+            System.out.println("retries " + reader.getRetries());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package dev.nabnub;
+
+//64-bit hashing of machine state, used to spot states that have been seen before
+final class StateHash {
+
+    static final long SEED = 0x6A09E667F3BCC909L;
+
+    private StateHash() {
+    }
+
+    static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    static long mix(long hash, int[] values) {
+        for (int value : values) {
+            hash = mix(hash, value);
+        }
+        return hash;
+    }
+
+    //Final avalanche from MurmurHash3
+    static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,230 @@
+package dev.nabnub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+//Searches for an input movie that drives a ROM into a goal state. Every step holds one key mask for a fixed
+//number of frames; children are forked from pooled machine copies, states already seen (by 64-bit hash) are
+//dropped, and each batch of frontier nodes is expanded in parallel on the given ForkJoinPool.
+public class StateSearch {
+
+    public enum Strategy { BREADTH_FIRST, BEST_FIRST }
+
+    private static final int NO_KEYS = 0;
+
+    private final QuirkProfile profile;
+    private final byte[] rom;
+    private final int instructionsPerFrame;
+    private final int framesPerStep;
+    private final MachinePool machines;
+
+    private int[] inputs;
+    private Strategy strategy = Strategy.BREADTH_FIRST;
+    private ToIntFunction<Machine> score = machine -> 0;
+    private int maxSteps = 64;
+    private int maxStates = 100_000;
+
+    public StateSearch(QuirkProfile profile, byte[] rom, int instructionsPerFrame, int framesPerStep) {
+        this.profile = profile;
+        this.rom = rom.clone();
+        this.instructionsPerFrame = instructionsPerFrame;
+        this.framesPerStep = framesPerStep;
+        this.machines = new MachinePool(profile);
+
+        //No keys plus each key on its own
+        this.inputs = new int[17];
+        for (int key = 0; key < 16; key++) {
+            inputs[key + 1] = 1 << key;
+        }
+    }
+
+    public void setInputs(int... keyMasks) {
+        this.inputs = keyMasks.clone();
+    }
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    //Best-first expands the highest scoring states first
+    public void setScore(ToIntFunction<Machine> score) {
+        this.score = score;
+    }
+
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    //Bounds the number of distinct states kept, and with it the number of live machines
+    public void setMaxStates(int maxStates) {
+        this.maxStates = maxStates;
+    }
+
+    public Result search(Predicate<Machine> goal, ForkJoinPool pool) throws InterruptedException, ExecutionException {
+        Set<Long> visited = ConcurrentHashMap.newKeySet();
+        AtomicReference<Node> found = new AtomicReference<>();
+
+        Machine start = machines.acquire();
+        start.load(rom);
+        start.getCPU().setRandomSeed(0);
+        Node root = new Node(start, null, NO_KEYS, 0, score.applyAsInt(start));
+        visited.add(start.stateHash());
+        if (goal.test(start)) {
+            return new Result(root, visited.size());
+        }
+
+        Comparator<Node> order = strategy == Strategy.BEST_FIRST
+                ? Comparator.<Node>comparingInt(node -> -node.score).thenComparingInt(node -> node.depth)
+                : Comparator.comparingInt(node -> node.depth);
+        PriorityQueue<Node> frontier = new PriorityQueue<>(order);
+        frontier.add(root);
+        int batchSize = strategy == Strategy.BEST_FIRST ? pool.getParallelism() * 4 : Integer.MAX_VALUE;
+
+        while (!frontier.isEmpty() && found.get() == null && visited.size() < maxStates) {
+            //Breadth-first takes a whole level at once, best-first a few of the most promising nodes
+            List<Node> batch = new ArrayList<>();
+            int depth = frontier.peek().depth;
+            while (!frontier.isEmpty() && batch.size() < batchSize
+                    && (strategy == Strategy.BEST_FIRST || frontier.peek().depth == depth)) {
+                batch.add(frontier.poll());
+            }
+
+            List<Node> children = pool.submit(() -> batch.parallelStream()
+                    .flatMap(node -> expand(node, goal, visited, found).stream())
+                    .collect(Collectors.toList())).get();
+            frontier.addAll(children);
+        }
+
+        for (Node node : frontier) {
+            machines.release(node.machine);
+        }
+        Node goalNode = found.get();
+        return new Result(goalNode, visited.size());
+    }
+
+    private List<Node> expand(Node node, Predicate<Machine> goal, Set<Long> visited, AtomicReference<Node> found) {
+        List<Node> children = new ArrayList<>(inputs.length);
+        if (node.depth < maxSteps) {
+            for (int input : inputs) {
+                if (found.get() != null || visited.size() >= maxStates) {
+                    break;
+                }
+                Machine child = machines.copyOf(node.machine);
+                child.getKeyboard().setKeyMask(input);
+                for (int frame = 0; frame < framesPerStep; frame++) {
+                    child.runFrame(instructionsPerFrame);
+                }
+
+                if (child.getCPU().getFault() != Fault.NONE || !visited.add(child.stateHash())) {
+                    machines.release(child);
+                    continue;
+                }
+                Node childNode = new Node(child, node, input, node.depth + 1, score.applyAsInt(child));
+                if (goal.test(child) && found.compareAndSet(null, childNode)) {
+                    continue;
+                }
+                children.add(childNode);
+            }
+        }
+        //Only the inputs of expanded nodes are needed from here on, to rebuild the movie
+        machines.release(node.machine);
+        return children;
+    }
+
+    //Replays a movie from power on, returning the machine in its final state
+    public Machine replay(int[] movie) {
+        Machine machine = new Machine(profile);
+        machine.load(rom);
+        machine.getCPU().setRandomSeed(0);
+        for (int input : movie) {
+            machine.getKeyboard().setKeyMask(input);
+            for (int frame = 0; frame < framesPerStep; frame++) {
+                machine.runFrame(instructionsPerFrame);
+            }
+        }
+        return machine;
+    }
+
+    public static Predicate<Machine> memoryEquals(int address, int value) {
+        return machine -> machine.getMemory().getMemory()[address] == value;
+    }
+
+    public static Predicate<Machine> memoryAtLeast(int address, int value) {
+        return machine -> machine.getMemory().getMemory()[address] >= value;
+    }
+
+    public static Predicate<Machine> screenMatches(boolean[][] pixels) {
+        return machine -> Arrays.deepEquals(machine.getFrameBuffer().toPixels(), pixels);
+    }
+
+    public static ToIntFunction<Machine> memoryValue(int address) {
+        return machine -> machine.getMemory().getMemory()[address];
+    }
+
+    private static final class Node {
+        private final Machine machine;
+        private final Node parent;
+        private final int input;
+        private final int depth;
+        private final int score;
+
+        Node(Machine machine, Node parent, int input, int depth, int score) {
+            this.machine = machine;
+            this.parent = parent;
+            this.input = input;
+            this.depth = depth;
+            this.score = score;
+        }
+    }
+
+    public static final class Result {
+        private final int[] movie;
+        private final Machine machine;
+        private final int statesVisited;
+
+        Result(Node goal, int statesVisited) {
+            this.statesVisited = statesVisited;
+            if (goal == null) {
+                this.movie = null;
+                this.machine = null;
+                return;
+            }
+            List<Integer> steps = new ArrayList<>();
+            for (Node node = goal; node.parent != null; node = node.parent) {
+                steps.add(node.input);
+            }
+            Collections.reverse(steps);
+            this.movie = steps.stream().mapToInt(Integer::intValue).toArray();
+            this.machine = goal.machine;
+        }
+
+        public boolean isFound() {
+            return movie != null;
+        }
+
+        //Key mask held for each step, or null when no goal state was reached
+        public int[] getMovie() {
+            return movie == null ? null : movie.clone();
+        }
+
+        public Machine getMachine() {
+            return machine;
+        }
+
+        public int getStatesVisited() {
+            return statesVisited;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package dev.nabnub;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+//Blocking client for StepServer. Request and response buffers are reused, and the accessors read the
+//records of the last STEP response in place.
+public class StepClient implements Closeable {
+
+    private final SocketChannel channel;
+    private ByteBuffer request = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer response = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    private int environments;
+    private int screenWidth;
+    private int screenHeight;
+    private int planes;
+    private int recordSize;
+
+    public StepClient(int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    public void configure(QuirkProfile profile, int instructionsPerFrame, int environments, byte[] rom,
+                          int... ramAddresses) throws IOException {
+        ByteBuffer out = begin(StepServer.OP_CONFIGURE, 7 + ramAddresses.length * 2 + rom.length);
+        out.put((byte) profile.ordinal());
+        out.putShort((short) instructionsPerFrame);
+        out.putShort((short) environments);
+        out.putShort((short) ramAddresses.length);
+        for (int address : ramAddresses) {
+            out.putShort((short) address);
+        }
+        out.put(rom);
+        ByteBuffer in = exchange();
+        this.environments = in.getShort() & 0xFFFF;
+        this.screenWidth = in.getShort() & 0xFFFF;
+        this.screenHeight = in.getShort() & 0xFFFF;
+        this.planes = in.get() & 0xFF;
+        this.recordSize = in.getInt();
+    }
+
+    public void reset(int... ids) throws IOException {
+        ByteBuffer out = begin(StepServer.OP_RESET, 2 + ids.length * 2);
+        out.putShort((short) ids.length);
+        for (int id : ids) {
+            out.putShort((short) id);
+        }
+        exchange();
+    }
+
+    //Runs environment ids[i] with keyMasks[i] held for the given number of frames; the records come back in order
+    public void step(int frames, int[] ids, int[] keyMasks, int count) throws IOException {
+        ByteBuffer out = begin(StepServer.OP_STEP, 4 + count * 4);
+        out.putShort((short) frames);
+        out.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            out.putShort((short) ids[i]);
+            out.putShort((short) keyMasks[i]);
+        }
+        exchange();
+    }
+
+    private ByteBuffer begin(int opcode, int payloadSize) {
+        int needed = 5 + payloadSize;
+        if (request.capacity() < needed) {
+            request = ByteBuffer.allocate(needed).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        request.clear();
+        request.putInt(1 + payloadSize);
+        request.put((byte) opcode);
+        return request;
+    }
+
+    //Sends the pending request and leaves the response payload between position and limit
+    private ByteBuffer exchange() throws IOException {
+        request.flip();
+        while (request.hasRemaining()) {
+            channel.write(request);
+        }
+
+        response.clear().limit(4);
+        readFully(response);
+        int length = response.getInt(0);
+        if (response.capacity() < 4 + length) {
+            response = ByteBuffer.allocate(4 + length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        response.clear().limit(4 + length).position(4);
+        readFully(response);
+        response.position(4);
+
+        if (response.get() != StepServer.STATUS_OK) {
+            byte[] message = new byte[response.remaining()];
+            response.get(message);
+            throw new IOException("Step server: " + new String(message, StandardCharsets.UTF_8));
+        }
+        return response;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Step server closed the connection");
+            }
+        }
+    }
+
+    public int getEnvironments() {
+        return environments;
+    }
+
+    public int getScreenWidth() {
+        return screenWidth;
+    }
+
+    public int getScreenHeight() {
+        return screenHeight;
+    }
+
+    public int getPlanes() {
+        return planes;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    private int recordOffset(int record) {
+        return 5 + record * recordSize;
+    }
+
+    public int getFlags(int record) {
+        return response.get(recordOffset(record)) & 0xFF;
+    }
+
+    public boolean isPixelOn(int record, int plane, int x, int y) {
+        int rowBytes = screenWidth / 8;
+        int offset = recordOffset(record) + 1 + (plane * screenHeight + y) * rowBytes + (x >> 3);
+        return (response.get(offset) & (0x80 >> (x & 7))) != 0;
+    }
+
+    //The index-th of the RAM bytes selected by configure
+    public int getRam(int record, int index) {
+        return response.get(recordOffset(record) + 1 + planes * screenHeight * screenWidth / 8 + index) & 0xFF;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //Load generator: steps every environment one frame per request and reports environment-steps per second
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: StepClient <rom> [port] [environments] [seconds]");
+            System.exit(1);
+        }
+        byte[] rom = Files.readAllBytes(Paths.get(args[0]));
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7600;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+
+        try (StepClient client = new StepClient(port)) {
+            client.configure(QuirkProfile.CHIP8, 10, count, rom);
+            int[] ids = new int[count];
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = i;
+                keys[i] = 1 << (i & 15);
+            }
+
+            long steps = 0;
+            long start = System.nanoTime();
+            long end = start + seconds * 1_000_000_000L;
+            while (System.nanoTime() < end) {
+                client.step(1, ids, keys, count);
+                steps += count;
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d environment-steps in %.2f s (%.0f per second)%n", steps, elapsed, steps / elapsed);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package dev.nabnub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.Phaser;
+
+//Steps batches of headless machines for clients in other processes. One selector thread serves every
+//connection over loopback TCP; each connection configures its own set of environments, and a STEP request
+//runs many of them for some frames and answers with one fixed size record per environment.
+//
+//Messages in both directions are a little-endian u32 body length followed by the body. Request bodies start
+//with an opcode, responses with a status byte (an error carries a UTF-8 message instead of a payload):
+//  CONFIGURE  u8 profile, u16 instructionsPerFrame, u16 environments, u16 ramCount, u16[ramCount], ROM bytes
+//             -> u16 environments, u16 screenWidth, u16 screenHeight, u8 planes, u32 recordSize
+//  RESET      u16 count, u16[count] environment ids            -> empty
+//  STEP       u16 frames, u16 count, (u16 id, u16 keyMask)[count] -> record[count], in request order
+//A record is a flags byte, then each plane's screen rows packed 8 pixels per byte (leftmost pixel in the top
+//bit), then the selected RAM bytes.
+//
+//Environments are pinned to worker threads by id, so a machine always runs on the same core and repeated ids
+//in one batch step in order. Input and output buffers belong to the connection and are only ever grown.
+public class StepServer implements Closeable {
+
+    static final int OP_CONFIGURE = 1;
+    static final int OP_RESET = 2;
+    static final int OP_STEP = 3;
+
+    static final int STATUS_OK = 0;
+    static final int STATUS_ERROR = 1;
+
+    public static final int FLAG_HALTED = 1;
+    public static final int FLAG_FAULT = 2;
+    public static final int FLAG_SOUND = 4;
+    public static final int FLAG_HIRES = 8;
+
+    private static final int MAX_MESSAGE = 1 << 24;
+    private static final int INITIAL_BUFFER = 1 << 16;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Worker[] workers;
+    private final Phaser phaser;
+    private final Thread selectorThread;
+    private volatile boolean closed;
+
+    //The batch being stepped; written by the selector thread and published to the workers by the phaser
+    private Environments batchEnvironments;
+    private int[] batchIds;
+    private int[] batchKeys;
+    private int batchCount;
+    private int batchFrames;
+    private ByteBuffer batchOutput;
+    private int batchOffset;
+    private volatile RuntimeException batchError;
+
+    public StepServer(int port, int workerCount) throws IOException {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.phaser = new Phaser(workerCount + 1);
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i);
+            Thread thread = new Thread(workers[i], "chip8-step-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        this.selectorThread = new Thread(this::serve, "chip8-step-server");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void serve() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            service(key, connection);
+                        } catch (IOException e) {
+                            key.cancel();
+                            connection.channel.close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Step server: " + e.getMessage());
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    //Closing anyway
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                //Closing anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    private void service(SelectionKey key, Connection connection) throws IOException {
+        if (key.isValid() && key.isWritable()) {
+            if (!flush(connection)) {
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+        if (key.isValid() && key.isReadable() && connection.channel.read(connection.input) < 0) {
+            key.cancel();
+            connection.channel.close();
+            return;
+        }
+
+        ByteBuffer input = connection.input;
+        input.flip();
+        try {
+            while (input.remaining() >= 4) {
+                int length = input.getInt(input.position());
+                if (length < 1 || length > MAX_MESSAGE) {
+                    throw new IOException("Bad message length " + length);
+                }
+                if (input.remaining() < 4 + length) {
+                    break;
+                }
+                int end = input.position() + 4 + length;
+                int limit = input.limit();
+                input.position(input.position() + 4).limit(end);
+                handle(connection, input);
+                input.limit(limit).position(end);
+
+                //A slow reader stops further requests until its response has gone out
+                if (!flush(connection)) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    break;
+                }
+            }
+        } finally {
+            input.compact();
+        }
+
+        //Make room for a message bigger than the buffer
+        if (input.position() >= 4) {
+            int needed = 4 + input.getInt(0);
+            if (needed > input.capacity() && needed <= MAX_MESSAGE + 4) {
+                connection.input = grow(input, needed);
+            }
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private boolean flush(Connection connection) throws IOException {
+        ByteBuffer output = connection.output;
+        if (output.hasRemaining()) {
+            connection.channel.write(output);
+        }
+        return !output.hasRemaining();
+    }
+
+    private void handle(Connection connection, ByteBuffer request) {
+        try {
+            int opcode = request.get() & 0xFF;
+            switch (opcode) {
+                case OP_CONFIGURE:
+                    configure(connection, request);
+                    break;
+                case OP_RESET:
+                    reset(connection, request);
+                    break;
+                case OP_STEP:
+                    step(connection, request);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown opcode " + opcode);
+            }
+        } catch (IllegalArgumentException | IllegalStateException | BufferUnderflowException e) {
+            String message = e.getMessage() != null ? e.getMessage() : "Truncated request";
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer output = connection.begin(STATUS_ERROR, text.length);
+            output.put(text);
+            connection.finish();
+        }
+    }
+
+    private void configure(Connection connection, ByteBuffer request) {
+        int profileIndex = request.get() & 0xFF;
+        int instructionsPerFrame = request.getShort() & 0xFFFF;
+        int count = request.getShort() & 0xFFFF;
+        int[] ramAddresses = new int[request.getShort() & 0xFFFF];
+        for (int i = 0; i < ramAddresses.length; i++) {
+            ramAddresses[i] = request.getShort() & 0xFFFF;
+        }
+        byte[] rom = new byte[request.remaining()];
+        request.get(rom);
+
+        QuirkProfile[] profiles = QuirkProfile.values();
+        if (profileIndex >= profiles.length) {
+            throw new IllegalArgumentException("Unknown profile " + profileIndex);
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one environment is needed");
+        }
+        QuirkProfile profile = profiles[profileIndex];
+        for (int address : ramAddresses) {
+            if (address >= profile.memorySize()) {
+                throw new IllegalArgumentException(String.format("RAM address %04X is out of range", address));
+            }
+        }
+
+        Environments environments = new Environments(profile, instructionsPerFrame, rom, ramAddresses, count);
+        connection.environments = environments;
+        ByteBuffer output = connection.begin(STATUS_OK, 11);
+        output.putShort((short) count);
+        output.putShort((short) environments.screenWidth);
+        output.putShort((short) environments.screenHeight);
+        output.put((byte) environments.planes);
+        output.putInt(environments.recordSize);
+        connection.finish();
+    }
+
+    private void reset(Connection connection, ByteBuffer request) {
+        Environments environments = connection.configured();
+        int count = request.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            environments.load(environments.checkId(request.getShort() & 0xFFFF));
+        }
+        connection.begin(STATUS_OK, 0);
+        connection.finish();
+    }
+
+    private void step(Connection connection, ByteBuffer request) {
+        Environments environments = connection.configured();
+        int frames = request.getShort() & 0xFFFF;
+        int count = request.getShort() & 0xFFFF;
+        if (connection.ids.length < count) {
+            connection.ids = new int[count];
+            connection.keys = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            connection.ids[i] = environments.checkId(request.getShort() & 0xFFFF);
+            connection.keys[i] = request.getShort() & 0xFFFF;
+        }
+
+        ByteBuffer output = connection.begin(STATUS_OK, count * environments.recordSize);
+        batchEnvironments = environments;
+        batchIds = connection.ids;
+        batchKeys = connection.keys;
+        batchCount = count;
+        batchFrames = frames;
+        batchOutput = output;
+        batchOffset = output.position();
+        batchError = null;
+
+        //Start the workers, then wait for all of them to finish their share
+        phaser.arriveAndAwaitAdvance();
+        phaser.arriveAndAwaitAdvance();
+
+        RuntimeException error = batchError;
+        if (error != null) {
+            throw new IllegalStateException("Step failed: " + error, error);
+        }
+        output.position(batchOffset + count * environments.recordSize);
+        connection.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        phaser.forceTermination();
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverChannel.close();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7600;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        StepServer server = new StepServer(port, workers);
+        System.out.println("Step server listening on port " + server.getPort() + " with " + workers + " workers");
+        server.selectorThread.join();
+    }
+
+    private final class Worker implements Runnable {
+
+        private final int index;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            while (phaser.arriveAndAwaitAdvance() >= 0) {
+                try {
+                    stepShare();
+                } catch (RuntimeException e) {
+                    batchError = e;
+                }
+                if (phaser.arriveAndAwaitAdvance() < 0) {
+                    return;
+                }
+            }
+        }
+
+        private void stepShare() {
+            Environments environments = batchEnvironments;
+            int[] ids = batchIds;
+            int[] keys = batchKeys;
+            int frames = batchFrames;
+            int recordSize = environments.recordSize;
+            for (int i = 0; i < batchCount; i++) {
+                int id = ids[i];
+                if (id % workers.length != index) {
+                    continue;
+                }
+                Machine machine = environments.machines[id];
+                machine.getKeyboard().setKeyMask(keys[i]);
+                for (int frame = 0; frame < frames && !machine.getCPU().isHalted(); frame++) {
+                    machine.runFrame(environments.instructionsPerFrame);
+                }
+                environments.writeRecord(machine, batchOutput, batchOffset + i * recordSize);
+            }
+        }
+    }
+
+    private static final class Connection {
+
+        private final SocketChannel channel;
+        private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        private ByteBuffer output = ByteBuffer.allocate(INITIAL_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        private Environments environments;
+        private int[] ids = new int[0];
+        private int[] keys = new int[0];
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            output.flip();
+        }
+
+        Environments configured() {
+            if (environments == null) {
+                throw new IllegalStateException("Not configured");
+            }
+            return environments;
+        }
+
+        //Starts a response with room for a payload of the given size
+        ByteBuffer begin(int status, int payloadSize) {
+            int needed = 5 + payloadSize;
+            if (output.capacity() < needed) {
+                output = ByteBuffer.allocate(Math.max(needed, output.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            output.clear();
+            output.putInt(0);
+            output.put((byte) status);
+            return output;
+        }
+
+        void finish() {
+            output.putInt(0, output.position() - 4);
+            output.flip();
+        }
+    }
+
+    private static final class Environments {
+
+        private final int instructionsPerFrame;
+        private final byte[] rom;
+        private final int[] ramAddresses;
+        private final Machine[] machines;
+        private final int screenWidth;
+        private final int screenHeight;
+        private final int planes;
+        private final int recordSize;
+
+        Environments(QuirkProfile profile, int instructionsPerFrame, byte[] rom, int[] ramAddresses, int count) {
+            this.instructionsPerFrame = instructionsPerFrame;
+            this.rom = rom;
+            this.ramAddresses = ramAddresses;
+            this.machines = new Machine[count];
+            for (int i = 0; i < count; i++) {
+                machines[i] = new Machine(profile);
+                load(i);
+            }
+
+            //Lores-only profiles send the 64x32 screen, the others the full 128x64 whatever the current mode
+            this.screenWidth = profile.hasSuperChipInstructions() ? FrameBuffer.MAX_WIDTH : 64;
+            this.screenHeight = profile.hasSuperChipInstructions() ? FrameBuffer.MAX_HEIGHT : 32;
+            this.planes = profile.hasXoChipInstructions() ? FrameBuffer.PLANES : 1;
+            this.recordSize = 1 + planes * screenHeight * screenWidth / 8 + ramAddresses.length;
+        }
+
+        int checkId(int id) {
+            if (id >= machines.length) {
+                throw new IllegalArgumentException("Unknown environment " + id);
+            }
+            return id;
+        }
+
+        void load(int id) {
+            machines[id].load(rom);
+            machines[id].getCPU().setRandomSeed(id);
+        }
+
+        void writeRecord(Machine machine, ByteBuffer output, int offset) {
+            CPU cpu = machine.getCPU();
+            FrameBuffer frameBuffer = machine.getFrameBuffer();
+            int flags = (cpu.isHalted() ? FLAG_HALTED : 0)
+                    | (cpu.getFault() != Fault.NONE ? FLAG_FAULT : 0)
+                    | (cpu.getSound().isPlaying() ? FLAG_SOUND : 0)
+                    | (frameBuffer.isHires() ? FLAG_HIRES : 0);
+            output.put(offset++, (byte) flags);
+
+            int rowBytes = screenWidth / 8;
+            for (int p = 0; p < planes; p++) {
+                long[] plane = frameBuffer.getPlane(p);
+                for (int y = 0; y < screenHeight; y++) {
+                    int word = y * FrameBuffer.WORDS_PER_ROW;
+                    for (int b = 0; b < rowBytes; b++) {
+                        output.put(offset++, (byte) (plane[word + (b >> 3)] >>> (56 - ((b & 7) << 3))));
+                    }
+                }
+            }
+
+            int[] memory = machine.getMemory().getMemory();
+            for (int address : ramAddresses) {
+                output.put(offset++, (byte) memory[address]);
+            }
+        }
+    }
+}
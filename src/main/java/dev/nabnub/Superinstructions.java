@@ -0,0 +1,128 @@
+package dev.nabnub;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+//Marks the addresses where a common instruction idiom starts, so CPU.runFused can run the whole sequence in
+//one dispatch. Entries only ever describe the sequence at their own address: a jump into the middle of one
+//simply runs from there, and code writes rescan every start they could have changed.
+public class Superinstructions {
+
+    static final byte NONE = 0;
+    static final byte BLIT = 1;             //6xkk 6ykk Annn Dxyn
+    static final byte TIMER_POLL = 2;       //Fx07 3x00 1nnn
+    static final byte TABLE_LOAD = 3;       //Annn Fx65
+    static final byte COUNTED_LOOP = 4;     //7xkk 3ykk 1nnn
+
+    //Longest sequence, in bytes
+    private static final int MAX_LENGTH = 8;
+
+    private final int[] memory;
+    private final byte[] kinds;
+
+    public Superinstructions(int[] memory) {
+        this.memory = memory;
+        this.kinds = new byte[memory.length];
+        for (int address = 0; address < memory.length; address++) {
+            kinds[address] = detect(address);
+        }
+    }
+
+    private byte detect(int address) {
+        int a = opcodeAt(address);
+        int b = opcodeAt(address + 2);
+        int c = opcodeAt(address + 4);
+        int d = opcodeAt(address + 6);
+        if (a < 0 || b < 0) {
+            return NONE;
+        }
+        if (d >= 0 && a >> 12 == 0x6 && b >> 12 == 0x6 && c >> 12 == 0xA && d >> 12 == 0xD) {
+            return BLIT;
+        }
+        if (c >= 0 && (a & 0xF0FF) == 0xF007 && b == (0x3000 | (a & 0x0F00)) && c >> 12 == 0x1) {
+            return TIMER_POLL;
+        }
+        if (c >= 0 && a >> 12 == 0x7 && b >> 12 == 0x3 && c >> 12 == 0x1) {
+            return COUNTED_LOOP;
+        }
+        if (a >> 12 == 0xA && (b & 0xF0FF) == 0xF065) {
+            return TABLE_LOAD;
+        }
+        return NONE;
+    }
+
+    private int opcodeAt(int address) {
+        return address + 1 < memory.length ? memory[address] << 8 | memory[address + 1] : -1;
+    }
+
+    byte kind(int address) {
+        return address >= 0 && address < kinds.length ? kinds[address] : NONE;
+    }
+
+    //Rescans every sequence that overlaps a write
+    public void invalidate(int address, int length) {
+        int end = Math.min(address + length, kinds.length);
+        for (int start = Math.max(address - MAX_LENGTH + 1, 0); start < end; start++) {
+            kinds[start] = detect(start);
+        }
+    }
+
+    //Compares dispatches and run time with and without fusion on ROMs from roms/, under the same random keys
+    public static void main(String[] args) throws IOException {
+        String[] names = args.length > 0 ? args : new String[]{"pong", "tetris", "brix", "tank"};
+        int frames = 300_000;
+        int instructionsPerFrame = 11;
+
+        for (String name : names) {
+            byte[] rom = Files.readAllBytes(new File("roms", name + ".ch8").toPath());
+            long plainNanos = Long.MAX_VALUE;
+            long fusedNanos = Long.MAX_VALUE;
+            long dispatches = 0;
+            boolean[][] plainScreen = null;
+            boolean[][] fusedScreen = null;
+
+            //Best of a few rounds, so the JIT has settled
+            for (int round = 0; round < 5; round++) {
+                Machine plain = new Machine(QuirkProfile.CHIP8);
+                plain.load(rom);
+                plain.getCPU().setRandomSeed(1);
+                Random keys = new Random(42);
+                long start = System.nanoTime();
+                for (int frame = 0; frame < frames; frame++) {
+                    if (frame % 20 == 0) {
+                        plain.getKeyboard().setKeyMask(keys.nextInt(1 << 16) & keys.nextInt(1 << 16));
+                    }
+                    plain.runFrame(instructionsPerFrame);
+                }
+                plainNanos = Math.min(plainNanos, System.nanoTime() - start);
+                plainScreen = plain.getFrameBuffer().toPixels();
+
+                Machine fused = new Machine(QuirkProfile.CHIP8);
+                fused.load(rom);
+                fused.getCPU().setRandomSeed(1);
+                fused.getCPU().setSuperinstructions(new Superinstructions(fused.getMemory().getMemory()));
+                keys = new Random(42);
+                dispatches = 0;
+                start = System.nanoTime();
+                for (int frame = 0; frame < frames; frame++) {
+                    if (frame % 20 == 0) {
+                        fused.getKeyboard().setKeyMask(keys.nextInt(1 << 16) & keys.nextInt(1 << 16));
+                    }
+                    fused.getCPU().updateTimers();
+                    dispatches += fused.getCPU().runFused(instructionsPerFrame);
+                }
+                fusedNanos = Math.min(fusedNanos, System.nanoTime() - start);
+                fusedScreen = fused.getFrameBuffer().toPixels();
+            }
+
+            long instructions = (long) frames * instructionsPerFrame;
+            System.out.printf("%-8s %9d instructions, %9d dispatches (%.1f%% fewer), %6.1f ms plain, %6.1f ms fused%s%n",
+                    name, instructions, dispatches, 100.0 * (instructions - dispatches) / instructions,
+                    plainNanos / 1e6, fusedNanos / 1e6,
+                    Arrays.deepEquals(plainScreen, fusedScreen) ? "" : "  SCREENS DIFFER");
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package dev.nabnub;
+
+//Decides how much of the program runs in each 60Hz frame; the timers tick exactly once per frame in every mode.
+//FIXED runs a set number of instructions. VIP charges each instruction an approximate cost in COSMAC VIP machine
+//cycles against the time the original interpreter had per frame, and holds draws back until vblank. ADAPTIVE
+//runs up to a target number of instructions, cut down to what the host can afford while leaving it headroom.
+public class Timing {
+
+    public enum Mode { FIXED, VIP, ADAPTIVE }
+
+    static final long FRAME_NANOS = 16_666_667L;
+
+    //A 1.7609 MHz 1802 at 8 clocks per machine cycle gets 3668 cycles per frame, of which the CDP1861's display
+    //DMA takes 1024 (128 scan lines of 8 bytes)
+    static final int VIP_FRAME_CYCLES = 3668 - 1024;
+    //The interpreter's fetch and decode, paid by every instruction on top of its own routine
+    static final int VIP_FETCH_CYCLES = 68;
+
+    //Share of each frame ADAPTIVE lets emulation take, the rest is left for rendering and the host
+    private static final double HEADROOM = 0.5;
+
+    private final Mode mode;
+    private final int targetInstructionsPerFrame;
+    private int instructionsPerFrame;
+    private int vipCycles;                  //Left over from the last frame; negative after an overrun
+    private double nanosPerInstruction;     //Moving average of the host's cost, 0 until measured
+
+    public Timing(int instructionsPerFrame) {
+        this(Mode.FIXED, instructionsPerFrame);
+    }
+
+    //VIP ignores instructionsPerFrame; for ADAPTIVE it is the target, reached whenever the host keeps up
+    public Timing(Mode mode, int instructionsPerFrame) {
+        if (instructionsPerFrame < 1) {
+            throw new IllegalArgumentException("Instructions per frame must be positive: " + instructionsPerFrame);
+        }
+        this.mode = mode;
+        this.targetInstructionsPerFrame = instructionsPerFrame;
+        this.instructionsPerFrame = instructionsPerFrame;
+    }
+
+    //Returns the instructions run
+    public int runFrame(CPU cpu) {
+        cpu.updateTimers();
+        switch (mode) {
+            case VIP:
+                return runVip(cpu);
+            case ADAPTIVE:
+                long start = System.nanoTime();
+                int executed = run(cpu, instructionsPerFrame);
+                adapt(executed, System.nanoTime() - start);
+                return executed;
+            default:
+                return run(cpu, instructionsPerFrame);
+        }
+    }
+
+    //Runs up to budget instructions, through the ROM's translation when it has one. A draw only interrupts
+    //runCycles; after a wait or a halt the rest of the frame would not change anything. Returns the instructions run.
+    static int run(CPU cpu, int budget) {
+        if (cpu.hasTranslation()) {
+            return cpu.runTranslated(budget);
+        }
+        int remaining = budget;
+        while (remaining > 0) {
+            CPU.ExitReason reason = cpu.runCycles(remaining);
+            remaining -= cpu.getCyclesRun();
+            if (reason != CPU.ExitReason.DRAW) {
+                break;
+            }
+        }
+        return budget - remaining;
+    }
+
+    //An instruction that overruns the frame is paid for out of the next one, so the long run rate stays exact.
+    //Time spent halted is not banked: credit only accrues while the CPU runs and never exceeds one frame, so
+    //clearing a fault does not release a burst of instructions.
+    private int runVip(CPU cpu) {
+        if (cpu.isHalted()) {
+            return 0;
+        }
+        vipCycles = Math.min(vipCycles + VIP_FRAME_CYCLES, VIP_FRAME_CYCLES);
+        int executed = 0;
+        while (vipCycles > 0 && !cpu.isHalted()) {
+            int opcode = cpu.peekOpcode();
+            //The VIP interpreter waits for the display interrupt before drawing, so a draw only runs first thing
+            //in a frame and the CPU idles out the rest of this one
+            if (executed > 0 && opcode >> 12 == 0xD) {
+                vipCycles = 0;
+                break;
+            }
+            cpu.cycle();
+            vipCycles -= VIP_FETCH_CYCLES + vipCycles(opcode);
+            executed++;
+        }
+        return executed;
+    }
+
+    //Approximate machine cycles of the VIP interpreter's routine for each instruction. Data dependent routines
+    //use their typical case; instructions the VIP never had only pay for the fetch.
+    static int vipCycles(int opcode) {
+        int x = (opcode & 0x0F00) >> 8;
+        switch (opcode >> 12) {
+            case 0x0:
+                return opcode == 0x00E0 ? 24 : opcode == 0x00EE ? 10 : 0;
+            case 0x1:
+                return 12;
+            case 0x2:
+                return 26;
+            case 0x3:
+            case 0x4:
+            case 0x7:
+                return 10;
+            case 0x5:
+            case 0x9:
+            case 0xE:
+                return 14;
+            case 0x6:
+                return 6;
+            case 0x8:
+                return 44;
+            case 0xA:
+                return 12;
+            case 0xB:
+                return 22;
+            case 0xC:
+                return 36;
+            case 0xD:
+                int rows = (opcode & 0xF) == 0 ? 16 : opcode & 0xF;
+                return 26 + 40 * rows;
+            case 0xF:
+                switch (opcode & 0xFF) {
+                    case 0x07:
+                    case 0x15:
+                    case 0x18:
+                        return 10;
+                    case 0x0A:
+                        return 19;
+                    case 0x1E:
+                    case 0x29:
+                        return 16;
+                    case 0x33:
+                        return 204;
+                    case 0x55:
+                    case 0x65:
+                        return 14 + 14 * (x + 1);
+                    default:
+                        return 0;
+                }
+            default:
+                return 0;
+        }
+    }
+
+    //Tracks the host's cost per instruction with a moving average, so a single slow frame (a collection, a JIT
+    //compile) does not cut the speed, and sizes the next frame to fit the headroom
+    void adapt(int executed, long nanos) {
+        if (executed <= 0) {
+            return;
+        }
+        double sample = (double) nanos / executed;
+        nanosPerInstruction = nanosPerInstruction == 0 ? sample : nanosPerInstruction + (sample - nanosPerInstruction) / 8;
+        long affordable = (long) (FRAME_NANOS * HEADROOM / Math.max(nanosPerInstruction, 1e-3));
+        instructionsPerFrame = (int) Math.max(1, Math.min(targetInstructionsPerFrame, affordable));
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    //Instructions the next frame will run; only changes in ADAPTIVE mode, and means nothing for VIP
+    public int getInstructionsPerFrame() {
+        return instructionsPerFrame;
+    }
+
+    public int getTargetInstructionsPerFrame() {
+        return targetInstructionsPerFrame;
+    }
+}
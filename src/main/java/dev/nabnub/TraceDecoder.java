@@ -0,0 +1,64 @@
+package dev.nabnub;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+//Offline reader for trace files written by ExecutionTrace.dump
+public final class TraceDecoder {
+
+    private TraceDecoder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceDecoder <trace file>");
+            System.exit(1);
+        }
+        System.out.print(decode(Paths.get(args[0])));
+    }
+
+    public static String decode(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < ExecutionTrace.HEADER_BYTES) {
+                throw new IOException("Not a trace file: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != ExecutionTrace.MAGIC) {
+                throw new IOException("Not a trace file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != ExecutionTrace.VERSION) {
+                throw new IOException("Unsupported trace version: " + version);
+            }
+            int count = buffer.getInt();
+            int fault = buffer.getInt();
+            int faultAddress = buffer.getInt();
+            int faultOpcode = buffer.getInt();
+            long total = buffer.getLong();
+            if (buffer.remaining() < (long) count * ExecutionTrace.ENTRY_BYTES) {
+                throw new IOException("Truncated trace file: " + file);
+            }
+
+            StringBuilder sb = new StringBuilder();
+            long sequence = total - count;
+            for (int i = 0; i < count; i++) {
+                int instruction = buffer.getInt();
+                int index = buffer.getInt();
+                int register = buffer.getInt();
+                int pc = instruction >>> 16;
+                int opcode = instruction & 0xFFFF;
+                int x = register >>> 16;
+                sb.append(String.format("%08d  %04X  %04X  %-16s I=%04X V%X=%02X VF=%02X%n", sequence++, pc, opcode,
+                        Disassembler.mnemonic(opcode), index, x, (register >> 8) & 0xFF, register & 0xFF));
+            }
+            if (fault > 0 && fault < Fault.values().length) {
+                sb.append(String.format("fault: %s at %04X, opcode %04X%n", Fault.values()[fault], faultAddress, faultOpcode));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package dev.nabnub;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+//CPU variant that records every executed instruction into an ExecutionTrace. The first fault dumps the
+//trace to the fault file when one is set.
+public class TracingCPU extends CPU {
+
+    private final Memory memory;
+    private final ExecutionTrace trace;
+    private Path faultFile;
+    private Fault pendingFault = Fault.NONE;
+    private int pendingAddress;
+    private int pendingOpcode;
+    private boolean faultDumped;
+
+    public TracingCPU(Memory memory, Keyboard keyboard, FrameBuffer frameBuffer, QuirkProfile profile, int capacity) {
+        super(memory, keyboard, frameBuffer, profile);
+        this.memory = memory;
+        this.trace = new ExecutionTrace(capacity);
+    }
+
+    public TracingCPU(Memory memory, Keyboard keyboard, Display display, QuirkProfile profile, int capacity) {
+        this(memory, keyboard, display.getFrameBuffer(), profile, capacity);
+    }
+
+    @Override
+    public void cycle() {
+        if (isHalted()) {
+            return;
+        }
+        int pc = getPC();
+        int[] mem = memory.getMemory();
+        int opcode = pc >= 0 && pc + 1 < mem.length ? mem[pc] << 8 | mem[pc + 1] : 0;
+
+        super.cycle();
+
+        int[] v = getRegisters();
+        int x = (opcode & 0x0F00) >> 8;
+        trace.record(pc, opcode, getIndex(), x << 16 | v[x] << 8 | v[0xF]);
+
+        if (pendingFault != Fault.NONE) {
+            dumpFault();
+        }
+    }
+
+    //Translated blocks would not be recorded
+    @Override
+    public void setTranslation(TranslatedProgram translation) {
+    }
+
+    //Nor would fused sequences
+    @Override
+    public void setSuperinstructions(Superinstructions superinstructions) {
+    }
+
+    //Every instruction has to pass through cycle() to be recorded
+    @Override
+    public ExitReason runCycles(int budget) {
+        return stepCycles(budget);
+    }
+
+    //The faulting instruction is recorded after it returns, so the dump waits until the end of the cycle
+    @Override
+    protected void faultRaised(Fault fault, int address, int opcode) {
+        if (faultFile != null && !faultDumped) {
+            pendingFault = fault;
+            pendingAddress = address;
+            pendingOpcode = opcode;
+        }
+    }
+
+    private void dumpFault() {
+        Fault fault = pendingFault;
+        pendingFault = Fault.NONE;
+        faultDumped = true;
+        try {
+            trace.dump(faultFile, fault, pendingAddress, pendingOpcode);
+        } catch (IOException e) {
+            System.err.println("Could not write trace to " + faultFile + ": " + e.getMessage());
+        }
+    }
+
+    public void setFaultFile(Path faultFile) {
+        this.faultFile = faultFile;
+        this.faultDumped = false;
+    }
+
+    public void dumpTrace(Path file) throws IOException {
+        trace.dump(file, Fault.NONE, 0, 0);
+    }
+
+    public boolean isFaultDumped() {
+        return faultDumped;
+    }
+
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
+}
@@ -0,0 +1,79 @@
+package dev.nabnub;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+public class TranslatedProgram {
+
+    private final CompiledRom compiledRom;
+    private final int[] blockLengths;             //Instruction count of the block starting at each address, 0 if none
+    private final boolean[] code;                 //Bytes covered by a translated block
+    private final int[] blocks;
+
+    public TranslatedProgram(CompiledRom compiledRom) {
+        this.compiledRom = compiledRom;
+        this.blocks = compiledRom.blocks();
+        this.blockLengths = new int[Memory.MEMORY_SIZE];
+        this.code = new boolean[Memory.MEMORY_SIZE];
+
+        for (int i = 0; i < blocks.length; i += 2) {
+            int start = blocks[i];
+            int end = blocks[i + 1];
+            blockLengths[start] = (end - start) / 2;
+            for (int address = start; address < end; address++) {
+                code[address] = true;
+            }
+        }
+    }
+
+    //Loads the class translated for romBytes from jar, or returns null when the jar holds no match
+    public static TranslatedProgram load(File jar, byte[] romBytes) throws IOException {
+        String hash = RomTranslator.hash(romBytes);
+        URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, CPU.class.getClassLoader());
+        try {
+            Class<?> type = Class.forName(RomTranslator.className(hash), true, loader);
+            CompiledRom compiledRom = (CompiledRom) type.getDeclaredConstructor().newInstance();
+            if (!hash.equals(compiledRom.romHash())) {
+                loader.close();
+                return null;
+            }
+            return new TranslatedProgram(compiledRom);
+        } catch (ClassNotFoundException e) {
+            loader.close();
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            loader.close();
+            throw new IOException("Invalid translated ROM in " + jar, e);
+        }
+    }
+
+    public int blockLength(int address) {
+        return address < blockLengths.length ? blockLengths[address] : 0;
+    }
+
+    public void run(CPU cpu, int pc) {
+        compiledRom.run(cpu, pc);
+    }
+
+    //Drops every block overlapping a write so self-modified code falls back to the interpreter
+    public void invalidate(int address, int length) {
+        int end = Math.min(address + length, code.length);
+        for (int a = Math.max(address, 0); a < end; a++) {
+            if (code[a]) {
+                invalidateBlocksAt(a);
+                code[a] = false;
+            }
+        }
+    }
+
+    private void invalidateBlocksAt(int address) {
+        for (int i = 0; i < blocks.length; i += 2) {
+            int start = blocks[i];
+            if (address >= start && address < blocks[i + 1]) {
+                blockLengths[start] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package dev.nabnub;
+
+import java.io.ByteArrayOutputStream;
+
+//Generated ROMs that each stress one part of the emulator, for WorkloadBenchmark. Every one loops forever
+//without waiting on keys or timers, so a frame always runs its whole budget.
+public enum Workload {
+
+    //8xyN arithmetic and logic over eight registers
+    ALU(QuirkProfile.CHIP8) {
+        @Override
+        void emit(Assembler asm) {
+            int[] ops = {0x1, 0x2, 0x3, 0x4, 0x5, 0x6, 0x7, 0xE};
+            for (int r = 0; r < 8; r++) {
+                asm.op(0x6000 | r << 8 | (r * 37 + 11) & 0xFF);
+            }
+            int loop = asm.address();
+            for (int i = 0; i < 64; i++) {
+                int x = i % 8;
+                int y = (i * 3 + 1) % 8;
+                asm.op(0x8000 | x << 8 | y << 4 | ops[(i * 5) % ops.length]);
+            }
+            asm.op(0x1000 | loop);
+        }
+    },
+
+    //2nnn/00EE chains 14 calls deep, one short of a full stack
+    CALLS(QuirkProfile.CHIP8) {
+        @Override
+        void emit(Assembler asm) {
+            int depth = 14;
+            int first = 0x206;
+            asm.op(0x2000 | first);
+            asm.op(0x1200);
+            asm.op(0x0000);
+            for (int level = 0; level < depth; level++) {
+                int next = first + (level + 1) * 6;
+                asm.op(level < depth - 1 ? 0x2000 | next : 0x7101);
+                asm.op(0x7001);
+                asm.op(0x00EE);
+            }
+        }
+    },
+
+    //Full 15-row sprites at positions that wrap over both screen edges, on a profile without vblank waits
+    SPRITES(QuirkProfile.XOCHIP) {
+        @Override
+        void emit(Assembler asm) {
+            int sprite = 0x210;
+            asm.op(0x603A);             //V0 = 58
+            asm.op(0x611C);             //V1 = 28
+            asm.op(0xA000 | sprite);
+            int loop = asm.address();
+            asm.op(0xD01F);
+            asm.op(0x7007);             //Steps that keep crossing the right and bottom edges
+            asm.op(0x7105);
+            asm.op(0x1000 | loop);
+            asm.pad(sprite);
+            for (int row = 0; row < 15; row++) {
+                asm.data(row % 2 == 0 ? 0xAA : 0x55 ^ row);
+            }
+        }
+    },
+
+    //Fx55/Fx65 moving all sixteen registers in and out of memory
+    TRANSFERS(QuirkProfile.CHIP8) {
+        @Override
+        void emit(Assembler asm) {
+            int loop = asm.address();
+            for (int block = 0; block < 8; block++) {
+                asm.op(0xA400 | block * 0x20);
+                asm.op(0xFF55);
+                asm.op(0xA410 | block * 0x20);
+                asm.op(0xFF65);
+            }
+            asm.op(0x1000 | loop);
+        }
+    },
+
+    //Rewrites an instruction just ahead of it every time round, so cached decodes keep going stale
+    SELF_MODIFYING(QuirkProfile.CHIP8) {
+        @Override
+        void emit(Assembler asm) {
+            int loop = asm.address();
+            int target = loop + 10;
+            asm.op(0x7101);                 //V1 += 1
+            asm.op(0x6071);                 //V0 = 0x71, the high byte of 71kk
+            asm.op(0xA000 | target);
+            asm.op(0xF155);                 //Writes 71 V1 at target: V1 += V1 as it was
+            asm.op(0x7201);
+            asm.op(0x0000);                 //Target, overwritten before it runs
+            asm.op(0x1000 | loop);
+        }
+    };
+
+    private final QuirkProfile profile;
+
+    Workload(QuirkProfile profile) {
+        this.profile = profile;
+    }
+
+    public QuirkProfile getProfile() {
+        return profile;
+    }
+
+    public byte[] rom() {
+        Assembler asm = new Assembler();
+        emit(asm);
+        return asm.toByteArray();
+    }
+
+    abstract void emit(Assembler asm);
+
+    static final class Assembler {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        int address() {
+            return Memory.MEMORY_START + bytes.size();
+        }
+
+        void op(int opcode) {
+            bytes.write(opcode >> 8);
+            bytes.write(opcode);
+        }
+
+        void data(int value) {
+            bytes.write(value);
+        }
+
+        void pad(int address) {
+            while (address() < address) {
+                bytes.write(0);
+            }
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package dev.nabnub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+//Measures each Workload in millions of instructions per second, appends the results to a history file and
+//compares them against a baseline, failing when any workload is slower than the baseline by more than the
+//threshold. The first run on a machine records its baseline; --update records a new one.
+//
+//    WorkloadBenchmark [--threshold=PCT] [--baseline=FILE] [--history=FILE] [--build=ID] [--update]
+//
+//mvn test -Pworkloads runs the same check as part of the build. Baselines are per machine and not committed, so
+//there a missing baseline skips the check rather than recording one. A single short run in one JVM varies by 15
+//to 35%, so each workload is timed in CPU time over several long rounds in several JVMs and the medians compared,
+//which keeps a 10% threshold meaningful on a quiet machine.
+public class WorkloadBenchmark {
+
+    public static final double DEFAULT_THRESHOLD = 10;
+    static final Path DEFAULT_BASELINE = Paths.get("benchmarks", "workloads-baseline.properties");
+    static final Path DEFAULT_HISTORY = Paths.get("benchmarks", "workloads-history.csv");
+
+    //Rounds of 5 million instructions, with the first few left out while the JIT settles
+    private static final int FRAMES = 1_000;
+    private static final int INSTRUCTIONS_PER_FRAME = 5_000;
+    private static final int WARM_UP_ROUNDS = 4;
+    private static final int ROUNDS = 9;
+    private static final int FORKS = 5;
+
+    //Each workload is measured in forks fresh JVMs, so neither the order of workloads nor one JVM's compilation
+    //decisions moves its result, and the median over the forks is kept. The forks take turns between workloads, so
+    //a stretch where the host is busy slows one fork of each rather than every fork of one.
+    static Map<Workload, Double> measureForked(int forks) throws IOException {
+        Workload[] workloads = Workload.values();
+        double[][] mips = new double[workloads.length][forks];
+        for (int fork = 0; fork < forks; fork++) {
+            for (Workload workload : workloads) {
+                mips[workload.ordinal()][fork] = fork(workload);
+            }
+        }
+        Map<Workload, Double> results = new EnumMap<>(Workload.class);
+        for (Workload workload : workloads) {
+            results.put(workload, median(mips[workload.ordinal()]));
+        }
+        return results;
+    }
+
+    private static double fork(Workload workload) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                WorkloadBenchmark.class.getName(), "--measure=" + workload).redirectErrorStream(true).start();
+        String output;
+        try (InputStream in = process.getInputStream()) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("Measuring " + workload + " failed: " + output);
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted measuring " + workload, e);
+        }
+        return Double.parseDouble(output);
+    }
+
+    //Median of rounds after warmUp untimed ones, so neither the JIT settling nor one slow round moves it. Machines
+    //run the way Chip8 runs them, with superinstructions.
+    public static double measure(Workload workload, int frames, int warmUp, int rounds) {
+        byte[] rom = workload.rom();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        double[] mips = new double[rounds];
+        for (int round = -warmUp; round < rounds; round++) {
+            Machine machine = new Machine(workload.getProfile());
+            machine.load(rom);
+            machine.getCPU().setSuperinstructions(new Superinstructions(machine.getMemory().getMemory()));
+            Timing timing = new Timing(INSTRUCTIONS_PER_FRAME);
+            long executed = 0;
+            long start = threads.getCurrentThreadCpuTime();
+            for (int frame = 0; frame < frames; frame++) {
+                executed += timing.runFrame(machine.getCPU());
+            }
+            if (round >= 0) {
+                mips[round] = executed * 1e3 / (threads.getCurrentThreadCpuTime() - start);
+            }
+        }
+        return median(mips);
+    }
+
+    static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    //One line per workload that fell more than thresholdPercent below its baseline; workloads without a
+    //baseline are not compared
+    static List<String> regressions(Properties baseline, Map<Workload, Double> results, double thresholdPercent) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<Workload, Double> result : results.entrySet()) {
+            String recorded = baseline.getProperty(result.getKey().name());
+            if (recorded == null) {
+                continue;
+            }
+            double before = Double.parseDouble(recorded);
+            double change = (result.getValue() - before) / before * 100;
+            if (change < -thresholdPercent) {
+                regressions.add(String.format("%s: %.1f MIPS, %.1f%% below the baseline of %.1f", result.getKey(),
+                        result.getValue(), -change, before));
+            }
+        }
+        return regressions;
+    }
+
+    //Measures, records and compares; returns the regressions
+    static List<String> check(Path baselineFile, Path historyFile, String build, double thresholdPercent,
+                              boolean update) throws IOException {
+        Map<Workload, Double> results = measureForked(FORKS);
+        for (Map.Entry<Workload, Double> result : results.entrySet()) {
+            System.out.printf("%-16s %8.1f MIPS%n", result.getKey(), result.getValue());
+        }
+        appendHistory(historyFile, build, results);
+
+        Properties baseline = new Properties();
+        if (Files.isRegularFile(baselineFile) && !update) {
+            try (InputStream in = Files.newInputStream(baselineFile)) {
+                baseline.load(in);
+            }
+            return regressions(baseline, results, thresholdPercent);
+        }
+        for (Map.Entry<Workload, Double> result : results.entrySet()) {
+            baseline.setProperty(result.getKey().name(), String.format(Locale.ROOT, "%.1f", result.getValue()));
+        }
+        createParent(baselineFile);
+        try (OutputStream out = Files.newOutputStream(baselineFile)) {
+            baseline.store(out, "Workload baseline in MIPS");
+        }
+        System.out.println("Recorded baseline in " + baselineFile);
+        return new ArrayList<>();
+    }
+
+    //CSV of time, build and each workload's MIPS, with a header when the file is new
+    static void appendHistory(Path file, String build, Map<Workload, Double> results) throws IOException {
+        createParent(file);
+        StringBuilder line = new StringBuilder();
+        if (!Files.exists(file)) {
+            line.append("time,build");
+            for (Workload workload : results.keySet()) {
+                line.append(',').append(workload);
+            }
+            line.append('\n');
+        }
+        line.append(Instant.now()).append(',').append(build);
+        for (double mips : results.values()) {
+            line.append(',').append(String.format(Locale.ROOT, "%.1f", mips));
+        }
+        line.append('\n');
+        Files.write(file, line.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static void createParent(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        double threshold = DEFAULT_THRESHOLD;
+        Path baseline = DEFAULT_BASELINE;
+        Path history = DEFAULT_HISTORY;
+        String build = "local";
+        boolean update = false;
+        for (String arg : args) {
+            //One fork's measurement, printed alone for the parent to read
+            if (arg.startsWith("--measure=")) {
+                Workload workload = Workload.valueOf(arg.substring(10));
+                System.out.println(String.format(Locale.ROOT, "%.3f",
+                        measure(workload, FRAMES, WARM_UP_ROUNDS, ROUNDS)));
+                return;
+            }
+            if (arg.startsWith("--threshold=")) {
+                threshold = Double.parseDouble(arg.substring(12));
+            } else if (arg.startsWith("--baseline=")) {
+                baseline = Paths.get(arg.substring(11));
+            } else if (arg.startsWith("--history=")) {
+                history = Paths.get(arg.substring(10));
+            } else if (arg.startsWith("--build=")) {
+                build = arg.substring(8);
+            } else if (arg.equals("--update")) {
+                update = true;
+            }
+        }
+
+        List<String> regressions = check(baseline, history, build, threshold, update);
+        if (!regressions.isEmpty()) {
+            regressions.forEach(System.out::println);
+            System.exit(1);
+        }
+    }
+}
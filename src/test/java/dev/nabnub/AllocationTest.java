@@ -0,0 +1,172 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class AllocationTest {
+
+    private static final int WARM_UP_FRAMES = 20_000;
+    private static final int FRAMES = 100_000;
+    //The JIT can allocate a few hundred bytes in all while it deoptimizes and recompiles; anything the code itself
+    //allocates, even one small object every few thousand frames, adds up past this over FRAMES frames
+    private static final long MAX_BYTES = 4096;
+
+    @TempDir
+    Path dir;
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "No per-thread allocation counters");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "No per-thread allocation counters");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        //The first reading sets up state of its own, which would otherwise count against the code under test
+        allocated(threads);
+        return threads;
+    }
+
+    private static long allocated(com.sun.management.ThreadMXBean threads) {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    //Key events for the whole CHIP-8 keypad, pressed and released in a random order from the frame's mask
+    private static void input(Keyboard keyboard, KeyEvent[] presses, KeyEvent[] releases, int mask) {
+        for (int i = 0; i < presses.length; i++) {
+            keyboard.keyReleased(releases[i]);
+            if ((mask & (1 << i)) != 0) {
+                keyboard.keyPressed(presses[i]);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("After warm-up, input, emulation and frame publication allocate nothing")
+    void emulation_allocatesNothing() throws Exception {
+        com.sun.management.ThreadMXBean threads = threads();
+        String[] names = {"pong", "tetris", "brix", "tank", "octojam1title"};
+        QuirkProfile[] profiles = {QuirkProfile.CHIP8, QuirkProfile.CHIP8, QuirkProfile.CHIP48, QuirkProfile.CHIP8,
+                QuirkProfile.XOCHIP};
+        int[] keyCodes = {KeyEvent.VK_X, KeyEvent.VK_1, KeyEvent.VK_2, KeyEvent.VK_3, KeyEvent.VK_Q, KeyEvent.VK_W,
+                KeyEvent.VK_E, KeyEvent.VK_A, KeyEvent.VK_S, KeyEvent.VK_D, KeyEvent.VK_Z, KeyEvent.VK_C,
+                KeyEvent.VK_4, KeyEvent.VK_R, KeyEvent.VK_F, KeyEvent.VK_V};
+
+        for (int r = 0; r < names.length; r++) {
+            Machine machine = new Machine(profiles[r]);
+            machine.load(Files.readAllBytes(new File("roms", names[r] + ".ch8").toPath()));
+            machine.getCPU().setSuperinstructions(new Superinstructions(machine.getMemory().getMemory()));
+            FrameSource source = new FrameSource(machine, 30);
+            Display display = new Display(machine.getFrameBuffer());
+            KeyEvent[] presses = new KeyEvent[16];
+            KeyEvent[] releases = new KeyEvent[16];
+            for (int k = 0; k < 16; k++) {
+                presses[k] = new KeyEvent(display, KeyEvent.KEY_PRESSED, 0, 0, keyCodes[k], KeyEvent.CHAR_UNDEFINED);
+                releases[k] = new KeyEvent(display, KeyEvent.KEY_RELEASED, 0, 0, keyCodes[k], KeyEvent.CHAR_UNDEFINED);
+            }
+            SplittableRandom random = new SplittableRandom(r);
+
+            try (StateExport export = new StateExport(dir.resolve(names[r]), profiles[r])) {
+                long start = 0;
+                for (int frame = 0; frame < WARM_UP_FRAMES + FRAMES; frame++) {
+                    if (frame == WARM_UP_FRAMES) {
+                        start = allocated(threads);
+                    }
+                    int mask = random.nextInt(1 << 16) & random.nextInt(1 << 16);
+                    input(machine.getKeyboard(), presses, releases, mask);
+                    Frame next = source.nextFrame(machine.getKeyboard().getKeyMask());
+                    export.publish(machine);
+                    next.release();
+                }
+                long bytes = allocated(threads) - start;
+                assertTrue(bytes < MAX_BYTES, names[r] + " allocated " + bytes + " bytes over " + FRAMES + " frames");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("VIP and adaptive timing schedule frames without allocating")
+    void timing_allocatesNothing() throws Exception {
+        com.sun.management.ThreadMXBean threads = threads();
+        byte[] rom = Files.readAllBytes(new File("roms", "pong.ch8").toPath());
+        for (Timing.Mode mode : new Timing.Mode[]{Timing.Mode.VIP, Timing.Mode.ADAPTIVE}) {
+            Machine machine = new Machine(QuirkProfile.CHIP8);
+            machine.load(rom);
+            Timing timing = new Timing(mode, 1000);
+            SplittableRandom random = new SplittableRandom(1);
+
+            long start = 0;
+            for (int frame = 0; frame < WARM_UP_FRAMES + FRAMES; frame++) {
+                if (frame == WARM_UP_FRAMES) {
+                    start = allocated(threads);
+                }
+                machine.getKeyboard().setKeyMask(random.nextInt(1 << 16) & random.nextInt(1 << 16));
+                machine.runFrame(timing);
+            }
+            long bytes = allocated(threads) - start;
+            assertTrue(bytes < MAX_BYTES, mode + " allocated " + bytes + " bytes over " + FRAMES + " frames");
+        }
+    }
+
+    @Test
+    @DisplayName("Write, execute and frame hooks fire without allocating")
+    void hooks_allocateNothing() throws Exception {
+        com.sun.management.ThreadMXBean threads = threads();
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(Files.readAllBytes(new File("roms", "brix.ch8").toPath()));
+        long[] events = new long[3];
+        Hooks hooks = new Hooks();
+        hooks.addWriteHook(0, machine.getMemory().getMemory().length - 1, (address, value) -> events[0] += value);
+        hooks.addOpcodeHook(0xD, (address, opcode) -> events[1]++);
+        hooks.addFrameHook(frame -> events[2] = frame);
+        machine.getCPU().setHooks(hooks);
+        SplittableRandom random = new SplittableRandom(1);
+
+        long start = 0;
+        for (int frame = 0; frame < WARM_UP_FRAMES + FRAMES; frame++) {
+            if (frame == WARM_UP_FRAMES) {
+                start = allocated(threads);
+            }
+            machine.getKeyboard().setKeyMask(random.nextInt(1 << 16) & random.nextInt(1 << 16));
+            machine.runFrame(30);
+        }
+        long bytes = allocated(threads) - start;
+        assertEquals(WARM_UP_FRAMES + FRAMES, events[2]);
+        assertTrue(events[0] > 0 && events[1] > 0, "Hooks never fired");
+        assertTrue(bytes < MAX_BYTES, "Hooked run allocated " + bytes + " bytes over " + FRAMES + " frames");
+    }
+
+    @Test
+    @DisplayName("Repainting the display stays within a tiny per-frame allocation budget")
+    void rendering_staysWithinBudget() throws Exception {
+        com.sun.management.ThreadMXBean threads = threads();
+        Machine machine = new Machine(QuirkProfile.SUPERCHIP);
+        machine.load(Files.readAllBytes(new File("roms", "octojam1title.ch8").toPath()));
+        Display display = new Display(machine.getFrameBuffer());
+        BufferedImage target = new BufferedImage(640, 320, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+
+        int frames = 2_000;
+        long start = 0;
+        for (int frame = 0; frame < 2 * frames; frame++) {
+            if (frame == frames) {
+                start = allocated(threads);
+            }
+            machine.runFrame(30);
+            display.paintComponent(graphics);
+        }
+        long perFrame = (allocated(threads) - start) / frames;
+        assertTrue(perFrame <= 16, "Repaint allocated " + perFrame + " bytes per frame");
+    }
+}
@@ -582,6 +582,80 @@ public class CPUTest {
         assertEquals(0x123 + 0x23, cpu.getPC());
     }
 
+    @Test
+    @DisplayName("2NNN - Call past the stack depth halts with a fault")
+    void callSubroutine_overflowFaults() {
+        setUpMemory(0x200, 0x2200);
+
+        runCycles(20);
+
+        assertTrue(cpu.isHalted());
+        assertEquals(Fault.STACK_OVERFLOW, cpu.getFault());
+        assertEquals(0x200, cpu.getFaultAddress());
+        assertEquals(0x2200, cpu.getFaultOpcode());
+        assertEquals(15, cpu.getSp());
+    }
+
+    @Test
+    @DisplayName("00EE - Return with an empty stack halts with a fault")
+    void returnFromSubroutine_underflowFaults() {
+        setUpMemory(0x200, 0x00EE);
+
+        runCycles(2);
+
+        assertEquals(Fault.STACK_UNDERFLOW, cpu.getFault());
+        assertEquals(0, cpu.getSp());
+        assertEquals(0x202, cpu.getPC());
+    }
+
+    @Test
+    @DisplayName("FX55 - Store past the end of memory is ignored under the IGNORE policy")
+    void store_outOfRangeIgnored() {
+        cpu.setFaultPolicy(FaultPolicy.IGNORE);
+        setUpMemory(0x200, 0xAFFE);
+        setUpMemory(0x202, 0xF355);
+        setUpMemory(0x204, 0x6042);
+
+        runCycles(3);
+
+        assertFalse(cpu.isHalted());
+        assertEquals(Fault.MEMORY_OUT_OF_RANGE, cpu.getFault());
+        assertEquals(0xFFE, cpu.getIndex());
+        assertEquals(0x42, cpu.getRegisters()[0]);
+    }
+
+    @Test
+    @DisplayName("Unknown opcode traps to the handler, which can resume the CPU")
+    void unknownOpcode_traps() {
+        int[] trapped = new int[1];
+        cpu.setFaultPolicy(Fault.UNKNOWN_OPCODE, FaultPolicy.TRAP);
+        cpu.setFaultHandler((c, fault, address, opcode) -> {
+            trapped[0] = opcode;
+            c.clearFault();
+        });
+        setUpMemory(0x200, 0x8AB9);
+        setUpMemory(0x202, 0x6101);
+
+        runCycles(2);
+
+        assertEquals(0x8AB9, trapped[0]);
+        assertFalse(cpu.isHalted());
+        assertEquals(1, cpu.getRegisters()[1]);
+    }
+
+    @Test
+    @DisplayName("Running off the end of memory halts even when faults are ignored")
+    void pcOutOfRange_halts() {
+        cpu.setFaultPolicy(FaultPolicy.IGNORE);
+        cpu.setPC(0xFFE);
+
+        runCycles(2);
+
+        assertTrue(cpu.isHalted());
+        assertEquals(Fault.PC_OUT_OF_RANGE, cpu.getFault());
+        assertEquals(0x1000, cpu.getFaultAddress());
+    }
+
 
 
 
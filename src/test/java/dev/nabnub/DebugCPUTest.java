@@ -0,0 +1,183 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DebugCPUTest {
+    private Memory memory;
+    private DebugCPU cpu;
+
+    @BeforeEach
+    public void setUp() {
+        memory = new Memory();
+        cpu = new DebugCPU(memory, new Keyboard(), new FrameBuffer(), QuirkProfile.CHIP8);
+    }
+
+    private void setUpMemory(int memStart, int... opcodes) {
+        for (int opcode : opcodes) {
+            memory.getMemory()[memStart++] = (opcode & 0xFF00) >> 8;
+            memory.getMemory()[memStart++] = opcode & 0x00FF;
+        }
+    }
+
+    private void runCycles(int n) {
+        for (int i = 0; i < n; i++) {
+            cpu.cycle();
+        }
+    }
+
+    @Test
+    @DisplayName("Breakpoint stops before the instruction and continue runs it")
+    void breakpoint_stopsBeforeInstruction() {
+        setUpMemory(0x200, 0x6001, 0x6102, 0x6203);
+        cpu.addBreakpoint(0x202);
+
+        runCycles(5);
+
+        assertTrue(cpu.isPaused());
+        assertEquals(DebugCPU.StopReason.BREAKPOINT, cpu.getStopReason());
+        assertEquals(0x202, cpu.getPC());
+        assertEquals(0, cpu.getRegisters()[1]);
+
+        cpu.resume();
+        runCycles(2);
+
+        assertEquals(0x206, cpu.getPC());
+        assertEquals(3, cpu.getRegisters()[2]);
+    }
+
+    @Test
+    @DisplayName("Write watchpoint stops on Fx55 into the watched range, read watchpoint on Dxyn")
+    void watchpoints_stopOnAccess() {
+        setUpMemory(0x200, 0xA300, 0xF255, 0xD005);
+        cpu.addWatchpoint(0x302, 0x302, false, true);
+
+        runCycles(3);
+        assertEquals(DebugCPU.StopReason.WRITE_WATCHPOINT, cpu.getStopReason());
+        assertEquals(0x302, cpu.getStopAddress());
+        assertEquals(0x202, cpu.getPC());
+
+        cpu.removeWatchpoint(0x302, 0x302);
+        cpu.addWatchpoint(0x304, 0x304, true, false);
+        cpu.resume();
+        runCycles(3);
+
+        assertEquals(DebugCPU.StopReason.READ_WATCHPOINT, cpu.getStopReason());
+        assertEquals(0x204, cpu.getPC());
+    }
+
+    @Test
+    @DisplayName("Read watchpoints on Dxyn cover every selected XO-CHIP plane's sprite data")
+    void watchpoints_coverEveryPlane() {
+        cpu = new DebugCPU(memory, new Keyboard(), new FrameBuffer(), QuirkProfile.XOCHIP);
+        //Both planes, then a 5-row sprite (10 bytes from 0x300) and a 16x16 one (64 bytes from 0x300)
+        setUpMemory(0x200, 0xF301, 0xA300, 0xD005, 0xD000);
+        cpu.addWatchpoint(0x309, 0x309, true, false);
+        runCycles(3);
+        assertEquals(DebugCPU.StopReason.READ_WATCHPOINT, cpu.getStopReason());
+        assertEquals(0x309, cpu.getStopAddress());
+        assertEquals(0x204, cpu.getPC());
+
+        cpu.removeWatchpoint(0x309, 0x309);
+        cpu.addWatchpoint(0x33F, 0x33F, true, false);
+        cpu.resume();
+        runCycles(2);
+        assertEquals(DebugCPU.StopReason.READ_WATCHPOINT, cpu.getStopReason());
+        assertEquals(0x33F, cpu.getStopAddress());
+        assertEquals(0x206, cpu.getPC());
+    }
+
+    @Test
+    @DisplayName("Condition breaks once a register reaches a value")
+    void condition_breaksOnRegisterValue() {
+        setUpMemory(0x200, 0x7301, 0x1200);
+        cpu.addCondition(new DebugCPU.Condition(3, "==", 5));
+
+        runCycles(100);
+
+        assertEquals(DebugCPU.StopReason.CONDITION, cpu.getStopReason());
+        assertEquals(5, cpu.getRegisters()[3]);
+
+        assertThrows(IllegalArgumentException.class, () -> new DebugCPU.Condition(17, "==", 0));
+        assertThrows(IllegalArgumentException.class, () -> new DebugCPU.Condition(-1, "==", 0));
+        assertThrows(IllegalArgumentException.class, () -> new DebugCPU.Condition(3, "=", 0));
+        assertEquals("I >= 768", new DebugCPU.Condition(DebugCPU.REGISTER_I, ">=", 0x300).toString());
+    }
+
+    @Test
+    @DisplayName("Step over runs a whole subroutine, step out returns from one")
+    void stepOverAndOut() {
+        setUpMemory(0x200, 0x2300, 0x6101);
+        setUpMemory(0x300, 0x6007, 0x6008, 0x00EE);
+
+        cpu.pause();
+        cpu.stepOver();
+        runCycles(10);
+
+        assertTrue(cpu.isPaused());
+        assertEquals(0x202, cpu.getPC());
+        assertEquals(8, cpu.getRegisters()[0]);
+
+        cpu.setPC(0x200);
+        cpu.step();
+        assertEquals(0x300, cpu.getPC());
+        cpu.stepOut();
+        runCycles(10);
+
+        assertTrue(cpu.isPaused());
+        assertEquals(0x202, cpu.getPC());
+        assertEquals(0, cpu.getSp());
+    }
+
+    @Test
+    @DisplayName("Console drives the debugger from text commands")
+    void console_executesCommands() {
+        setUpMemory(0x200, 0x6042, 0xA123);
+        StringWriter out = new StringWriter();
+        String script = "pause\nstep\nregs\ndis 200 2\nbreak 0x210\nmem 200 4\nquit\nstep\n";
+
+        new DebugConsole(cpu, memory, new StringReader(script), out).run();
+
+        String output = out.toString();
+        assertTrue(output.contains("V0=42"));
+        assertTrue(output.contains("0202  A123  LD I, 123"));
+        assertTrue(output.contains("breakpoint at 210"));
+        assertTrue(output.contains("0200  60 42 A1 23"));
+        assertEquals(0x202, cpu.getPC());
+    }
+
+    @Test
+    @DisplayName("Debug server accepts console sessions over TCP")
+    void server_servesConsole() throws Exception {
+        setUpMemory(0x200, 0x6042);
+        try (DebugServer server = new DebugServer(cpu, memory, 0);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+
+            in.readLine();
+            out.println("pause");
+            in.readLine();
+            in.readLine();
+            out.println("step");
+            in.readLine();
+            in.readLine();
+            out.println("regs");
+
+            assertTrue(in.readLine().startsWith("V0=42"));
+            out.println("quit");
+        }
+    }
+}
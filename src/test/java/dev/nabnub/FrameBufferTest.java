@@ -0,0 +1,115 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameBufferTest {
+
+    private FrameBuffer frameBuffer;
+    private int[] memory;
+
+    @BeforeEach
+    public void setUp() {
+        frameBuffer = new FrameBuffer();
+        memory = new int[64];
+        for (int i = 0; i < memory.length; i++) {
+            memory[i] = 0xFF;
+        }
+    }
+
+    @Test
+    @DisplayName("Lores sprite wraps around the right edge")
+    void lores_wraps() {
+        frameBuffer.drawSprite(memory, 0, 60, 0, 1, false, false);
+
+        assertTrue(frameBuffer.isPixelOn(63, 0));
+        assertTrue(frameBuffer.isPixelOn(0, 0));
+        assertTrue(frameBuffer.isPixelOn(3, 0));
+        assertFalse(frameBuffer.isPixelOn(4, 0));
+    }
+
+    @Test
+    @DisplayName("Hires 16x16 sprite crosses the word boundary and clips at the edge")
+    void hires_wideSpriteClips() {
+        frameBuffer.setHires(true);
+        frameBuffer.drawSprite(memory, 0, 56, 0, 16, true, true);
+        frameBuffer.drawSprite(memory, 0, 120, 60, 16, true, true);
+
+        assertTrue(frameBuffer.isPixelOn(56, 15));
+        assertTrue(frameBuffer.isPixelOn(71, 15));
+        assertFalse(frameBuffer.isPixelOn(72, 0));
+        assertTrue(frameBuffer.isPixelOn(127, 63));
+        assertFalse(frameBuffer.isPixelOn(0, 60));
+        assertFalse(frameBuffer.isPixelOn(120, 0));
+    }
+
+    @Test
+    @DisplayName("Hires sprite wraps around the right edge")
+    void hires_wraps() {
+        frameBuffer.setHires(true);
+        frameBuffer.drawSprite(memory, 0, 124, 0, 1, false, false);
+
+        assertTrue(frameBuffer.isPixelOn(127, 0));
+        assertTrue(frameBuffer.isPixelOn(3, 0));
+        assertFalse(frameBuffer.isPixelOn(4, 0));
+    }
+
+    @Test
+    @DisplayName("Drawing over lit pixels reports a collision")
+    void draw_collision() {
+        assertFalse(frameBuffer.drawSprite(memory, 0, 0, 0, 1, false, true));
+        assertTrue(frameBuffer.drawSprite(memory, 0, 4, 0, 1, false, true));
+        assertFalse(frameBuffer.isPixelOn(4, 0));
+        assertTrue(frameBuffer.isPixelOn(8, 0));
+    }
+
+    @Test
+    @DisplayName("00CN / 00DN scroll rows down and up")
+    void scroll_vertical() {
+        frameBuffer.setHires(true);
+        frameBuffer.togglePixel(10, 0);
+
+        frameBuffer.scrollDown(5);
+        assertTrue(frameBuffer.isPixelOn(10, 5));
+        assertFalse(frameBuffer.isPixelOn(10, 0));
+
+        frameBuffer.scrollUp(5);
+        assertTrue(frameBuffer.isPixelOn(10, 0));
+        assertFalse(frameBuffer.isPixelOn(10, 5));
+    }
+
+    @Test
+    @DisplayName("00FB / 00FC scroll across the word boundary")
+    void scroll_horizontal() {
+        frameBuffer.setHires(true);
+        frameBuffer.togglePixel(62, 3);
+
+        frameBuffer.scrollRight(4);
+        assertTrue(frameBuffer.isPixelOn(66, 3));
+
+        frameBuffer.scrollLeft(4);
+        frameBuffer.scrollLeft(4);
+        assertTrue(frameBuffer.isPixelOn(58, 3));
+        assertFalse(frameBuffer.isPixelOn(66, 3));
+    }
+
+    @Test
+    @DisplayName("Selected planes read consecutive sprite data")
+    void planes_drawSeparately() {
+        memory[1] = 0x00;
+        frameBuffer.setPlaneMask(0x3);
+        frameBuffer.drawSprite(memory, 0, 0, 0, 1, false, true);
+
+        assertEquals(0x1, frameBuffer.pixelColor(0, 0));
+
+        frameBuffer.setPlaneMask(0x2);
+        frameBuffer.drawSprite(memory, 0, 0, 0, 1, false, true);
+        assertEquals(0x3, frameBuffer.pixelColor(0, 0));
+
+        frameBuffer.clear();
+        assertEquals(0x1, frameBuffer.pixelColor(0, 0));
+    }
+}
@@ -0,0 +1,197 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FramePublisherTest {
+
+    //Waits for key 1, then draws the font digit 8 at 0,0 and loops
+    private static final byte[] ROM = {
+            0x61, 0x01, (byte) 0xE1, (byte) 0x9E, 0x12, 0x02, 0x60, 0x08,
+            (byte) 0xF0, 0x29, (byte) 0xD6, 0x65, 0x12, 0x0C
+    };
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static FrameSource source(int poolSize) {
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(ROM);
+        return new FrameSource(machine, 10, new FramePool(poolSize));
+    }
+
+    @Test
+    @DisplayName("nextFrame runs one frame with the given keys held")
+    void nextFrame_appliesInput() {
+        FrameSource source = source(2);
+
+        Frame idle = source.nextFrame(0);
+        assertEquals(0, idle.getSequence());
+        assertFalse(idle.isPixelOn(0, 0));
+        idle.release();
+
+        //The display wait quirk holds the draw until the following vblank
+        source.nextFrame(1 << 1).release();
+        Frame pressed = source.nextFrame(1 << 1);
+        assertEquals(2, pressed.getSequence());
+        assertEquals(1 << 1, pressed.getInputMask());
+        assertTrue(pressed.isPixelOn(0, 0));
+        assertEquals(64, pressed.getWidth());
+        pressed.release();
+    }
+
+    @Test
+    @DisplayName("Publisher emits only what was requested")
+    void publisher_respectsDemand() throws Exception {
+        FramePublisher publisher = new FramePublisher(source(4), executor, false);
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+
+        publisher.subscribe(new Flow.Subscriber<Frame>() {
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+                s.request(3);
+            }
+
+            public void onNext(Frame frame) {
+                received.add(frame.getSequence());
+                frame.release();
+            }
+
+            public void onError(Throwable throwable) {
+            }
+
+            public void onComplete() {
+            }
+        });
+
+        Thread.sleep(100);
+        assertEquals(3, received.size());
+
+        subscription.get().request(2);
+        Thread.sleep(100);
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), received);
+    }
+
+    @Test
+    @DisplayName("Full speed subscriber is served entirely from the frame pool")
+    void publisher_recyclesFrames() throws Exception {
+        FramePublisher publisher = new FramePublisher(source(2), executor, false);
+        Set<Frame> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        publisher.subscribe(new Flow.Subscriber<Frame>() {
+            private Flow.Subscription subscription;
+
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            public void onNext(Frame frame) {
+                distinct.add(frame);
+                frame.release();
+                if (frame.getSequence() == 999) {
+                    subscription.cancel();
+                    done.countDown();
+                } else {
+                    subscription.request(1);
+                }
+            }
+
+            public void onError(Throwable throwable) {
+            }
+
+            public void onComplete() {
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(distinct.size() <= 2, "frames allocated: " + distinct.size());
+    }
+
+    @Test
+    @DisplayName("Paced publisher holds 60 frames per second")
+    void publisher_pacesTo60Hz() throws Exception {
+        FramePublisher publisher = new FramePublisher(source(4), executor, true);
+        CountDownLatch done = new CountDownLatch(13);
+
+        long start = System.nanoTime();
+        publisher.subscribe(new Flow.Subscriber<Frame>() {
+            public void onSubscribe(Flow.Subscription s) {
+                s.request(13);
+            }
+
+            public void onNext(Frame frame) {
+                frame.release();
+                done.countDown();
+            }
+
+            public void onError(Throwable throwable) {
+            }
+
+            public void onComplete() {
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis >= 190, "12 frame intervals took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    @DisplayName("Second subscriber and non-positive requests are rejected with onError")
+    void publisher_signalsErrors() throws Exception {
+        FramePublisher publisher = new FramePublisher(source(2), executor, false);
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        Flow.Subscriber<Frame> subscriber = new Flow.Subscriber<Frame>() {
+            public void onSubscribe(Flow.Subscription s) {
+                s.request(0);
+            }
+
+            public void onNext(Frame frame) {
+                frame.release();
+            }
+
+            public void onError(Throwable throwable) {
+                errors.add(throwable);
+            }
+
+            public void onComplete() {
+            }
+        };
+
+        publisher.subscribe(subscriber);
+        publisher.subscribe(subscriber);
+        Thread.sleep(100);
+
+        assertEquals(2, errors.size());
+        assertTrue(errors.stream().anyMatch(e -> e instanceof IllegalArgumentException));
+        assertTrue(errors.stream().anyMatch(e -> e instanceof IllegalStateException));
+    }
+}
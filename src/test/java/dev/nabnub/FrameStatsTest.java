@@ -0,0 +1,64 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameStatsTest {
+
+    @Test
+    @DisplayName("The frame loop records every frame's instructions and timing, and the overlay draws them")
+    void frameLoop_recordsFrames() throws Exception {
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(Files.readAllBytes(new File("roms", "1-chip8-logo.ch8").toPath()));
+        Timing timing = new Timing(20);
+        FrameStats stats = new FrameStats();
+        FrameLoop loop = new FrameLoop(machine.getCPU(), timing, frame -> { });
+        loop.setStats(stats);
+        Thread thread = new Thread(loop::run, "chip8-test-frames");
+        thread.start();
+        while (stats.getFrames() < 30) {
+            Thread.sleep(10);
+        }
+        loop.stop();
+        thread.join();
+
+        long frames = stats.getFrames();
+        assertEquals(loop.getFrame(), frames);
+        for (long frame = frames - FrameStats.HISTORY; frame < frames; frame++) {
+            if (frame >= 0) {
+                assertTrue(stats.instructions(frame) <= 20);
+                assertTrue(stats.workNanos(frame) > 0);
+                assertTrue(frame == 0 || stats.endNanos(frame) > stats.endNanos(frame - 1));
+            }
+        }
+        //Deadlines hold the loop to 60Hz, give or take a slow sandbox
+        double fps = stats.framesPerSecond(60);
+        assertTrue(fps > 30 && fps < 70, "Ran at " + fps + " fps");
+        assertTrue(stats.instructionsPerSecond(60) > 0);
+
+        BufferedImage image = new BufferedImage(640, 320, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        new PerformanceOverlay(stats, timing).paint(graphics);
+        assertNotEquals(0, image.getRGB(20, 12) | image.getRGB(8, 8 + 76));
+    }
+
+    @Test
+    @DisplayName("Frames report the instructions they ran in every timing mode")
+    void runFrame_returnsInstructions() throws Exception {
+        byte[] rom = Files.readAllBytes(new File("roms", "3-corax+.ch8").toPath());
+        for (Timing.Mode mode : Timing.Mode.values()) {
+            Machine machine = new Machine(QuirkProfile.CHIP8);
+            machine.load(rom);
+            Timing timing = new Timing(mode, 15);
+            int executed = timing.runFrame(machine.getCPU());
+            assertTrue(executed > 0 && (mode == Timing.Mode.VIP || executed <= 15), mode + " ran " + executed);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FuzzerTest {
+
+    private final Fuzzer fuzzer = new Fuzzer(Collections.emptyList(), 500, 1000, true);
+
+    @Test
+    @DisplayName("Unbounded recursion is reported and the ROM shrinks while still reproducing")
+    void recursion_isMinimized() {
+        byte[] rom = {0x60, 0x01, 0x61, 0x02, 0x22, 0x04, 0x00, (byte) 0xE0, 0x12, 0x00};
+        Fuzzer.Finding finding = fuzzer.execute(new Machine(QuirkProfile.CHIP8), rom);
+
+        assertEquals("FAULT: STACK_OVERFLOW on 2nnn", finding.getSignature());
+        Fuzzer.Finding minimized = fuzzer.minimize(finding);
+
+        assertEquals(finding.getSignature(), minimized.getSignature());
+        assertTrue(minimized.getRom().length < rom.length);
+        assertEquals(minimized.getSignature(),
+                fuzzer.execute(new Machine(QuirkProfile.CHIP8), minimized.getRom()).getSignature());
+    }
+
+    @Test
+    @DisplayName("Store with I at the top of memory is reported")
+    void storeAtTopOfMemory_isReported() {
+        byte[] rom = {(byte) 0xAF, (byte) 0xFE, (byte) 0xF3, 0x55};
+
+        Fuzzer.Finding finding = fuzzer.execute(new Machine(QuirkProfile.CHIP48), rom);
+
+        assertEquals(Fuzzer.Kind.FAULT, finding.getKind());
+        assertEquals(0x202, finding.getPc());
+        assertEquals(0xF355, finding.getOpcode());
+    }
+
+    @Test
+    @DisplayName("Well behaved ROM runs clean on every profile")
+    void loop_runsClean() {
+        byte[] rom = {0x60, 0x05, 0x70, 0x01, (byte) 0xA2, 0x00, (byte) 0xD0, 0x15, 0x12, 0x02};
+
+        for (QuirkProfile profile : QuirkProfile.values()) {
+            assertNull(fuzzer.execute(new Machine(profile), rom), profile.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Parallel run finds the known stack and memory faults with a fixed seed")
+    void parallelRun_findsFaults() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Fuzzer.Finding> findings = fuzzer.run(2000, 42, pool);
+
+            assertTrue(fuzzer.getExecutions() >= 2000L * QuirkProfile.values().length);
+            assertFalse(findings.isEmpty());
+            for (Fuzzer.Finding finding : findings) {
+                Fuzzer.Finding replayed = fuzzer.execute(new Machine(finding.getProfile()), finding.getRom());
+                assertEquals(finding.getSignature(), replayed.getSignature());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Core neither crashes nor breaks invariants when faults are not reported")
+    void parallelRun_noCrashes() throws Exception {
+        Fuzzer crashesOnly = new Fuzzer(Collections.emptyList(), 500, 1000, false);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Fuzzer.Finding> findings = crashesOnly.run(5000, 7, pool);
+
+            assertTrue(findings.isEmpty(), findings.toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Differential runs find runCycles agreeing with cycle(), and catch machines that do not")
+    void differentialRun_matchesCycle() throws Exception {
+        Fuzzer differential = new Fuzzer(Collections.emptyList(), 500, 1000, false, true);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Fuzzer.Finding> findings = differential.run(3000, 13, pool);
+
+            assertTrue(findings.isEmpty(), findings.toString());
+            assertTrue(differential.getExecutions() > 3000L * QuirkProfile.values().length);
+        } finally {
+            pool.shutdown();
+        }
+
+        //8xy6 shifts Vy on CHIP-8 and Vx on CHIP-48, so two machines that disagree stand in for a broken fast path
+        byte[] rom = {0x60, 0x03, 0x61, 0x06, (byte) 0x80, 0x16, 0x12, 0x06};
+        assertNull(differential.compare(new Machine(QuirkProfile.CHIP8), new Machine(QuirkProfile.CHIP8), rom));
+        Fuzzer.Finding finding = differential.compare(new Machine(QuirkProfile.CHIP8),
+                new Machine(QuirkProfile.CHIP48), rom);
+        assertEquals(Fuzzer.Kind.DIVERGENCE, finding.getKind());
+        assertEquals(0x200, finding.getPc());
+    }
+}
@@ -0,0 +1,99 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HooksTest {
+
+    private static Machine machine(int... program) {
+        byte[] rom = new byte[program.length * 2];
+        for (int i = 0; i < program.length; i++) {
+            rom[i * 2] = (byte) (program[i] >> 8);
+            rom[i * 2 + 1] = (byte) program[i];
+        }
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(rom);
+        return machine;
+    }
+
+    @Test
+    @DisplayName("Write hooks see every byte stored in their range and nothing outside it")
+    void writeHook_firesForRange() {
+        //VA = 123, BCD to 0x300, then V0-V1 to 0x310, then spin
+        Machine machine = machine(0x6A7B, 0xA300, 0xFA33, 0xA310, 0xF155, 0x120A);
+        List<int[]> writes = new ArrayList<>();
+        Hooks hooks = new Hooks();
+        hooks.addWriteHook(0x301, 0x310, (address, value) -> writes.add(new int[]{address, value}));
+        machine.getCPU().setHooks(hooks);
+
+        machine.runFrame(10);
+        assertEquals(3, writes.size());
+        assertArrayEquals(new int[]{0x301, 2}, writes.get(0));
+        assertArrayEquals(new int[]{0x302, 3}, writes.get(1));
+        assertArrayEquals(new int[]{0x310, 0}, writes.get(2));
+        assertThrows(IllegalArgumentException.class, () -> hooks.addWriteHook(0x310, 0x300, (a, v) -> { }));
+    }
+
+    @Test
+    @DisplayName("Execute hooks fire for their address and opcode group, and stop once removed")
+    void executeHooks_fireUntilRemoved() {
+        Machine machine = machine(0x6A7B, 0xA300, 0xFA33, 0xA310, 0xF155, 0x120A);
+        int[] counts = new int[2];
+        int[] seen = new int[2];
+        Hooks hooks = new Hooks();
+        Hooks.ExecuteHook at = (address, opcode) -> {
+            counts[0]++;
+            seen[0] = address;
+            seen[1] = opcode;
+        };
+        Hooks.ExecuteHook jumps = (address, opcode) -> counts[1]++;
+        hooks.addExecuteHook(0x204, at);
+        hooks.addOpcodeHook(0x1, jumps);
+        machine.getCPU().setHooks(hooks);
+
+        machine.runFrame(20);
+        assertArrayEquals(new int[]{1, 15}, counts);
+        assertArrayEquals(new int[]{0x204, 0xFA33}, seen);
+
+        assertTrue(hooks.removeExecuteHook(jumps));
+        assertFalse(hooks.removeExecuteHook(jumps));
+        machine.runFrame(20);
+        assertArrayEquals(new int[]{1, 15}, counts);
+    }
+
+    @Test
+    @DisplayName("Frame hooks count frames, and hooks leave emulation exactly as it was")
+    void hooks_doNotChangeEmulation() throws Exception {
+        byte[] rom = Files.readAllBytes(new File("roms", "brix.ch8").toPath());
+        Machine plain = new Machine(QuirkProfile.CHIP8);
+        Machine hooked = new Machine(QuirkProfile.CHIP8);
+        for (Machine machine : new Machine[]{plain, hooked}) {
+            machine.load(rom);
+            machine.getCPU().setRandomSeed(7);
+            machine.getCPU().setSuperinstructions(new Superinstructions(machine.getMemory().getMemory()));
+        }
+        long[] frames = new long[1];
+        int[] draws = new int[1];
+        Hooks hooks = new Hooks();
+        hooks.addFrameHook(frame -> frames[0] = frame);
+        hooks.addOpcodeHook(0xD, (address, opcode) -> draws[0]++);
+        hooked.getCPU().setHooks(hooks);
+
+        for (int frame = 0; frame < 300; frame++) {
+            plain.getKeyboard().setKeyMask(frame % 40 < 20 ? 1 << 4 : 1 << 6);
+            hooked.getKeyboard().setKeyMask(plain.getKeyboard().getKeyMask());
+            plain.runFrame(30);
+            hooked.runFrame(30);
+            assertEquals(plain.stateHash(), hooked.stateHash(), "Diverged at frame " + frame);
+        }
+        assertEquals(300, frames[0]);
+        assertTrue(draws[0] > 0);
+    }
+}
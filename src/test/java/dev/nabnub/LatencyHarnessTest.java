@@ -0,0 +1,29 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHarnessTest {
+
+    @Test
+    @DisplayName("Every key event on 6-keypad reaches the screen within a frame and a generous time budget")
+    void keypad_withinBudget() throws Exception {
+        byte[] rom = Files.readAllBytes(new File("roms", "6-keypad.ch8").toPath());
+        //Fast enough that the ROM's own key scan takes less than a frame, leaving only the emulator's latency
+        LatencyHarness harness = new LatencyHarness(QuirkProfile.CHIP8, rom, LatencyHarness.keypadSetup(),
+                new Timing(200));
+        LatencyHarness.Result result = harness.run(8, new int[]{0x5, 0xA}, 3);
+
+        assertEquals(0, result.getMissed());
+        assertEquals(8, result.getCount());
+        assertTrue(result.frames(1) <= 2, "Took " + result.frames(1) + " frames");
+        assertTrue(result.changeMillis(0) <= result.paintMillis(0));
+        //Wall clock times on a loaded build machine, so only catch latency that has gone badly wrong
+        assertTrue(result.paintMillis(0.5) < 250, "Median latency " + result.paintMillis(0.5) + " ms");
+    }
+}
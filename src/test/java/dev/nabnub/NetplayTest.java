@@ -0,0 +1,88 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NetplayTest {
+
+    private static final int FRAMES = 600;
+    private static final int IPF = 1_000;
+
+    //Each player holds one of their own side's pong keys, or none, for a few frames at a time
+    private static int input(int side, long frame) {
+        int[] keys = side == 0 ? new int[]{0, 1 << 0x1, 1 << 0x4} : new int[]{0, 1 << 0xC, 1 << 0xD};
+        long span = frame / (5 + side * 2);
+        return keys[(int) Math.floorMod(StateHash.mix(side, span), 3L)];
+    }
+
+    private static long reference(byte[] rom) {
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(rom);
+        machine.getCPU().setRandomSeed(Netplay.SEED);
+        for (long frame = 0; frame < FRAMES; frame++) {
+            machine.getKeyboard().setKeyMask(input(0, frame) | input(1, frame));
+            machine.runFrame(IPF);
+        }
+        return machine.stateHash();
+    }
+
+    private static void play(String rom, double loss, int latency) throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get("roms", rom + ".ch8"));
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (Netplay a = new Netplay(QuirkProfile.CHIP8, bytes, IPF, new InetSocketAddress(loopback, 0));
+             Netplay b = new Netplay(QuirkProfile.CHIP8, bytes, IPF, new InetSocketAddress(loopback, 0))) {
+            a.connect(new InetSocketAddress(loopback, b.getLocalPort()));
+            b.connect(new InetSocketAddress(loopback, a.getLocalPort()));
+            a.setSimulatedNetwork(loss, latency, 1);
+            b.setSimulatedNetwork(loss, latency, 2);
+
+            //Both sides run their frames, then keep exchanging packets until every input is confirmed
+            for (int tick = 0; tick < FRAMES * 20; tick++) {
+                if (a.getConfirmedFrame() == FRAMES && b.getConfirmedFrame() == FRAMES) {
+                    break;
+                }
+                if (a.getFrame() < FRAMES) {
+                    a.advance(input(0, a.getFrame()));
+                } else {
+                    a.poll();
+                }
+                if (b.getFrame() < FRAMES) {
+                    b.advance(input(1, b.getFrame()));
+                } else {
+                    b.poll();
+                }
+            }
+            assertEquals(FRAMES, a.getConfirmedFrame(), rom);
+            assertEquals(FRAMES, b.getConfirmedFrame(), rom);
+            long expected = reference(bytes);
+            assertEquals(expected, a.getMachine().stateHash(), rom);
+            assertEquals(expected, b.getMachine().stateHash(), rom);
+            if (latency > 0) {
+                assertTrue(a.getRollbacks() > 0 && b.getRollbacks() > 0, rom);
+            }
+            assertTrue(a.getMaxRollbackNanos() < Timing.FRAME_NANOS, a.getMaxRollbackNanos() + " ns");
+            assertTrue(b.getMaxRollbackNanos() < Timing.FRAME_NANOS, b.getMaxRollbackNanos() + " ns");
+        }
+    }
+
+    @Test
+    @DisplayName("Two sides over loopback end in the state of a local run with both keypads")
+    void loopback_matchesLocalRun() throws Exception {
+        play("pong", 0, 0);
+        play("rps", 0, 0);
+    }
+
+    @Test
+    @DisplayName("Lost and late packets are rolled back over and both sides still agree")
+    void lossAndLatency_rollBackToSameState() throws Exception {
+        play("pong", 0.2, 4);
+        play("rps", 0.3, 6);
+    }
+}
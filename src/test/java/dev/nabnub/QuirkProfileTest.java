@@ -0,0 +1,182 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuirkProfileTest {
+
+    private Memory memory;
+    private Display display;
+    private CPU cpu;
+
+    private void setUp(QuirkProfile profile, int... opcodes) {
+        memory = new Memory(profile.memorySize());
+        display = new Display();
+        cpu = new CPU(memory, new Keyboard(), display, profile);
+        for (int i = 0; i < opcodes.length; i++) {
+            memory.getMemory()[0x200 + i * 2] = (opcodes[i] & 0xFF00) >> 8;
+            memory.getMemory()[0x201 + i * 2] = opcodes[i] & 0x00FF;
+        }
+    }
+
+    private void runCycles(int n) {
+        for (int i = 0; i < n; i++) {
+            cpu.cycle();
+        }
+    }
+
+    @Test
+    @DisplayName("8XY6 - CHIP-48 shifts Vx in place")
+    void shift_usesVx() {
+        setUp(QuirkProfile.CHIP48, 0x6005, 0x6140, 0x8016);
+        runCycles(3);
+        assertEquals(0x02, cpu.getRegistersCopy()[0]);
+        assertEquals(0x1, cpu.getRegistersCopy()[0xF]);
+    }
+
+    @Test
+    @DisplayName("8XY1 - SUPER-CHIP keeps VF")
+    void logic_keepsVf() {
+        setUp(QuirkProfile.SUPERCHIP, 0x6F22, 0x6002, 0x6104, 0x8011);
+        runCycles(4);
+        assertEquals(0x22, cpu.getRegistersCopy()[0xF]);
+    }
+
+    @Test
+    @DisplayName("FX55 - I increment per profile")
+    void store_incrementsIPerProfile() {
+        setUp(QuirkProfile.CHIP8, 0xA300, 0xF255);
+        runCycles(2);
+        assertEquals(0x303, cpu.getIndex());
+
+        setUp(QuirkProfile.CHIP48, 0xA300, 0xF255);
+        runCycles(2);
+        assertEquals(0x302, cpu.getIndex());
+
+        setUp(QuirkProfile.SUPERCHIP, 0xA300, 0xF255);
+        runCycles(2);
+        assertEquals(0x300, cpu.getIndex());
+    }
+
+    @Test
+    @DisplayName("BXNN - SUPER-CHIP jumps to XNN + VX")
+    void jump_usesVx() {
+        setUp(QuirkProfile.SUPERCHIP, 0x6210, 0x6020, 0xB234);
+        runCycles(3);
+        assertEquals(0x244, cpu.getPC());
+    }
+
+    @Test
+    @DisplayName("DXYN - CHIP-8 clips, XO-CHIP wraps")
+    void draw_clipsOrWraps() {
+        setUp(QuirkProfile.CHIP8, 0x603E, 0x6100, 0xA050, 0xD011);
+        runCycles(4);
+        assertFalse(display.getPixels()[0][0]);
+
+        setUp(QuirkProfile.XOCHIP, 0x603E, 0x6100, 0xA050, 0xD011);
+        runCycles(4);
+        assertTrue(display.getPixels()[0][0]);
+    }
+
+    @Test
+    @DisplayName("DXYN - CHIP-8 draws once per frame")
+    void draw_waitsForVblank() {
+        setUp(QuirkProfile.CHIP8, 0xA050, 0xD001, 0xD001);
+        runCycles(10);
+        assertEquals(0x204, cpu.getPC());
+
+        cpu.updateTimers();
+        runCycles(1);
+        assertEquals(0x206, cpu.getPC());
+    }
+
+    @Test
+    @DisplayName("00FF / DXY0 - SUPER-CHIP draws a 16x16 sprite in hires")
+    void superChip_hiresSprite() {
+        setUp(QuirkProfile.SUPERCHIP, 0x00FF, 0x6078, 0x6100, 0xA0A0, 0xD010);
+        runCycles(5);
+
+        assertTrue(display.getFrameBuffer().isHires());
+        assertTrue(display.getPixels()[120][0]);
+        assertEquals(0, cpu.getRegistersCopy()[0xF]);
+    }
+
+    @Test
+    @DisplayName("F000 NNNN - XO-CHIP loads a long address and skips it as one instruction")
+    void xoChip_longLoad() {
+        setUp(QuirkProfile.XOCHIP, 0xF000, 0x1234, 0x3000, 0xF000, 0x4321);
+        runCycles(2);
+
+        assertEquals(0x1234, cpu.getIndex());
+        assertEquals(0x20A, cpu.getPC());
+    }
+
+    @Test
+    @DisplayName("5XY2 / 5XY3 - XO-CHIP saves and loads a register range")
+    void xoChip_registerRange() {
+        setUp(QuirkProfile.XOCHIP, 0x6111, 0x6222, 0x6333, 0xA300, 0x5132, 0x6100, 0x5313);
+        runCycles(7);
+
+        assertEquals(0x11, memory.getMemory()[0x300]);
+        assertEquals(0x33, memory.getMemory()[0x302]);
+        assertEquals(0x11, cpu.getRegistersCopy()[3]);
+        assertEquals(0x33, cpu.getRegistersCopy()[1]);
+        assertEquals(0x300, cpu.getIndex());
+    }
+
+    //The quirks test prints one check mark per quirk in the right-hand column when it passes
+    @Test
+    @DisplayName("5-quirks passes under each profile")
+    void quirksRom_passes() throws IOException {
+        assertQuirksRomPasses(QuirkProfile.CHIP8, 1);
+        assertQuirksRomPasses(QuirkProfile.SUPERCHIP, 2);
+        assertQuirksRomPasses(QuirkProfile.XOCHIP, 3);
+        assertQuirksRomPasses(QuirkProfile.SUPERCHIP_LEGACY, 4);
+    }
+
+    //The ROM has no CHIP-48 platform and CHIP-48 has no SUPER-CHIP instructions, so it runs the CHIP-8 checks and
+    //gets a cross for every quirk it has that CHIP-8 does not: no vF reset, I += x, no display wait, shifting Vx
+    //and jumping to xnn + Vx. Clipping is the same on both.
+    @Test
+    @DisplayName("5-quirks shows exactly CHIP-48's differences from CHIP-8")
+    void quirksRom_chip48() throws IOException {
+        assertQuirksRomMarks(QuirkProfile.CHIP48, 1, false, false, false, true, false, false);
+    }
+
+    private void assertQuirksRomPasses(QuirkProfile profile, int platform) throws IOException {
+        assertQuirksRomMarks(profile, platform, true, true, true, true, true, true);
+    }
+
+    //One expected mark per quirk, top to bottom: vF reset, memory, display wait, clipping, shifting, jumping
+    private void assertQuirksRomMarks(QuirkProfile profile, int platform, boolean... checks) throws IOException {
+        setUp(profile);
+        memory.loadProgram(Files.readAllBytes(new File("roms", "5-quirks.ch8").toPath()));
+        memory.getMemory()[0x1FF] = platform;   //Skips the platform menu
+
+        for (int frame = 0; frame < 600; frame++) {
+            cpu.updateTimers();
+            runCycles(30);
+        }
+
+        boolean[][] pixels = display.getPixels();
+        for (int quirk = 0; quirk < checks.length; quirk++) {
+            int row = 1 + quirk * 5;
+            String message = profile + " row " + row;
+            if (checks[quirk]) {
+                assertTrue(pixels[59][row + 1] && !pixels[60][row + 1] && pixels[61][row + 1], message);
+                assertTrue(pixels[59][row + 2] && pixels[60][row + 2] && !pixels[61][row + 2], message);
+                assertTrue(pixels[59][row + 3] && !pixels[60][row + 3] && !pixels[61][row + 3], message);
+            } else {
+                assertTrue(pixels[59][row + 1] && !pixels[60][row + 1] && pixels[61][row + 1], message);
+                assertTrue(!pixels[59][row + 2] && pixels[60][row + 2] && !pixels[61][row + 2], message);
+                assertTrue(pixels[59][row + 3] && !pixels[60][row + 3] && pixels[61][row + 3], message);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RomCorpusTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("A packed corpus loads every ROM exactly as reading its file would")
+    void corpus_matchesFiles() throws Exception {
+        List<Path> roms = RomCorpus.findRoms(Paths.get("roms"));
+        Path file = dir.resolve("roms.corpus");
+        RomCorpus.write(file, roms);
+
+        try (RomCorpus corpus = new RomCorpus(file)) {
+            assertEquals(roms.size(), corpus.size());
+            Machine fromFile = new Machine(QuirkProfile.XOCHIP);
+            Machine fromCorpus = new Machine(QuirkProfile.XOCHIP);
+            for (int i = 0; i < roms.size(); i++) {
+                byte[] bytes = Files.readAllBytes(roms.get(i));
+                assertEquals(RomPreviews.romName(roms.get(i)), corpus.name(i));
+                assertArrayEquals(bytes, corpus.read(i));
+
+                fromFile.load(bytes);
+                corpus.load(i, fromCorpus);
+                fromFile.getCPU().setRandomSeed(1);
+                fromCorpus.getCPU().setRandomSeed(1);
+                for (int frame = 0; frame < 10; frame++) {
+                    fromFile.runFrame(30);
+                    fromCorpus.runFrame(30);
+                }
+                assertEquals(fromFile.stateHash(), fromCorpus.stateHash(), corpus.name(i));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> corpus.length(roms.size()));
+        }
+    }
+
+    @Test
+    @DisplayName("Files that are not corpora, or whose index points past the end, are rejected")
+    void badFiles_areRejected() throws Exception {
+        Path rom = dir.resolve("pong.ch8");
+        Files.copy(Paths.get("roms", "pong.ch8"), rom);
+        assertThrows(IOException.class, () -> new RomCorpus(rom));
+
+        Path file = dir.resolve("one.corpus");
+        RomCorpus.write(file, List.of(rom));
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> new RomCorpus(file));
+
+        //A length with the top bit set is huge, not negative, and an offset near the top of the range cannot wrap
+        //past the end of the file when a length is added to it
+        ByteBuffer entry = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putInt(RomCorpus.HEADER + 8, -1);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> new RomCorpus(file));
+        entry.putInt(RomCorpus.HEADER + 8, Memory.XO_MEMORY_SIZE);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> new RomCorpus(file));
+        entry.putInt(RomCorpus.HEADER + 8, 1).putLong(RomCorpus.HEADER, Long.MAX_VALUE);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> new RomCorpus(file));
+    }
+}
@@ -0,0 +1,140 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RomPreviewsTest {
+
+    @TempDir
+    Path dir;
+
+    private Path copyRoms(String... names) throws Exception {
+        Path roms = Files.createDirectories(dir.resolve("roms"));
+        for (String name : names) {
+            Files.copy(Paths.get("roms", name + ".ch8"), roms.resolve(name + ".ch8"));
+        }
+        return roms;
+    }
+
+    private static int gifFrames(byte[] gif) throws Exception {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(gif))) {
+            reader.setInput(in);
+            return reader.getNumImages(true);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    @Test
+    @DisplayName("Refresh previews every ROM once, then only ROMs that were added or changed")
+    void refresh_isIncremental() throws Exception {
+        Path roms = copyRoms("2-ibm-logo", "pong", "octojam1title");
+        PreviewCache cache = new PreviewCache(dir.resolve("cache"), 16);
+        RomPreviews previews = new RomPreviews(roms, cache, QuirkProfile.CHIP8, 60, 20, new int[0]);
+
+        assertEquals(3, previews.refresh(ForkJoinPool.commonPool()));
+        Map<String, String> entries = cache.entries();
+        assertEquals(3, entries.size());
+
+        //The IBM logo is on screen after a second
+        BufferedImage thumbnail = cache.readThumbnail(entries.get("2-ibm-logo"));
+        assertEquals(FrameBuffer.MAX_WIDTH, thumbnail.getWidth());
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(Files.readAllBytes(roms.resolve("2-ibm-logo.ch8")));
+        for (int frame = 0; frame < 60; frame++) {
+            machine.runFrame(20);
+        }
+        assertArrayEquals(RomPreviews.render(machine.getFrameBuffer()).getRGB(0, 0, 128, 64, null, 0, 128),
+                thumbnail.getRGB(0, 0, 128, 64, null, 0, 128));
+        assertEquals(10, gifFrames(cache.readAnimation(entries.get("pong"))));
+        assertEquals(QuirkProfile.CHIP8, cache.profile(entries.get("pong")));
+
+        assertEquals(0, previews.refresh(ForkJoinPool.commonPool()));
+
+        //A new start for a changed ROM, and a removed ROM drops out of the index
+        Files.write(roms.resolve("pong.ch8"), new byte[]{0x12, 0x00});
+        Files.delete(roms.resolve("octojam1title.ch8"));
+        Files.copy(Paths.get("roms", "tank.ch8"), roms.resolve("tank.ch8"));
+        assertEquals(2, previews.refresh(ForkJoinPool.commonPool()));
+        Map<String, String> updated = cache.entries();
+        assertEquals(Collections.singleton("octojam1title"), keysMissing(entries, updated));
+        assertNotEquals(entries.get("pong"), updated.get("pong"));
+        assertEquals(entries.get("2-ibm-logo"), updated.get("2-ibm-logo"));
+
+        //A launcher starting later sees the same entries from the cache directory alone
+        PreviewCache reopened = new PreviewCache(dir.resolve("cache"), 16);
+        assertEquals(updated, reopened.entries());
+        assertEquals(QuirkProfile.CHIP8, reopened.profile(updated.get("2-ibm-logo")));
+    }
+
+    private static Set<String> keysMissing(Map<String, String> before, Map<String, String> after) {
+        Set<String> missing = new HashSet<>(before.keySet());
+        missing.removeAll(after.keySet());
+        return missing;
+    }
+
+    @Test
+    @DisplayName("A full cache evicts the least recently used preview, however recently it was read")
+    void fullCache_evictsLeastRecentlyUsed() throws Exception {
+        Path roms = copyRoms("2-ibm-logo", "pong");
+        Path cacheDir = dir.resolve("cache");
+        PreviewCache cache = new PreviewCache(cacheDir, 2);
+        RomPreviews previews = new RomPreviews(roms, cache, QuirkProfile.CHIP8, 12, 20, new int[]{0x1, 0x0});
+        previews.refresh(ForkJoinPool.commonPool());
+        Map<String, String> entries = cache.entries();
+
+        //Age both entries, then use the IBM logo so pong is the least recently used. Listing pong afterwards, as
+        //the launcher does, reads it without using it.
+        for (String key : entries.values()) {
+            Files.setLastModifiedTime(cacheDir.resolve(key + ".png"), FileTime.fromMillis(1_000));
+        }
+        cache.touch(entries.get("2-ibm-logo"));
+        assertNotNull(cache.readThumbnail(entries.get("pong")));
+        assertNotNull(cache.readAnimation(entries.get("pong")));
+
+        Files.copy(Paths.get("roms", "tank.ch8"), roms.resolve("tank.ch8"));
+        assertEquals(1, previews.refresh(ForkJoinPool.commonPool()));
+        assertEquals(Set.of("2-ibm-logo", "tank"), cache.entries().keySet());
+        assertFalse(cache.contains(entries.get("pong")));
+    }
+
+    @Test
+    @DisplayName("A ROM that needs XO-CHIP's instructions or memory records the profile its preview ran under")
+    void unknownOpcode_recordsXoChipProfile() throws Exception {
+        Path roms = copyRoms("pong");
+        //00FF switches to hires, which the CHIP-8 profile does not know
+        Files.write(roms.resolve("hires.ch8"), new byte[]{0x00, (byte) 0xFF, 0x12, 0x02});
+        //A loop followed by data that only fits in XO-CHIP's 64K
+        byte[] large = new byte[8192];
+        large[0] = 0x12;
+        Files.write(roms.resolve("large.ch8"), large);
+        PreviewCache cache = new PreviewCache(dir.resolve("cache"), 16);
+        new RomPreviews(roms, cache, QuirkProfile.CHIP8, 12, 20, new int[0]).refresh(ForkJoinPool.commonPool());
+
+        Map<String, String> entries = cache.entries();
+        assertEquals(QuirkProfile.CHIP8, cache.profile(entries.get("pong")));
+        assertEquals(QuirkProfile.XOCHIP, cache.profile(entries.get("hires")));
+        assertEquals(QuirkProfile.XOCHIP, cache.profile(entries.get("large")));
+        assertEquals(QuirkProfile.XOCHIP,
+                new PreviewCache(dir.resolve("cache"), 16).profile(entries.get("hires")));
+    }
+}
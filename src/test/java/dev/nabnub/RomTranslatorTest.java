@@ -0,0 +1,130 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static dev.nabnub.TestRoms.rom;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RomTranslatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TranslatedProgram translate(byte[] rom) throws IOException {
+        File jar = tempDir.resolve("rom.jar").toFile();
+        new RomTranslator(rom).writeJar(jar);
+        TranslatedProgram program = TranslatedProgram.load(jar, rom);
+        assertNotNull(program);
+        return program;
+    }
+
+    private CPU newCPU(Memory memory, byte[] rom) {
+        memory.loadProgram(rom);
+        return new CPU(memory, new Keyboard(), new Display());
+    }
+
+    @Test
+    @DisplayName("Translated code reaches the same state as the interpreter")
+    void translated_matchesInterpreter() throws IOException {
+        byte[] rom = rom(
+                0x6005,     //200: V0 = 5
+                0x6100,     //202: V1 = 0
+                0x2210,     //204: call 210
+                0x70FF,     //206: V0 -= 1
+                0x3000,     //208: skip if V0 == 0
+                0x1204,     //20A: jump 204
+                0x120C,     //20C: halt
+                0x0000,     //20E
+                0x8104,     //210: V1 += V0
+                0xA300,     //212: I = 300
+                0xF133,     //214: BCD V1
+                0x00EE      //216: return
+        );
+
+        Memory interpretedMemory = new Memory();
+        CPU interpreted = newCPU(interpretedMemory, rom);
+        for (int i = 0; i < 200; i++) {
+            interpreted.cycle();
+        }
+
+        Memory translatedMemory = new Memory();
+        CPU translated = newCPU(translatedMemory, rom);
+        translated.setTranslation(translate(rom));
+        translated.runTranslated(200);
+
+        assertEquals(interpreted.getPC(), translated.getPC());
+        assertEquals(interpreted.getIndex(), translated.getIndex());
+        assertArrayEquals(interpreted.getRegistersCopy(), translated.getRegistersCopy());
+        assertArrayEquals(interpretedMemory.getMemory(), translatedMemory.getMemory());
+        assertEquals(15, translated.getRegistersCopy()[1]);
+    }
+
+    @Test
+    @DisplayName("Self-modified code falls back to the interpreter")
+    void selfModifiedCode_isInvalidated() throws IOException {
+        byte[] rom = rom(
+                0x606A,     //200: V0 = 6A
+                0x6199,     //202: V1 = 99
+                0xA208,     //204: I = 208
+                0xF155,     //206: store V0-V1, rewrites 208 to 6A99
+                0x6A11,     //208: VA = 11
+                0x120A      //20A: halt
+        );
+
+        Memory memory = new Memory();
+        CPU cpu = newCPU(memory, rom);
+        TranslatedProgram program = translate(rom);
+        cpu.setTranslation(program);
+        cpu.runTranslated(10);
+
+        assertEquals(0x99, cpu.getRegistersCopy()[0xA]);
+        assertEquals(0, program.blockLength(0x208));
+    }
+
+    @Test
+    @DisplayName("Loading another ROM drops the translation and superinstructions built for the last one")
+    void load_dropsCodeTables() throws IOException {
+        //A blit at 0x200, then three instructions that only look like one to the old table
+        byte[] first = rom(0x6001, 0x6102, 0xA200, 0xD015, 0x1208);
+        byte[] second = rom(0x6005, 0x6107, 0x1204, 0x0000);
+        Machine machine = new Machine(QuirkProfile.CHIP48);
+        machine.load(first);
+        machine.getCPU().setTranslation(translate(first));
+        machine.getCPU().setSuperinstructions(new Superinstructions(machine.getMemory().getMemory()));
+        machine.load(second);
+        assertFalse(machine.getCPU().hasTranslation());
+
+        Machine fresh = new Machine(QuirkProfile.CHIP48);
+        fresh.load(second);
+        machine.getCPU().setRandomSeed(1);
+        fresh.getCPU().setRandomSeed(1);
+        assertEquals(4, machine.getCPU().runFused(4));
+        fresh.getCPU().runFused(4);
+        assertEquals(fresh.stateHash(), machine.stateHash());
+    }
+
+    @Test
+    @DisplayName("A jar translated from another ROM is not loaded")
+    void hashMismatch_returnsNull() throws IOException {
+        File jar = tempDir.resolve("rom.jar").toFile();
+        new RomTranslator(rom(0x1200)).writeJar(jar);
+
+        assertNull(TranslatedProgram.load(jar, rom(0x1202)));
+    }
+
+    @Test
+    @DisplayName("Bundled ROMs translate into at least one block")
+    void bundledRoms_translate() throws IOException {
+        for (String name : new String[]{"pong", "tetris", "brix", "tank"}) {
+            byte[] rom = Files.readAllBytes(new File("roms", name + ".ch8").toPath());
+            assertTrue(new RomTranslator(rom).getBlockCount() > 0, name);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static dev.nabnub.TestRoms.rom;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RomWatcherTest {
+
+    @TempDir
+    Path dir;
+
+    //V5 = 42, BCD of V5 to 0x400, then V1 += kk forever
+    private static byte[] counter(int step) {
+        return rom(0x652A, 0xA400, 0xF533, 0x7100 | step, 0x1206);
+    }
+
+    @Test
+    @DisplayName("Keeping state reloads only the changed bytes and leaves registers and data alone")
+    void reload_keepsState() {
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        byte[] before = counter(1);
+        machine.load(before);
+        machine.runFrame(13);
+        int[] mem = machine.getMemory().getMemory();
+        assertEquals(5, machine.getCPU().getRegisters()[1]);
+        //Program data that happens to sit in the ROM image, changed at run time
+        mem[0x200] = 0x65;
+        mem[0x201] = 0x2B;
+
+        RomWatcher.reload(machine.getCPU(), machine.getMemory(), machine.getFrameBuffer(), before, counter(3), true);
+        assertEquals(0x2B, mem[0x201]);
+        assertEquals(0x03, mem[0x207]);
+        assertArrayEquals(new int[]{0, 4, 2}, java.util.Arrays.copyOfRange(mem, 0x400, 0x403));
+        machine.runFrame(4);
+        assertEquals(5 + 2 * 3, machine.getCPU().getRegisters()[1]);
+
+        //A shorter ROM clears the bytes it no longer has
+        RomWatcher.reload(machine.getCPU(), machine.getMemory(), machine.getFrameBuffer(), counter(3),
+                rom(0x652A, 0xA400), true);
+        assertEquals(0, mem[0x204]);
+        assertEquals(0, mem[0x209]);
+    }
+
+    @Test
+    @DisplayName("Reloading without state runs the new ROM from a reset")
+    void reload_fromReset() {
+        Machine reloaded = new Machine(QuirkProfile.CHIP8);
+        reloaded.load(counter(1));
+        reloaded.runFrame(13);
+        RomWatcher.reload(reloaded.getCPU(), reloaded.getMemory(), reloaded.getFrameBuffer(), counter(1), counter(3),
+                false);
+        Machine fresh = new Machine(QuirkProfile.CHIP8);
+        fresh.load(counter(3));
+        reloaded.getCPU().setRandomSeed(1);
+        fresh.getCPU().setRandomSeed(1);
+        assertEquals(fresh.stateHash(), reloaded.stateHash());
+    }
+
+    @Test
+    @DisplayName("A ROM too large to load is refused before the running machine is reset")
+    void reload_tooLarge() {
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(counter(1));
+        machine.runFrame(13);
+        long hash = machine.stateHash();
+        byte[] huge = new byte[Memory.MEMORY_SIZE];
+        for (boolean keepState : new boolean[]{false, true}) {
+            assertThrows(IllegalArgumentException.class, () -> RomWatcher.reload(machine.getCPU(),
+                    machine.getMemory(), machine.getFrameBuffer(), counter(1), huge, keepState));
+            assertEquals(hash, machine.stateHash());
+        }
+    }
+
+    @Test
+    @DisplayName("Saving the file, in place or through a rename, hands over the new contents once")
+    void watcher_seesSaves() throws Exception {
+        Path file = dir.resolve("game.ch8");
+        Files.write(file, counter(1));
+        BlockingQueue<byte[]> changes = new ArrayBlockingQueue<>(16);
+        RomWatcher watcher = new RomWatcher(file, changes::add);
+        try {
+            Files.write(file, counter(2));
+            assertArrayEquals(counter(2), changes.poll(5, TimeUnit.SECONDS));
+
+            Path temp = dir.resolve("game.ch8.tmp");
+            Files.write(temp, counter(3));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            assertArrayEquals(counter(3), changes.poll(5, TimeUnit.SECONDS));
+
+            //Same contents again, and other files in the directory, are not changes
+            Files.write(file, counter(3));
+            Files.write(dir.resolve("other.ch8"), counter(4));
+            assertNull(changes.poll(300, TimeUnit.MILLISECONDS));
+        } finally {
+            watcher.close();
+        }
+    }
+}
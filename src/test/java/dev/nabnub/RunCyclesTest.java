@@ -0,0 +1,112 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+import static dev.nabnub.TestRoms.rom;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RunCyclesTest {
+
+    private static Machine machine(QuirkProfile profile, byte[] rom) {
+        Machine machine = new Machine(profile);
+        machine.load(rom);
+        machine.getCPU().setRandomSeed(3);
+        return machine;
+    }
+
+    //What runFrame did before runCycles: one cycle() per instruction
+    private static void referenceFrame(Machine machine, int instructionsPerFrame) {
+        machine.getCPU().updateTimers();
+        for (int i = 0; i < instructionsPerFrame; i++) {
+            machine.getCPU().cycle();
+        }
+    }
+
+    private static void assertSameRun(Machine reference, Machine machine, int frames, int instructionsPerFrame,
+                                      SplittableRandom keys, String name) {
+        for (int frame = 0; frame < frames; frame++) {
+            int mask = keys.nextInt(1 << 16) & keys.nextInt(1 << 16);
+            reference.getKeyboard().setKeyMask(mask);
+            machine.getKeyboard().setKeyMask(mask);
+            referenceFrame(reference, instructionsPerFrame);
+            machine.runFrame(instructionsPerFrame);
+            assertEquals(reference.stateHash(), machine.stateHash(), name + " frame " + frame);
+            assertEquals(reference.getCPU().getFault(), machine.getCPU().getFault(), name + " frame " + frame);
+        }
+    }
+
+    @Test
+    @DisplayName("Random programs run identically through runCycles and cycle() on every profile")
+    void randomPrograms_matchCycle() {
+        SplittableRandom random = new SplittableRandom(11);
+        for (QuirkProfile profile : QuirkProfile.values()) {
+            for (int program = 0; program < 500; program++) {
+                byte[] rom = Fuzzer.generate(random);
+                Machine reference;
+                try {
+                    reference = machine(profile, rom);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                Machine machine = machine(profile, rom);
+                assertSameRun(reference, machine, 12, 37, random.split(), profile + " program " + program);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Bundled ROMs run identically through runCycles, with superinstructions on")
+    void bundledRoms_matchCycle() throws IOException {
+        String[] names = {"pong", "tetris", "brix", "tank", "octojam1title", "octojam10title"};
+        QuirkProfile[] profiles = {QuirkProfile.CHIP8, QuirkProfile.CHIP8, QuirkProfile.CHIP48, QuirkProfile.CHIP8,
+                QuirkProfile.XOCHIP, QuirkProfile.XOCHIP};
+        for (int i = 0; i < names.length; i++) {
+            byte[] rom = Files.readAllBytes(new File("roms", names[i] + ".ch8").toPath());
+            Machine reference = machine(profiles[i], rom);
+            Machine machine = machine(profiles[i], rom);
+            machine.getCPU().setSuperinstructions(new Superinstructions(machine.getMemory().getMemory()));
+            assertSameRun(reference, machine, 1500, 30, new SplittableRandom(5), names[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("Exit reasons: budget, draw, vblank wait, key wait and halt")
+    void exitReasons() {
+        //Two draws, then a key wait; with the display wait quirk the second draw stalls until the next frame
+        Machine machine = machine(QuirkProfile.CHIP8, rom(0x6001, 0xD005, 0xD005, 0xF20A, 0x1208));
+        CPU cpu = machine.getCPU();
+        cpu.updateTimers();
+
+        assertEquals(CPU.ExitReason.BUDGET, cpu.runCycles(1));
+        assertEquals(1, cpu.getCyclesRun());
+        assertEquals(CPU.ExitReason.DRAW, cpu.runCycles(10));
+        assertEquals(1, cpu.getCyclesRun());
+        assertEquals(CPU.ExitReason.VBLANK_WAIT, cpu.runCycles(10));
+        assertEquals(0x204, cpu.getPC());
+
+        cpu.updateTimers();
+        assertEquals(CPU.ExitReason.DRAW, cpu.runCycles(10));
+        assertEquals(CPU.ExitReason.KEY_WAIT, cpu.runCycles(10));
+        assertEquals(0x206, cpu.getPC());
+
+        machine.getKeyboard().setKeyMask(1 << 7);
+        assertEquals(CPU.ExitReason.BUDGET, cpu.runCycles(3));
+        assertEquals(7, cpu.getRegisters()[2]);
+
+        Machine exiting = machine(QuirkProfile.SUPERCHIP, rom(0x6001, 0x00FD));
+        assertEquals(CPU.ExitReason.HALTED, exiting.getCPU().runCycles(10));
+        assertEquals(2, exiting.getCPU().getCyclesRun());
+        assertEquals(CPU.ExitReason.HALTED, exiting.getCPU().runCycles(10));
+        assertEquals(0, exiting.getCPU().getCyclesRun());
+
+        Machine faulting = machine(QuirkProfile.CHIP8, rom(0x00EE));
+        assertEquals(CPU.ExitReason.HALTED, faulting.getCPU().runCycles(10));
+        assertEquals(Fault.STACK_UNDERFLOW, faulting.getCPU().getFault());
+    }
+}
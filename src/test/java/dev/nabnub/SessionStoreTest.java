@@ -0,0 +1,143 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionStoreTest {
+
+    //Counts up in V2, then waits for a key into V1 and draws its digit, over and over
+    private static final byte[] WAITING = {
+            0x72, 0x01,                 //V2 += 1
+            0x32, 0x10,                 //Skip if V2 == 16
+            0x12, 0x00,
+            (byte) 0xF1, 0x0A,          //V1 = key
+            (byte) 0xF1, 0x29,          //I = digit V1
+            (byte) 0xD0, 0x05,
+            0x12, 0x06
+    };
+    private static final byte[] BUSY = {0x70, 0x01, 0x12, 0x00};
+
+    @Test
+    @DisplayName("Machine state written and read back hashes the same")
+    void machineState_roundTrips() throws Exception {
+        Machine machine = new Machine(Workload.SPRITES.getProfile());
+        machine.load(Workload.SPRITES.rom());
+        machine.getCPU().setRandomSeed(7);
+        for (int frame = 0; frame < 30; frame++) {
+            machine.runFrame(500);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        machine.writeState(new DataOutputStream(bytes));
+
+        Machine copy = new Machine(Workload.SPRITES.getProfile());
+        copy.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(machine.stateHash(), copy.stateHash());
+        machine.runFrame(500);
+        copy.runFrame(500);
+        assertEquals(machine.stateHash(), copy.stateHash());
+
+        Machine other = new Machine(QuirkProfile.CHIP8);
+        assertThrows(IllegalArgumentException.class,
+                () -> other.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    @DisplayName("A session waiting for a key hibernates to a small file and wakes on the next input")
+    void idleSession_hibernatesAndWakesOnInput(@TempDir Path directory) throws Exception {
+        SessionStore store = new SessionStore(directory, 4, 10);
+        SessionStore.Session session = store.open(QuirkProfile.CHIP8, WAITING, 11);
+        long hash = 0;
+        for (int frame = 0; frame < 30 && session.isResident(); frame++) {
+            hash = session.getMachine().stateHash();
+            store.runFrame();
+        }
+        assertFalse(session.isResident());
+        assertEquals(0, store.getResidentCount());
+        Path file = directory.resolve(session.getId() + ".c8s");
+        assertTrue(Files.size(file) < 512, Files.size(file) + " bytes");
+
+        session.setKeys(1 << 0xA);
+        assertTrue(session.isResident());
+        assertEquals(hash, session.getMachine().stateHash());
+        store.runFrame();
+        assertEquals(0xA, session.getMachine().getCPU().getRegisters()[1]);
+        assertEquals(1, store.getHibernations());
+        assertEquals(1, store.getRehydrations());
+    }
+
+    @Test
+    @DisplayName("Only the most recently used sessions stay resident, and evicted ones come back intact")
+    void residentCap_evictsLeastRecentlyUsed(@TempDir Path directory) throws Exception {
+        SessionStore store = new SessionStore(directory, 3, Integer.MAX_VALUE);
+        SessionStore.Session[] sessions = new SessionStore.Session[20];
+        long[] hashes = new long[sessions.length];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = store.open(QuirkProfile.CHIP8, BUSY, 10 + i);
+            store.runFrame();
+            //In order of last use, so reading them leaves that order as it was
+            for (int j = 0; j <= i; j++) {
+                if (sessions[j].isResident()) {
+                    hashes[j] = sessions[j].getMachine().stateHash();
+                }
+            }
+            assertTrue(store.getResidentCount() <= 3);
+        }
+        assertEquals(20, store.getSessionCount());
+        assertFalse(sessions[0].isResident());
+        assertTrue(sessions[19].isResident());
+
+        assertEquals(hashes[5], sessions[5].getMachine().stateHash());
+        assertTrue(sessions[5].isResident());
+        assertFalse(sessions[17].isResident(), "least recently used goes first");
+        assertEquals(3, store.getResidentCount());
+
+        store.close(sessions[5]);
+        assertFalse(Files.exists(directory.resolve("5.c8s")));
+        assertEquals(19, store.getSessionCount());
+        assertThrows(IllegalStateException.class, sessions[5]::getMachine);
+    }
+
+    @Test
+    @DisplayName("Hibernating on one thread and waking on another reuses a bounded set of machines")
+    void crossThreadWakes_reuseMachines(@TempDir Path directory) throws Exception {
+        SessionStore store = new SessionStore(directory, 2, 1);
+        SessionStore.Session[] sessions = new SessionStore.Session[4];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = store.open(QuirkProfile.CHIP8, BUSY, 10);
+        }
+        Set<Machine> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int round = 0; round < 50; round++) {
+            SessionStore.Session session = sessions[round % sessions.length];
+            Thread input = new Thread(() -> {
+                session.setKeys(1);
+                session.setPaused(false);
+            });
+            input.start();
+            input.join();
+            seen.add(session.getMachine());
+            session.getMachine().getCPU().setSuperinstructions(
+                    new Superinstructions(session.getMachine().getMemory().getMemory()));
+            session.getMachine().getCPU().setFaultPolicy(FaultPolicy.IGNORE);
+            session.setPaused(true);
+            store.runFrame();
+        }
+        assertTrue(seen.size() <= 4, seen.size() + " machines");
+
+        //A machine handed to another session comes without the last owner's setup
+        Machine machine = sessions[0].getMachine();
+        assertEquals(FaultPolicy.HALT, machine.getCPU().getFaultPolicy(Fault.UNKNOWN_OPCODE));
+    }
+}
@@ -0,0 +1,64 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class StartupBenchmarkTest {
+
+    @Test
+    @DisplayName("Headless mode reaches its first frame without loading AWT or Swing")
+    void headless_loadsNoWindowing() throws Exception {
+        List<String> command = new ArrayList<>(StartupBenchmark.plainCommand(StartupBenchmark.DEFAULT_CLASSES,
+                "--headless", "--startup-probe"));
+        command.add(1, "-verbose:class");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> windowing = new ArrayList<>();
+        boolean firstFrame = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                firstFrame |= line.equals(StartupBenchmark.FIRST_FRAME);
+                //Keyboard implements KeyListener, an interface that brings nothing else in with it
+                if ((line.contains(" java.awt.") || line.contains(" javax.swing.") || line.contains(" sun.awt."))
+                        && !line.contains(" java.awt.event.KeyListener ")) {
+                    windowing.add(line);
+                }
+            }
+        }
+        assertEquals(0, process.waitFor());
+        assertTrue(firstFrame);
+        assertEquals(List.of(), windowing);
+    }
+
+    @Test
+    @DisplayName("Only modes slower than a set target miss it")
+    void missed_respectsTarget() {
+        assertEquals(List.of(), StartupBenchmark.missed("headless", 90, 100));
+        assertEquals(List.of(), StartupBenchmark.missed("headless", 900, 0));
+        assertEquals(1, StartupBenchmark.missed("gui", 120, 100).size());
+    }
+
+    //Only runs under mvn test -Pstartup, which sets the targets
+    @Test
+    @DisplayName("The startup image reaches its first frame within the target")
+    void image_withinTarget() throws Exception {
+        String headless = System.getProperty("startup.target.headless");
+        assumeTrue(headless != null, "Run with -Pstartup");
+        List<String> missed = StartupBenchmark.check(StartupBenchmark.DEFAULT_CLASSES,
+                StartupBenchmark.DEFAULT_OUTPUT, Integer.parseInt(System.getProperty("startup.runs",
+                        String.valueOf(StartupBenchmark.DEFAULT_RUNS))), Double.parseDouble(headless),
+                Double.parseDouble(System.getProperty("startup.target.gui", "0")));
+        assertEquals(List.of(), missed);
+    }
+}
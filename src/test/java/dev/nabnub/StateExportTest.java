@@ -0,0 +1,121 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static dev.nabnub.TestRoms.rom;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateExportTest {
+
+    //Once per frame after the first, with key 5 held, V0 counts up and is stored at 0x300
+    private static final int[] COUNTER = {
+            0x6105, 0x6206, 0x6300, 0x6401, 0xF415, 0xF507, 0x3500, 0x120A,
+            0xE1A1, 0x7001, 0xE2A1, 0x7003, 0xE3A1, 0x6000, 0xA300, 0xF055, 0x1206
+    };
+
+    private static final Pattern LINE = Pattern.compile("frame (\\d+) .* V0=(\\w\\w) .* 0300=(\\w\\w)");
+
+    @TempDir
+    Path dir;
+
+    private static Machine counter() {
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(rom(COUNTER));
+        machine.getKeyboard().setKeyMask(1 << 5);
+        return machine;
+    }
+
+    @Test
+    @DisplayName("A snapshot shows the registers, screen and memory last published")
+    void snapshot_matchesMachine() throws Exception {
+        Path file = dir.resolve("state");
+        Machine machine = new Machine(QuirkProfile.CHIP8);
+        machine.load(rom(0x6A2B, 0xA050, 0xD005, 0x2208, 0x00EE));
+
+        try (StateExport export = new StateExport(file, QuirkProfile.CHIP8);
+             StateExportReader reader = new StateExportReader(file)) {
+            assertFalse(reader.snapshot());
+
+            machine.runFrame(4);
+            export.publish(machine);
+
+            assertTrue(reader.snapshot());
+            assertEquals(1, reader.getFrame());
+            assertEquals(0x2B, reader.getRegister(0xA));
+            assertEquals(0x050, reader.getIndex());
+            assertEquals(0x208, reader.getPC());
+            assertEquals(1, reader.getSp());
+            assertEquals(0x208, reader.getStack(1));
+            assertEquals(0x6A, reader.getMemory(0x200));
+            assertEquals(machine.getFrameBuffer().isPixelOn(0, 0), reader.isPixelOn(0, 0));
+            assertTrue(reader.isPixelOn(0, 0));
+            assertEquals(0, reader.getFlags());
+        }
+    }
+
+    @Test
+    @DisplayName("A reader in another process never sees a torn frame")
+    void crossProcess_readsConsistentFrames() throws Exception {
+        Path file = dir.resolve("state");
+        Machine machine = counter();
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        try (StateExport export = new StateExport(file, QuirkProfile.CHIP8)) {
+            //Publish unpaced, so the reader keeps running into frames being written
+            Thread writer = new Thread(() -> {
+                while (writing.get()) {
+                    machine.runFrame(20);
+                    export.publish(machine);
+                }
+            });
+            writer.start();
+
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            Process reader = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    StateExportReader.class.getName(), file.toString(), "300", "300")
+                    .redirectErrorStream(true).start();
+
+            int frames = 0;
+            try (BufferedReader output = new BufferedReader(
+                    new InputStreamReader(reader.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    if (line.startsWith("retries")) {
+                        continue;
+                    }
+                    Matcher matcher = LINE.matcher(line);
+                    assertTrue(matcher.find(), line);
+                    long frame = Long.parseLong(matcher.group(1));
+                    int v0 = Integer.parseInt(matcher.group(2), 16);
+                    int stored = Integer.parseInt(matcher.group(3), 16);
+                    assertEquals((frame - 1) & 0xFF, v0, line);
+                    assertEquals(v0, stored, line);
+                    frames++;
+                }
+            } finally {
+                //The reader waits for new frames, so the writer only stops once it is done
+                boolean exited = reader.waitFor(30, TimeUnit.SECONDS);
+                if (!exited) {
+                    reader.destroyForcibly();
+                }
+                writing.set(false);
+                writer.join();
+                assertTrue(exited);
+            }
+            assertEquals(0, reader.exitValue());
+            assertEquals(300, frames);
+        }
+    }
+}
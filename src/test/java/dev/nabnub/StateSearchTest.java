@@ -0,0 +1,115 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import static dev.nabnub.TestRoms.rom;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateSearchTest {
+
+    //Once per frame: key 5 adds one to V0, key 6 adds three, key 0 resets it; V0 is stored at 0x300
+    private static final int[] COUNTER = {
+            0x6105, 0x6206, 0x6300, 0x6401, 0xF415, 0xF507, 0x3500, 0x120A,
+            0xE1A1, 0x7001, 0xE2A1, 0x7003, 0xE3A1, 0x6000, 0xA300, 0xF055, 0x1206
+    };
+
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("Copied machines run identically and hash the same")
+    void copy_isExact() {
+        Machine original = new Machine(QuirkProfile.CHIP8);
+        original.load(rom(0xA000, 0xC0FF, 0xD005, 0x7001, 0x1202));
+        original.runFrame(7);
+
+        Machine copy = new Machine(QuirkProfile.CHIP8);
+        copy.copyFrom(original);
+        assertEquals(original.stateHash(), copy.stateHash());
+
+        original.runFrame(20);
+        copy.runFrame(20);
+        assertEquals(original.stateHash(), copy.stateHash());
+        assertArrayEquals(original.getFrameBuffer().toPixels(), copy.getFrameBuffer().toPixels());
+
+        copy.getMemory().getMemory()[0xE00] = 1;
+        assertNotEquals(original.stateHash(), copy.stateHash());
+    }
+
+    @Test
+    @DisplayName("Breadth-first finds the shortest movie, which replays to the goal")
+    void breadthFirst_findsShortestMovie() throws Exception {
+        StateSearch search = new StateSearch(QuirkProfile.CHIP8, rom(COUNTER), 20, 1);
+        search.setInputs(0, 1 << 5, 1 << 6, 1);
+        Predicate<Machine> goal = StateSearch.memoryEquals(0x300, 7);
+
+        StateSearch.Result result = search.search(goal, pool);
+
+        assertTrue(result.isFound());
+        assertEquals(4, result.getMovie().length);
+        assertTrue(goal.test(search.replay(result.getMovie())));
+        assertTrue(goal.test(result.getMachine()));
+    }
+
+    @Test
+    @DisplayName("Best-first follows the score to a distant goal")
+    void bestFirst_followsScore() throws Exception {
+        StateSearch search = new StateSearch(QuirkProfile.CHIP8, rom(COUNTER), 20, 1);
+        search.setInputs(0, 1 << 5, 1 << 6, 1);
+        search.setStrategy(StateSearch.Strategy.BEST_FIRST);
+        search.setScore(StateSearch.memoryValue(0x300));
+        search.setMaxSteps(200);
+
+        StateSearch.Result result = search.search(StateSearch.memoryAtLeast(0x300, 150), pool);
+
+        assertTrue(result.isFound());
+        assertTrue(search.replay(result.getMovie()).getMemory().getMemory()[0x300] >= 150);
+        assertTrue(result.getStatesVisited() < 5000, "visited " + result.getStatesVisited());
+    }
+
+    @Test
+    @DisplayName("Duplicate states are pruned and an unreachable goal ends the search")
+    void unreachableGoal_exhaustsStates() throws Exception {
+        StateSearch search = new StateSearch(QuirkProfile.CHIP8, rom(COUNTER), 20, 1);
+        search.setInputs(0, 1);
+
+        StateSearch.Result result = search.search(StateSearch.memoryEquals(0x300, 1), pool);
+
+        assertFalse(result.isFound());
+        assertNull(result.getMovie());
+        assertTrue(result.getStatesVisited() < 10, "visited " + result.getStatesVisited());
+    }
+
+    @Test
+    @DisplayName("Machines released on one thread are reused on another")
+    void machinePool_reusesAcrossThreads() throws Exception {
+        MachinePool machines = new MachinePool(QuirkProfile.CHIP8);
+        Machine[] released = new Machine[MachinePool.LOCAL_CAPACITY + 1];
+        for (int i = 0; i < released.length; i++) {
+            released[i] = machines.acquire();
+        }
+        for (Machine machine : released) {
+            machines.release(machine);
+        }
+        Machine[] reused = new Machine[1];
+        Thread worker = new Thread(() -> reused[0] = machines.acquire());
+        worker.start();
+        worker.join();
+        assertSame(released[released.length - 1], reused[0]);
+    }
+}
@@ -0,0 +1,135 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static dev.nabnub.TestRoms.rom;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepServerTest {
+
+    //Once per frame after the first: key 5 adds one to V0, key 6 adds three, key 0 resets it; V0 is stored at 0x300
+    private static final int[] COUNTER = {
+            0x6105, 0x6206, 0x6300, 0x6401, 0xF415, 0xF507, 0x3500, 0x120A,
+            0xE1A1, 0x7001, 0xE2A1, 0x7003, 0xE3A1, 0x6000, 0xA300, 0xF055, 0x1206
+    };
+
+    //Random sprites at random places
+    private static final int[] NOISE = {0xA000, 0xC03F, 0xC11F, 0xD015, 0x1202};
+
+    private StepServer server;
+    private StepClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new StepServer(0, 3);
+        client = new StepClient(server.getPort());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    @DisplayName("Stepped screens match a local machine with the same seed")
+    void step_matchesLocalMachine() throws IOException {
+        client.configure(QuirkProfile.CHIP48, 15, 8, rom(NOISE));
+        assertEquals(64, client.getScreenWidth());
+        assertEquals(1 + 256, client.getRecordSize());
+
+        int[] ids = {7, 2};
+        client.step(5, ids, new int[2], 2);
+
+        for (int record = 0; record < ids.length; record++) {
+            Machine local = new Machine(QuirkProfile.CHIP48);
+            local.load(rom(NOISE));
+            local.getCPU().setRandomSeed(ids[record]);
+            for (int frame = 0; frame < 5; frame++) {
+                local.runFrame(15);
+            }
+            for (int y = 0; y < 32; y++) {
+                for (int x = 0; x < 64; x++) {
+                    assertEquals(local.getFrameBuffer().isPixelOn(x, y), client.isPixelOn(record, 0, x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("XO-CHIP records carry all four planes")
+    void step_sendsEveryXoChipPlane() throws IOException {
+        //Plane 2 only, then the 0 glyph
+        int[] rom = {0xF401, 0xF029, 0xD015, 0x1206};
+        client.configure(QuirkProfile.XOCHIP, 10, 1, rom(rom));
+        assertEquals(FrameBuffer.PLANES, client.getPlanes());
+        client.step(2, new int[]{0}, new int[1], 1);
+
+        Machine local = new Machine(QuirkProfile.XOCHIP);
+        local.load(rom(rom));
+        for (int frame = 0; frame < 2; frame++) {
+            local.runFrame(10);
+        }
+        int lit = 0;
+        for (int y = 0; y < client.getScreenHeight(); y++) {
+            for (int x = 0; x < client.getScreenWidth(); x++) {
+                boolean on = (local.getFrameBuffer().pixelColor(x, y) & 0x4) != 0;
+                assertEquals(on, client.isPixelOn(0, 2, x, y));
+                assertFalse(client.isPixelOn(0, 0, x, y));
+                lit += on ? 1 : 0;
+            }
+        }
+        assertTrue(lit > 0);
+    }
+
+    @Test
+    @DisplayName("Each environment keeps its own state and key mask across batches")
+    void step_keepsEnvironmentsApart() throws IOException {
+        client.configure(QuirkProfile.CHIP8, 20, 4, rom(COUNTER), 0x300);
+        int[] ids = {0, 1, 2, 3};
+        int[] keys = {0, 1 << 5, 1 << 6, 1 << 5};
+
+        for (int batch = 0; batch < 10; batch++) {
+            client.step(1, ids, keys, 4);
+        }
+
+        assertEquals(0, client.getRam(0, 0));
+        assertEquals(9, client.getRam(1, 0));
+        assertEquals(27, client.getRam(2, 0));
+        assertEquals(9, client.getRam(3, 0));
+        assertEquals(0, client.getFlags(1) & StepServer.FLAG_HALTED);
+    }
+
+    @Test
+    @DisplayName("A repeated id steps twice, in order, and reset reloads the ROM")
+    void step_repeatedIdAndReset() throws IOException {
+        client.configure(QuirkProfile.CHIP8, 20, 2, rom(COUNTER), 0x300);
+
+        client.step(2, new int[]{1, 1}, new int[]{1 << 6, 1 << 5}, 2);
+        assertEquals(3, client.getRam(0, 0));
+        assertEquals(5, client.getRam(1, 0));
+
+        client.reset(1);
+        client.step(1, new int[]{1}, new int[]{0}, 1);
+        assertEquals(0, client.getRam(0, 0));
+    }
+
+    @Test
+    @DisplayName("Bad requests get an error and the connection stays usable")
+    void errors_areReported() throws IOException {
+        IOException notConfigured = assertThrows(IOException.class, () -> client.step(1, new int[]{0}, new int[]{0}, 1));
+        assertTrue(notConfigured.getMessage().contains("Not configured"));
+
+        client.configure(QuirkProfile.CHIP8, 20, 2, rom(COUNTER), 0x300);
+        IOException unknown = assertThrows(IOException.class, () -> client.step(1, new int[]{2}, new int[]{0}, 1));
+        assertTrue(unknown.getMessage().contains("Unknown environment 2"));
+
+        client.step(2, new int[]{0}, new int[]{1 << 5}, 1);
+        assertEquals(1, client.getRam(0, 0));
+    }
+}
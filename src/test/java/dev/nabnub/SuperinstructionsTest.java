@@ -0,0 +1,121 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static dev.nabnub.TestRoms.rom;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuperinstructionsTest {
+
+    private static Machine machine(QuirkProfile profile, byte[] rom, boolean fused) {
+        Machine machine = new Machine(profile);
+        machine.load(rom);
+        machine.getCPU().setRandomSeed(1);
+        if (fused) {
+            machine.getCPU().setSuperinstructions(new Superinstructions(machine.getMemory().getMemory()));
+        }
+        return machine;
+    }
+
+    private static void runFused(Machine machine, int instructionsPerFrame) {
+        machine.getCPU().updateTimers();
+        machine.getCPU().runFused(instructionsPerFrame);
+    }
+
+    @Test
+    @DisplayName("Bundled ROMs run identically with and without fusion, frame by frame")
+    void bundledRoms_matchInterpreter() throws IOException {
+        for (String name : new String[]{"pong", "tetris", "brix", "tank"}) {
+            byte[] rom = Files.readAllBytes(new File("roms", name + ".ch8").toPath());
+            Machine plain = machine(QuirkProfile.CHIP8, rom, false);
+            Machine fused = machine(QuirkProfile.CHIP8, rom, true);
+            Random keys = new Random(7);
+
+            for (int frame = 0; frame < 3000; frame++) {
+                if (frame % 15 == 0) {
+                    int mask = keys.nextInt(1 << 16) & keys.nextInt(1 << 16);
+                    plain.getKeyboard().setKeyMask(mask);
+                    fused.getKeyboard().setKeyMask(mask);
+                }
+                plain.runFrame(11);
+                runFused(fused, 11);
+                assertEquals(plain.stateHash(), fused.stateHash(), name + " frame " + frame);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Each idiom is detected and runs as one dispatch")
+    void idioms_fuse() {
+        //0x200 blit, 0x208 table load, 0x20C counted loop over V3, 0x214 timer poll
+        byte[] rom = rom(0x6001, 0x6102, 0xA200, 0xD015, 0xA300, 0xF165, 0x7301, 0x3303, 0x120C,
+                0xF315, 0xF207, 0x3200, 0x1214, 0x1218);
+        Machine machine = machine(QuirkProfile.CHIP48, rom, true);
+        Superinstructions fusion = new Superinstructions(machine.getMemory().getMemory());
+        assertEquals(Superinstructions.BLIT, fusion.kind(0x200));
+        assertEquals(Superinstructions.NONE, fusion.kind(0x202));
+        assertEquals(Superinstructions.TABLE_LOAD, fusion.kind(0x208));
+        assertEquals(Superinstructions.COUNTED_LOOP, fusion.kind(0x20C));
+        assertEquals(Superinstructions.TIMER_POLL, fusion.kind(0x214));
+
+        CPU cpu = machine.getCPU();
+        assertEquals(1, cpu.runFused(4));
+        assertEquals(0x208, cpu.getPC());
+        assertTrue(machine.getFrameBuffer().isPixelOn(2, 2));
+        assertEquals(1, cpu.runFused(2));
+        assertEquals(0x20C, cpu.getPC());
+
+        //Three passes round the loop, twice back to 0x20C and then the skip, plus the F315 after it
+        assertEquals(4, cpu.runFused(9));
+        assertEquals(3, cpu.getRegisters()[3]);
+        assertEquals(0x214, cpu.getPC());
+
+        //The poll spins for the whole remaining budget while the timer runs
+        assertEquals(1, cpu.runFused(30));
+        assertEquals(0x214, cpu.getPC());
+        assertEquals(3, cpu.getRegisters()[2]);
+    }
+
+    @Test
+    @DisplayName("Budgets split sequences and jumps into their middle run as plain instructions")
+    void partialSequences_matchInterpreter() {
+        //0x200 jumps onto the last instruction of the blit at 0x202, which later runs whole from the counted loop
+        byte[] rom = rom(0x1208, 0x6005, 0x6103, 0xA200, 0xD015, 0x7201, 0x3204, 0x1202, 0x1210);
+        for (int budget = 1; budget <= 6; budget++) {
+            Machine plain = machine(QuirkProfile.CHIP48, rom, false);
+            Machine fused = machine(QuirkProfile.CHIP48, rom, true);
+            for (int frame = 0; frame < 20; frame++) {
+                plain.runFrame(budget);
+                runFused(fused, budget);
+                assertEquals(plain.stateHash(), fused.stateHash(), "budget " + budget + " frame " + frame);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Self-modifying code is rescanned before its fused sequence runs again")
+    void codeWrites_invalidate() {
+        //Counts V2 up to 3 in a loop at 0x206, then Fx55 turns its 3203 into 4203, which no longer fuses
+        byte[] rom = rom(0x6042, 0x6103, 0x1206, 0x7201, 0x3203, 0x1206, 0xA208, 0xF155, 0x1206);
+        Machine plain = machine(QuirkProfile.CHIP48, rom, false);
+        Machine fused = machine(QuirkProfile.CHIP48, rom, true);
+        for (int frame = 0; frame < 10; frame++) {
+            plain.runFrame(7);
+            runFused(fused, 7);
+            assertEquals(plain.stateHash(), fused.stateHash(), "frame " + frame);
+        }
+
+        int[] memory = machine(QuirkProfile.CHIP48, rom, false).getMemory().getMemory();
+        Superinstructions fusion = new Superinstructions(memory);
+        assertEquals(Superinstructions.COUNTED_LOOP, fusion.kind(0x206));
+        memory[0x208] = 0x42;
+        fusion.invalidate(0x208, 1);
+        assertEquals(Superinstructions.NONE, fusion.kind(0x206));
+    }
+}
@@ -0,0 +1,18 @@
+package dev.nabnub;
+
+//ROMs for tests, written out as opcodes
+final class TestRoms {
+
+    private TestRoms() {
+    }
+
+    //Each opcode big-endian, in order from the start of the ROM
+    static byte[] rom(int... opcodes) {
+        byte[] rom = new byte[opcodes.length * 2];
+        for (int i = 0; i < opcodes.length; i++) {
+            rom[i * 2] = (byte) (opcodes[i] >> 8);
+            rom[i * 2 + 1] = (byte) opcodes[i];
+        }
+        return rom;
+    }
+}
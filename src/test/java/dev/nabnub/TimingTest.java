@@ -0,0 +1,149 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static dev.nabnub.TestRoms.rom;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingTest {
+
+    private static Machine machine(QuirkProfile profile, int... opcodes) {
+        Machine machine = new Machine(profile);
+        machine.load(rom(opcodes));
+        return machine;
+    }
+
+    @Test
+    @DisplayName("Fixed timing runs exactly like runFrame with the same instructions per frame")
+    void fixed_matchesRunFrame() {
+        SplittableRandom random = new SplittableRandom(4);
+        Timing timing = new Timing(17);
+        for (int program = 0; program < 200; program++) {
+            byte[] rom = Fuzzer.generate(random);
+            Machine reference = new Machine(QuirkProfile.CHIP48);
+            Machine timed = new Machine(QuirkProfile.CHIP48);
+            try {
+                reference.load(rom);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            timed.load(rom);
+            reference.getCPU().setRandomSeed(program);
+            timed.getCPU().setRandomSeed(program);
+            for (int frame = 0; frame < 10; frame++) {
+                reference.runFrame(17);
+                timed.runFrame(timing);
+                assertEquals(reference.stateHash(), timed.stateHash(), "program " + program + " frame " + frame);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("VIP timing charges each instruction its cost and carries overruns into the next frame")
+    void vip_chargesCycles() {
+        //7001 1200 loops forever, counting iterations in V0
+        Machine machine = machine(QuirkProfile.CHIP8, 0x7001, 0x1200);
+        Timing timing = new Timing(Timing.Mode.VIP, 11);
+        int loopCycles = 2 * Timing.VIP_FETCH_CYCLES + Timing.vipCycles(0x7001) + Timing.vipCycles(0x1200);
+
+        long iterations = 0;
+        int previous = 0;
+        for (int frame = 0; frame < 600; frame++) {
+            machine.runFrame(timing);
+            int v0 = machine.getCPU().getRegisters()[0];
+            iterations += (v0 - previous) & 0xFF;
+            previous = v0;
+        }
+        //The loop starts over at whole iterations, so at most one is owed to the next frame
+        long expected = 600L * Timing.VIP_FRAME_CYCLES / loopCycles;
+        assertTrue(Math.abs(iterations - expected) <= 1, iterations + " iterations, expected about " + expected);
+    }
+
+    @Test
+    @DisplayName("VIP timing only draws first thing in a frame, after vblank")
+    void vip_drawsWaitForVblank() {
+        //CHIP-48 has no display wait quirk of its own, so the waiting here is all down to the timing
+        Machine machine = machine(QuirkProfile.CHIP48, 0x6001, 0xA050, 0xD005, 0xD005, 0x1208);
+        Timing timing = new Timing(Timing.Mode.VIP, 11);
+
+        machine.runFrame(timing);
+        assertEquals(0x204, machine.getCPU().getPC());
+        machine.runFrame(timing);
+        assertEquals(0x206, machine.getCPU().getPC());
+        assertTrue(machine.getFrameBuffer().isPixelOn(1, 1));
+        machine.runFrame(timing);
+        assertFalse(machine.getFrameBuffer().isPixelOn(1, 1));
+    }
+
+    @Test
+    @DisplayName("Timers tick once per frame even while VIP timing pays off an overrun")
+    void vip_timersTickEveryFrame() {
+        //Sets the delay timer to 100, then spends far more than a frame on each Fx55 of all sixteen registers
+        int[] program = new int[40];
+        program[0] = 0x6064;
+        program[1] = 0xF015;
+        for (int i = 2; i < program.length - 1; i++) {
+            program[i] = 0xFF55;
+        }
+        program[program.length - 1] = 0x1204;
+        Machine machine = machine(QuirkProfile.CHIP48, program);
+        Timing timing = new Timing(Timing.Mode.VIP, 11);
+
+        machine.runFrame(timing);
+        int start = machine.getCPU().getDelayTimer();
+        for (int frame = 1; frame <= 50; frame++) {
+            machine.runFrame(timing);
+            assertEquals(start - frame, machine.getCPU().getDelayTimer());
+        }
+    }
+
+    @Test
+    @DisplayName("VIP timing banks nothing while halted, so clearing a fault runs an ordinary frame")
+    void vip_haltedFramesBankNoCycles() {
+        //Counts V0 up to 16, then faults on E0FF; once cleared, jumps back and counts again
+        Machine machine = machine(QuirkProfile.CHIP8, 0x6000, 0x7001, 0x3010, 0x1202, 0xE0FF, 0x1200);
+        Timing timing = new Timing(Timing.Mode.VIP, 11);
+        CPU cpu = machine.getCPU();
+        int frameBefore = 0;
+        while (!cpu.isHalted()) {
+            frameBefore = Math.max(frameBefore, timing.runFrame(cpu));
+        }
+        assertEquals(Fault.UNKNOWN_OPCODE, cpu.getFault());
+        for (int frame = 0; frame < 1_000; frame++) {
+            assertEquals(0, timing.runFrame(cpu));
+        }
+
+        cpu.clearFault();
+        int executed = timing.runFrame(cpu);
+        assertTrue(executed > 0 && executed <= frameBefore + 1, executed + " instructions, at most " + frameBefore);
+    }
+
+    @Test
+    @DisplayName("Adaptive timing backs off on a slow host and returns to the target once it keeps up")
+    void adaptive_followsHeadroom() {
+        Timing timing = new Timing(Timing.Mode.ADAPTIVE, 10_000);
+        assertEquals(10_000, timing.getInstructionsPerFrame());
+
+        //10us per instruction leaves room for 833 in half a frame
+        for (int frame = 0; frame < 100; frame++) {
+            timing.adapt(timing.getInstructionsPerFrame(), timing.getInstructionsPerFrame() * 10_000L);
+        }
+        assertEquals(833, timing.getInstructionsPerFrame(), 1);
+
+        //One stalled frame only nudges the average
+        timing.adapt(833, 100_000_000L);
+        assertTrue(timing.getInstructionsPerFrame() > 50);
+
+        for (int frame = 0; frame < 100; frame++) {
+            timing.adapt(timing.getInstructionsPerFrame(), timing.getInstructionsPerFrame() * 100L);
+        }
+        assertEquals(10_000, timing.getInstructionsPerFrame());
+
+        //Frames that end early on a wait run nothing to measure
+        timing.adapt(0, 1_000_000L);
+        assertEquals(10_000, timing.getInstructionsPerFrame());
+    }
+}
@@ -0,0 +1,82 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TracingCPUTest {
+    private Memory memory;
+    private TracingCPU cpu;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void setUp() {
+        memory = new Memory();
+        cpu = new TracingCPU(memory, new Keyboard(), new FrameBuffer(), QuirkProfile.CHIP8, 4);
+    }
+
+    private void setUpMemory(int memStart, int... opcodes) {
+        for (int opcode : opcodes) {
+            memory.getMemory()[memStart++] = (opcode & 0xFF00) >> 8;
+            memory.getMemory()[memStart++] = opcode & 0x00FF;
+        }
+    }
+
+    private void runCycles(int n) {
+        for (int i = 0; i < n; i++) {
+            cpu.cycle();
+        }
+    }
+
+    @Test
+    @DisplayName("Ring keeps only the most recent instructions, oldest first in the dump")
+    void ring_keepsLastEntries() throws IOException {
+        setUpMemory(0x200, 0x6001, 0x6102, 0x6203, 0x6304, 0x6405, 0xA321);
+        runCycles(6);
+
+        Path file = tempDir.resolve("trace.bin");
+        cpu.dumpTrace(file);
+        String[] lines = TraceDecoder.decode(file).split("\\R");
+
+        assertEquals(4, lines.length);
+        assertEquals(6, cpu.getTrace().getTotal());
+        assertTrue(lines[0].startsWith("00000002  0204  6203  LD V2, 03"));
+        assertTrue(lines[0].contains("V2=03"));
+        assertTrue(lines[3].contains("LD I, 321"));
+        assertTrue(lines[3].contains("I=0321"));
+    }
+
+    @Test
+    @DisplayName("Unknown opcode faults and dumps the trace to the fault file")
+    void unknownOpcode_dumpsTrace() throws IOException {
+        Path file = tempDir.resolve("fault.bin");
+        cpu.setFaultFile(file);
+        setUpMemory(0x200, 0x6A05, 0x8AB9, 0x6B01);
+
+        runCycles(2);
+        assertTrue(Files.exists(file));
+        assertTrue(cpu.isFaultDumped());
+
+        String decoded = TraceDecoder.decode(file);
+        assertTrue(decoded.contains("0202  8AB9  DW 8AB9"));
+        assertTrue(decoded.contains("fault: UNKNOWN_OPCODE at 0202, opcode 8AB9"));
+    }
+
+    @Test
+    @DisplayName("Decoder rejects files that are not traces")
+    void decoder_rejectsOtherFiles() throws IOException {
+        Path file = tempDir.resolve("rom.ch8");
+        Files.write(file, new byte[64]);
+
+        assertThrows(IOException.class, () -> TraceDecoder.decode(file));
+    }
+}
@@ -0,0 +1,77 @@
+package dev.nabnub;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class WorkloadBenchmarkTest {
+
+    @Test
+    @DisplayName("Every workload runs its whole budget, and fused runs match plain ones")
+    void workloads_runFullFrames() {
+        for (Workload workload : Workload.values()) {
+            Machine plain = new Machine(workload.getProfile());
+            Machine fused = new Machine(workload.getProfile());
+            plain.load(workload.rom());
+            fused.load(workload.rom());
+            plain.getCPU().setRandomSeed(1);
+            fused.getCPU().setRandomSeed(1);
+            fused.getCPU().setSuperinstructions(new Superinstructions(fused.getMemory().getMemory()));
+            Timing timing = new Timing(1_000);
+            for (int frame = 0; frame < 20; frame++) {
+                assertEquals(1_000, timing.runFrame(plain.getCPU()), workload + " frame " + frame);
+                fused.runFrame(1_000);
+                assertEquals(plain.stateHash(), fused.stateHash(), workload + " frame " + frame);
+            }
+            assertEquals(Fault.NONE, plain.getCPU().getFault(), workload.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Only workloads slower than the baseline by more than the threshold are regressions")
+    void regressions_respectThreshold() {
+        Properties baseline = new Properties();
+        baseline.setProperty("ALU", "100.0");
+        baseline.setProperty("CALLS", "50.0");
+        Map<Workload, Double> results = new EnumMap<>(Workload.class);
+        results.put(Workload.ALU, 91.0);
+        results.put(Workload.CALLS, 44.0);
+        results.put(Workload.SPRITES, 1.0);
+
+        List<String> regressions = WorkloadBenchmark.regressions(baseline, results, 10);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith("CALLS"), regressions.get(0));
+        assertEquals(2, WorkloadBenchmark.regressions(baseline, results, 5).size());
+    }
+
+    @Test
+    @DisplayName("Medians ignore a single outlying round or fork")
+    void median_ignoresOutliers() {
+        assertEquals(100, WorkloadBenchmark.median(new double[]{100, 30, 101, 99, 400}));
+        assertEquals(100.5, WorkloadBenchmark.median(new double[]{101, 1, 100, 500}));
+    }
+
+    //Only runs under mvn test -Pworkloads, which sets the threshold, and on a machine with a baseline, which
+    //-Dworkloads.update=true records
+    @Test
+    @DisplayName("No workload is slower than its baseline by more than the threshold")
+    void workloads_withinThreshold() throws Exception {
+        String threshold = System.getProperty("workloads.threshold");
+        assumeTrue(threshold != null, "Run with -Pworkloads");
+        boolean update = Boolean.parseBoolean(System.getProperty("workloads.update"));
+        assumeTrue(update || Files.isRegularFile(WorkloadBenchmark.DEFAULT_BASELINE), "No workload baseline in "
+                + WorkloadBenchmark.DEFAULT_BASELINE + "; record one with -Pworkloads -Dworkloads.update=true");
+        List<String> regressions = WorkloadBenchmark.check(WorkloadBenchmark.DEFAULT_BASELINE,
+                WorkloadBenchmark.DEFAULT_HISTORY, System.getProperty("workloads.build", "local"),
+                Double.parseDouble(threshold), update);
+        assertTrue(regressions.isEmpty(), String.join("\n", regressions));
+    }
+}